@@ -0,0 +1,309 @@
+package com.adobe.assignment.http;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of heap and direct ByteBuffer(s) that connections lease and return,
+ * so that serving a request allocates (almost) no I/O buffers.
+ *
+ * Buffers come in a few size classes. A request for a buffer is rounded up
+ * to the smallest class that fits; requests larger than the largest class
+ * are simply allocated and are not pooled. Released buffers first go to a
+ * small cache owned by the releasing thread, so that a worker thread serving
+ * one connection after the other mostly never touches the shared free lists.
+ * Only when that cache is full do buffers go to the shared free lists.
+ *
+ * The pool keeps at most a maximum number of bytes, counting the buffers in
+ * the shared free lists and those cached by every thread alike, since the
+ * worker pool is unbounded and each worker's cache holds up to
+ * THREAD_CACHE_SIZE buffers per size class, heap and direct. Buffers beyond
+ * the cap are left to the garbage collector. When a thread dies, the bytes
+ * of its cache are given back to the cap once the cache has been collected.
+ *
+ * Leak detection (system property httpserver.buffers.leakDetection, set in
+ * the test build) records where every outstanding buffer was leased, and
+ * reports releasing a buffer twice.
+ *
+ * Note: This class makes use of the Singleton Pattern for the server-wide
+ * pool, like the MIMETyper. The ByteBufferPool class is thread-safe.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class ByteBufferPool {
+
+	/**
+	 * The size classes, in bytes.
+	 */
+	private static final int[] SIZE_CLASSES = { 1024, 4096, 8192, 16384, 65536 };
+
+	/**
+	 * The number of buffers per size class kept by each thread.
+	 */
+	private static final int THREAD_CACHE_SIZE = 4;
+
+	private static final long DEFAULT_MAX_POOLED_BYTES = 64L * 1024 * 1024;
+
+	private static final ByteBufferPool instance = new ByteBufferPool(
+			Long.getLong("httpserver.buffers.max", DEFAULT_MAX_POOLED_BYTES),
+			Boolean.getBoolean("httpserver.buffers.leakDetection"));
+
+	/**
+	 * Gives the bytes cached by dead threads back to their pool.
+	 */
+	private static final Cleaner cleaner = Cleaner.create();
+
+	private final long maxPooledBytes;
+
+	/**
+	 * The bytes held by the shared free lists and the thread caches.
+	 */
+	private final AtomicLong pooledBytes = new AtomicLong();
+	private final Queue<ByteBuffer>[] heap;
+	private final Queue<ByteBuffer>[] direct;
+	private final ThreadLocal<ThreadCache> threadCache = new ThreadLocal<ThreadCache>() {
+		@Override
+		protected ThreadCache initialValue() {
+			ThreadCache cache = new ThreadCache();
+			cleaner.register(cache, new Reclaim(pooledBytes, cache.cachedBytes));
+			return cache;
+		}
+	};
+
+	/**
+	 * The outstanding buffers and where they were leased, if leak detection
+	 * is enabled.
+	 */
+	private final Map<ByteBuffer, Throwable> outstanding;
+
+	/**
+	 * Explicit Value Constructor
+	 *
+	 * @param maxPooledBytes
+	 *            The maximum number of bytes kept by the pool, thread caches
+	 *            included
+	 * @param leakDetection
+	 *            Whether to track outstanding buffers
+	 */
+	@SuppressWarnings("unchecked")
+	public ByteBufferPool(long maxPooledBytes, boolean leakDetection) {
+		this.maxPooledBytes = maxPooledBytes;
+		heap = new Queue[SIZE_CLASSES.length];
+		direct = new Queue[SIZE_CLASSES.length];
+		for (int i = 0; i < SIZE_CLASSES.length; i++) {
+			heap[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+			direct[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+		}
+		outstanding = leakDetection
+				? Collections.synchronizedMap(new IdentityHashMap<ByteBuffer, Throwable>())
+				: null;
+	}
+
+	/**
+	 * Retrieve the server-wide pool.
+	 *
+	 * @return The instance
+	 */
+	public static ByteBufferPool getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Lease a heap buffer of at least the given capacity. The buffer is
+	 * cleared, i.e. its position is zero and its limit is its capacity.
+	 *
+	 * @param capacity
+	 *            The minimum capacity
+	 * @return The buffer, which must be given back by means of release()
+	 */
+	public ByteBuffer acquire(int capacity) {
+		return acquire(capacity, false);
+	}
+
+	/**
+	 * Lease a direct buffer of at least the given capacity.
+	 *
+	 * @see #acquire(int)
+	 */
+	public ByteBuffer acquireDirect(int capacity) {
+		return acquire(capacity, true);
+	}
+
+	private ByteBuffer acquire(int capacity, boolean isDirect) {
+		int sizeClass = sizeClassOf(capacity);
+		ByteBuffer buffer;
+		if (sizeClass < 0) {
+			buffer = allocate(capacity, isDirect);
+		} else {
+			buffer = threadCache.get().poll(sizeClass, isDirect);
+			if (buffer == null) {
+				buffer = (isDirect ? direct : heap)[sizeClass].poll();
+			}
+			if (buffer != null) {
+				pooledBytes.addAndGet(-buffer.capacity());
+			} else {
+				buffer = allocate(SIZE_CLASSES[sizeClass], isDirect);
+			}
+			buffer.clear();
+		}
+		if (outstanding != null) {
+			outstanding.put(buffer, new Throwable("Buffer of " + buffer.capacity() + " bytes leased by "
+					+ Thread.currentThread().getName()));
+		}
+		return buffer;
+	}
+
+	/**
+	 * Give a leased buffer back to the pool. The caller must not use the
+	 * buffer afterwards.
+	 *
+	 * @param buffer
+	 *            The buffer, may be null
+	 * @throws IllegalStateException
+	 *             if leak detection is enabled and the buffer is not
+	 *             outstanding, i.e. it was released before.
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer == null) {
+			return;
+		}
+		if (outstanding != null && outstanding.remove(buffer) == null) {
+			throw new IllegalStateException("Buffer released twice or not leased from this pool");
+		}
+		int sizeClass = indexOf(buffer.capacity());
+		if (sizeClass < 0) {
+			// not one of ours (oversized); leave it to the garbage collector.
+			return;
+		}
+		if (pooledBytes.addAndGet(buffer.capacity()) > maxPooledBytes) {
+			// beyond the cap; leave it to the garbage collector.
+			pooledBytes.addAndGet(-buffer.capacity());
+			return;
+		}
+		boolean isDirect = buffer.isDirect();
+		if (!threadCache.get().offer(sizeClass, isDirect, buffer)) {
+			(isDirect ? direct : heap)[sizeClass].offer(buffer);
+		}
+	}
+
+	/**
+	 * @return The number of bytes held by the shared free lists and the
+	 *         thread caches.
+	 */
+	public long getPooledBytes() {
+		return pooledBytes.get();
+	}
+
+	/**
+	 * Retrieve the buffers that are leased and not yet released, as
+	 * Throwable(s) whose stack traces show where each buffer was leased.
+	 *
+	 * @return The outstanding leases, always empty if leak detection is off.
+	 */
+	public List<Throwable> getLeaks() {
+		if (outstanding == null) {
+			return Collections.emptyList();
+		}
+		synchronized (outstanding) {
+			return new ArrayList<Throwable>(outstanding.values());
+		}
+	}
+
+	/**
+	 * @return true if this pool tracks outstanding buffers.
+	 */
+	public boolean isLeakDetectionEnabled() {
+		return outstanding != null;
+	}
+
+	private static ByteBuffer allocate(int capacity, boolean isDirect) {
+		return isDirect ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+	}
+
+	private static int sizeClassOf(int capacity) {
+		for (int i = 0; i < SIZE_CLASSES.length; i++) {
+			if (capacity <= SIZE_CLASSES[i]) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int indexOf(int capacity) {
+		for (int i = 0; i < SIZE_CLASSES.length; i++) {
+			if (capacity == SIZE_CLASSES[i]) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * The buffers cached by a single thread; a small stack per size class.
+	 */
+	private static final class ThreadCache {
+
+		private final ByteBuffer[][] heap = new ByteBuffer[SIZE_CLASSES.length][THREAD_CACHE_SIZE];
+		private final ByteBuffer[][] direct = new ByteBuffer[SIZE_CLASSES.length][THREAD_CACHE_SIZE];
+		private final int[] heapCount = new int[SIZE_CLASSES.length];
+		private final int[] directCount = new int[SIZE_CLASSES.length];
+
+		/**
+		 * The bytes of the buffers above, read by the Reclaim of a dead thread.
+		 */
+		private final AtomicLong cachedBytes = new AtomicLong();
+
+		ByteBuffer poll(int sizeClass, boolean isDirect) {
+			ByteBuffer[] stack = (isDirect ? direct : heap)[sizeClass];
+			int[] count = isDirect ? directCount : heapCount;
+			if (count[sizeClass] == 0) {
+				return null;
+			}
+			int top = --count[sizeClass];
+			ByteBuffer buffer = stack[top];
+			stack[top] = null;
+			cachedBytes.lazySet(cachedBytes.get() - buffer.capacity());
+			return buffer;
+		}
+
+		boolean offer(int sizeClass, boolean isDirect, ByteBuffer buffer) {
+			ByteBuffer[] stack = (isDirect ? direct : heap)[sizeClass];
+			int[] count = isDirect ? directCount : heapCount;
+			if (count[sizeClass] == THREAD_CACHE_SIZE) {
+				return false;
+			}
+			stack[count[sizeClass]++] = buffer;
+			cachedBytes.lazySet(cachedBytes.get() + buffer.capacity());
+			return true;
+		}
+	}
+
+	/**
+	 * Takes the bytes of a collected thread cache off its pool's count. It
+	 * must not refer to the cache itself, or the cache would never be
+	 * collected.
+	 */
+	private static final class Reclaim implements Runnable {
+
+		private final AtomicLong pooledBytes;
+		private final AtomicLong cachedBytes;
+
+		Reclaim(AtomicLong pooledBytes, AtomicLong cachedBytes) {
+			this.pooledBytes = pooledBytes;
+			this.cachedBytes = cachedBytes;
+		}
+
+		@Override
+		public void run() {
+			pooledBytes.addAndGet(-cachedBytes.get());
+		}
+	}
+}
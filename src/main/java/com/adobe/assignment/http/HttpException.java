@@ -0,0 +1,35 @@
+package com.adobe.assignment.http;
+
+import java.io.IOException;
+
+/**
+ * A request whose head is malformed or exceeds the limits of the server.
+ * Carries the status to answer the request with.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class HttpException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int status;
+
+	/**
+	 * Explicit Value Constructor
+	 *
+	 * @param status		The status to answer the request with
+	 * @param message		The reason
+	 */
+	public HttpException(int status, String message) {
+		super(message);
+		this.status = status;
+	}
+
+	/**
+	 * @return The status to answer the request with, e.g. 400 (Bad Request)
+	 *         or 431 (Request Header Fields Too Large).
+	 */
+	public int getStatus() {
+		return status;
+	}
+}
@@ -1,31 +1,262 @@
 package com.adobe.assignment.http;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 
 /**
- * A Wrapper class for a java.io.InputStream. This class wraps the 
+ * A Wrapper class for a java.io.InputStream. This class wraps the
  * underlying InputStream into a buffer and reads from the buffer, saving
  * time from reading from the underlaying input stream.
- * 
+ *
+ * The buffer is leased from the ByteBufferPool and must be given back by
+ * means of release() once the connection is done with this stream. Lines are
+ * decoded straight from the buffer as ISO-8859-1, the charset of the HTTP
+ * request line and headers, so no Reader or decoder is needed.
+ *
+ * A line may be no longer than the maximum line length, so that a client
+ * cannot make the server collect a line without end.
+ *
  * @author Alfusainey Jallow, University of the Gambia.
  *
  */
 public class HttpInputStream {
 
-	private final BufferedReader bufferedReader;
-	
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * The default of the longest line, in bytes.
+	 */
+	public static final int DEFAULT_MAX_LINE_LENGTH = 8192;
+
+	private static final byte CR = '\r';
+	private static final byte LF = '\n';
+
+	private InputStream inputStream;
+	private ByteBuffer buffer;
+	private byte[] buf;
+	private int pos, limit;
+
+	/**
+	 * Collects a line that does not fit into the buffer.
+	 */
+	private StringBuilder overflow;
+
+	/**
+	 * The bytes taken from this stream since it was bound to its connection.
+	 */
+	private long bytesRead;
+
+	private int maxLineLength = DEFAULT_MAX_LINE_LENGTH;
+
 	public HttpInputStream(InputStream inputStream) {
-		this.bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
+		this.inputStream = inputStream;
+		this.buffer = ByteBufferPool.getInstance().acquire(BUFFER_SIZE);
+		this.buf = buffer.array();
+	}
+
+	/**
+	 * Rebinds this stream to another connection, e.g. the next connection
+	 * served by a worker thread, leasing a buffer again if it was released.
+	 * Whatever was buffered from the previous connection is discarded.
+	 *
+	 * @param inputStream
+	 *            The stream of the connection
+	 */
+	public void reset(InputStream inputStream) {
+		this.inputStream = inputStream;
+		if (buffer == null) {
+			buffer = ByteBufferPool.getInstance().acquire(BUFFER_SIZE);
+			buf = buffer.array();
+		}
+		pos = limit = 0;
+		bytesRead = 0;
+		if (overflow != null) {
+			overflow.setLength(0);
+		}
+	}
+
+	/**
+	 * @return The bytes taken from this stream since it was bound to its
+	 *         connection; bytes read ahead are counted once they are taken.
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	 * Sets the longest line readHttpLine() reads.
+	 *
+	 * @param maxLineLength
+	 *            The length in bytes, without the LF
+	 */
+	public void setMaxLineLength(int maxLineLength) {
+		this.maxLineLength = maxLineLength;
 	}
 
+	/**
+	 * Read a line terminated by LF or CRLF.
+	 *
+	 * @return The line without its terminator, or null at the end of the
+	 *         stream.
+	 * @throws HttpException
+	 *             with 431 (Request Header Fields Too Large) if the line is
+	 *             longer than the maximum line length
+	 * @throws IOException
+	 */
 	public String readHttpLine() throws IOException {
-		return bufferedReader.readLine();
+		if (overflow != null) {
+			overflow.setLength(0);
+		}
+		while (true) {
+			int collected = (overflow == null) ? 0 : overflow.length();
+			for (int i = pos; i < limit; i++) {
+				if (buf[i] == LF) {
+					checkLineLength(collected + i - pos);
+					String line = toLine(pos, i);
+					bytesRead += i + 1 - pos;
+					pos = i + 1;
+					return line;
+				}
+			}
+			// no line terminator in the buffer; keep what we have.
+			if (limit > pos) {
+				checkLineLength(collected + limit - pos);
+				if (overflow == null) {
+					overflow = new StringBuilder(BUFFER_SIZE);
+				}
+				appendLatin1(overflow, pos, limit);
+				bytesRead += limit - pos;
+				pos = limit;
+			}
+			if (fill() < 0) {
+				if (overflow != null && overflow.length() > 0) {
+					return stripCR(overflow);
+				}
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Read up to len bytes, taking the bytes already buffered first.
+	 *
+	 * @see InputStream#read(byte[], int, int)
+	 */
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (pos < limit) {
+			int n = Math.min(len, limit - pos);
+			System.arraycopy(buf, pos, b, off, n);
+			pos += n;
+			bytesRead += n;
+			return n;
+		}
+		int n = inputStream.read(b, off, len);
+		if (n > 0) {
+			bytesRead += n;
+		}
+		return n;
+	}
+
+	/**
+	 * @return The number of bytes that can be read without blocking.
+	 */
+	public int available() throws IOException {
+		return (limit - pos) + inputStream.available();
 	}
 
 	public boolean ready() throws IOException {
-		return bufferedReader.ready();
+		return available() > 0;
+	}
+
+	/**
+	 * Reads what has arrived on the connection into the free space of the
+	 * buffer, without waiting for more, so that it is read by the next
+	 * request. Used to notice that a client went away.
+	 *
+	 * @param channel	The connection, in non-blocking mode
+	 * @return			The number of bytes read, 0 if none had arrived or the
+	 * 					buffer is full, or -1 at the end of the stream
+	 */
+	public int readAhead(ReadableByteChannel channel) throws IOException {
+		if (buf == null) {
+			throw new IOException("Stream released");
+		}
+		if (pos == limit) {
+			pos = limit = 0;
+		} else if (limit == buf.length && pos > 0) {
+			System.arraycopy(buf, pos, buf, 0, limit - pos);
+			limit -= pos;
+			pos = 0;
+		}
+		if (limit == buf.length) {
+			return 0;
+		}
+		int n = channel.read(ByteBuffer.wrap(buf, limit, buf.length - limit));
+		if (n > 0) {
+			limit += n;
+		}
+		return n;
+	}
+
+	/**
+	 * Give the buffer of this stream back to the pool. The stream must not be
+	 * used afterwards. Releasing more than once has no effect.
+	 */
+	public void release() {
+		if (buffer != null) {
+			ByteBufferPool.getInstance().release(buffer);
+			buffer = null;
+			buf = null;
+			pos = limit = 0;
+		}
+	}
+
+	private int fill() throws IOException {
+		if (buf == null) {
+			throw new IOException("Stream released");
+		}
+		pos = 0;
+		limit = 0;
+		int n = inputStream.read(buf, 0, buf.length);
+		if (n > 0) {
+			limit = n;
+		}
+		return n;
+	}
+
+	private void checkLineLength(int length) throws HttpException {
+		if (length > maxLineLength) {
+			throw new HttpException(HttpResponse.SC_REQUEST_HEADER_FIELDS_TOO_LARGE,
+					"Line exceeds " + maxLineLength + " bytes");
+		}
+	}
+
+	private String toLine(int start, int lf) {
+		if (overflow != null && overflow.length() > 0) {
+			appendLatin1(overflow, start, lf);
+			return stripCR(overflow);
+		}
+		int end = (lf > start && buf[lf - 1] == CR) ? lf - 1 : lf;
+		return new String(buf, start, end - start, StandardCharsets.ISO_8859_1);
+	}
+
+	private void appendLatin1(StringBuilder sb, int start, int end) {
+		for (int i = start; i < end; i++) {
+			sb.append((char) (buf[i] & 0xff));
+		}
+	}
+
+	private static String stripCR(StringBuilder sb) {
+		int end = sb.length();
+		if (end > 0 && sb.charAt(end - 1) == CR) {
+			end--;
+		}
+		return sb.substring(0, end);
 	}
 }
@@ -21,6 +21,15 @@ abstract class HttpMessage {
 		headers = NameValueMapper.createNameValueMap();
 	}
 
+	/**
+	 * Clears this HttpMessage for reuse by the next message of its
+	 * connection. The header map is cleared rather than replaced.
+	 */
+	public void recycle() {
+		content = null;
+		headers.clear();
+	}
+
 	/**
 	 * Get the content of this HttpMessage
 	 * 
@@ -36,11 +45,11 @@ abstract class HttpMessage {
 	 * 
 	 * @return The length or -1 if the length is not known
 	 */
-	public int getContentLength() {
-		int result;
+	public long getContentLength() {
+		long result;
 
 		try {
-			result = Integer.parseInt(getHeader("Content-Length"));
+			result = Long.parseLong(getHeader("Content-Length"));
 		} catch (Exception e) {
 			result = -1;
 		}
@@ -88,6 +97,16 @@ abstract class HttpMessage {
 		setHeader("Content-Length", Integer.toString(contentLength));
 	}
 
+	/**
+	 * Sets the content length, which may exceed 2GB
+	 * 
+	 * @param contentLength
+	 *            The contentLength
+	 */
+	public void setContentLength(long contentLength) {
+		setHeader("Content-Length", Long.toString(contentLength));
+	}
+
 	/**
 	 * Sets the type of the content the server returns to the client
 	 * 
@@ -1,46 +1,265 @@
 package com.adobe.assignment.http;
 
-import java.io.DataOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
+/**
+ * A buffered output stream for writing HTTP messages.
+ *
+ * The buffer is leased from the ByteBufferPool and given back when the
+ * stream is closed or released. Text is written as ISO-8859-1 straight into
+ * the buffer, so printing a status or header line allocates nothing.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
 public class HttpOutputStream {
 
-	private final DataOutputStream outputStream;
+	private static final int BUFFER_SIZE = 8192;
+
+	private OutputStream outputStream;
 	private static final String HEADER_SEPARATOR = ":";
-	
+
+	private ByteBuffer buffer;
+	private byte[] buf;
+	private int count;
+
+	/**
+	 * The bytes passed on to the connection since this stream was bound to
+	 * it.
+	 */
+	private long bytesWritten;
+
+	/**
+	 * A copy of the bytes written since startCapture(), and the offset in the
+	 * buffer at which the capture starts.
+	 */
+	private ByteArrayOutputStream capture;
+	private int captureLimit, captureMark;
+
 	public HttpOutputStream(OutputStream outputStream) {
-		this.outputStream = new DataOutputStream(outputStream);
+		this.outputStream = outputStream;
+		this.buffer = ByteBufferPool.getInstance().acquire(BUFFER_SIZE);
+		this.buf = buffer.array();
+	}
+
+	/**
+	 * Rebinds this stream to another connection, e.g. the next connection
+	 * served by a worker thread, leasing a buffer again if it was released.
+	 * Whatever was buffered for the previous connection is discarded.
+	 *
+	 * @param outputStream
+	 *            The stream of the connection
+	 */
+	public void reset(OutputStream outputStream) {
+		this.outputStream = outputStream;
+		if (buffer == null) {
+			buffer = ByteBufferPool.getInstance().acquire(BUFFER_SIZE);
+			buf = buffer.array();
+		}
+		count = 0;
+		bytesWritten = 0;
+		capture = null;
+	}
+
+	/**
+	 * @return The bytes written to this stream since it was bound to its
+	 *         connection, those still buffered included.
+	 */
+	public long getBytesWritten() {
+		return bytesWritten + count;
+	}
+
+	public void write(int b) throws IOException {
+		ensureOpen();
+		if (count == buf.length) {
+			flushBuffer();
+		}
+		buf[count++] = (byte) b;
 	}
-	
+
 	public void write(byte[] b) throws IOException {
-		outputStream.write(b);
+		write(b, 0, b.length);
+	}
+
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		if (len >= buf.length) {
+			// no point in copying a large write through the buffer.
+			flushBuffer();
+			capture(b, off, len);
+			outputStream.write(b, off, len);
+			bytesWritten += len;
+			return;
+		}
+		if (len > buf.length - count) {
+			flushBuffer();
+		}
+		System.arraycopy(b, off, buf, count, len);
+		count += len;
+	}
+
+	/**
+	 * Write the remaining bytes of a buffer, e.g. a view of a memory-mapped
+	 * file, copying them straight into this stream's buffer.
+	 *
+	 * @param src
+	 *            The bytes to write; its position is advanced to its limit
+	 * @throws IOException
+	 */
+	public void write(ByteBuffer src) throws IOException {
+		ensureOpen();
+		while (src.hasRemaining()) {
+			if (count == buf.length) {
+				flushBuffer();
+			}
+			int n = Math.min(src.remaining(), buf.length - count);
+			src.get(buf, count, n);
+			count += n;
+		}
 	}
-	
+
+	/**
+	 * Copy everything from the given stream to this stream, reading directly
+	 * into this stream's buffer.
+	 *
+	 * @param in
+	 *            The stream to copy
+	 * @return The number of bytes copied
+	 * @throws IOException
+	 */
+	public long transferFrom(InputStream in) throws IOException {
+		ensureOpen();
+		long total = 0;
+		int n;
+		while (true) {
+			if (count == buf.length) {
+				flushBuffer();
+			}
+			n = in.read(buf, count, buf.length - count);
+			if (n < 0) {
+				break;
+			}
+			count += n;
+			total += n;
+		}
+		return total;
+	}
+
+	/**
+	 * Start keeping a copy of everything written to this stream from now on,
+	 * up to the given number of bytes.
+	 * 
+	 * @param limit
+	 *            The maximum number of bytes to keep
+	 */
+	public void startCapture(int limit) {
+		capture = new ByteArrayOutputStream(Math.min(limit, BUFFER_SIZE));
+		captureLimit = limit;
+		captureMark = count;
+	}
+
+	/**
+	 * Stop capturing. Bytes still in the buffer are part of the capture only
+	 * if the stream was flushed before.
+	 * 
+	 * @return The bytes written since startCapture(), or null if there were
+	 *         more than the limit.
+	 */
+	public byte[] stopCapture() {
+		byte[] captured = (capture == null) ? null : capture.toByteArray();
+		capture = null;
+		return captured;
+	}
+
 	public void flush() throws IOException {
+		flushBuffer();
 		outputStream.flush();
 	}
-	
+
+	/**
+	 * Flush and close this stream and the underlying stream, and give the
+	 * buffer back to the pool.
+	 *
+	 * @throws IOException
+	 */
 	public void close() throws IOException {
-		outputStream.close();
+		try {
+			if (buf != null) {
+				flush();
+			}
+			outputStream.close();
+		} finally {
+			release();
+		}
+	}
+
+	/**
+	 * Give the buffer of this stream back to the pool without flushing it.
+	 * Releasing more than once has no effect.
+	 */
+	public void release() {
+		if (buffer != null) {
+			ByteBufferPool.getInstance().release(buffer);
+			buffer = null;
+			buf = null;
+			count = 0;
+		}
 	}
 
 	public void printHttpLine(String string) throws IOException {
-		outputStream.write(string.getBytes());
+		print(string);
 	}
 
-	public void printHeaderLine(String name, String value) throws IOException {		
-		String hl = name+HEADER_SEPARATOR+" "+value;
-		print(hl);
+	public void printHeaderLine(String name, String value) throws IOException {
+		print(name);
+		print(HEADER_SEPARATOR);
+		print(" ");
+		print(value);
 		printEOL();
 	}
 
 	public void printEOL() throws IOException {
-		outputStream.write(HttpConstants.HTTP_LINE_SEPARATOR.getBytes());
+		print(HttpConstants.HTTP_LINE_SEPARATOR);
+	}
+
+	public void print(String string) throws IOException {
+		ensureOpen();
+		int len = string.length();
+		for (int i = 0; i < len; i++) {
+			if (count == buf.length) {
+				flushBuffer();
+			}
+			buf[count++] = (byte) string.charAt(i);
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		if (count > 0) {
+			capture(buf, captureMark, count - captureMark);
+			captureMark = 0;
+			outputStream.write(buf, 0, count);
+			bytesWritten += count;
+			count = 0;
+		}
+	}
+
+	private void capture(byte[] b, int off, int len) {
+		if (capture != null && len > 0) {
+			if (capture.size() + len > captureLimit) {
+				// too large to keep.
+				capture = null;
+			} else {
+				capture.write(b, off, len);
+			}
+		}
 	}
 
-	public void print(String string) throws IOException {		
-		outputStream.write(string.getBytes());
+	private void ensureOpen() throws IOException {
+		if (buf == null) {
+			throw new IOException("Stream closed");
+		}
 	}
-		
 }
@@ -3,7 +3,9 @@ package com.adobe.assignment.http;
 import java.io.IOException;
 import java.net.URI;
 import java.util.Iterator;
+import java.util.List;
 
+import org.apache.http.HttpVersion;
 import org.apache.http.RequestLine;
 import org.apache.http.message.BasicLineParser;
 import org.apache.http.message.LineParser;
@@ -26,6 +28,11 @@ import org.apache.http.util.CharArrayBuffer;
  * @version 0.1
  */
 public class HttpRequest extends HttpMessage {
+
+	/**
+	 * The default of the most header fields of a request.
+	 */
+	public static final int DEFAULT_MAX_HEADERS = 100;
 	
 	private String method, queryString, version;
 	private URI uri;
@@ -36,8 +43,29 @@ public class HttpRequest extends HttpMessage {
 	private final LineParser lineParser;
 
 	private RequestLine requestLine;
+
+	/**
+	 * The index of the '?' that starts the query of the request URI, -1 if
+	 * it has none; the path and the query string, taken from the URI once
+	 * asked for; and the parameters of the query, decoded once asked for and
+	 * kept for the next request.
+	 */
+	private int query = -1;
+	private String path;
+	private final Parameters parameters = new Parameters();
+	private boolean parametersDecoded;
+
+	/**
+	 * The request line being parsed, kept for the next request.
+	 */
+	private final CharArrayBuffer lineBuffer = new CharArrayBuffer(128);
 	
 	private final HttpInputStream inputStream;
+
+	/**
+	 * The most header fields readHeaders() reads.
+	 */
+	private int maxHeaders = DEFAULT_MAX_HEADERS;
 	/**
 	 * Default Constructor
 	 */
@@ -46,10 +74,44 @@ public class HttpRequest extends HttpMessage {
 		this.inputStream = inputStream;
 		queryString = null;
 		this.lineParser = BasicLineParser.DEFAULT;
-		try {
-			
-		} catch (IllegalArgumentException e) {
-			throw new IOException(e.getMessage(), e);
+		// Names are case-insensitive.
+		headers = NameValueMapper.createCaseInsensitiveNameValueMap();
+	}
+
+	/**
+	 * Explicit Value Constructor for a request whose head has been received
+	 * by other means than the text of HTTP/1, e.g. in an HTTP/2 HEADERS
+	 * frame. The input stream carries the content only.
+	 * 
+	 * @param inputStream
+	 *            The content of the request
+	 * @param requestLine
+	 *            The request line, e.g. "GET / HTTP/2.0"
+	 * @param headers
+	 *            The headers, with case-insensitive names
+	 */
+	public HttpRequest(HttpInputStream inputStream, String requestLine, NameValueMapper headers) throws IOException {
+		this(inputStream);
+		this.requestLine = createRequestLine(requestLine);
+		this.headers = headers;
+		splitURI();
+	}
+
+	/**
+	 * Clears this request for reuse by the next request of its connection.
+	 * 
+	 * @see HttpMessage#recycle()
+	 */
+	@Override
+	public void recycle() {
+		super.recycle();
+		requestLine = null;
+		query = -1;
+		path = null;
+		queryString = null;
+		if (parametersDecoded) {
+			parameters.clear();
+			parametersDecoded = false;
 		}
 	}
 
@@ -60,11 +122,124 @@ public class HttpRequest extends HttpMessage {
 	 * @return The HTTP method
 	 */
 	public String getMethod() {
-		return requestLine.getMethod();
+		return (requestLine == null) ? null : requestLine.getMethod();
 	}
 
+	/**
+	 * Returns the request URI as the client sent it, including the query
+	 * string, if any.
+	 * 
+	 * @return The request URI
+	 */
 	public String getRequestURI() {
-		return requestLine.getUri();
+		return (requestLine == null) ? null : requestLine.getUri();
+	}
+
+	/**
+	 * Returns the path of the request URI, without the query string: what
+	 * names the resource, e.g. the file in the web root. The path is not
+	 * decoded.
+	 * 
+	 * @return The path of the request URI
+	 */
+	public String getPath() {
+		if (path == null && requestLine != null) {
+			String uri = requestLine.getUri();
+			path = (query < 0) ? uri : uri.substring(0, query);
+		}
+		return path;
+	}
+
+	/**
+	 * Returns the query string of the request URI, as the client sent it.
+	 * 
+	 * @return The query string, without the '?', or null if the URI has none
+	 */
+	public String getQueryString() {
+		if (queryString == null && query >= 0) {
+			queryString = requestLine.getUri().substring(query + 1);
+		}
+		return queryString;
+	}
+
+	/**
+	 * Retrieve the first value of a parameter of the query string. The query
+	 * string is decoded when a parameter is first asked for; requests that
+	 * never ask do not pay for it.
+	 * 
+	 * @param name			The name of the parameter
+	 * @return				The decoded value, or null if there is no such
+	 * 						parameter
+	 */
+	public String getParameter(String name) {
+		return getParameters().getValue(name);
+	}
+
+	/**
+	 * Retrieve all values of a parameter of the query string.
+	 * 
+	 * @param name			The name of the parameter
+	 * @return				The decoded values, empty if there is no such
+	 * 						parameter
+	 */
+	public List<String> getParameterValues(String name) {
+		return getParameters().getValues(name);
+	}
+
+	/**
+	 * @return The parameters of the query string, decoded.
+	 */
+	public Parameters getParameters() {
+		if (!parametersDecoded) {
+			parametersDecoded = true;
+			if (query >= 0) {
+				String uri = requestLine.getUri();
+				parameters.decode(uri, query + 1, uri.length());
+			}
+		}
+		return parameters;
+	}
+
+	/**
+	 * Checks whether the client asks for the connection to be kept open after
+	 * the response: HTTP/1.1 connections are persistent unless the client
+	 * sends "Connection: close", HTTP/1.0 connections only if it sends
+	 * "Connection: keep-alive".
+	 * 
+	 * @return true if the connection may be kept open
+	 */
+	public boolean isKeepAlive() {
+		if (requestLine == null) {
+			return false;
+		}
+		String connection = getHeader("Connection");
+		if (hasToken(connection, "close")) {
+			return false;
+		}
+		return requestLine.getProtocolVersion().greaterEquals(HttpVersion.HTTP_1_1)
+				|| hasToken(connection, "keep-alive");
+	}
+
+	private static boolean hasToken(String value, String token) {
+		if (value == null) {
+			return false;
+		}
+		for (String t : value.split(",")) {
+			if (t.trim().equalsIgnoreCase(token)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the stream the content of this request is read from, once the
+	 * request line and the headers have been read.
+	 *
+	 * @return The input stream of the request
+	 */
+	public HttpInputStream getInputStream() {
+		return inputStream;
 	}
 
 	/**
@@ -78,16 +253,89 @@ public class HttpRequest extends HttpMessage {
 	 * 
 	 */
 	public void read() throws IOException {
-		String token;
+		readRequestLine();
+		readHeaders();
+	}
 
-		requestLine = createRequestLine(inputStream.readHttpLine());
+	/**
+	 * Sets the most header fields readHeaders() reads.
+	 *
+	 * @param maxHeaders
+	 *            The number of fields
+	 */
+	public void setMaxHeaders(int maxHeaders) {
+		this.maxHeaders = maxHeaders;
+	}
 
-		// Process the headers
-		headers = NameValueMapper.createNameValueMap();
-		headers.putPairs(inputStream, ":");
+	/**
+	 * Read the request line of this HttpRequest.
+	 * 
+	 * @throws HttpException
+	 *             with 400 (Bad Request) if the line is longer than the
+	 *             maximum line length of the stream
+	 * @throws IOException
+	 */
+	public void readRequestLine() throws IOException {
+		String line;
+		try {
+			line = inputStream.readHttpLine();
+		} catch (HttpException e) {
+			throw new HttpException(HttpResponse.SC_BAD_REQUEST, "Request line: " + e.getMessage());
+		}
+		requestLine = createRequestLine(line);
+		splitURI();
+	}
 
-		// Get the content length		
-		int cl = ((token = headers.getValue("Content-Length")) != null) ? Integer.parseInt(token) : -1;
+	/**
+	 * Finds where the query of the request URI starts; the URI itself is
+	 * not taken apart until its path or query is asked for.
+	 */
+	private void splitURI() {
+		query = (requestLine == null) ? -1 : requestLine.getUri().indexOf('?');
+	}
+
+	/**
+	 * Read the headers of this HttpRequest, up to and including the empty line
+	 * that ends them.
+	 * 
+	 * @throws HttpException
+	 *             with 400 (Bad Request) if the Content-Length is not a
+	 *             number, or with 431 (Request Header Fields Too Large) if
+	 *             there are more header fields than allowed or one is longer
+	 *             than the maximum line length
+	 * @throws IOException
+	 */
+	public void readHeaders() throws IOException {
+		String line, token;
+		int count = 0;
+
+		// Process the headers. The whitespace around values is not part
+		// of them.
+		headers.clear();
+		while (((line = inputStream.readHttpLine()) != null) && !line.equals("")) {
+			if (++count > maxHeaders) {
+				throw new HttpException(HttpResponse.SC_REQUEST_HEADER_FIELDS_TOO_LARGE,
+						"More than " + maxHeaders + " header fields");
+			}
+			int colon = line.indexOf(':');
+			if (colon > 0) {
+				headers.put(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+			}
+		}
+
+		// Get the content length, which may exceed 2GB. A value that is not
+		// a length is refused rather than taken for an unknown length.
+		long cl = -1;
+		if ((token = headers.getValue("Content-Length")) != null) {
+			try {
+				cl = Long.parseLong(token.trim());
+			} catch (NumberFormatException e) {
+				cl = -1;
+			}
+			if (cl < 0) {
+				throw new HttpException(HttpResponse.SC_BAD_REQUEST, "Invalid Content-Length: " + token);
+			}
+		}
 		setContentLength(cl);
 	}
 
@@ -101,10 +349,10 @@ public class HttpRequest extends HttpMessage {
 	 */
 	private RequestLine createRequestLine(String requestLine) {
 		if (requestLine != null) {
-			CharArrayBuffer buf = new CharArrayBuffer(requestLine.length() - 1);
-			buf.append(requestLine);
-			ParserCursor cursor = new ParserCursor(0, buf.length());
-			return lineParser.parseRequestLine(buf, cursor);
+			lineBuffer.clear();
+			lineBuffer.append(requestLine);
+			ParserCursor cursor = new ParserCursor(0, lineBuffer.length());
+			return lineParser.parseRequestLine(lineBuffer, cursor);
 		}
 		return null;
 	}
@@ -121,7 +369,7 @@ public class HttpRequest extends HttpMessage {
 		s = "Method: \n\t" + getMethod() + "\n";
 		s += "URI: \n\t" + getRequestURI() + "\n";
 
-		s += "Parameters:\n" + queryString + "\n";
+		s += "Parameters:\n\t" + getQueryString() + "\n";
 
 		s += "Headers:\n";
 		i = getHeaderNames();
@@ -1,10 +1,20 @@
 package com.adobe.assignment.http;
 
+import java.io.Closeable;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.text.NumberFormat;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Iterator;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+import com.adobe.assignment.http.jfr.ResponseWriteEvent;
 
 /**
  * An encapsulation of an HTTP response
@@ -22,23 +32,76 @@ import java.util.Properties;
 public class HttpResponse extends HttpMessage {
 
 	private int status;
-	private NumberFormat nf;
+	private volatile boolean committed;
+
+	/**
+	 * The maximum size of the body to keep a copy of (0 keeps none), and the
+	 * copy kept while writing.
+	 */
+	private int captureLimit;
+	private byte[] capturedBody;
 	private final HttpOutputStream outputStream;
+
+	/**
+	 * Whether the connection stays open for another request once this
+	 * response is written, and whether it has been written.
+	 */
+	private boolean persistent;
+	private boolean ended;
+
+	/**
+	 * The unbuffered stream of the connection and the means to close it, for
+	 * connections that may outlive the request; set by the server.
+	 */
+	private OutputStream connectionStream;
+	private Closeable connection;
+	private volatile boolean detached;
+
+	/**
+	 * The connection to send bodies to without holding a thread, if the
+	 * server can drive it that way; set by the server.
+	 */
+	private Outbound outbound;
+
+	/**
+	 * The phases of the request, and whether they are sent along in a
+	 * Server-Timing header; set by the server.
+	 */
+	private final Timing timing = new Timing();
+	private boolean serverTiming;
+
+	public static final String SERVER_TIMING = "Server-Timing";
+
+	/**
+	 * The bytes the stream had written as this response was committed, the
+	 * bytes of the body sent at the client's pace, and the event recording
+	 * the write, if a recording takes it.
+	 */
+	private long bytesMark, transferred;
+	private ResponseWriteEvent writeEvent;
 	
 	/**
 	 * Reads status pharases from a configured properties file. The goal
  *     of using a properties file to store and read status phrases has the
  *     advantange that the server-side code by left untouch whenever HTTP status
  *     codes changes in future.
+	 *
+	 * The file is read when the first phrase is needed rather than when this
+	 * class is loaded, so it is not on the startup path of the server.
 	 */
-	private static Properties statusPhrases = new Properties();
-	
-	static {
-        try {
-        	statusPhrases.load(HttpResponse.class.getClassLoader().getResourceAsStream("statuscode.properties"));
-        } catch (IOException e) {
-        	// log error.
-        }
+	private static final class StatusPhrases {
+
+		static final Properties PHRASES = new Properties();
+
+		static {
+			try (InputStream in = HttpResponse.class.getClassLoader().getResourceAsStream("statuscode.properties")) {
+				if (in != null) {
+					PHRASES.load(in);
+				}
+			} catch (IOException e) {
+				// log error.
+			}
+		}
 	}
         
 	public static final int SC_ACCEPTED = 202;
@@ -46,16 +109,25 @@ public class HttpResponse extends HttpMessage {
 	public static final int SC_BAD_REQUEST = 400;
 	public static final int SC_CREATED = 201;
 	public static final int SC_FORBIDDEN = 403;
+	public static final int SC_GATEWAY_TIMEOUT = 504;
 	public static final int SC_INTERNAL_ERROR = 500;
+	public static final int SC_LENGTH_REQUIRED = 411;
 	public static final int SC_MOVED = 301;
 	public static final int SC_NO_RESPONSE = 204;
 	public static final int SC_NOT_FOUND = 404;
 	public static final int SC_NOT_IMPLEMENTED = 501;
+	public static final int SC_NOT_MODIFIED = 304;
 	public static final int SC_OK = 200;
 	public static final int SC_PARTIAL_INFORMATION = 203;
+	public static final int SC_PAYLOAD_TOO_LARGE = 413;
 	public static final int SC_PAYMENT_REQUIRED = 402;
+	public static final int SC_REQUEST_TIMEOUT = 408;
+	public static final int SC_REQUEST_HEADER_FIELDS_TOO_LARGE = 431;
 	public static final int SC_SERVICE_OVERLOADED = 503;
+	public static final int SC_SWITCHING_PROTOCOLS = 101;
+	public static final int SC_TOO_MANY_REQUESTS = 429;
 	public static final int SC_UNAUTHORIZED = 401;
+	public static final int SC_UNSUPPORTED_MEDIA_TYPE = 415;
 
 	/**
 	 * Default Constructor
@@ -63,11 +135,84 @@ public class HttpResponse extends HttpMessage {
 	 */
 	public HttpResponse(HttpOutputStream outputStream) {
 		super();
-		nf = NumberFormat.getIntegerInstance();
 		status = SC_OK;
 		this.outputStream = outputStream;
 	}
 
+	/**
+	 * Clears this response for reuse by the next request of its connection.
+	 * 
+	 * @see HttpMessage#recycle()
+	 */
+	@Override
+	public void recycle() {
+		super.recycle();
+		status = SC_OK;
+		committed = false;
+		ended = false;
+		persistent = false;
+		captureLimit = 0;
+		capturedBody = null;
+		connectionStream = null;
+		connection = null;
+		detached = false;
+		outbound = null;
+		timing.reset();
+		serverTiming = false;
+		transferred = 0;
+		writeEvent = null;
+	}
+
+	/**
+	 * @return The bytes of this response written so far, head included; 0
+	 *         before it is committed.
+	 */
+	public long getBytesWritten() {
+		return committed ? outputStream.getBytesWritten() - bytesMark + transferred : 0;
+	}
+
+	/**
+	 * @return The phases of the request this response answers: the response
+	 *         marks "handle" as it is committed and "write" once written. A
+	 *         handler may mark phases of its own.
+	 */
+	public Timing getTiming() {
+		return timing;
+	}
+
+	/**
+	 * Sends the phases marked until the response is committed along in a
+	 * Server-Timing header. Called by the server.
+	 * 
+	 * @param serverTiming
+	 *            Whether to add the header
+	 */
+	public void setServerTiming(boolean serverTiming) {
+		this.serverTiming = serverTiming;
+	}
+
+	/**
+	 * Keeps the connection open for another request once this response is
+	 * written. Called by the server, which also sets the Connection header.
+	 * The response closes the connection after all if its body can only be
+	 * told apart from the next response by the connection closing, i.e. it
+	 * has no Content-Length.
+	 * 
+	 * @param persistent
+	 *            Whether the connection may stay open
+	 */
+	public void setPersistent(boolean persistent) {
+		this.persistent = persistent;
+	}
+
+	/**
+	 * @return true if the connection stays open once this response has been
+	 *         written.
+	 */
+	public boolean isPersistent() {
+		return persistent;
+	}
+
 	/**
 	 * Get the status associated with this HttpResponse
 	 * 
@@ -77,6 +222,16 @@ public class HttpResponse extends HttpMessage {
 		return status;
 	}
 
+	/**
+	 * Checks whether writing this response has begun. Once committed, the
+	 * status and headers can no longer be changed.
+	 * 
+	 * @return true if the response is committed and false otherwise.
+	 */
+	public boolean isCommitted() {
+		return committed;
+	}
+
 	/**
 	 * Get the default message associated with a status code
 	 * 
@@ -85,7 +240,7 @@ public class HttpResponse extends HttpMessage {
 	 * @return The associated default message
 	 */
 	public static String getStatusMessage(int sc) {
-		return statusPhrases.getProperty(sc+"", "");
+		return StatusPhrases.PHRASES.getProperty(sc+"", "");
 	}
 
 	/**
@@ -143,30 +298,401 @@ public class HttpResponse extends HttpMessage {
 		return s;
 	}
 
+	/**
+	 * Ask this response to keep a copy of the body it writes, so that the
+	 * response can be cached.
+	 * 
+	 * @param limit
+	 *            The largest body to keep a copy of
+	 */
+	public void setCaptureLimit(int limit) {
+		captureLimit = limit;
+	}
+
+	/**
+	 * @return The body written by this response, or null if none was captured
+	 *         or the body was larger than the capture limit.
+	 */
+	public byte[] getCapturedBody() {
+		return capturedBody;
+	}
+
+	/**
+	 * Encodes the status line and the headers of this response, without the
+	 * empty line that ends them. The Server-Timing header, which only holds
+	 * for this response, is left out.
+	 * 
+	 * @param skip
+	 *            The name of a header to leave out (e.g. a hop-by-hop header),
+	 *            or null
+	 * @return The encoded status line and headers
+	 */
+	public byte[] encodeHead(String skip) {
+		StringBuilder sb = new StringBuilder(256);
+		sb.append(HttpConstants.HTTP_VERSION).append(' ').append(status).append(' ')
+				.append(getStatusMessage(status)).append(HttpConstants.HTTP_LINE_SEPARATOR);
+
+		Iterator<String> i = headers.getNames();
+		while (i.hasNext()) {
+			String name = i.next();
+			String value = headers.getValue(name);
+			if (name.equalsIgnoreCase(skip) || name.equalsIgnoreCase(SERVER_TIMING) || (value == null)
+					|| value.equals("")) {
+				continue;
+			}
+			sb.append(name).append(": ").append(value).append(HttpConstants.HTTP_LINE_SEPARATOR);
+		}
+		return sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Write a response encoded earlier by encodeHead(), e.g. one served from a
+	 * cache, in place of this response. Only the named header of this
+	 * response, and its Server-Timing header, are written along with it.
+	 * 
+	 * @param head
+	 *            The encoded status line and headers
+	 * @param body
+	 *            The body
+	 * @param header
+	 *            The name of the header of this response to add, e.g. the
+	 *            hop-by-hop Connection header
+	 */
+	public void write(byte[] head, byte[] body, String header) throws IOException {
+		// a head encoded for reuse carries the length of its body.
+		commit(true);
+		boolean completed = false;
+		try {
+			outputStream.write(head);
+			String value = getHeader(header);
+			if (value != null) {
+				outputStream.printHeaderLine(header, value);
+			}
+			value = getHeader(SERVER_TIMING);
+			if (value != null) {
+				outputStream.printHeaderLine(SERVER_TIMING, value);
+			}
+			outputStream.printEOL();
+			outputStream.write(body);
+			completed = true;
+		} finally {
+			end(completed);
+		}
+	}
+
+	/**
+	 * Allows this response to be detached from the thread serving the
+	 * request. Called by the server for connections that can be handed over.
+	 * 
+	 * @param stream
+	 *            The stream of the connection, without the buffer of this
+	 *            response
+	 * @param connection
+	 *            Closes the connection and frees what it holds
+	 */
+	public void setDetachable(OutputStream stream, Closeable connection) {
+		this.connectionStream = stream;
+		this.connection = connection;
+	}
+
+	/**
+	 * @return true if this response has been detached from the thread that
+	 *         served its request.
+	 */
+	public boolean isDetached() {
+		return detached;
+	}
+
+	/**
+	 * Write the status line and the headers of this response, and detach the
+	 * connection from the thread serving the request: the server neither
+	 * writes to nor closes the connection when the handler returns. The body
+	 * is written to the returned stream for as long as it takes, from any one
+	 * thread at a time; closing the stream closes the connection.
+	 * 
+	 * This is meant for long-lived responses such as event streams, which
+	 * would otherwise hold on to a thread each.
+	 * 
+	 * @return The stream to write the body to
+	 * @throws IOException
+	 *             if the connection cannot be detached (e.g. it is an HTTP/2
+	 *             stream), or the head could not be written.
+	 */
+	public OutputStream detach() throws IOException {
+		if (connection == null) {
+			throw new IOException("The connection of this response cannot be detached");
+		}
+		commit(false);
+		writeStatusLine();
+		writeHeaders();
+		outputStream.flush();
+		detached = true;
+		return new FilterOutputStream(connectionStream) {
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+			}
+
+			@Override
+			public void close() throws IOException {
+				connection.close();
+			}
+		};
+	}
+
 	/**
 	 * Write this HttpResponse
 	 * 
 	 */
 	public void write() throws IOException {
+		if (persistent && !isFramed()) {
+			setContentLength((content == null) ? 0 : content.length);
+		}
+		commit(isFramed());
+		boolean completed = false;
 		try {
 			writeStatusLine();
 			writeHeaders();
 
 			if (content != null) {
 				outputStream.write(content);
+				if (captureLimit > 0 && content.length <= captureLimit) {
+					capturedBody = content;
+				}
+			}
+			completed = true;
+		} finally {
+			end(completed);
+		}
+	}
+
+	/**
+	 * Write this HttpResponse, streaming the content from the given stream
+	 * instead of the content of this message. The content length, if known,
+	 * must have been set beforehand.
+	 * 
+	 * @param body
+	 *            The content to send; it is read to its end but not closed
+	 */
+	public void write(InputStream body) throws IOException {
+		commit(isFramed());
+		boolean completed = false;
+		try {
+			writeStatusLine();
+			writeHeaders();
+
+			if (captureLimit > 0) {
+				outputStream.startCapture(captureLimit);
+			}
+			outputStream.transferFrom(body);
+			if (captureLimit > 0) {
+				outputStream.flush();
+				capturedBody = outputStream.stopCapture();
 			}
+			completed = true;
 		} finally {
+			end(completed);
+		}
+	}
+
+	/**
+	 * Allows bodies to be sent without holding the calling thread (see
+	 * writeAsync()). Called by the server for connections it can drive
+	 * without blocking.
+	 * 
+	 * @param outbound
+	 *            The connection
+	 */
+	public void setOutbound(Outbound outbound) {
+		this.outbound = outbound;
+	}
+
+	/**
+	 * Write this HttpResponse, streaming the content from the given stream,
+	 * at the pace of the client: the body is read a little ahead of what the
+	 * client has received, and no thread is held while the client lags
+	 * behind. Meant for large bodies and slow clients, by handlers
+	 * implementing AsyncHttpMethodHandler.
+	 * 
+	 * Where the server cannot drive the connection so (e.g. TLS or HTTP/2),
+	 * or the response is to be cached, the body is written as write(InputStream)
+	 * does, before this method returns.
+	 * 
+	 * @param body
+	 *            The content to send; it is read to its end but not closed
+	 * @return A future completing once the response has been written
+	 */
+	public CompletableFuture<Void> writeAsync(InputStream body) {
+		CompletableFuture<Void> written = new CompletableFuture<Void>();
+		if (outbound == null || captureLimit > 0) {
+			try {
+				write(body);
+				written.complete(null);
+			} catch (IOException e) {
+				written.completeExceptionally(e);
+			}
+			return written;
+		}
+		try {
+			commit(isFramed());
+			writeStatusLine();
+			writeHeaders();
 			outputStream.flush();
-			outputStream.close();
+		} catch (IOException e) {
+			try {
+				end(false);
+			} catch (IOException closing) {
+				// failed already.
+			}
+			written.completeExceptionally(e);
+			return written;
+		}
+		final CompletableFuture<Void> transfer = outbound.transfer(body);
+		final CompletableFuture<Void> done = transfer.handle(new BiFunction<Void, Throwable, Void>() {
+			public Void apply(Void result, Throwable failure) {
+				if (failure == null) {
+					transferred = Math.max(0, getContentLength());
+				}
+				try {
+					end(failure == null);
+				} catch (IOException e) {
+					failure = (failure != null) ? failure : e;
+				}
+				if (failure != null) {
+					throw (failure instanceof CompletionException)
+							? (CompletionException) failure : new CompletionException(failure);
+				}
+				return null;
+			}
+		});
+		done.whenComplete(new BiConsumer<Void, Throwable>() {
+			public void accept(Void result, Throwable failure) {
+				if (done.isCancelled()) {
+					// stop sending, e.g. as the request deadline expired.
+					transfer.cancel(true);
+				}
+			}
+		});
+		return done;
+	}
+
+	/**
+	 * Write this HttpResponse with the remaining bytes of the given buffer as
+	 * content instead of the content of this message. The content length must
+	 * have been set beforehand.
+	 * 
+	 * @param body
+	 *            The content to send, e.g. a view of a memory-mapped file
+	 */
+	public void write(ByteBuffer body) throws IOException {
+		commit(isFramed());
+		boolean completed = false;
+		try {
+			writeStatusLine();
+			writeHeaders();
+
+			if (captureLimit > 0 && body.remaining() <= captureLimit) {
+				capturedBody = new byte[body.remaining()];
+				body.duplicate().get(capturedBody);
+			}
+			outputStream.write(body);
+			completed = true;
+		} finally {
+			end(completed);
+		}
+	}
+
+	/**
+	 * @return true if the client can tell where the body of this response
+	 *         ends without the connection closing.
+	 */
+	private boolean isFramed() {
+		return getHeader("Content-Length") != null || status == SC_NOT_MODIFIED || status == SC_NO_RESPONSE;
+	}
+
+	/**
+	 * Marks this response as committed, which ends the phase of handling the
+	 * request. A persistent response that is not framed closes the
+	 * connection after all.
+	 * 
+	 * @throws IOException
+	 *             if this response has been written already
+	 */
+	private void commit(boolean framed) throws IOException {
+		if (ended) {
+			throw new IOException("Response already written");
+		}
+		if (!committed) {
+			bytesMark = outputStream.getBytesWritten();
+			if (ResponseWriteEvent.isRecording()) {
+				writeEvent = new ResponseWriteEvent();
+				writeEvent.begin();
+			}
+		}
+		committed = true;
+		if (persistent && !framed) {
+			persistent = false;
+			setHeader("Connection", "close");
+		}
+		timing.mark("handle");
+		if (serverTiming && timing.isStarted()) {
+			setHeader(SERVER_TIMING, timing.toHeader());
+		}
+	}
+
+	/**
+	 * Ends writing this response: the stream is flushed, and closed unless
+	 * the connection stays open for the next request, which it only does if
+	 * the response was written completely.
+	 */
+	private void end(boolean completed) throws IOException {
+		ended = true;
+		if (!completed) {
+			persistent = false;
+		}
+		try {
+			if (persistent) {
+				try {
+					outputStream.flush();
+				} catch (IOException e) {
+					persistent = false;
+					completed = false;
+					throw e;
+				}
+			} else {
+				outputStream.flush();
+				outputStream.close();
+			}
+			timing.mark("write");
+		} finally {
+			if (writeEvent != null) {
+				recordWrite(completed);
+			}
+		}
+	}
+
+	private void recordWrite(boolean completed) {
+		ResponseWriteEvent event = writeEvent;
+		writeEvent = null;
+		event.end();
+		if (event.shouldCommit()) {
+			event.status = status;
+			event.bytes = getBytesWritten();
+			event.completed = completed;
+			event.persistent = persistent;
+			event.commit();
 		}
 	}
 
 	/**
 	 * Write the headers to an output stream
 	 *
+	 * Subclasses speaking another protocol (e.g. HTTP/2) override this
+	 * method and writeStatusLine() to encode the head their own way.
+	 *
 	 * @throws IOException 
 	 */
-	private void writeHeaders() throws IOException {
+	protected void writeHeaders() throws IOException {
 		Iterator<String> i;
 		String name, value;
 
@@ -180,7 +706,6 @@ public class HttpResponse extends HttpMessage {
 			}
 		}
 		outputStream.printEOL();
-		outputStream.flush();
 	}
 
 	/**
@@ -188,18 +713,17 @@ public class HttpResponse extends HttpMessage {
 	 * 
 	 * @throws IOException 
 	 */
-	private void writeStatusLine() throws IOException {
+	protected void writeStatusLine() throws IOException {
 		outputStream.print(HttpConstants.HTTP_VERSION);
-		outputStream.print(" ");
+		outputStream.write(' ');
 
-		nf.setMaximumIntegerDigits(3);
-		nf.setMinimumIntegerDigits(3);
-		outputStream.print(nf.format(status));
-		outputStream.print(" ");
+		// three digits, without formatting a String for them.
+		outputStream.write('0' + (status / 100) % 10);
+		outputStream.write('0' + (status / 10) % 10);
+		outputStream.write('0' + status % 10);
+		outputStream.write(' ');
 
 		outputStream.print(getStatusMessage(status));
 		outputStream.printEOL();
-
-		outputStream.flush();
 	}
 }
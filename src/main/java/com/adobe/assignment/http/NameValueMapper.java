@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -35,6 +36,14 @@ public class NameValueMapper {
 		return new NameValueMapper(new HashMap<String, String>());
 	}
 
+	/**
+	 * Construct a NameValueMap (that is not thread safe) whose names are
+	 * compared ignoring case, as HTTP header names are.
+	 */
+	public static NameValueMapper createCaseInsensitiveNameValueMap() {
+		return new NameValueMapper(new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER));
+	}
+
 	/**
 	 * @ThreadSafe
 	 * Construct a thread-safe NameValueMap
@@ -0,0 +1,25 @@
+package com.adobe.assignment.http;
+
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A connection a response body can be sent to without holding a thread for
+ * as long as the client takes to receive it (see HttpResponse.writeAsync()).
+ * Provided by the server for the connections it can drive this way.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public interface Outbound {
+
+	/**
+	 * Sends the body to the connection. The body is read only as fast as
+	 * the client receives it, a little ahead; while the client lags behind,
+	 * no thread is held.
+	 *
+	 * @param body		The body; it is read to its end but not closed
+	 * @return			A future completing once the body has been sent, or
+	 * 					exceptionally if reading or sending it failed
+	 */
+	public CompletableFuture<Void> transfer(InputStream body);
+}
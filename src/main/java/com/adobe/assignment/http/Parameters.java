@@ -0,0 +1,213 @@
+package com.adobe.assignment.http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * The parameters of a query string or of an application/x-www-form-urlencoded
+ * body: name=value pairs, separated by '&', whose names may repeat.
+ *
+ * The pairs are kept in the order they were given, in two parallel lists
+ * that are searched from the start: requests carry few parameters, for which
+ * this is faster and lighter than a map of lists. The lists are kept when the
+ * parameters are cleared, and so is the buffer the names and values are
+ * percent-decoded into, so that the parameters of a connection's requests
+ * are decoded without allocating more than the decoded strings.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class Parameters {
+
+	private final List<String> names = new ArrayList<String>();
+	private final List<String> values = new ArrayList<String>();
+
+	/**
+	 * The bytes of the name or value being decoded.
+	 */
+	private byte[] decoded = new byte[64];
+
+	/**
+	 * The source being decoded: the text of a query string, or the bytes of
+	 * a body.
+	 */
+	private CharSequence text;
+	private byte[] bytes;
+
+	/**
+	 * Remove all parameters, keeping the space they took for the next ones.
+	 */
+	public void clear() {
+		names.clear();
+		values.clear();
+	}
+
+	/**
+	 * Retrieve the first value of a parameter.
+	 *
+	 * @param name			The name of the parameter
+	 * @return				The value, "" for a parameter without "=", or null
+	 * 						if there is no such parameter
+	 */
+	public String getValue(String name) {
+		for (int i = 0; i < names.size(); i++) {
+			if (names.get(i).equals(name)) {
+				return values.get(i);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Retrieve all values of a parameter, in the order they were given.
+	 *
+	 * @param name			The name of the parameter
+	 * @return				The values, empty if there is no such parameter
+	 */
+	public List<String> getValues(String name) {
+		List<String> result = null;
+		for (int i = 0; i < names.size(); i++) {
+			if (names.get(i).equals(name)) {
+				if (result == null) {
+					result = new ArrayList<String>(2);
+				}
+				result.add(values.get(i));
+			}
+		}
+		return (result == null) ? Collections.<String>emptyList() : result;
+	}
+
+	/**
+	 * @return The distinct names of the parameters, in the order they were
+	 *         first given.
+	 */
+	public Iterator<String> getNames() {
+		return new LinkedHashSet<String>(names).iterator();
+	}
+
+	/**
+	 * @return The number of name=value pairs, counting repeated names.
+	 */
+	public int size() {
+		return names.size();
+	}
+
+	/**
+	 * Decodes the pairs of a query string and adds them to these parameters.
+	 * The characters of the query are its bytes, as the request line is read
+	 * (ISO-8859-1); those bytes and percent-encoded ones are decoded as
+	 * UTF-8, and '+' as a space. Empty pairs are skipped, and a '%' that is not followed by two
+	 * hex digits is taken as it is.
+	 *
+	 * @param query			The text holding the query string
+	 * @param start			The index of its first character
+	 * @param end			The index after its last character
+	 */
+	public void decode(CharSequence query, int start, int end) {
+		text = query;
+		try {
+			decodePairs(start, end);
+		} finally {
+			text = null;
+		}
+	}
+
+	/**
+	 * Decodes the pairs of an application/x-www-form-urlencoded body and adds
+	 * them to these parameters, as a query string is decoded, straight from
+	 * the bytes of the body.
+	 *
+	 * @param body			The bytes of the body
+	 * @param off			The index of its first byte
+	 * @param len			Its length
+	 */
+	public void decode(byte[] body, int off, int len) {
+		bytes = body;
+		try {
+			decodePairs(off, off + len);
+		} finally {
+			bytes = null;
+		}
+	}
+
+	/**
+	 * Splits the source being decoded into its pairs.
+	 */
+	private void decodePairs(int start, int end) {
+		int pair = start;
+		while (pair < end) {
+			int eq = -1, amp = end;
+			boolean encoded = false;
+			for (int i = pair; i < end; i++) {
+				int c = charAt(i);
+				if (c == '&') {
+					amp = i;
+					break;
+				} else if (c == '=' && eq < 0) {
+					eq = i;
+				} else if (c == '%' || c == '+' || c >= 0x80) {
+					// raw UTF-8 is decoded as escaped UTF-8 is.
+					encoded = true;
+				}
+			}
+			if (amp > pair) {
+				int nameEnd = (eq < 0) ? amp : eq;
+				names.add(decode(pair, nameEnd, encoded));
+				values.add((eq < 0) ? "" : decode(eq + 1, amp, encoded));
+			}
+			pair = amp + 1;
+		}
+	}
+
+	/**
+	 * Decodes a name or a value: as it is if the pair is ASCII and holds
+	 * nothing encoded, else by way of the decoded bytes, as UTF-8.
+	 */
+	private String decode(int start, int end, boolean encoded) {
+		if (!encoded || start == end) {
+			return (bytes != null)
+					? new String(bytes, start, end - start, StandardCharsets.ISO_8859_1)
+					: text.subSequence(start, end).toString();
+		}
+		if (decoded.length < end - start) {
+			decoded = new byte[Math.max(end - start, 2 * decoded.length)];
+		}
+		int n = 0;
+		for (int i = start; i < end; i++) {
+			int c = charAt(i);
+			if (c == '+') {
+				decoded[n++] = ' ';
+			} else if (c == '%' && i + 2 < end && hex(charAt(i + 1)) >= 0 && hex(charAt(i + 2)) >= 0) {
+				decoded[n++] = (byte) ((hex(charAt(i + 1)) << 4) | hex(charAt(i + 2)));
+				i += 2;
+			} else {
+				decoded[n++] = (byte) c;
+			}
+		}
+		return new String(decoded, 0, n, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return The character at an index of the source being decoded; a byte
+	 *         is taken as the ISO-8859-1 character it is.
+	 */
+	private int charAt(int i) {
+		return (bytes != null) ? bytes[i] & 0xff : text.charAt(i);
+	}
+
+	private static int hex(int c) {
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		}
+		if (c >= 'a' && c <= 'f') {
+			return c - 'a' + 10;
+		}
+		if (c >= 'A' && c <= 'F') {
+			return c - 'A' + 10;
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,151 @@
+package com.adobe.assignment.http;
+
+/**
+ * The phases a request went through and when each ended, taken with
+ * System.nanoTime(): the server marks the end of reading the request, of
+ * handling it (when the response is committed) and of writing the response;
+ * a handler may mark phases of its own in between, e.g. opening a file.
+ *
+ * Marks are kept in fixed arrays, so that timing a request allocates
+ * nothing; marks beyond their size are dropped. A Timing belongs to the
+ * response of one request at a time (see HttpResponse.getTiming()).
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public final class Timing {
+
+	private static final int MAX_PHASES = 8;
+
+	private final String[] phases = new String[MAX_PHASES];
+	private final long[] ends = new long[MAX_PHASES];
+	private int count;
+	private long start;
+
+	/**
+	 * Starts timing a request, dropping the marks of the previous one.
+	 */
+	public void start() {
+		count = 0;
+		start = System.nanoTime();
+	}
+
+	/**
+	 * Stops timing, e.g. as the response is reused for the next request.
+	 */
+	public void reset() {
+		count = 0;
+		start = 0;
+	}
+
+	/**
+	 * @return true if a request is being timed.
+	 */
+	public boolean isStarted() {
+		return start != 0;
+	}
+
+	/**
+	 * Marks the end of a phase, which began with the previous mark.
+	 *
+	 * @param phase
+	 *            The name of the phase, a token (e.g. "read")
+	 */
+	public void mark(String phase) {
+		if (start != 0 && count < MAX_PHASES) {
+			phases[count] = phase;
+			ends[count++] = System.nanoTime();
+		}
+	}
+
+	/**
+	 * @return The number of phases marked.
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	public String getPhase(int i) {
+		return phases[i];
+	}
+
+	/**
+	 * @return The duration of the i-th phase in nanoseconds.
+	 */
+	public long getDuration(int i) {
+		return ends[i] - ((i == 0) ? start : ends[i - 1]);
+	}
+
+	/**
+	 * @return The System.nanoTime() at which the named phase ended, or 0 if
+	 *         it was not marked.
+	 */
+	public long getEnd(String phase) {
+		for (int i = 0; i < count; i++) {
+			if (phases[i].equals(phase)) {
+				return ends[i];
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @return The time from the start to the last mark in nanoseconds.
+	 */
+	public long getTotal() {
+		return (count == 0) ? 0 : ends[count - 1] - start;
+	}
+
+	/**
+	 * Formats the phases marked as the value of a Server-Timing header
+	 * (W3C Server Timing), in milliseconds, e.g. "read;dur=0.12, handle;dur=3.4".
+	 *
+	 * @return The header value, empty if no phase was marked
+	 */
+	public String toHeader() {
+		StringBuilder sb = new StringBuilder(16 * count);
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(phases[i]).append(";dur=");
+			appendMillis(sb, getDuration(i));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return The phases marked and their durations in milliseconds, e.g.
+	 *         "read=0.12ms handle=3.4ms", for logging.
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder(16 * count);
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				sb.append(' ');
+			}
+			sb.append(phases[i]).append('=');
+			appendMillis(sb, getDuration(i));
+			sb.append("ms");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Appends a duration in milliseconds with two decimals, as the phases
+	 * are formatted.
+	 *
+	 * @param sb
+	 *            The builder to append to
+	 * @param nanos
+	 *            The duration in nanoseconds
+	 */
+	public static void appendMillis(StringBuilder sb, long nanos) {
+		long hundredths = Math.max(0, nanos) / 10000;
+		sb.append(hundredths / 100).append('.');
+		long fraction = hundredths % 100;
+		if (fraction < 10) {
+			sb.append('0');
+		}
+		sb.append(fraction);
+	}
+}
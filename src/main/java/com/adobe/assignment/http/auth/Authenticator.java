@@ -0,0 +1,30 @@
+package com.adobe.assignment.http.auth;
+
+import com.adobe.assignment.http.HttpRequest;
+
+/**
+ * Decides who sent a request, from its credentials. HttpMethodHandlers that
+ * require a user, such as DeleteMethod, consult an Authenticator before
+ * they handle a request, and answer with 401 (Unauthorized) if it knows of
+ * none.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public interface Authenticator {
+
+	/**
+	 * Verifies the credentials of the request.
+	 *
+	 * @param request		The request
+	 * @return				The name of the user the credentials belong to,
+	 * 						or null if the request has no credentials or they
+	 * 						are not valid.
+	 */
+	public String authenticate(HttpRequest request);
+
+	/**
+	 * @return The value of the WWW-Authenticate header sent along with 401
+	 *         (Unauthorized), naming the schemes a client may use.
+	 */
+	public String getChallenge();
+}
@@ -0,0 +1,235 @@
+package com.adobe.assignment.http.auth;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import net.iharder.Base64;
+
+/**
+ * The users known to the server and their credentials, read from a text file
+ * with one credential per line:
+ *
+ * <pre>
+ * # a password, hashed by PBKDF2 (HMAC-SHA256) with the given iterations
+ * user:alice:120000:&lt;salt, base64&gt;:&lt;hash, base64&gt;
+ * # a bearer token, by its SHA-256 digest
+ * token:alice:&lt;digest, hex&gt;
+ * </pre>
+ *
+ * Neither passwords nor tokens are kept. A password is verified by hashing it
+ * the same slow way it was stored, which is what makes guessing expensive.
+ * Bearer tokens are random and long, and need no slow hash; they are looked
+ * up by their digest. The lines are produced by main().
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class CredentialStore {
+
+	public static final int DEFAULT_ITERATIONS = 120000;
+
+	private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+	private static final int SALT_BYTES = 16;
+	private static final int HASH_BITS = 256;
+
+	private final Map<String, Password> passwords = new HashMap<String, Password>();
+	private final Map<String, String> tokens = new HashMap<String, String>();
+
+	/**
+	 * Hashed against by verifyPassword() for users that do not exist, so
+	 * that their absence does not show in the time it takes.
+	 */
+	private final Password unknown = new Password(DEFAULT_ITERATIONS, new byte[SALT_BYTES], new byte[HASH_BITS / 8]);
+
+	/**
+	 * A password as stored: the iterations and salt it was hashed with, and
+	 * its hash.
+	 */
+	private static final class Password {
+
+		final int iterations;
+		final byte[] salt;
+		final byte[] hash;
+
+		Password(int iterations, byte[] salt, byte[] hash) {
+			this.iterations = iterations;
+			this.salt = salt;
+			this.hash = hash;
+		}
+	}
+
+	/**
+	 * Reads a credential store from the file at the given location or, if
+	 * there is none, from the class path resource of that name.
+	 *
+	 * @param location		The path of the file
+	 * @return				The credential store
+	 * @throws IOException	if there is neither a file nor a resource, or a
+	 * 						line of it is malformed
+	 */
+	public static CredentialStore load(String location) throws IOException {
+		Path path = Paths.get(location);
+		InputStream in = Files.isRegularFile(path)
+				? Files.newInputStream(path)
+				: CredentialStore.class.getClassLoader().getResourceAsStream(location);
+		if (in == null) {
+			throw new IOException("No credential store at " + location);
+		}
+		try {
+			return read(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads a credential store.
+	 *
+	 * @param in			The stream of its lines, in UTF-8
+	 * @return				The credential store
+	 * @throws IOException	if a line is malformed
+	 */
+	public static CredentialStore read(InputStream in) throws IOException {
+		CredentialStore store = new CredentialStore();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		int number = 0;
+		for (String line; (line = reader.readLine()) != null;) {
+			number++;
+			line = line.trim();
+			if (line.length() == 0 || line.startsWith("#")) {
+				continue;
+			}
+			String[] fields = line.split(":");
+			try {
+				if (fields[0].equals("user") && fields.length == 5) {
+					store.passwords.put(fields[1], new Password(Integer.parseInt(fields[2]),
+							Base64.decode(fields[3]), Base64.decode(fields[4])));
+					continue;
+				}
+				if (fields[0].equals("token") && fields.length == 3) {
+					store.tokens.put(fields[2].toLowerCase(), fields[1]);
+					continue;
+				}
+			} catch (NumberFormatException e) {
+				// reported below.
+			}
+			throw new IOException("Malformed credential on line " + number);
+		}
+		return store;
+	}
+
+	/**
+	 * Checks a user's password. Takes as long as hashing it, also for users
+	 * that do not exist.
+	 *
+	 * @param user			The name of the user
+	 * @param password		The password given for the user
+	 * @return				true if the user exists and the password is theirs
+	 */
+	public boolean verifyPassword(String user, char[] password) {
+		Password stored = passwords.get(user);
+		Password against = (stored != null) ? stored : unknown;
+		byte[] hash = hash(password, against.salt, against.iterations);
+		return stored != null && MessageDigest.isEqual(hash, stored.hash);
+	}
+
+	/**
+	 * @param token		A bearer token
+	 * @return			The user the token was issued to, or null if it is
+	 * 					not known.
+	 */
+	public String findToken(String token) {
+		return tokens.get(digest(token));
+	}
+
+	/**
+	 * @return The number of users with a password, and of tokens.
+	 */
+	public int size() {
+		return passwords.size() + tokens.size();
+	}
+
+	/**
+	 * @return The line storing a user's password, hashed with a new salt.
+	 */
+	public static String passwordLine(String user, char[] password, int iterations) {
+		byte[] salt = new byte[SALT_BYTES];
+		new SecureRandom().nextBytes(salt);
+		return "user:" + user + ":" + iterations + ":" + Base64.encodeBytes(salt) + ":"
+				+ Base64.encodeBytes(hash(password, salt, iterations));
+	}
+
+	/**
+	 * @return The line storing a bearer token issued to a user.
+	 */
+	public static String tokenLine(String user, String token) {
+		return "token:" + user + ":" + digest(token);
+	}
+
+	private static byte[] hash(char[] password, byte[] salt, int iterations) {
+		PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, HASH_BITS);
+		try {
+			return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(ALGORITHM + " is not available", e);
+		} finally {
+			spec.clearPassword();
+		}
+	}
+
+	/**
+	 * @return The SHA-256 digest of a string, in hex.
+	 */
+	static String digest(String s) {
+		byte[] digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		StringBuilder hex = new StringBuilder(digest.length * 2);
+		for (byte b : digest) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Prints the line to add to a credential store for a user's password or
+	 * token:
+	 *
+	 * <pre>
+	 * java CredentialStore user &lt;name&gt; &lt;password&gt; [iterations]
+	 * java CredentialStore token &lt;name&gt; &lt;token&gt;
+	 * </pre>
+	 */
+	public static void main(String[] args) {
+		if (args.length >= 3 && args[0].equals("user")) {
+			int iterations = (args.length > 3) ? Integer.parseInt(args[3]) : DEFAULT_ITERATIONS;
+			char[] password = args[2].toCharArray();
+			System.out.println(passwordLine(args[1], password, iterations));
+			Arrays.fill(password, '\0');
+		} else if (args.length == 3 && args[0].equals("token")) {
+			System.out.println(tokenLine(args[1], args[2]));
+		} else {
+			System.err.println("Usage: CredentialStore user <name> <password> [iterations]");
+			System.err.println("       CredentialStore token <name> <token>");
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package com.adobe.assignment.http.auth;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import net.iharder.Base64;
+
+import com.adobe.assignment.http.HttpRequest;
+
+/**
+ * Authenticates requests carrying Basic (RFC 7617) or Bearer (RFC 6750)
+ * credentials against a CredentialStore.
+ *
+ * Verifying a password costs a deliberately slow hash. So that a client
+ * sending the same credentials on every request does not pay it every time,
+ * successful verifications are remembered for a while, keyed by the digest of
+ * the Authorization header rather than the header itself. Failures are not
+ * remembered: every wrong guess costs a hash. A credential removed from the
+ * store stops working once its verification expires.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class StoreAuthenticator implements Authenticator {
+
+	private final CredentialStore store;
+	private final String challenge;
+	private final int maxEntries;
+	private final long ttl;
+
+	/**
+	 * The users of recently verified credentials, by the digest of their
+	 * Authorization header.
+	 */
+	private final Map<String, Verified> verified = new ConcurrentHashMap<String, Verified>();
+
+	/**
+	 * Explicit Value Constructor
+	 *
+	 * @param store			The users and their credentials
+	 * @param realm			The realm named in the challenge
+	 * @param maxEntries	How many verifications are remembered at most; 0
+	 * 						verifies every request
+	 * @param ttl			How long a verification is remembered, in
+	 * 						milliseconds
+	 */
+	public StoreAuthenticator(CredentialStore store, String realm, int maxEntries, long ttl) {
+		this.store = store;
+		this.challenge = "Basic realm=\"" + realm + "\", charset=\"UTF-8\"";
+		this.maxEntries = maxEntries;
+		this.ttl = TimeUnit.MILLISECONDS.toNanos(ttl);
+	}
+
+	/**
+	 * @see Authenticator#authenticate(HttpRequest)
+	 */
+	public String authenticate(HttpRequest request) {
+		String authorization = request.getHeader("Authorization");
+		if (authorization == null) {
+			return null;
+		}
+		String key = CredentialStore.digest(authorization);
+		long now = System.nanoTime();
+		Verified known = verified.get(key);
+		if (known != null) {
+			if (now - known.expiresAt < 0) {
+				return known.user;
+			}
+			verified.remove(key, known);
+		}
+
+		String user = verify(authorization);
+		if (user != null && maxEntries > 0) {
+			if (verified.size() >= maxEntries) {
+				evict(now);
+			}
+			verified.put(key, new Verified(user, now + ttl));
+		}
+		return user;
+	}
+
+	/**
+	 * @return The user the credentials of an Authorization header belong to,
+	 *         or null.
+	 */
+	private String verify(String authorization) {
+		int space = authorization.indexOf(' ');
+		if (space < 0) {
+			return null;
+		}
+		String scheme = authorization.substring(0, space);
+		String credentials = authorization.substring(space + 1).trim();
+		if (scheme.equalsIgnoreCase("Bearer")) {
+			return store.findToken(credentials);
+		}
+		if (!scheme.equalsIgnoreCase("Basic")) {
+			return null;
+		}
+		String userPass;
+		try {
+			userPass = new String(Base64.decode(credentials), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			return null;
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+		int colon = userPass.indexOf(':');
+		if (colon < 0) {
+			return null;
+		}
+		String user = userPass.substring(0, colon);
+		char[] password = userPass.substring(colon + 1).toCharArray();
+		try {
+			return store.verifyPassword(user, password) ? user : null;
+		} finally {
+			Arrays.fill(password, '\0');
+		}
+	}
+
+	/**
+	 * Makes room for a verification: drops the expired ones and, if none
+	 * had expired, an arbitrary one.
+	 */
+	private void evict(long now) {
+		boolean removed = false;
+		Iterator<Verified> it = verified.values().iterator();
+		while (it.hasNext()) {
+			if (now - it.next().expiresAt >= 0) {
+				it.remove();
+				removed = true;
+			}
+		}
+		it = verified.values().iterator();
+		if (!removed && it.hasNext()) {
+			it.next();
+			it.remove();
+		}
+	}
+
+	/**
+	 * @see Authenticator#getChallenge()
+	 */
+	public String getChallenge() {
+		return challenge;
+	}
+
+	/**
+	 * A successful verification, and when it expires.
+	 */
+	private static final class Verified {
+
+		final String user;
+		final long expiresAt;
+
+		Verified(String user, long expiresAt) {
+			this.user = user;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
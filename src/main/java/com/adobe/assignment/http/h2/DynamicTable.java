@@ -0,0 +1,128 @@
+package com.adobe.assignment.http.h2;
+
+/**
+ * The dynamic table of HPACK: a FIFO of header fields bounded by the sum of
+ * their sizes (RFC 7541, Section 4). Index 1 is the newest entry.
+ *
+ * The entries are kept in a ring buffer that grows as needed.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+final class DynamicTable {
+
+	/**
+	 * The overhead per entry that counts towards the size of the table.
+	 */
+	static final int ENTRY_OVERHEAD = 32;
+
+	static final class Entry {
+
+		final String name;
+		final String value;
+
+		/**
+		 * The number of entries inserted before this one.
+		 */
+		final long seq;
+
+		Entry(String name, String value, long seq) {
+			this.name = name;
+			this.value = value;
+			this.seq = seq;
+		}
+
+		int size() {
+			return name.length() + value.length() + ENTRY_OVERHEAD;
+		}
+	}
+
+	private Entry[] ring = new Entry[16];
+	private int head, length;
+	private int size, maxSize;
+	private long insertions;
+
+	DynamicTable(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @param index
+	 *            The index within this table, starting at 1 for the newest
+	 *            entry
+	 */
+	Entry get(int index) {
+		return ring[(head + length - index) & (ring.length - 1)];
+	}
+
+	int length() {
+		return length;
+	}
+
+	int size() {
+		return size;
+	}
+
+	int maxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return The number of entries ever inserted.
+	 */
+	long insertions() {
+		return insertions;
+	}
+
+	/**
+	 * @return The oldest entry, or null if the table is empty.
+	 */
+	Entry oldest() {
+		return (length == 0) ? null : ring[head];
+	}
+
+	/**
+	 * Adds an entry, evicting the oldest ones to make room. An entry larger
+	 * than the table empties it and is not added.
+	 */
+	void add(String name, String value) {
+		Entry e = new Entry(name, value, insertions++);
+		evict(maxSize - e.size());
+		if (e.size() > maxSize) {
+			return;
+		}
+		if (length == ring.length) {
+			Entry[] larger = new Entry[ring.length * 2];
+			for (int i = 0; i < length; i++) {
+				larger[i] = ring[(head + i) & (ring.length - 1)];
+			}
+			ring = larger;
+			head = 0;
+		}
+		ring[(head + length) & (ring.length - 1)] = e;
+		length++;
+		size += e.size();
+	}
+
+	void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+		evict(maxSize);
+	}
+
+	/**
+	 * Removes the oldest entry.
+	 */
+	Entry removeOldest() {
+		Entry e = ring[head];
+		ring[head] = null;
+		head = (head + 1) & (ring.length - 1);
+		length--;
+		size -= e.size();
+		return e;
+	}
+
+	private void evict(int target) {
+		while (length > 0 && size > target) {
+			removeOldest();
+		}
+	}
+}
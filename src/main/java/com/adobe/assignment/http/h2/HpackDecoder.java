@@ -0,0 +1,191 @@
+package com.adobe.assignment.http.h2;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes HPACK header blocks (RFC 7541). One decoder belongs to one
+ * connection and must see all of its header blocks in order, since blocks
+ * change the dynamic table shared with the peer's encoder.
+ *
+ * Header octets are decoded as ISO-8859-1, like the headers of HTTP/1.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class HpackDecoder {
+
+	/**
+	 * Receives the decoded header fields of a block.
+	 */
+	public interface HeaderListener {
+
+		void header(String name, String value);
+	}
+
+	private final DynamicTable table;
+
+	/**
+	 * The largest table the peer may use, as announced in our
+	 * SETTINGS_HEADER_TABLE_SIZE.
+	 */
+	private final int maxTableSize;
+
+	private final int maxHeaderListSize;
+
+	private byte[] buf;
+	private int pos, end;
+
+	/**
+	 * Explicit Value Constructor
+	 *
+	 * @param maxTableSize			The announced header table size
+	 * @param maxHeaderListSize		The largest header list to deliver
+	 */
+	public HpackDecoder(int maxTableSize, int maxHeaderListSize) {
+		this.table = new DynamicTable(maxTableSize);
+		this.maxTableSize = maxTableSize;
+		this.maxHeaderListSize = maxHeaderListSize;
+	}
+
+	/**
+	 * Decodes a complete header block.
+	 *
+	 * A header list larger than the limit is still decoded to the end, so
+	 * that the dynamic table stays in sync, but the fields past the limit are
+	 * not delivered.
+	 *
+	 * @param block			The header block
+	 * @param off			The offset of the block
+	 * @param len			The length of the block
+	 * @param listener		Receives the header fields
+	 * @return				false if the header list exceeded the limit
+	 * @throws Http2Exception
+	 *             (COMPRESSION_ERROR) if the block cannot be decoded; the
+	 *             connection can no longer be used.
+	 */
+	public boolean decode(byte[] block, int off, int len, HeaderListener listener) throws Http2Exception {
+		this.buf = block;
+		this.pos = off;
+		this.end = off + len;
+		long listSize = 0;
+		boolean fieldSeen = false;
+		try {
+			while (pos < end) {
+				int b = buf[pos] & 0xff;
+				String name, value;
+				if ((b & 0x80) != 0) {
+					// indexed header field
+					int index = readInt(7);
+					name = nameAt(index);
+					value = valueAt(index);
+				} else if ((b & 0x40) != 0) {
+					// literal with incremental indexing
+					int index = readInt(6);
+					name = (index == 0) ? readString() : nameAt(index);
+					value = readString();
+					table.add(name, value);
+				} else if ((b & 0x20) != 0) {
+					// dynamic table size update, only at the start of a block
+					if (fieldSeen) {
+						throw error("Table size update after a header field");
+					}
+					int size = readInt(5);
+					if (size > maxTableSize) {
+						throw error("Table size " + size + " exceeds " + maxTableSize);
+					}
+					table.setMaxSize(size);
+					continue;
+				} else {
+					// literal without indexing or never indexed
+					int index = readInt(4);
+					name = (index == 0) ? readString() : nameAt(index);
+					value = readString();
+				}
+				fieldSeen = true;
+				listSize += name.length() + value.length() + DynamicTable.ENTRY_OVERHEAD;
+				if (listSize <= maxHeaderListSize) {
+					listener.header(name, value);
+				}
+			}
+		} finally {
+			this.buf = null;
+		}
+		return listSize <= maxHeaderListSize;
+	}
+
+	private String nameAt(int index) throws Http2Exception {
+		if (index <= 0) {
+			throw error("Invalid index " + index);
+		}
+		if (index <= StaticTable.LENGTH) {
+			return StaticTable.getName(index);
+		}
+		return dynamicEntry(index).name;
+	}
+
+	private String valueAt(int index) throws Http2Exception {
+		if (index <= 0) {
+			throw error("Invalid index " + index);
+		}
+		if (index <= StaticTable.LENGTH) {
+			return StaticTable.getValue(index);
+		}
+		return dynamicEntry(index).value;
+	}
+
+	private DynamicTable.Entry dynamicEntry(int index) throws Http2Exception {
+		int i = index - StaticTable.LENGTH;
+		if (i > table.length()) {
+			throw error("Index " + index + " beyond the table");
+		}
+		return table.get(i);
+	}
+
+	/**
+	 * Reads an integer with an N-bit prefix (RFC 7541, Section 5.1).
+	 */
+	private int readInt(int prefix) throws Http2Exception {
+		int max = (1 << prefix) - 1;
+		int value = buf[pos++] & max;
+		if (value < max) {
+			return value;
+		}
+		int shift = 0;
+		while (true) {
+			if (pos == end) {
+				throw error("Truncated integer");
+			}
+			int b = buf[pos++] & 0xff;
+			if (shift > 21) {
+				throw error("Integer overflow");
+			}
+			value += (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+			shift += 7;
+		}
+	}
+
+	/**
+	 * Reads a string literal (RFC 7541, Section 5.2).
+	 */
+	private String readString() throws Http2Exception {
+		if (pos == end) {
+			throw error("Truncated string");
+		}
+		boolean huffman = (buf[pos] & 0x80) != 0;
+		int len = readInt(7);
+		if (len > end - pos) {
+			throw error("Truncated string");
+		}
+		String s = huffman
+				? Huffman.decode(buf, pos, len)
+				: new String(buf, pos, len, StandardCharsets.ISO_8859_1);
+		pos += len;
+		return s;
+	}
+
+	private static Http2Exception error(String message) {
+		return new Http2Exception(Http2Constants.COMPRESSION_ERROR, message);
+	}
+}
@@ -0,0 +1,191 @@
+package com.adobe.assignment.http.h2;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Encodes header fields into HPACK header blocks (RFC 7541). One encoder
+ * belongs to one connection, and its blocks must be sent in the order they
+ * were encoded.
+ *
+ * Fields that repeat across responses (content types, cache directives and
+ * the like) are added to the dynamic table, so that later responses send
+ * them as a single index. Fields whose values change with every response are
+ * sent as literals that leave the table alone, and sensitive ones are marked
+ * as never to be indexed by intermediaries either. Strings are Huffman coded
+ * when that makes them shorter.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class HpackEncoder {
+
+	private static final Set<String> NOT_INDEXED = new HashSet<String>(Arrays.asList(
+			"content-length", "date", "etag", "last-modified", "expires", "age", "content-range"));
+
+	private static final Set<String> NEVER_INDEXED = new HashSet<String>(Arrays.asList(
+			"authorization", "proxy-authorization", "cookie", "set-cookie"));
+
+	/**
+	 * The largest table this encoder uses, whatever the peer allows.
+	 */
+	private final int maxTableSize;
+
+	private final DynamicTable table;
+
+	/**
+	 * The newest entry of the dynamic table holding a field (name and value)
+	 * and a name, by the sequence number of the entry.
+	 */
+	private final Map<String, Long> fields = new HashMap<String, Long>();
+	private final Map<String, Long> names = new HashMap<String, Long>();
+
+	/**
+	 * The smallest and the last table size to signal at the start of the
+	 * next block, or -1.
+	 */
+	private int minSizeUpdate = -1, sizeUpdate = -1;
+
+	/**
+	 * Explicit Value Constructor
+	 *
+	 * @param maxTableSize		The largest table to use
+	 */
+	public HpackEncoder(int maxTableSize) {
+		this.maxTableSize = maxTableSize;
+		this.table = new DynamicTable(Math.min(maxTableSize, Http2Constants.DEFAULT_HEADER_TABLE_SIZE));
+	}
+
+	/**
+	 * Applies the SETTINGS_HEADER_TABLE_SIZE of the peer.
+	 */
+	public void setMaxTableSize(int size) {
+		size = Math.min(size, maxTableSize);
+		if (size == table.maxSize() && sizeUpdate < 0) {
+			return;
+		}
+		while (table.size() > size) {
+			forget(table.removeOldest());
+		}
+		table.setMaxSize(size);
+		minSizeUpdate = (minSizeUpdate < 0) ? size : Math.min(minSizeUpdate, size);
+		sizeUpdate = size;
+	}
+
+	/**
+	 * Starts a new header block.
+	 */
+	public void startBlock(ByteArrayOutputStream out) {
+		if (sizeUpdate >= 0) {
+			if (minSizeUpdate < sizeUpdate) {
+				writeInt(out, 0x20, 5, minSizeUpdate);
+			}
+			writeInt(out, 0x20, 5, sizeUpdate);
+			minSizeUpdate = sizeUpdate = -1;
+		}
+	}
+
+	/**
+	 * Encodes a header field.
+	 *
+	 * @param name		The name, in lower case
+	 * @param value		The value
+	 * @param out		The header block
+	 */
+	public void encode(String name, String value, ByteArrayOutputStream out) {
+		int index = indexOf(name, value);
+		if (index > 0) {
+			writeInt(out, 0x80, 7, index);
+			return;
+		}
+
+		int nameIndex = indexOf(name);
+		if (NEVER_INDEXED.contains(name)) {
+			writeInt(out, 0x10, 4, nameIndex);
+		} else if (NOT_INDEXED.contains(name)
+				|| name.length() + value.length() + DynamicTable.ENTRY_OVERHEAD > table.maxSize() / 2) {
+			writeInt(out, 0x00, 4, nameIndex);
+		} else {
+			writeInt(out, 0x40, 6, nameIndex);
+			add(name, value);
+		}
+		if (nameIndex == 0) {
+			writeString(out, name);
+		}
+		writeString(out, value);
+	}
+
+	private int indexOf(String name, String value) {
+		int index = StaticTable.indexOf(name, value);
+		if (index == 0) {
+			index = dynamicIndex(fields.get(name + '\0' + value));
+		}
+		return index;
+	}
+
+	private int indexOf(String name) {
+		int index = StaticTable.indexOf(name);
+		if (index == 0) {
+			index = dynamicIndex(names.get(name));
+		}
+		return index;
+	}
+
+	private int dynamicIndex(Long seq) {
+		if (seq == null) {
+			return 0;
+		}
+		long i = table.insertions() - seq;
+		return (i <= table.length()) ? StaticTable.LENGTH + (int) i : 0;
+	}
+
+	private void add(String name, String value) {
+		int entrySize = name.length() + value.length() + DynamicTable.ENTRY_OVERHEAD;
+		while (table.length() > 0 && table.size() + entrySize > table.maxSize()) {
+			forget(table.removeOldest());
+		}
+		long seq = table.insertions();
+		table.add(name, value);
+		fields.put(name + '\0' + value, seq);
+		names.put(name, seq);
+	}
+
+	private void forget(DynamicTable.Entry e) {
+		fields.remove(e.name + '\0' + e.value, e.seq);
+		names.remove(e.name, e.seq);
+	}
+
+	/**
+	 * Writes an integer with an N-bit prefix (RFC 7541, Section 5.1).
+	 */
+	private static void writeInt(ByteArrayOutputStream out, int mask, int prefix, int value) {
+		int max = (1 << prefix) - 1;
+		if (value < max) {
+			out.write(mask | value);
+			return;
+		}
+		out.write(mask | max);
+		value -= max;
+		while (value >= 0x80) {
+			out.write((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	private static void writeString(ByteArrayOutputStream out, String s) {
+		int huffmanLength = Huffman.encodedLength(s);
+		if (huffmanLength < s.length()) {
+			writeInt(out, 0x80, 7, huffmanLength);
+			Huffman.encode(s, out);
+		} else {
+			writeInt(out, 0x00, 7, s.length());
+			for (int i = 0; i < s.length(); i++) {
+				out.write(s.charAt(i));
+			}
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package com.adobe.assignment.http.h2;
+
+/**
+ * Constants of the HTTP/2 wire protocol (RFC 7540).
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public interface Http2Constants {
+
+	//--------------------------------< Connection preface >---
+	/**
+	 * The request line a client sends first when it talks HTTP/2 with prior
+	 * knowledge, and the rest of the client connection preface after it.
+	 */
+	public static final String PREFACE_REQUEST_LINE = "PRI * HTTP/2.0";
+	public static final byte[] PREFACE_REMAINDER = { '\r', '\n', 'S', 'M', '\r', '\n', '\r', '\n' };
+
+	/**
+	 * The token of cleartext HTTP/2 in the Upgrade header, and the header
+	 * carrying the client's settings along with the upgrade.
+	 */
+	public static final String UPGRADE_TOKEN = "h2c";
+	public static final String HEADER_HTTP2_SETTINGS = "HTTP2-Settings";
+
+	public static final int FRAME_HEADER_LENGTH = 9;
+
+	//--------------------------------< Frame types >---
+	public static final int TYPE_DATA = 0x0;
+	public static final int TYPE_HEADERS = 0x1;
+	public static final int TYPE_PRIORITY = 0x2;
+	public static final int TYPE_RST_STREAM = 0x3;
+	public static final int TYPE_SETTINGS = 0x4;
+	public static final int TYPE_PUSH_PROMISE = 0x5;
+	public static final int TYPE_PING = 0x6;
+	public static final int TYPE_GOAWAY = 0x7;
+	public static final int TYPE_WINDOW_UPDATE = 0x8;
+	public static final int TYPE_CONTINUATION = 0x9;
+
+	//--------------------------------< Frame flags >---
+	public static final int FLAG_END_STREAM = 0x1;
+	public static final int FLAG_ACK = 0x1;
+	public static final int FLAG_END_HEADERS = 0x4;
+	public static final int FLAG_PADDED = 0x8;
+	public static final int FLAG_PRIORITY = 0x20;
+
+	//--------------------------------< Settings >---
+	public static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+	public static final int SETTINGS_ENABLE_PUSH = 0x2;
+	public static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+	public static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+	public static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+	public static final int SETTINGS_MAX_HEADER_LIST_SIZE = 0x6;
+
+	public static final int DEFAULT_HEADER_TABLE_SIZE = 4096;
+	public static final int DEFAULT_WINDOW_SIZE = 65535;
+	public static final int DEFAULT_MAX_FRAME_SIZE = 16384;
+	public static final int MAX_FRAME_SIZE_UPPER_BOUND = 16777215;
+	public static final int MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+
+	//--------------------------------< Error codes >---
+	public static final int NO_ERROR = 0x0;
+	public static final int PROTOCOL_ERROR = 0x1;
+	public static final int INTERNAL_ERROR = 0x2;
+	public static final int FLOW_CONTROL_ERROR = 0x3;
+	public static final int SETTINGS_TIMEOUT = 0x4;
+	public static final int STREAM_CLOSED = 0x5;
+	public static final int FRAME_SIZE_ERROR = 0x6;
+	public static final int REFUSED_STREAM = 0x7;
+	public static final int CANCEL = 0x8;
+	public static final int COMPRESSION_ERROR = 0x9;
+	public static final int ENHANCE_YOUR_CALM = 0xb;
+}
@@ -0,0 +1,55 @@
+package com.adobe.assignment.http.h2;
+
+import java.io.IOException;
+
+/**
+ * An HTTP/2 protocol error. A connection error ends the whole connection
+ * with GOAWAY; a stream error (one with a stream ID) only resets the stream.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class Http2Exception extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int errorCode;
+	private final int streamId;
+
+	/**
+	 * Explicit Value Constructor for a connection error
+	 *
+	 * @param errorCode		The HTTP/2 error code
+	 * @param message		The reason
+	 */
+	public Http2Exception(int errorCode, String message) {
+		this(errorCode, 0, message);
+	}
+
+	/**
+	 * Explicit Value Constructor
+	 *
+	 * @param errorCode		The HTTP/2 error code
+	 * @param streamId		The stream in error, or 0 for a connection error
+	 * @param message		The reason
+	 */
+	public Http2Exception(int errorCode, int streamId, String message) {
+		super(message);
+		this.errorCode = errorCode;
+		this.streamId = streamId;
+	}
+
+	public int getErrorCode() {
+		return errorCode;
+	}
+
+	/**
+	 * @return The stream in error, or 0 if the connection is in error.
+	 */
+	public int getStreamId() {
+		return streamId;
+	}
+
+	public boolean isConnectionError() {
+		return streamId == 0;
+	}
+}
@@ -0,0 +1,123 @@
+package com.adobe.assignment.http.h2;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The static table of HPACK (RFC 7541, Appendix A). Indices start at 1.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+final class StaticTable {
+
+	private static final String[][] ENTRIES = {
+		{ ":authority", "" },
+		{ ":method", "GET" },
+		{ ":method", "POST" },
+		{ ":path", "/" },
+		{ ":path", "/index.html" },
+		{ ":scheme", "http" },
+		{ ":scheme", "https" },
+		{ ":status", "200" },
+		{ ":status", "204" },
+		{ ":status", "206" },
+		{ ":status", "304" },
+		{ ":status", "400" },
+		{ ":status", "404" },
+		{ ":status", "500" },
+		{ "accept-charset", "" },
+		{ "accept-encoding", "gzip, deflate" },
+		{ "accept-language", "" },
+		{ "accept-ranges", "" },
+		{ "accept", "" },
+		{ "access-control-allow-origin", "" },
+		{ "age", "" },
+		{ "allow", "" },
+		{ "authorization", "" },
+		{ "cache-control", "" },
+		{ "content-disposition", "" },
+		{ "content-encoding", "" },
+		{ "content-language", "" },
+		{ "content-length", "" },
+		{ "content-location", "" },
+		{ "content-range", "" },
+		{ "content-type", "" },
+		{ "cookie", "" },
+		{ "date", "" },
+		{ "etag", "" },
+		{ "expect", "" },
+		{ "expires", "" },
+		{ "from", "" },
+		{ "host", "" },
+		{ "if-match", "" },
+		{ "if-modified-since", "" },
+		{ "if-none-match", "" },
+		{ "if-range", "" },
+		{ "if-unmodified-since", "" },
+		{ "last-modified", "" },
+		{ "link", "" },
+		{ "location", "" },
+		{ "max-forwards", "" },
+		{ "proxy-authenticate", "" },
+		{ "proxy-authorization", "" },
+		{ "range", "" },
+		{ "referer", "" },
+		{ "refresh", "" },
+		{ "retry-after", "" },
+		{ "server", "" },
+		{ "set-cookie", "" },
+		{ "strict-transport-security", "" },
+		{ "transfer-encoding", "" },
+		{ "user-agent", "" },
+		{ "vary", "" },
+		{ "via", "" },
+		{ "www-authenticate", "" },
+	};
+
+	static final int LENGTH = ENTRIES.length;
+
+	/**
+	 * The index of every name (its first occurrence) and of every name with
+	 * a value.
+	 */
+	private static final Map<String, Integer> BY_NAME = new HashMap<String, Integer>();
+	private static final Map<String, Integer> BY_FIELD = new HashMap<String, Integer>();
+
+	static {
+		for (int i = LENGTH; i >= 1; i--) {
+			String[] e = ENTRIES[i - 1];
+			BY_NAME.put(e[0], i);
+			if (e[1].length() > 0) {
+				BY_FIELD.put(e[0] + '\0' + e[1], i);
+			}
+		}
+	}
+
+	private StaticTable() {
+	}
+
+	static String getName(int index) {
+		return ENTRIES[index - 1][0];
+	}
+
+	static String getValue(int index) {
+		return ENTRIES[index - 1][1];
+	}
+
+	/**
+	 * @return The index of the name, or 0 if the table does not hold it.
+	 */
+	static int indexOf(String name) {
+		Integer i = BY_NAME.get(name);
+		return (i == null) ? 0 : i;
+	}
+
+	/**
+	 * @return The index of the name with the value, or 0 if the table does
+	 *         not hold it.
+	 */
+	static int indexOf(String name, String value) {
+		Integer i = BY_FIELD.get(name + '\0' + value);
+		return (i == null) ? 0 : i;
+	}
+}
@@ -0,0 +1,32 @@
+package com.adobe.assignment.http.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A connection taken from a listener by an acceptor, and handed to its
+ * worker pool or refused.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+@Name("com.adobe.assignment.http.ConnectionAccept")
+@Label("Connection Accept")
+@Category({ "HTTP Server", "Connection" })
+@Description("A connection accepted, and handed to a worker or refused")
+@StackTrace(false)
+public class ConnectionAcceptEvent extends Event {
+
+	@Label("Remote Address")
+	public String remoteAddress;
+
+	@Label("Secure")
+	public boolean secure;
+
+	@Label("Status")
+	@Description("The status the connection was refused with, 0 if it was handed to a worker")
+	public int status;
+}
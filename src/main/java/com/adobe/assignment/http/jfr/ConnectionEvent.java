@@ -0,0 +1,51 @@
+package com.adobe.assignment.http.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A connection, from the moment a worker takes it until it is closed, and
+ * what went over it.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+@Name("com.adobe.assignment.http.Connection")
+@Label("Connection")
+@Category({ "HTTP Server", "Connection" })
+@Description("A connection served until it was closed")
+@StackTrace(false)
+public class ConnectionEvent extends Event {
+
+	private static final EventType TYPE = EventType.getEventType(ConnectionEvent.class);
+
+	@Label("Remote Address")
+	public String remoteAddress;
+
+	@Label("Secure")
+	public boolean secure;
+
+	@Label("Requests")
+	public int requests;
+
+	@Label("Bytes Read")
+	@DataAmount
+	public long bytesRead;
+
+	@Label("Bytes Written")
+	@DataAmount
+	public long bytesWritten;
+
+	/**
+	 * @return true if a recording takes these events, so that one is only
+	 *         created for a connection if so.
+	 */
+	public static boolean isRecording() {
+		return TYPE.isEnabled();
+	}
+}
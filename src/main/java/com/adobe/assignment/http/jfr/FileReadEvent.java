@@ -0,0 +1,44 @@
+package com.adobe.assignment.http.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A file of the web root read to answer a request, from opening it until
+ * it has been sent.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+@Name("com.adobe.assignment.http.FileRead")
+@Label("File Read")
+@Category({ "HTTP Server", "Request" })
+@Description("A file read from the web root and sent")
+@StackTrace(false)
+public class FileReadEvent extends Event {
+
+	private static final EventType TYPE = EventType.getEventType(FileReadEvent.class);
+
+	@Label("Path")
+	public String path;
+
+	@Label("Bytes")
+	@DataAmount
+	public long bytes;
+
+	@Label("Status")
+	public int status;
+
+	/**
+	 * @return true if a recording takes these events, so that one is only
+	 *         created for a file sent in the background if so.
+	 */
+	public static boolean isRecording() {
+		return TYPE.isEnabled();
+	}
+}
@@ -0,0 +1,53 @@
+package com.adobe.assignment.http.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A request handled by a handler of the chain, until its response was
+ * complete; for an asynchronous handler, until its stage completed.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+@Name("com.adobe.assignment.http.Handler")
+@Label("Handler Invocation")
+@Category({ "HTTP Server", "Request" })
+@Description("A request handled by a configured handler")
+@StackTrace(false)
+public class HandlerEvent extends Event {
+
+	private static final EventType TYPE = EventType.getEventType(HandlerEvent.class);
+
+	@Label("Handler")
+	public String handler;
+
+	@Label("Method")
+	public String method;
+
+	@Label("URI")
+	public String uri;
+
+	@Label("Status")
+	public int status;
+
+	@Label("Failed")
+	public boolean failed;
+
+	@Label("Bytes Written")
+	@DataAmount
+	public long bytesWritten;
+
+	/**
+	 * @return true if a recording takes these events, so that one is only
+	 *         created for an asynchronous handler if so.
+	 */
+	public static boolean isRecording() {
+		return TYPE.isEnabled();
+	}
+}
@@ -0,0 +1,34 @@
+package com.adobe.assignment.http.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Reading the head of a request, from the end of its request line, so that
+ * the time the connection was idle is left out, to the end of its headers.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+@Name("com.adobe.assignment.http.RequestParse")
+@Label("Request Parse")
+@Category({ "HTTP Server", "Request" })
+@Description("The headers of a request read and parsed")
+@StackTrace(false)
+public class RequestParseEvent extends Event {
+
+	@Label("Method")
+	public String method;
+
+	@Label("URI")
+	public String uri;
+
+	@Label("Bytes")
+	@Description("The size of the head of the request, request line included")
+	@DataAmount
+	public long bytes;
+}
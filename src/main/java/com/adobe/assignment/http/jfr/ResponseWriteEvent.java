@@ -0,0 +1,50 @@
+package com.adobe.assignment.http.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A response written, from its commit until it was flushed, or closed
+ * with its connection.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+@Name("com.adobe.assignment.http.ResponseWrite")
+@Label("Response Write")
+@Category({ "HTTP Server", "Request" })
+@Description("A response written to the client")
+@StackTrace(false)
+public class ResponseWriteEvent extends Event {
+
+	private static final EventType TYPE = EventType.getEventType(ResponseWriteEvent.class);
+
+	@Label("Status")
+	public int status;
+
+	@Label("Bytes")
+	@Description("The bytes written, head included")
+	@DataAmount
+	public long bytes;
+
+	@Label("Completed")
+	@Description("Whether the response was written to its end")
+	public boolean completed;
+
+	@Label("Persistent")
+	@Description("Whether the connection stays open for the next request")
+	public boolean persistent;
+
+	/**
+	 * @return true if a recording takes these events, so that one is only
+	 *         created for a response if so.
+	 */
+	public static boolean isRecording() {
+		return TYPE.isEnabled();
+	}
+}
@@ -0,0 +1,66 @@
+package com.adobe.assignment.http.methods;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+import com.adobe.assignment.http.HttpRequest;
+import com.adobe.assignment.http.HttpResponse;
+
+/**
+ * An HttpMethodHandler that does not make the server wait while it waits,
+ * e.g. for the disk or for an upstream server. Instead of answering the
+ * request before it returns, it starts the work and returns a stage that
+ * completes once the response has been written, by whichever thread
+ * finishes the work. The server does not hold a thread for the request in
+ * the meantime.
+ *
+ * If the client goes away, or the request deadline expires, before the
+ * stage completes, the server cancels it (by means of
+ * toCompletableFuture().cancel()), and closes the connection. A handler
+ * that returns a future of its own can stop its work when that future is
+ * cancelled.
+ *
+ * Handlers implementing only HttpMethodHandler are called as before, on the
+ * thread serving the request; the server treats them as handlers whose
+ * stage completes when handle() returns.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public interface AsyncHttpMethodHandler extends HttpMethodHandler {
+
+	/**
+	 * Starts handling the given HTTP request. The request and the response
+	 * stay valid until the returned stage completes.
+	 *
+	 * @param request		The request to handle.
+	 * @param response		The response to send to the client.
+	 * @return				null, if this handler cannot handle the request,
+	 * 						and otherwise a stage that completes once the
+	 * 						response has been written. A stage completing
+	 * 						exceptionally is answered with 500 (Internal
+	 * 						Error) unless the response has been committed.
+	 */
+	public CompletionStage<Void> handleAsync(HttpRequest request, HttpResponse response);
+
+	/**
+	 * Handles the request on the calling thread, waiting for the stage, for
+	 * callers that need to know when the response has been written.
+	 *
+	 * @see HttpMethodHandler#handle(HttpRequest, HttpResponse)
+	 */
+	public default boolean handle(HttpRequest request, HttpResponse response) {
+		CompletionStage<Void> stage = handleAsync(request, response);
+		if (stage == null) {
+			return false;
+		}
+		try {
+			stage.toCompletableFuture().join();
+		} catch (CompletionException | CancellationException e) {
+			if (!response.isCommitted()) {
+				response.sendError(HttpResponse.SC_INTERNAL_ERROR);
+			}
+		}
+		return true;
+	}
+}
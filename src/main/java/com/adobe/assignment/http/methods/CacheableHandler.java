@@ -0,0 +1,29 @@
+package com.adobe.assignment.http.methods;
+
+import com.adobe.assignment.http.HttpRequest;
+import com.adobe.assignment.http.HttpResponse;
+
+/**
+ * An HttpMethodHandler whose responses may be served from the server's
+ * response cache. The server caches a response only if the handler that
+ * produced it implements this interface and declares a positive TTL for it.
+ *
+ * Responses are cached by method, request URI and the request headers
+ * configured in webserver.cache.vary. A handler must therefore only declare
+ * a TTL for responses that depend on nothing else.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public interface CacheableHandler extends HttpMethodHandler {
+
+	/**
+	 * Determines how long the response to the given request may be served
+	 * from the cache. Called after the response has been written.
+	 *
+	 * @param request		The request that was handled.
+	 * @param response		The response that was sent.
+	 * @return				The time to live in milliseconds; zero or less
+	 * 						if the response must not be cached.
+	 */
+	public long getCacheTtl(HttpRequest request, HttpResponse response);
+}
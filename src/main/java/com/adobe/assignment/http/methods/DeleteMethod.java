@@ -1,25 +1,82 @@
 package com.adobe.assignment.http.methods;
 
 import java.io.IOException;
-import java.util.Iterator;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.adobe.assignment.http.HttpConstants;
 import com.adobe.assignment.http.HttpRequest;
 import com.adobe.assignment.http.HttpResponse;
+import com.adobe.assignment.http.auth.Authenticator;
+import com.adobe.assignment.http.auth.CredentialStore;
+import com.adobe.assignment.http.auth.StoreAuthenticator;
 import com.adobe.assignment.http.server.ServerConfig;
 
 /**
  *  A DELETE request handler. This handler knows how to service HTTP DELETE requests.
- *  This implementation will do a check on the request to test if the authorization
- *  header field is set. Otherwise deleting the resource will fail.
- *  
+ *  This implementation authenticates the request (see Authenticator) and refuses
+ *  it with 401 (Unauthorized) unless it carries valid credentials. Otherwise deleting
+ *  the resource will fail.
+ *
+ *  A file or a whole directory is deleted by moving it into the Trash, so the
+ *  request does not wait for the file system to remove it. A cached copy of the
+ *  resource is invalidated by the response cache (see ResponseCache).
+ *
+ *  The credentials are checked against a credential store, and the trash placed,
+ *  as configured by the parameters of the handler in http_handlers.xml:
+ *
+ *  <pre>
+ *  &lt;param name="credentials" value="credentials.txt" /&gt;
+ *  &lt;param name="realm" value="httpserver" /&gt;
+ *  &lt;param name="cacheSize" value="1024" /&gt;
+ *  &lt;param name="cacheTtl" value="60000" /&gt;
+ *  &lt;param name="trash" value="/var/www/.trash" /&gt;
+ *  &lt;param name="reclaimThreads" value="2" /&gt;
+ *  </pre>
+ *
+ *  Without a credential store, every request is refused.
  */
 public class DeleteMethod implements HttpMethodHandler {
 
+	private static final Logger log = LoggerFactory.getLogger(DeleteMethod.class);
+
 	private ServerConfig config;
-	
+	private PathResolver resolver;
+
+	private Authenticator authenticator;
+	private String credentials;
+	private String realm = "httpserver";
+	private int cacheSize = 1024;
+	private long cacheTtl = 60000;
+
+	private Trash trash;
+	private String trashDir;
+	private int reclaimThreads = 2;
+
 	public void init(ServerConfig config) {
 		this.config = config;
+		this.resolver = new PathResolver(config.getPathCacheSize());
+		if (authenticator == null && credentials != null) {
+			try {
+				CredentialStore store = CredentialStore.load(credentials);
+				authenticator = new StoreAuthenticator(store, realm, cacheSize, cacheTtl);
+			} catch (IOException e) {
+				log.warn("Failed to load the credentials " + credentials + ": " + e.getMessage());
+			}
+		}
+		if (authenticator == null) {
+			log.warn("No credentials configured; DELETE requests are refused");
+		}
+		if (config.getWebRoot() != null) {
+			trash = new Trash((trashDir != null) ? Paths.get(trashDir)
+					: Paths.get(config.getWebRoot(), Trash.NAME), reclaimThreads);
+			config.addTrash(trash);
+		}
 	}
 
 	/**
@@ -27,52 +84,139 @@ public class DeleteMethod implements HttpMethodHandler {
 	 */
 	public boolean handle(HttpRequest request, HttpResponse response) {
 		if (canHandle(request)) {
-			if (isAuthorizationPresent(request)) {
-				doDelete(request, response);
+			if (isAuthorized(request)) {
+				if (trash == null) {
+					response.sendError(HttpResponse.SC_NOT_FOUND);
+				} else {
+					doDelete(request, response);
+				}
 			} else {
+				response.setHeader("WWW-Authenticate", (authenticator != null)
+						? authenticator.getChallenge() : "Basic realm=\"" + realm + "\"");
 				response.sendError(HttpResponse.SC_UNAUTHORIZED);
 			}
 			return true;
 		}
 		return false;
 	}
-	
+
 	/**
-	 * Checks if the authorization header is present in the request.
-	 * 
-	 * Note: For now we do not do anything with the authorization header value.
-	 * An improvement here will  be to decode the authorization header value
-	 * and use it to authenticate the HTTP user performing the DELETE request.
-	 * 
+	 * Checks if the request carries the credentials of a known user.
+	 *
 	 * @param request     The HTTP request
-	 * @return            True, if the authorization header is present
-	 * 				      in the request and false otherwise.
+	 * @return            True, if the authenticator knows the user of the
+	 * 				      request and false otherwise.
 	 */
-	private boolean isAuthorizationPresent(HttpRequest request) {
-		Iterator<String> it = request.getHeaderNames();
-		while (it.hasNext()) {
-			String headerName = it.next();
-			if (headerName.equals("Authorization")) {				
-				return true;
-			}
-		}
-		return false;
+	private boolean isAuthorized(HttpRequest request) {
+		return authenticator != null && authenticator.authenticate(request) != null;
 	}
-	
+
+	/**
+	 * Deletes the file or directory named by the request URI. It is moved
+	 * into the trash and gone from the web root when the response is sent;
+	 * removing it from the disk is left to the trash's reclaimer.
+	 */
 	public void doDelete(HttpRequest request, HttpResponse response) {
-		// TODO: delete the resource
-		
+		Path root = Paths.get(config.getWebRoot()).toAbsolutePath().normalize();
+		String uri = resolver.resolve(request.getPath());
+		if (uri == null) {
+			response.sendError(HttpResponse.SC_BAD_REQUEST);
+			return;
+		}
+		Path path;
+		try {
+			path = root.resolve(uri.substring(1)).normalize();
+		} catch (InvalidPathException e) {
+			response.sendError(HttpResponse.SC_BAD_REQUEST);
+			return;
+		}
+		if (!path.startsWith(root) || path.equals(root) || trash.contains(path)) {
+			response.sendError(HttpResponse.SC_FORBIDDEN);
+			return;
+		}
+		try {
+			trash.delete(path);
+		} catch (NoSuchFileException e) {
+			response.sendError(HttpResponse.SC_NOT_FOUND);
+			return;
+		} catch (IOException e) {
+			log.warn("Failed to delete " + path + ": " + e.getMessage());
+			response.sendError(HttpResponse.SC_INTERNAL_ERROR);
+			return;
+		}
+
 		response.setStatus(HttpResponse.SC_OK);
 		try {
 			response.write();
 		} catch (IOException e) {
 			response.sendError(HttpResponse.SC_INTERNAL_ERROR);
 		}
-		
+
+	}
+
+	/**
+	 * @return The trash deleted resources are moved to.
+	 */
+	public Trash getTrash() {
+		return trash;
 	}
-	
+
 	public boolean canHandle(HttpRequest request) {
 		return request.getMethod().equals(HttpConstants.METHOD_DELETE);
 	}
 
+	/**
+	 * @param authenticator	Authenticates the requests, in place of the
+	 * 						credential store
+	 */
+	public void setAuthenticator(Authenticator authenticator) {
+		this.authenticator = authenticator;
+	}
+
+	/**
+	 * @param credentials	The file (or class path resource) of the
+	 * 						credential store
+	 */
+	public void setCredentials(String credentials) {
+		this.credentials = credentials.trim();
+	}
+
+	/**
+	 * @param trash	The directory deleted resources are moved to, on the file
+	 * 				system of the web root; .trash in the web root by default
+	 */
+	public void setTrash(String trash) {
+		this.trashDir = trash.trim();
+	}
+
+	/**
+	 * @param reclaimThreads	The number of threads removing the trash
+	 */
+	public void setReclaimThreads(String reclaimThreads) {
+		this.reclaimThreads = Math.max(1, Integer.parseInt(reclaimThreads.trim()));
+	}
+
+	/**
+	 * @param realm	The realm named in the challenge of a 401 response
+	 */
+	public void setRealm(String realm) {
+		this.realm = realm.trim();
+	}
+
+	/**
+	 * @param cacheSize	How many verified credentials are remembered; 0
+	 * 					verifies every request
+	 */
+	public void setCacheSize(String cacheSize) {
+		this.cacheSize = Math.max(0, Integer.parseInt(cacheSize.trim()));
+	}
+
+	/**
+	 * @param cacheTtl	How long verified credentials are remembered, in
+	 * 					milliseconds
+	 */
+	public void setCacheTtl(String cacheTtl) {
+		this.cacheTtl = Math.max(0, Long.parseLong(cacheTtl.trim()));
+	}
+
 }
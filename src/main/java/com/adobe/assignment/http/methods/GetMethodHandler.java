@@ -4,11 +4,21 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiConsumer;
+
+import org.apache.commons.io.IOUtils;
 
 import com.adobe.assignment.http.HttpConstants;
 import com.adobe.assignment.http.HttpRequest;
 import com.adobe.assignment.http.HttpResponse;
 import com.adobe.assignment.http.MIMETyper;
+import com.adobe.assignment.http.jfr.FileReadEvent;
 import com.adobe.assignment.http.server.ServerConfig;
 
 
@@ -17,28 +27,50 @@ import com.adobe.assignment.http.server.ServerConfig;
  *  This implementation simply reads the file present in the request URI from
  *  the file system and sends it back to the client.
  *  
+ *  A file larger than what is read ahead of a lagging client (see
+ *  ServerConfig.getWriteHighWatermark()) is sent at the client's pace by means
+ *  of HttpResponse.writeAsync(), so a slow client does not hold a thread.
+ *  
+ *  The request path is decoded and normalized by a PathResolver, which
+ *  rejects paths that go above the web root with 400 (Bad Request). Nothing
+ *  in a trash of deleted resources (see Trash) is served: neither the
+ *  default one, .trash in the web root, nor those of the server's DELETE
+ *  handlers that lie in the web root, wherever they are configured.
+ *  
+ *  Reading and sending a file is recorded as a FileReadEvent, if a JDK
+ *  Flight Recorder recording takes it.
+ *  
  */
-public class GetMethodHandler implements HttpMethodHandler {
+public class GetMethodHandler implements AsyncHttpMethodHandler {
+
+	private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
 
 	private ServerConfig config;
+	private PathResolver resolver;
+
+	/**
+	 * The paths of the trashes below the web root, e.g. "/.trash"; taken from
+	 * the configuration when the first request comes, once every handler of
+	 * the server has been initialized.
+	 */
+	private volatile String[] trashPaths;
 	
-	private static final int EOF = -1;
 	/**
 	 * @see HttpMethodHandler#init(ServerConfig, MIMETyper)
 	 */
 	public void init(ServerConfig config) {		
 		this.config = config;
+		this.resolver = new PathResolver(config.getPathCacheSize());
 	}
 	
 	/**
-	 * @see HttpMethodHandler#handle(HttpRequest, HttpResponse)
+	 * @see AsyncHttpMethodHandler#handleAsync(HttpRequest, HttpResponse)
 	 */
-	public boolean handle(HttpRequest request, HttpResponse response) {
+	public CompletionStage<Void> handleAsync(HttpRequest request, HttpResponse response) {
 		if (canHandle(request)) {
-			doGet(request, response);
-			return true;
+			return doGet(request, response);
 		}
-		return false;
+		return null;
 	}
 	
 	/**
@@ -54,37 +86,110 @@ public class GetMethodHandler implements HttpMethodHandler {
 		return request.getMethod().equals(HttpConstants.METHOD_GET);
 	}
 	
-	private void doGet(HttpRequest request, HttpResponse response) {
+	/**
+	 * Sends the file named by the request URI. The file is streamed to the
+	 * client through the response's pooled buffer, so the size of the file
+	 * does not matter to the heap.
+	 */
+	private CompletableFuture<Void> doGet(HttpRequest request, HttpResponse response) {
 		MIMETyper mt = MIMETyper.createInstance();
 		
 		FileInputStream fis = null;
-		File file = new File(config.getWebRoot(), request.getRequestURI());
-		
-		int size = (int) file.length();		
-		byte[] b = new byte[size];
+		String path = resolver.resolve(request.getPath());
+		if (path == null) {
+			response.sendError(HttpResponse.SC_BAD_REQUEST);
+			return DONE;
+		}
+		File file = new File(config.getWebRoot(), path);
 		
-		if (file.exists()) {
+		if (file.exists() && !isTrash(path)) {
+			final FileReadEvent event = FileReadEvent.isRecording() ? new FileReadEvent() : null;
+			if (event != null) {
+				event.begin();
+			}
+			long length = 0;
 			try {
 				fis = new FileInputStream(file);
-				System.out.println(mt.getContentTypeFor(file.getName()));
+				// may exceed 2GB.
+				length = file.length();
 				response.setContentType(mt.getContentTypeFor(file.getName()));
-				response.setContentLength(size);
-				int ch = fis.read(b, 0, b.length);
-				while (ch != EOF) {
-					response.setContent(b);
-					ch = fis.read(b, 0, b.length);
-				}				
-				
-				response.write();
+				response.setContentLength(length);
+				response.getTiming().mark("open");
+				if (length > config.getWriteHighWatermark()) {
+					final FileInputStream body = fis;
+					final long size = length;
+					fis = null;
+					// returned as is, for cancelling it stops sending.
+					CompletableFuture<Void> written = response.writeAsync(body);
+					written.whenComplete(new BiConsumer<Void, Throwable>() {
+						public void accept(Void result, Throwable failure) {
+							IOUtils.closeQuietly(body);
+							record(event, file, size, response);
+						}
+					});
+					return written;
+				}
+				response.write(fis);
 			} catch (FileNotFoundException e) {
 				response.sendError(HttpResponse.SC_NOT_FOUND);
 			} catch (IOException e) {
 				response.sendError(HttpResponse.SC_INTERNAL_ERROR);
+			} finally {
+				if (fis != null) {
+					IOUtils.closeQuietly(fis);
+					record(event, file, length, response);
+				}
 			}
 		} else {
 			// file does not exist
 			response.sendError(HttpResponse.SC_NOT_FOUND);
 		}
+		return DONE;
 	}	
 
+	private static void record(FileReadEvent event, File file, long length, HttpResponse response) {
+		if (event != null && event.shouldCommit()) {
+			event.path = file.getPath();
+			event.bytes = length;
+			event.status = response.getStatus();
+			event.commit();
+		}
+	}
+
+	/**
+	 * @param path			The decoded and normalized path of a request
+	 * @return				true if the path names a trash or lies in one
+	 */
+	private boolean isTrash(String path) {
+		String[] trashes = trashPaths;
+		if (trashes == null) {
+			trashes = trashPaths = getTrashPaths();
+		}
+		for (String trash : trashes) {
+			if (path.startsWith(trash) && (path.length() == trash.length() || path.charAt(trash.length()) == '/')) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return The paths of the trashes below the web root: the default one,
+	 *         even if no DELETE handler opened it, and those of the DELETE
+	 *         handlers of the server.
+	 */
+	private String[] getTrashPaths() {
+		List<String> paths = new ArrayList<String>();
+		paths.add("/" + Trash.NAME);
+		if (config.getWebRoot() != null) {
+			Path root = Paths.get(config.getWebRoot()).toAbsolutePath().normalize();
+			for (Trash trash : config.getTrashes()) {
+				Path dir = trash.getDirectory();
+				if (dir.startsWith(root) && !dir.equals(root)) {
+					paths.add("/" + root.relativize(dir).toString().replace(File.separatorChar, '/'));
+				}
+			}
+		}
+		return paths.toArray(new String[paths.size()]);
+	}
 }
@@ -17,6 +17,11 @@ public interface HttpMethodHandler {
 	/**
 	 * Handle and service the given HTTP request.
 	 * 
+	 * The request and the response are only valid until this method
+	 * returns: the server resets and reuses them for the next request it
+	 * serves. A handler must not keep references to them, or to their
+	 * headers, unless it detaches the response (see HttpResponse.detach()).
+	 * 
 	 * @param request		The request to handle.
 	 * @param response		The response to send to the client.
 	 * @return				true, if this handler can handle the request
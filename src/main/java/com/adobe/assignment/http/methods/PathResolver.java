@@ -0,0 +1,174 @@
+package com.adobe.assignment.http.methods;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Turns the path of a request URI into the path of a resource below the web
+ * root: escapes are decoded, empty and "." segments dropped, and ".."
+ * segments applied to the segments before them; a path that would go above
+ * the root is rejected. The result always starts with "/", and ends with "/"
+ * if the URI names a directory.
+ *
+ * The URI is decoded and normalized in a single pass over its bytes: each
+ * segment is decoded into the output as it is read, and undone again if it
+ * turns out to be "..". Escapes that would change the structure of the path
+ * (an encoded "/" or "\", or a NUL) are rejected rather than decoded, as are
+ * escapes that are not valid UTF-8.
+ *
+ * The results are remembered, by the URI as the client sent it, so that
+ * the paths asked for most often are resolved by a single lookup. The cache
+ * is bounded: once it is full, it is cleared, and the paths that are asked
+ * for again fill it anew.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class PathResolver {
+
+	private final ConcurrentHashMap<String, String> cache;
+	private final int capacity;
+
+	/**
+	 * Explicit Value Constructor
+	 *
+	 * @param capacity		The most paths remembered; 0 remembers none
+	 */
+	public PathResolver(int capacity) {
+		this.capacity = capacity;
+		this.cache = new ConcurrentHashMap<String, String>(Math.max(16, Math.min(capacity, 4096)));
+	}
+
+	/**
+	 * Resolves the path of a request URI, from the cache if it was resolved
+	 * before.
+	 *
+	 * @param uri			The path of a request URI, as the client sent it
+	 * @return				The decoded and normalized path, or null if the
+	 * 						URI is malformed or goes above the root
+	 */
+	public String resolve(String uri) {
+		if (uri == null) {
+			return null;
+		}
+		String path = cache.get(uri);
+		if (path == null) {
+			path = normalize(uri);
+			// rejected URIs are not remembered, they should be rare.
+			if (path != null && capacity > 0) {
+				if (cache.size() >= capacity) {
+					cache.clear();
+				}
+				cache.put(uri, path);
+			}
+		}
+		return path;
+	}
+
+	/**
+	 * @return The number of paths remembered.
+	 */
+	public int size() {
+		return cache.size();
+	}
+
+	/**
+	 * Decodes and normalizes the path of a request URI; a query, if any, is
+	 * dropped.
+	 *
+	 * @param uri			The path of a request URI, as the client sent it
+	 * @return				The decoded and normalized path, or null if the
+	 * 						URI is malformed or goes above the root
+	 */
+	public static String normalize(String uri) {
+		int end = uri.length();
+		for (int i = 0; i < end; i++) {
+			char c = uri.charAt(i);
+			if (c == '?' || c == '#') {
+				end = i;
+				break;
+			}
+		}
+		if (end == 0) {
+			return null;
+		}
+
+		// the decoded bytes; every segment in it starts with '/'. A path
+		// that does not start with '/' is taken as relative to the root.
+		byte[] out = new byte[end + 1];
+		int n = 0;
+		boolean ascii = true;
+		int i = (uri.charAt(0) == '/') ? 0 : -1;
+		while (i < end) {
+			// i is at a '/'; decode the segment after it.
+			int segment = n;
+			out[n++] = '/';
+			i++;
+			while (i < end && uri.charAt(i) != '/') {
+				char c = uri.charAt(i);
+				if (c == '%') {
+					int b = (i + 2 < end) ? decodeHex(uri.charAt(i + 1), uri.charAt(i + 2)) : -1;
+					if (b <= 0 || b == '/' || b == '\\') {
+						return null;
+					}
+					out[n++] = (byte) b;
+					ascii &= b < 0x80;
+					i += 3;
+				} else if (c > 0xff || c == '\\') {
+					return null;
+				} else {
+					out[n++] = (byte) c;
+					ascii &= c < 0x80;
+					i++;
+				}
+			}
+			int length = n - segment - 1;
+			if (length == 0 || (length == 1 && out[segment + 1] == '.')) {
+				// "//" or "/./": drop the segment, but keep a trailing slash.
+				n = segment;
+			} else if (length == 2 && out[segment + 1] == '.' && out[segment + 2] == '.') {
+				if (segment == 0) {
+					return null;
+				}
+				n = segment - 1;
+				while (out[n] != '/') {
+					n--;
+				}
+			}
+		}
+		char last = uri.charAt(end - 1);
+		if (n == 0 || last == '/' || (last == '.' && endsWithDotSegment(uri, end))) {
+			out[n++] = '/';
+		}
+		if (ascii) {
+			return new String(out, 0, n, StandardCharsets.ISO_8859_1);
+		}
+		CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPORT)
+				.onUnmappableCharacter(CodingErrorAction.REPORT);
+		try {
+			CharBuffer chars = decoder.decode(ByteBuffer.wrap(out, 0, n));
+			return chars.toString();
+		} catch (CharacterCodingException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return true if the URI ends with a "." or ".." segment, which names a
+	 *         directory.
+	 */
+	private static boolean endsWithDotSegment(String uri, int end) {
+		return uri.charAt(end - 2) == '/' || (uri.charAt(end - 2) == '.' && uri.charAt(end - 3) == '/');
+	}
+
+	private static int decodeHex(char high, char low) {
+		int h = Character.digit(high, 16);
+		int l = Character.digit(low, 16);
+		return (h < 0 || l < 0) ? -1 : (h << 4) | l;
+	}
+}
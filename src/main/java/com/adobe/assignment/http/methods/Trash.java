@@ -0,0 +1,220 @@
+package com.adobe.assignment.http.methods;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deletes files and directory trees without making the request wait for the
+ * file system. A deleted resource is renamed into the trash directory, which
+ * is a single atomic rename however big the tree, so it is gone from the web
+ * root when delete() returns. A reclaimer then removes what is in the trash
+ * in the background.
+ *
+ * The reclaimer is a small ForkJoinPool: every directory of a tree is a task
+ * of its own, forked so that the subtrees of a big tree are removed in
+ * parallel, and the files of a directory are removed in batches, each a task
+ * as well. Whatever a previous run of the server left in the trash is
+ * reclaimed when the trash is opened.
+ *
+ * The trash must be on the file system of the web root, for the rename to be
+ * atomic. The trash directories of a server are listed in its configuration
+ * (see ServerConfig.getTrashes()), so that the GET handler does not serve
+ * what is in them wherever they are configured, and so that their
+ * reclaimers are shut down when the server stops.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class Trash {
+
+	private static final Logger log = LoggerFactory.getLogger(Trash.class);
+
+	/**
+	 * The name of the trash directory in the web root, unless configured
+	 * otherwise. The GET handler does not serve it.
+	 */
+	public static final String NAME = ".trash";
+
+	/**
+	 * The number of files of a directory removed by one task.
+	 */
+	private static final int BATCH = 64;
+
+	private final Path dir;
+	private final ForkJoinPool reclaimer;
+
+	private final AtomicLong sequence = new AtomicLong();
+	private final LongAdder reclaimed = new LongAdder();
+	private volatile boolean created;
+
+	/**
+	 * Explicit Value Constructor (Reclaims what the trash holds already)
+	 *
+	 * @param dir			The trash directory
+	 * @param threads		The number of threads removing files
+	 */
+	public Trash(Path dir, int threads) {
+		this.dir = dir.toAbsolutePath().normalize();
+		this.reclaimer = new ForkJoinPool(threads);
+		if (Files.isDirectory(dir)) {
+			created = true;
+			try (DirectoryStream<Path> left = Files.newDirectoryStream(dir)) {
+				for (Path entry : left) {
+					reclaimer.execute(new Reclaim(entry));
+				}
+			} catch (IOException e) {
+				log.warn("Failed to list the trash " + dir + ": " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Moves a file or a directory tree into the trash, to be removed in the
+	 * background.
+	 *
+	 * @param path			The file or directory to delete
+	 * @throws NoSuchFileException	if there is no such file
+	 * @throws IOException	if it cannot be moved into the trash
+	 */
+	public void delete(Path path) throws IOException {
+		if (!created) {
+			Files.createDirectories(dir);
+			created = true;
+		}
+		// unique, for the same name may be deleted again before it is gone.
+		Path trashed = dir.resolve(sequence.incrementAndGet() + "-" + System.nanoTime() + "-" + path.getFileName());
+		Files.move(path, trashed, StandardCopyOption.ATOMIC_MOVE);
+		reclaimer.execute(new Reclaim(trashed));
+	}
+
+	/**
+	 * @return true if the path is the trash or lies in it.
+	 */
+	public boolean contains(Path path) {
+		return path.toAbsolutePath().normalize().startsWith(dir);
+	}
+
+	/**
+	 * @return The trash directory, absolute and normalized.
+	 */
+	public Path getDirectory() {
+		return dir;
+	}
+
+	/**
+	 * @return The number of files and directories removed so far.
+	 */
+	public long getReclaimed() {
+		return reclaimed.sum();
+	}
+
+	/**
+	 * Waits until everything in the trash has been removed.
+	 *
+	 * @param timeout		The most time to wait, in milliseconds
+	 * @return				true if nothing remains to be removed
+	 */
+	public boolean awaitReclaimed(long timeout) {
+		return reclaimer.awaitQuiescence(timeout, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops the reclaimer once it has removed what it was given; nothing may
+	 * be deleted afterwards. Whatever is left is reclaimed when the trash is
+	 * opened again.
+	 */
+	public void close() {
+		reclaimer.shutdown();
+	}
+
+	private void remove(Path path) {
+		try {
+			Files.deleteIfExists(path);
+			reclaimed.increment();
+		} catch (IOException e) {
+			log.warn("Failed to remove " + path + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Removes a file, or a directory tree: the subdirectories and the
+	 * batches of files are forked, and the directory is removed once they
+	 * are done.
+	 */
+	private final class Reclaim extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Path path;
+
+		Reclaim(Path path) {
+			this.path = path;
+		}
+
+		protected void compute() {
+			if (!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+				remove(path);
+				return;
+			}
+			List<ForkJoinTask<?>> forked = new ArrayList<ForkJoinTask<?>>();
+			List<Path> files = new ArrayList<Path>(BATCH);
+			try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+				for (Path entry : entries) {
+					if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+						forked.add(new Reclaim(entry).fork());
+					} else {
+						files.add(entry);
+						if (files.size() == BATCH) {
+							forked.add(new Batch(files).fork());
+							files = new ArrayList<Path>(BATCH);
+						}
+					}
+				}
+			} catch (IOException e) {
+				log.warn("Failed to list " + path + ": " + e.getMessage());
+			}
+			for (Path file : files) {
+				remove(file);
+			}
+			for (ForkJoinTask<?> task : forked) {
+				task.join();
+			}
+			remove(path);
+		}
+	}
+
+	/**
+	 * Removes a batch of files of a directory.
+	 */
+	private final class Batch extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<Path> files;
+
+		Batch(List<Path> files) {
+			this.files = files;
+		}
+
+		protected void compute() {
+			for (Path file : files) {
+				remove(file);
+			}
+		}
+	}
+}
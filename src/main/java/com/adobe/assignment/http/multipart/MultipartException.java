@@ -0,0 +1,46 @@
+package com.adobe.assignment.http.multipart;
+
+import java.io.IOException;
+
+import com.adobe.assignment.http.HttpResponse;
+
+/**
+ * A multipart body that is malformed or exceeds the limits of the parser.
+ * Carries the status to answer the request with.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class MultipartException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int status;
+
+	/**
+	 * Explicit Value Constructor for a malformed body
+	 *
+	 * @param message		The reason
+	 */
+	public MultipartException(String message) {
+		this(HttpResponse.SC_BAD_REQUEST, message);
+	}
+
+	/**
+	 * Explicit Value Constructor
+	 *
+	 * @param status		The status to answer the request with
+	 * @param message		The reason
+	 */
+	public MultipartException(int status, String message) {
+		super(message);
+		this.status = status;
+	}
+
+	/**
+	 * @return The status to answer the request with, e.g. 400 (Bad Request)
+	 *         or 413 (Payload Too Large).
+	 */
+	public int getStatus() {
+		return status;
+	}
+}
@@ -0,0 +1,537 @@
+package com.adobe.assignment.http.multipart;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.adobe.assignment.http.ByteBufferPool;
+import com.adobe.assignment.http.HttpRequest;
+import com.adobe.assignment.http.HttpResponse;
+import com.adobe.assignment.http.NameValueMapper;
+import com.adobe.assignment.http.server.ServerConfig;
+
+/**
+ * A streaming parser of multipart/form-data bodies (RFC 7578), as browsers
+ * upload forms and files. The body is read through a single buffer leased
+ * from the ByteBufferPool, and each part is handed out as a stream of its
+ * content, so a body of any size is parsed in constant memory:
+ *
+ * <pre>
+ * MultipartParser parser = MultipartParser.create(request, config);
+ * try {
+ *     Part part;
+ *     while ((part = parser.next()) != null) {
+ *         ... part.getName(), part.getInputStream() ...
+ *     }
+ * } finally {
+ *     parser.close();
+ * }
+ * </pre>
+ *
+ * Alternatively, readAll() keeps all the parts, small ones in memory and
+ * larger ones spilled to files.
+ *
+ * The delimiters between the parts are found with the Boyer-Moore-Horspool
+ * algorithm, whose skip table is computed once per body: the bytes of the
+ * content are mostly looked at once per delimiter length rather than one by
+ * one. The buffer is searched once per read from the body; the content up to
+ * a delimiter, or up to the bytes that may start one, is then handed out
+ * without searching again.
+ *
+ * The number of parts, the size of a part and the size of the headers of a
+ * part are limited; a body over the limits fails with a MultipartException
+ * carrying 413 (Payload Too Large).
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class MultipartParser implements Closeable {
+
+	private static final int BUFFER_SIZE = 16384;
+	private static final int MAX_HEADER_SIZE = 8192;
+
+	/**
+	 * The longest boundary RFC 2046 allows.
+	 */
+	private static final int MAX_BOUNDARY = 70;
+
+	private static final byte CR = '\r';
+	private static final byte LF = '\n';
+
+	private final InputStream in;
+
+	/**
+	 * The delimiter, CRLF "--" boundary, and how far the search may skip
+	 * ahead by the last byte of a window.
+	 */
+	private final byte[] delimiter;
+	private final int[] skip = new int[256];
+
+	private final int maxParts;
+	private final long maxPartSize;
+	private final int memoryThreshold;
+	private final Path spillDirectory;
+
+	private ByteBuffer buffer;
+	private byte[] buf;
+
+	/**
+	 * The bytes buffered are buf[start, end). Content may be handed out up to
+	 * limit: the delimiter found at found, or the bytes that may not start
+	 * one.
+	 */
+	private int start, end, limit;
+	private int found = -1;
+	private boolean eof;
+
+	/**
+	 * The part being read, the size of its content so far, the number of
+	 * parts, and whether the last part has been read.
+	 */
+	private PartStream current;
+	private long partSize;
+	private int parts;
+	private boolean finished;
+
+	/**
+	 * Explicit Value Constructor
+	 *
+	 * @param in				The body, ending where the body ends
+	 * @param boundary			The boundary of the body
+	 * @param maxParts			The most parts the body may have
+	 * @param maxPartSize		The most bytes of content a part may have; 0
+	 * 							for no limit
+	 * @param memoryThreshold	The largest part readAll() keeps in memory
+	 * @param spillDirectory	Where readAll() spills larger parts to, the
+	 * 							temporary directory if null
+	 * @throws MultipartException if the boundary is invalid
+	 */
+	public MultipartParser(InputStream in, String boundary, int maxParts, long maxPartSize, int memoryThreshold,
+			Path spillDirectory) throws MultipartException {
+		if (boundary == null || boundary.isEmpty() || boundary.length() > MAX_BOUNDARY) {
+			throw new MultipartException("Invalid multipart boundary");
+		}
+		this.in = in;
+		this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+		this.maxParts = maxParts;
+		this.maxPartSize = maxPartSize;
+		this.memoryThreshold = memoryThreshold;
+		this.spillDirectory = spillDirectory;
+
+		int m = delimiter.length;
+		for (int i = 0; i < skip.length; i++) {
+			skip[i] = m;
+		}
+		for (int i = 0; i < m - 1; i++) {
+			skip[delimiter[i] & 0xff] = m - 1 - i;
+		}
+
+		this.buffer = ByteBufferPool.getInstance().acquire(BUFFER_SIZE);
+		this.buf = buffer.array();
+		// the first delimiter has no CRLF in front of it; the preamble is
+		// read as the content of a part before the first.
+		buf[0] = CR;
+		buf[1] = LF;
+		end = 2;
+		scan();
+		current = new PartStream();
+	}
+
+	/**
+	 * Creates a parser for the body of a request, with the limits of the
+	 * server's configuration.
+	 *
+	 * @param request		The request
+	 * @param config		The server's configuration
+	 * @return				The parser, which must be closed
+	 * @throws MultipartException if the request carries no multipart/form-data
+	 *             body of a known length
+	 */
+	public static MultipartParser create(HttpRequest request, ServerConfig config) throws MultipartException {
+		String type = request.getHeader("Content-Type");
+		if (!isMultipart(request)) {
+			throw new MultipartException(HttpResponse.SC_UNSUPPORTED_MEDIA_TYPE, "Not multipart/form-data: " + type);
+		}
+		long length = request.getContentLength();
+		if (length < 0) {
+			throw new MultipartException(HttpResponse.SC_LENGTH_REQUIRED, "Multipart body of unknown length");
+		}
+		if (config.getMultipartMaxSize() > 0 && length > config.getMultipartMaxSize()) {
+			throw new MultipartException(HttpResponse.SC_PAYLOAD_TOO_LARGE, "Multipart body of " + length + " bytes");
+		}
+		String dir = config.getMultipartSpillDirectory();
+		return new MultipartParser(new BoundedInputStream(request, length), Part.parameter(type, "boundary"),
+				config.getMultipartMaxParts(), config.getMultipartMaxPartSize(),
+				config.getMultipartMemoryThreshold(), (dir != null) ? Paths.get(dir) : null);
+	}
+
+	/**
+	 * @return true if the request carries a multipart/form-data body.
+	 */
+	public static boolean isMultipart(HttpRequest request) {
+		String type = request.getHeader("Content-Type");
+		return type != null && type.regionMatches(true, 0, "multipart/form-data", 0, 19);
+	}
+
+	/**
+	 * Skips what is left of the current part, and reads the headers of the
+	 * next.
+	 *
+	 * @return The next part, streamed until this method is called again; or
+	 *         null if there are no more parts
+	 * @throws MultipartException if the body is malformed or over the limits
+	 */
+	public Part next() throws IOException {
+		if (finished) {
+			return null;
+		}
+		ensureOpen();
+		while (current.skip(Long.MAX_VALUE) > 0) {
+			// the rest of the part is of no interest.
+		}
+		current.done = true;
+		// past the delimiter: "--" ends the body, CRLF starts a part.
+		start = found + delimiter.length;
+		found = -1;
+		fill(2);
+		if (buf[start] == '-' && buf[start + 1] == '-') {
+			finished = true;
+			return null;
+		}
+		while (buf[start] == ' ' || buf[start] == '\t') {
+			// transport padding.
+			start++;
+			fill(2);
+		}
+		if (buf[start] != CR || buf[start + 1] != LF) {
+			throw new MultipartException("Malformed multipart delimiter");
+		}
+		start += 2;
+		if (++parts > maxParts) {
+			throw new MultipartException(HttpResponse.SC_PAYLOAD_TOO_LARGE, "More than " + maxParts + " parts");
+		}
+		NameValueMapper headers = readHeaders();
+		scan();
+		partSize = 0;
+		current = new PartStream();
+		return new Part(headers, current);
+	}
+
+	/**
+	 * Reads all the parts that are left. Parts of up to the memory threshold
+	 * are kept in memory, larger ones are spilled to files, which the caller
+	 * deletes (see Part.delete()) once done with them.
+	 *
+	 * @return The parts
+	 * @throws MultipartException if the body is malformed or over the limits;
+	 *             the parts spilled so far are deleted
+	 */
+	public List<Part> readAll() throws IOException {
+		List<Part> kept = new ArrayList<Part>();
+		boolean completed = false;
+		try {
+			Part part;
+			while ((part = next()) != null) {
+				kept.add(keep(part));
+			}
+			completed = true;
+			return kept;
+		} finally {
+			if (!completed) {
+				for (Part part : kept) {
+					part.delete();
+				}
+			}
+		}
+	}
+
+	private Part keep(Part part) throws IOException {
+		InputStream content = part.getInputStream();
+		ByteArrayOutputStream memory = new ByteArrayOutputStream(Math.min(memoryThreshold, 1024));
+		byte[] b = new byte[8192];
+		int n;
+		while ((n = content.read(b, 0, b.length)) > 0) {
+			if (memory.size() + n > memoryThreshold) {
+				return spill(part, memory, b, n, content);
+			}
+			memory.write(b, 0, n);
+		}
+		return new Part(part.getHeaders(), memory.toByteArray(), null, memory.size());
+	}
+
+	/**
+	 * Writes a part that is larger than the memory threshold to a file.
+	 */
+	private Part spill(Part part, ByteArrayOutputStream memory, byte[] b, int n, InputStream content)
+			throws IOException {
+		Path file = (spillDirectory != null) ? Files.createTempFile(spillDirectory, "upload", ".part")
+				: Files.createTempFile("upload", ".part");
+		long size = memory.size();
+		boolean completed = false;
+		try (OutputStream out = Files.newOutputStream(file)) {
+			memory.writeTo(out);
+			do {
+				out.write(b, 0, n);
+				size += n;
+			} while ((n = content.read(b, 0, b.length)) > 0);
+			completed = true;
+		} finally {
+			if (!completed) {
+				Files.deleteIfExists(file);
+			}
+		}
+		return new Part(part.getHeaders(), null, file, size);
+	}
+
+	/**
+	 * Reads the headers of a part, up to and including the empty line that
+	 * ends them.
+	 */
+	private NameValueMapper readHeaders() throws IOException {
+		NameValueMapper headers = NameValueMapper.createCaseInsensitiveNameValueMap();
+		int size = 0;
+		while (true) {
+			int eol;
+			while ((eol = indexOfEol()) < 0) {
+				if (size + end - start > MAX_HEADER_SIZE) {
+					throw new MultipartException(HttpResponse.SC_PAYLOAD_TOO_LARGE, "Part headers too large");
+				}
+				fill(end - start + 1);
+			}
+			size += eol + 2 - start;
+			if (size > MAX_HEADER_SIZE) {
+				throw new MultipartException(HttpResponse.SC_PAYLOAD_TOO_LARGE, "Part headers too large");
+			}
+			String line = new String(buf, start, eol - start, StandardCharsets.UTF_8);
+			start = eol + 2;
+			if (line.isEmpty()) {
+				return headers;
+			}
+			int colon = line.indexOf(':');
+			if (colon <= 0) {
+				throw new MultipartException("Malformed part header");
+			}
+			headers.put(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+		}
+	}
+
+	/**
+	 * @return The index of the first CRLF buffered, or -1.
+	 */
+	private int indexOfEol() {
+		for (int i = start; i < end - 1; i++) {
+			if (buf[i] == CR && buf[i + 1] == LF) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Searches the buffered bytes for the delimiter, and sets how far the
+	 * content may be handed out.
+	 */
+	private void scan() {
+		found = indexOf(start, end);
+		if (found >= 0) {
+			limit = found;
+		} else {
+			// the last bytes may be the start of a delimiter.
+			limit = Math.max(start, end - (delimiter.length - 1));
+		}
+	}
+
+	/**
+	 * Boyer-Moore-Horspool: compares the delimiter with a window from its
+	 * last byte backwards, and moves the window on by the skip of the last
+	 * byte of the window.
+	 *
+	 * @return The index of the delimiter in buf[from, to), or -1
+	 */
+	private int indexOf(int from, int to) {
+		int m = delimiter.length;
+		int i = from;
+		while (i <= to - m) {
+			int j = m - 1;
+			while (buf[i + j] == delimiter[j]) {
+				if (j == 0) {
+					return i;
+				}
+				j--;
+			}
+			i += skip[buf[i + m - 1] & 0xff];
+		}
+		return -1;
+	}
+
+	/**
+	 * Reads from the body until at least the given number of bytes are
+	 * buffered, moving the buffered bytes to the front of the buffer first.
+	 *
+	 * @param n		The bytes needed
+	 * @throws MultipartException if the body ends before
+	 */
+	private void fill(int n) throws IOException {
+		while (end - start < n) {
+			if (!read()) {
+				throw new MultipartException("Multipart body ended early");
+			}
+		}
+	}
+
+	/**
+	 * Reads from the body once, and searches the buffer again.
+	 *
+	 * @return false at the end of the body
+	 */
+	private boolean read() throws IOException {
+		if (eof) {
+			return false;
+		}
+		if (start > 0) {
+			System.arraycopy(buf, start, buf, 0, end - start);
+			end -= start;
+			limit -= start;
+			if (found >= 0) {
+				found -= start;
+			}
+			start = 0;
+		}
+		if (end == buf.length) {
+			throw new MultipartException(HttpResponse.SC_PAYLOAD_TOO_LARGE, "Part headers too large");
+		}
+		int n = in.read(buf, end, buf.length - end);
+		if (n < 0) {
+			eof = true;
+			return false;
+		}
+		end += n;
+		if (found < 0) {
+			scan();
+		}
+		return true;
+	}
+
+	private void ensureOpen() throws IOException {
+		if (buf == null) {
+			throw new IOException("Parser closed");
+		}
+	}
+
+	/**
+	 * Gives the buffer back to the pool. The body is not read any further.
+	 */
+	public void close() {
+		if (buffer != null) {
+			ByteBufferPool.getInstance().release(buffer);
+			buffer = null;
+			buf = null;
+		}
+	}
+
+	/**
+	 * The content of the current part: the buffered bytes up to the
+	 * delimiter.
+	 */
+	private final class PartStream extends InputStream {
+
+		boolean done;
+
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xff);
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (done) {
+				return -1;
+			}
+			ensureOpen();
+			if (len == 0) {
+				return 0;
+			}
+			while (start == limit) {
+				if (start == found) {
+					return -1;
+				}
+				if (!MultipartParser.this.read()) {
+					throw new MultipartException("Multipart body ended early");
+				}
+			}
+			int n = Math.min(len, limit - start);
+			System.arraycopy(buf, start, b, off, n);
+			consumed(n);
+			return n;
+		}
+
+		public long skip(long n) throws IOException {
+			if (done) {
+				return 0;
+			}
+			ensureOpen();
+			while (start == limit) {
+				if (start == found) {
+					return 0;
+				}
+				if (!MultipartParser.this.read()) {
+					throw new MultipartException("Multipart body ended early");
+				}
+			}
+			int skipped = (int) Math.min(n, limit - start);
+			consumed(skipped);
+			return skipped;
+		}
+
+		public int available() {
+			return done ? 0 : limit - start;
+		}
+
+		private void consumed(int n) throws MultipartException {
+			start += n;
+			partSize += n;
+			if (maxPartSize > 0 && partSize > maxPartSize && parts > 0) {
+				throw new MultipartException(HttpResponse.SC_PAYLOAD_TOO_LARGE, "Part larger than " + maxPartSize
+						+ " bytes");
+			}
+		}
+	}
+
+	/**
+	 * The body of a request, ending after its content length.
+	 */
+	private static final class BoundedInputStream extends InputStream {
+
+		private final HttpRequest request;
+		private long remaining;
+
+		BoundedInputStream(HttpRequest request, long length) {
+			this.request = request;
+			this.remaining = length;
+		}
+
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xff);
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int n = request.getInputStream().read(b, off, (int) Math.min(len, remaining));
+			if (n < 0) {
+				throw new MultipartException("Request body ended early");
+			}
+			remaining -= n;
+			return n;
+		}
+	}
+}
@@ -0,0 +1,219 @@
+package com.adobe.assignment.http.multipart;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.adobe.assignment.http.NameValueMapper;
+
+/**
+ * A part of a multipart/form-data body: a form field, or a file if it has a
+ * file name.
+ *
+ * A part handed out by MultipartParser.next() is streamed: its content is
+ * read from the body as it arrives, and only until the next part is asked
+ * for. A part kept by MultipartParser.readAll() holds its content, in memory
+ * if it is small, and spilled to a file otherwise, which delete() removes.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class Part {
+
+	private final NameValueMapper headers;
+	private final String name, fileName;
+
+	/**
+	 * The content of a streamed part, or of a kept part, in memory or in a
+	 * file.
+	 */
+	private final InputStream stream;
+	private final byte[] content;
+	private final Path file;
+	private final long size;
+
+	/**
+	 * Explicit Value Constructor for a streamed part
+	 *
+	 * @param headers		The headers of the part
+	 * @param stream		Its content
+	 */
+	Part(NameValueMapper headers, InputStream stream) {
+		this(headers, stream, null, null, -1);
+	}
+
+	/**
+	 * Explicit Value Constructor for a kept part
+	 *
+	 * @param headers		The headers of the part
+	 * @param content		Its content, if it is kept in memory
+	 * @param file			The file its content was spilled to, otherwise
+	 * @param size			The size of its content
+	 */
+	Part(NameValueMapper headers, byte[] content, Path file, long size) {
+		this(headers, null, content, file, size);
+	}
+
+	private Part(NameValueMapper headers, InputStream stream, byte[] content, Path file, long size) {
+		this.headers = headers;
+		String disposition = headers.getValue("Content-Disposition");
+		this.name = parameter(disposition, "name");
+		this.fileName = parameter(disposition, "filename");
+		this.stream = stream;
+		this.content = content;
+		this.file = file;
+		this.size = size;
+	}
+
+	public String getHeader(String name) {
+		return headers.getValue(name);
+	}
+
+	NameValueMapper getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * @return The name of the form field, or null if the part has none.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return The name of the file as the client gave it, which may be a path
+	 *         and must not be trusted as one; null if the part is no file.
+	 */
+	public String getFileName() {
+		return fileName;
+	}
+
+	/**
+	 * @return The media type of the content, text/plain if none is given.
+	 */
+	public String getContentType() {
+		String type = headers.getValue("Content-Type");
+		return (type != null) ? type : "text/plain";
+	}
+
+	/**
+	 * @return true if the part is a file rather than a form field.
+	 */
+	public boolean isFile() {
+		return fileName != null;
+	}
+
+	/**
+	 * @return The size of the content of a kept part, or -1 for a streamed
+	 *         part.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * @return true if the content of a kept part was spilled to a file.
+	 */
+	public boolean isSpilled() {
+		return file != null;
+	}
+
+	/**
+	 * Returns the content of this part. The content of a streamed part can
+	 * be read once, until the next part is asked for; the stream ends where
+	 * the part ends. The content of a kept part can be read any number of
+	 * times, until it is deleted.
+	 *
+	 * @return The content
+	 */
+	public InputStream getInputStream() throws IOException {
+		if (stream != null) {
+			return stream;
+		}
+		if (file != null) {
+			return Files.newInputStream(file);
+		}
+		return new ByteArrayInputStream(content);
+	}
+
+	/**
+	 * Moves the content of a kept part to the given path, e.g. into the web
+	 * root, without copying it if it was spilled to a file on the same file
+	 * system.
+	 *
+	 * @param target		Where to put the content
+	 */
+	public void moveTo(Path target) throws IOException {
+		if (stream != null) {
+			Files.copy(stream, target);
+		} else if (file != null) {
+			Files.move(file, target);
+		} else {
+			Files.write(target, content);
+		}
+	}
+
+	/**
+	 * Removes the file the content of this part was spilled to, if any.
+	 */
+	public void delete() {
+		if (file != null) {
+			try {
+				Files.deleteIfExists(file);
+			} catch (IOException e) {
+				// left to the temporary directory's cleanup.
+			}
+		}
+	}
+
+	/**
+	 * Retrieve a parameter of a header value such as Content-Type or
+	 * Content-Disposition, e.g. the boundary of "multipart/form-data;
+	 * boundary=xyz". The value may be a quoted string.
+	 *
+	 * @param value			The header value, may be null
+	 * @param name			The name of the parameter
+	 * @return				The value of the parameter, or null if it is
+	 * 						missing
+	 */
+	static String parameter(String value, String name) {
+		if (value == null) {
+			return null;
+		}
+		int i = value.indexOf(';');
+		while (i >= 0 && i < value.length()) {
+			int start = i + 1;
+			int eq = value.indexOf('=', start);
+			if (eq < 0) {
+				return null;
+			}
+			String key = value.substring(start, eq).trim();
+			int pos = eq + 1;
+			while (pos < value.length() && value.charAt(pos) == ' ') {
+				pos++;
+			}
+			String result;
+			if (pos < value.length() && value.charAt(pos) == '"') {
+				StringBuilder sb = new StringBuilder();
+				pos++;
+				while (pos < value.length() && value.charAt(pos) != '"') {
+					char c = value.charAt(pos++);
+					if (c == '\\' && pos < value.length()) {
+						c = value.charAt(pos++);
+					}
+					sb.append(c);
+				}
+				result = sb.toString();
+				i = value.indexOf(';', pos);
+			} else {
+				i = value.indexOf(';', pos);
+				result = value.substring(pos, (i < 0) ? value.length() : i).trim();
+			}
+			if (key.equalsIgnoreCase(name)) {
+				return result;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,208 @@
+package com.adobe.assignment.http.pack;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read-only view of a pack file: a whole web root packed by
+ * {@link PackWriter} into one file, mapped into memory.
+ *
+ * The file is laid out as follows, all numbers big-endian:
+ *
+ * <pre>
+ * header   magic, version, entry count, slot count, entry table offset,
+ *          slot table offset (32 bytes)
+ * data     the content of every file, and its gzip variant if any
+ * strings  the paths, content types and entity tags, in UTF-8
+ * entries  one 64 byte record per file (see ENTRY_SIZE)
+ * slots    an open addressing hash table of entry numbers (plus one; 0 is
+ *          an empty slot), a power of two of at least twice the entries
+ * </pre>
+ *
+ * A lookup hashes the path, and in the common case compares a single entry,
+ * so it costs neither a file system call nor a copy. Entries are only read
+ * when asked for; opening a pack reads nothing but its header.
+ *
+ * The mapping stays valid after the file is replaced or deleted, so a pack
+ * can be swapped for a new one by renaming while it is being served.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public final class PackFile {
+
+	static final int MAGIC = 0x4850414B; // "HPAK"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 32;
+
+	/**
+	 * An entry is the 64 bit hash of its path, then offset and length of the
+	 * path, the content type and the entity tag (ints), then offset and
+	 * length of the content and of its gzip variant (longs; the gzip offset
+	 * is -1 if there is none).
+	 */
+	static final int ENTRY_SIZE = 64;
+
+	private final MappedByteBuffer map;
+	private final int count;
+	private final int slots;
+	private final int entriesOffset;
+	private final int slotsOffset;
+
+	private PackFile(MappedByteBuffer map) throws IOException {
+		this.map = map;
+		if (map.limit() < HEADER_SIZE || map.getInt(0) != MAGIC) {
+			throw new IOException("Not a pack file");
+		}
+		if (map.getInt(4) != VERSION) {
+			throw new IOException("Unsupported pack file version " + map.getInt(4));
+		}
+		this.count = map.getInt(8);
+		this.slots = map.getInt(12);
+		long entries = map.getLong(16);
+		long table = map.getLong(24);
+		if (count < 0 || slots <= 0 || Integer.bitCount(slots) != 1
+				|| entries < HEADER_SIZE || entries + (long) count * ENTRY_SIZE > table
+				|| table + slots * 4L > map.limit()) {
+			throw new IOException("Corrupt pack file");
+		}
+		this.entriesOffset = (int) entries;
+		this.slotsOffset = (int) table;
+	}
+
+	/**
+	 * Maps a pack file into memory.
+	 *
+	 * @param path			The pack file
+	 * @return				The pack
+	 * @throws IOException	if the file cannot be read, is not a pack or is
+	 * 						larger than 2GB
+	 */
+	public static PackFile open(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Pack file too large: " + path);
+			}
+			return new PackFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} finally {
+			// the mapping outlives the channel.
+			channel.close();
+		}
+	}
+
+	/**
+	 * @return The number of files in this pack.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Looks up a file by its path.
+	 *
+	 * @param path		The path of the file, decoded, e.g. "/css/site.css"
+	 * @return			The file, or null if the pack has none by that path
+	 */
+	public Entry find(String path) {
+		byte[] name = path.getBytes(StandardCharsets.UTF_8);
+		long hash = hash(name);
+		int mask = slots - 1;
+		for (int slot = (int) hash & mask, probes = 0; probes < slots; slot = (slot + 1) & mask, probes++) {
+			int index = map.getInt(slotsOffset + slot * 4) - 1;
+			if (index < 0 || index >= count) {
+				return null;
+			}
+			int entry = entriesOffset + index * ENTRY_SIZE;
+			if (map.getLong(entry) == hash && matches(map.getInt(entry + 8), map.getInt(entry + 12), name)) {
+				return new Entry(entry);
+			}
+		}
+		return null;
+	}
+
+	private boolean matches(int offset, int length, byte[] name) {
+		if (length != name.length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (map.get(offset + i) != name[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private String string(int offset, int length) {
+		byte[] b = new byte[length];
+		ByteBuffer view = map.duplicate();
+		view.position(offset);
+		view.get(b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+
+	private ByteBuffer slice(long offset, long length) {
+		ByteBuffer view = map.duplicate();
+		view.limit((int) (offset + length));
+		view.position((int) offset);
+		return view.slice();
+	}
+
+	/**
+	 * The 64 bit FNV-1a hash of a path.
+	 */
+	static long hash(byte[] name) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : name) {
+			hash ^= b & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * A file of the pack.
+	 */
+	public final class Entry {
+
+		private final int offset;
+
+		private Entry(int offset) {
+			this.offset = offset;
+		}
+
+		/**
+		 * @return The MIME type of the file.
+		 */
+		public String getContentType() {
+			return string(map.getInt(offset + 16), map.getInt(offset + 20));
+		}
+
+		/**
+		 * @return The entity tag of the content, quoted.
+		 */
+		public String getETag() {
+			return string(map.getInt(offset + 24), map.getInt(offset + 28));
+		}
+
+		/**
+		 * @return The content, as a view of the mapped file.
+		 */
+		public ByteBuffer getContent() {
+			return slice(map.getLong(offset + 32), map.getLong(offset + 40));
+		}
+
+		/**
+		 * @return The gzip compressed content, as a view of the mapped file,
+		 *         or null if the pack holds no such variant.
+		 */
+		public ByteBuffer getGzipContent() {
+			long gzipOffset = map.getLong(offset + 48);
+			return (gzipOffset < 0) ? null : slice(gzipOffset, map.getLong(offset + 56));
+		}
+	}
+}
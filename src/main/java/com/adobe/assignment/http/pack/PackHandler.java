@@ -0,0 +1,244 @@
+package com.adobe.assignment.http.pack;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.assignment.http.HttpConstants;
+import com.adobe.assignment.http.HttpRequest;
+import com.adobe.assignment.http.HttpResponse;
+import com.adobe.assignment.http.methods.HttpMethodHandler;
+import com.adobe.assignment.http.methods.PathResolver;
+import com.adobe.assignment.http.server.ServerConfig;
+
+/**
+ * Serves GET requests from a pack file (see {@link PackWriter}) instead of
+ * the web root. A request costs a lookup in the mapped index and a copy of
+ * the content from the mapping into the response's buffer; the file system
+ * is not consulted at all. Requests for a directory are answered with its
+ * index.html.
+ *
+ * Entity tags are answered with 304 Not Modified, and clients accepting gzip
+ * get the compressed variant of a file if the pack has one.
+ *
+ * The handler is configured in http_handlers.xml, in place of the GET
+ * handler:
+ *
+ * <pre>
+ * &lt;supportedmethod&gt;
+ *   &lt;class name="com.adobe.assignment.http.pack.PackHandler" /&gt;
+ *   &lt;param name="pack" value="site.pack" /&gt;
+ *   &lt;param name="checkInterval" value="1000" /&gt;
+ * &lt;/supportedmethod&gt;
+ * </pre>
+ *
+ * A site is deployed by renaming a new pack over the configured one (which
+ * PackWriter does). The handler notices, at most once per check interval,
+ * that the file was replaced, maps the new one and serves it from then on;
+ * requests already being served finish from the old mapping.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class PackHandler implements HttpMethodHandler {
+
+	private static final Logger log = LoggerFactory.getLogger(PackHandler.class);
+
+	private static final String INDEX = "index.html";
+
+	private Path path;
+	private long checkInterval = 1000;
+	private PathResolver resolver;
+
+	/**
+	 * The pack being served, and the identity of its file, by which a
+	 * replaced file is recognized.
+	 */
+	private volatile PackFile pack;
+	private Object fileKey;
+	private long lastModified;
+
+	/**
+	 * When the file is next checked for a replacement. The thread that
+	 * advances it does the check; the others do not wait for it.
+	 */
+	private final AtomicLong nextCheck = new AtomicLong();
+
+	/**
+	 * @see HttpMethodHandler#init(ServerConfig)
+	 */
+	public void init(ServerConfig config) {
+		resolver = new PathResolver(config.getPathCacheSize());
+		if (path == null) {
+			log.warn("No pack file configured");
+			return;
+		}
+		reload();
+		nextCheck.set(System.currentTimeMillis() + checkInterval);
+	}
+
+	/**
+	 * @see HttpMethodHandler#handle(HttpRequest, HttpResponse)
+	 */
+	public boolean handle(HttpRequest request, HttpResponse response) {
+		if (!request.getMethod().equals(HttpConstants.METHOD_GET) || path == null) {
+			return false;
+		}
+		PackFile pack = current();
+		if (pack == null) {
+			response.sendError(HttpResponse.SC_SERVICE_OVERLOADED);
+			return true;
+		}
+		String name = resolver.resolve(request.getPath());
+		if (name == null) {
+			response.sendError(HttpResponse.SC_BAD_REQUEST);
+			return true;
+		}
+		if (name.endsWith("/")) {
+			name += INDEX;
+		}
+		PackFile.Entry entry = pack.find(name);
+		if (entry == null) {
+			response.sendError(HttpResponse.SC_NOT_FOUND);
+			return true;
+		}
+
+		ByteBuffer body = entry.getContent();
+		ByteBuffer gzip = entry.getGzipContent();
+		String etag = entry.getETag();
+		if (gzip != null) {
+			response.setHeader("Vary", "Accept-Encoding");
+			if (acceptsGzip(request.getHeader("Accept-Encoding"))) {
+				body = gzip;
+				// the compressed variant is a representation of its own.
+				etag = etag.substring(0, etag.length() - 1) + "-gz\"";
+				response.setHeader("Content-Encoding", "gzip");
+			}
+		}
+		response.setHeader("ETag", etag);
+		try {
+			if (matches(request.getHeader("If-None-Match"), etag)) {
+				response.setStatus(HttpResponse.SC_NOT_MODIFIED);
+				response.write();
+			} else {
+				response.setContentType(entry.getContentType());
+				response.setContentLength(body.remaining());
+				response.write(body);
+			}
+		} catch (IOException e) {
+			log.debug("Failed to send " + name + ": " + e.getMessage());
+		}
+		return true;
+	}
+
+	/**
+	 * @return The pack to serve, after replacing it if its file was replaced
+	 *         and it is time to check.
+	 */
+	private PackFile current() {
+		long now = System.currentTimeMillis();
+		long next = nextCheck.get();
+		if (now >= next && nextCheck.compareAndSet(next, now + checkInterval)) {
+			reload();
+		}
+		return pack;
+	}
+
+	/**
+	 * Maps the pack file if it is not the one mapped already. A file that is
+	 * missing or cannot be mapped leaves the current pack in place.
+	 */
+	private synchronized void reload() {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			Object key = attributes.fileKey();
+			long modified = attributes.lastModifiedTime().toMillis();
+			if (pack != null && modified == lastModified && key != null && key.equals(fileKey)) {
+				return;
+			}
+			PackFile opened = PackFile.open(path);
+			fileKey = key;
+			lastModified = modified;
+			pack = opened;
+			log.info("Serving " + opened.size() + " files from " + path);
+		} catch (NoSuchFileException e) {
+			log.warn("Pack file " + path + " not found");
+		} catch (IOException e) {
+			log.warn("Failed to open pack file " + path + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return true if the Accept-Encoding header admits gzip.
+	 */
+	static boolean acceptsGzip(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return false;
+		}
+		for (String coding : acceptEncoding.split(",")) {
+			int semicolon = coding.indexOf(';');
+			String name = ((semicolon < 0) ? coding : coding.substring(0, semicolon)).trim();
+			if (name.equalsIgnoreCase("gzip")) {
+				return semicolon < 0 || !isZeroQuality(coding.substring(semicolon + 1));
+			}
+		}
+		return false;
+	}
+
+	private static boolean isZeroQuality(String params) {
+		for (String param : params.split(";")) {
+			param = param.trim();
+			if (param.startsWith("q=") || param.startsWith("Q=")) {
+				try {
+					return Double.parseDouble(param.substring(2)) == 0;
+				} catch (NumberFormatException e) {
+					return false;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if an If-None-Match header names the entity tag, by weak
+	 *         comparison as RFC 7232 asks for.
+	 */
+	static boolean matches(String ifNoneMatch, String etag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (String tag : ifNoneMatch.split(",")) {
+			tag = tag.trim();
+			if (tag.startsWith("W/")) {
+				tag = tag.substring(2);
+			}
+			if (tag.equals("*") || tag.equals(etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param pack	The pack file to serve
+	 */
+	public void setPack(String pack) {
+		this.path = Paths.get(pack.trim());
+	}
+
+	/**
+	 * @param checkInterval	How often the pack file is checked for a
+	 * 						replacement, in milliseconds; 0 checks on every
+	 * 						request
+	 */
+	public void setCheckInterval(String checkInterval) {
+		this.checkInterval = Math.max(0, Long.parseLong(checkInterval.trim()));
+	}
+}
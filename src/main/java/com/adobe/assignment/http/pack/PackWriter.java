@@ -0,0 +1,272 @@
+package com.adobe.assignment.http.pack;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import com.adobe.assignment.http.MIMETyper;
+
+/**
+ * Packs a web root into a single pack file (see {@link PackFile}), as a
+ * build step:
+ *
+ * <pre>
+ * java -cp httpserver.jar com.adobe.assignment.http.pack.PackWriter webroot site.pack [--gzip]
+ * </pre>
+ *
+ * Everything a GET needs is worked out here rather than per request: the
+ * content type, an entity tag (a digest of the content) and, with --gzip, a
+ * compressed variant of every compressible file that compression makes
+ * noticeably smaller.
+ *
+ * The pack is written next to its destination and renamed into place, so a
+ * server serving the destination switches from the old pack to the new one
+ * in a single step.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public final class PackWriter {
+
+	/**
+	 * A compressed variant is only kept if it saves at least a tenth.
+	 */
+	private static final double MIN_SAVING = 0.1;
+
+	private final MIMETyper mimeTyper = MIMETyper.createInstance();
+	private final boolean gzip;
+
+	/**
+	 * An entry as it is written, less its hash.
+	 */
+	private static final class Record {
+		byte[] path;
+		int[] pathRef, typeRef, etagRef;
+		long dataOffset, dataLength;
+		long gzipOffset = -1, gzipLength;
+	}
+
+	/**
+	 * Explicit Value Constructor
+	 *
+	 * @param gzip		Whether to add gzip variants of compressible files
+	 */
+	public PackWriter(boolean gzip) {
+		this.gzip = gzip;
+	}
+
+	/**
+	 * Packs every regular file below a directory.
+	 *
+	 * @param webroot		The directory to pack
+	 * @param pack			The pack file to write; replaced atomically if it
+	 * 						exists
+	 * @return				The number of files packed
+	 * @throws IOException	if a file cannot be read or the pack written
+	 */
+	public int write(Path webroot, Path pack) throws IOException {
+		List<Path> files;
+		try (Stream<Path> walk = Files.walk(webroot)) {
+			files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+		}
+
+		Path tmp = Files.createTempFile(pack.toAbsolutePath().getParent(), pack.getFileName().toString(), ".tmp");
+		try {
+			long[] tables;
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+				tables = write(webroot, files, out);
+			}
+			patchHeader(tmp, tables);
+			Files.move(tmp, pack, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+		return files.size();
+	}
+
+	/**
+	 * Writes the pack, leaving the table offsets of the header blank.
+	 *
+	 * @return	The offsets of the entry table and the slot table
+	 */
+	private long[] write(Path webroot, List<Path> files, DataOutputStream out) throws IOException {
+		int slots = Integer.highestOneBit(Math.max(1, files.size() * 2 - 1)) << 1;
+		out.writeInt(PackFile.MAGIC);
+		out.writeInt(PackFile.VERSION);
+		out.writeInt(files.size());
+		out.writeInt(slots);
+		// the table offsets are only known at the end.
+		out.writeLong(0);
+		out.writeLong(0);
+
+		List<Record> records = new ArrayList<Record>(files.size());
+		Map<String, int[]> interned = new HashMap<String, int[]>();
+		ByteArrayOutputStream strings = new ByteArrayOutputStream();
+		long offset = PackFile.HEADER_SIZE;
+		for (Path file : files) {
+			byte[] content = Files.readAllBytes(file);
+			String path = toPath(webroot.relativize(file));
+			String type = mimeTyper.getContentTypeFor(path);
+
+			Record record = new Record();
+			record.path = path.getBytes(StandardCharsets.UTF_8);
+			record.typeRef = intern(type, interned, strings);
+			record.etagRef = intern(etag(content), interned, strings);
+			record.dataOffset = offset;
+			record.dataLength = content.length;
+			out.write(content);
+			offset += content.length;
+
+			byte[] compressed = (gzip && isCompressible(type)) ? compress(content) : null;
+			if (compressed != null && compressed.length <= content.length * (1 - MIN_SAVING)) {
+				record.gzipOffset = offset;
+				record.gzipLength = compressed.length;
+				out.write(compressed);
+				offset += compressed.length;
+			}
+			records.add(record);
+		}
+
+		// paths are not interned, they are unique anyway.
+		for (Record record : records) {
+			record.pathRef = new int[] { strings.size(), record.path.length };
+			strings.write(record.path);
+		}
+		int stringsOffset = (int) offset;
+		strings.writeTo(out);
+		offset += strings.size();
+
+		long entriesOffset = offset;
+		int[] table = new int[slots];
+		for (int i = 0; i < records.size(); i++) {
+			Record record = records.get(i);
+			long hash = PackFile.hash(record.path);
+			out.writeLong(hash);
+			out.writeInt(stringsOffset + record.pathRef[0]);
+			out.writeInt(record.pathRef[1]);
+			out.writeInt(stringsOffset + record.typeRef[0]);
+			out.writeInt(record.typeRef[1]);
+			out.writeInt(stringsOffset + record.etagRef[0]);
+			out.writeInt(record.etagRef[1]);
+			out.writeLong(record.dataOffset);
+			out.writeLong(record.dataLength);
+			out.writeLong(record.gzipOffset);
+			out.writeLong(record.gzipLength);
+
+			int slot = (int) hash & (slots - 1);
+			while (table[slot] != 0) {
+				slot = (slot + 1) & (slots - 1);
+			}
+			table[slot] = i + 1;
+		}
+		offset += (long) records.size() * PackFile.ENTRY_SIZE;
+
+		long slotsOffset = offset;
+		for (int entry : table) {
+			out.writeInt(entry);
+		}
+		offset += slots * 4L;
+		if (offset > Integer.MAX_VALUE) {
+			throw new IOException("Web root too large to pack: " + offset + " bytes");
+		}
+		return new long[] { entriesOffset, slotsOffset };
+	}
+
+	/**
+	 * Fills in the table offsets of the header, once everything else is
+	 * written.
+	 */
+	private static void patchHeader(Path pack, long[] tables) throws IOException {
+		ByteBuffer offsets = ByteBuffer.allocate(16);
+		offsets.putLong(tables[0]).putLong(tables[1]).flip();
+		try (FileChannel channel = FileChannel.open(pack, StandardOpenOption.WRITE)) {
+			channel.write(offsets, 16);
+			channel.force(false);
+		}
+	}
+
+	/**
+	 * The request path of a file, e.g. "/css/site.css".
+	 */
+	private static String toPath(Path relative) {
+		StringBuilder sb = new StringBuilder();
+		for (Path name : relative) {
+			sb.append('/').append(name.toString());
+		}
+		return sb.toString();
+	}
+
+	private static int[] intern(String value, Map<String, int[]> interned, ByteArrayOutputStream strings)
+			throws IOException {
+		int[] ref = interned.get(value);
+		if (ref == null) {
+			byte[] b = value.getBytes(StandardCharsets.UTF_8);
+			ref = new int[] { strings.size(), b.length };
+			strings.write(b);
+			interned.put(value, ref);
+		}
+		return ref;
+	}
+
+	/**
+	 * A strong entity tag: the first 64 bits of the SHA-256 digest of the
+	 * content, quoted.
+	 */
+	static String etag(byte[] content) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+			StringBuilder sb = new StringBuilder(18).append('"');
+			for (int i = 0; i < 8; i++) {
+				sb.append(Character.forDigit((digest[i] >> 4) & 0xf, 16)).append(Character.forDigit(digest[i] & 0xf, 16));
+			}
+			return sb.append('"').toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static boolean isCompressible(String type) {
+		return type.startsWith("text/") || type.endsWith("/json") || type.endsWith("+json")
+				|| type.endsWith("/xml") || type.endsWith("+xml") || type.endsWith("/javascript");
+	}
+
+	private static byte[] compress(byte[] content) throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.length / 2 + 64);
+		try (OutputStream out = new GZIPOutputStream(compressed)) {
+			out.write(content);
+		}
+		return compressed.toByteArray();
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2 || args.length > 3 || (args.length == 3 && !args[2].equals("--gzip"))) {
+			System.err.println("Usage: PackWriter <webroot> <pack file> [--gzip]");
+			System.exit(2);
+		}
+		Path webroot = Paths.get(args[0]);
+		if (!Files.isDirectory(webroot)) {
+			System.err.println("Not a directory: " + webroot);
+			System.exit(2);
+		}
+		int files = new PackWriter(args.length == 3).write(webroot, Paths.get(args[1]));
+		System.out.println("Packed " + files + " files into " + args[1]);
+	}
+}
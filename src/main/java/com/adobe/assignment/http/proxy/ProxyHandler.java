@@ -0,0 +1,623 @@
+package com.adobe.assignment.http.proxy;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.assignment.http.HttpConstants;
+import com.adobe.assignment.http.HttpInputStream;
+import com.adobe.assignment.http.HttpRequest;
+import com.adobe.assignment.http.HttpResponse;
+import com.adobe.assignment.http.NameValueMapper;
+import com.adobe.assignment.http.methods.AsyncHttpMethodHandler;
+import com.adobe.assignment.http.methods.HttpMethodHandler;
+import com.adobe.assignment.http.methods.PathResolver;
+import com.adobe.assignment.http.server.ServerConfig;
+
+/**
+ * A reverse proxy. Requests whose path starts with the configured prefix are
+ * forwarded to one of the configured upstream servers, and the upstream's
+ * response is sent back to the client. Bodies are streamed in both
+ * directions through a small buffer; neither is held in memory as a whole.
+ *
+ * The proxy is configured in http_handlers.xml, one handler per prefix, and
+ * has to be listed before handlers that would take the same requests (e.g.
+ * the GET handler):
+ *
+ * <pre>
+ * &lt;supportedmethod&gt;
+ *   &lt;class name="com.adobe.assignment.http.proxy.ProxyHandler" /&gt;
+ *   &lt;param name="prefix" value="/api" /&gt;
+ *   &lt;param name="upstreams" value="10.0.0.1:8080, 10.0.0.2:8080" /&gt;
+ *   &lt;param name="maxConnections" value="32" /&gt;
+ * &lt;/supportedmethod&gt;
+ * </pre>
+ *
+ * The path of a request is decoded and normalized (see PathResolver) before
+ * it is matched against the prefix, and the normalized path, escaped again,
+ * is what the upstream is sent, with the query as the client sent it. A path
+ * claiming the prefix that does not resolve, or resolves to a path outside
+ * it (e.g. "/api/../admin"), is answered with 400 (Bad Request): the
+ * upstream would have normalized it itself, and served what the prefix does
+ * not cover.
+ *
+ * Every request goes to the available upstream with the fewest outstanding
+ * requests. Upstreams failing repeatedly are taken out of rotation for a
+ * while (see {@link Upstream}). A request that could not be sent because its
+ * upstream refused the connection is tried on the next one.
+ *
+ * Upstream connections are HTTP/1.1 and persistent, pooled per upstream.
+ * Request bodies must have a Content-Length. Since headers are kept in a
+ * NameValueMapper, repeated response headers are joined into one.
+ *
+ * The upstream's response body is relayed at the client's pace (see
+ * HttpResponse.writeAsync()): it is read from the upstream only a little
+ * ahead of what the client has received, and no thread waits for a slow
+ * client in the meantime.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class ProxyHandler implements AsyncHttpMethodHandler {
+
+	private static final Logger log = LoggerFactory.getLogger(ProxyHandler.class);
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+	/**
+	 * The characters besides letters and digits that RFC 3986 allows in a
+	 * path unescaped.
+	 */
+	private static final String PATH_CHARS = "-._~!$&'()*+,;=:@/";
+
+	/**
+	 * Hop-by-hop headers, which concern a single connection and are never
+	 * forwarded.
+	 */
+	private static final Set<String> HOP_BY_HOP = new HashSet<String>(Arrays.asList(
+			"connection", "keep-alive", "proxy-connection", "proxy-authenticate", "proxy-authorization",
+			"te", "trailer", "transfer-encoding", "upgrade", "expect", "http2-settings"));
+
+	private String prefix = "/";
+	private final List<Upstream> upstreams = new ArrayList<Upstream>();
+	private String upstreamList;
+	private int maxConnections = 16;
+	private int acquireTimeout = 1000;
+	private int connectTimeout = 2000;
+	private int readTimeout = 30000;
+	private int keepAliveTimeout = 30000;
+	private int maxFails = 3;
+	private int failTimeout = 10000;
+	private PathResolver resolver;
+
+	/**
+	 * Where the search for the least loaded upstream starts, so that ties are
+	 * spread evenly.
+	 */
+	private final AtomicInteger next = new AtomicInteger();
+
+	/**
+	 * @see HttpMethodHandler#init(ServerConfig)
+	 */
+	public void init(ServerConfig config) {
+		resolver = new PathResolver(config.getPathCacheSize());
+		if (upstreamList == null) {
+			log.warn("No upstreams configured for the proxy of " + prefix);
+			return;
+		}
+		for (String address : upstreamList.split(",")) {
+			address = address.trim();
+			if (address.length() == 0) {
+				continue;
+			}
+			int colon = address.lastIndexOf(':');
+			try {
+				String host = (colon < 0) ? address : address.substring(0, colon);
+				int port = (colon < 0) ? 80 : Integer.parseInt(address.substring(colon + 1));
+				upstreams.add(new Upstream(host, port, this));
+			} catch (NumberFormatException e) {
+				log.warn("Invalid upstream '" + address + "' for the proxy of " + prefix);
+			}
+		}
+		log.info("Proxying " + prefix + " to " + upstreams);
+	}
+
+	/**
+	 * @see AsyncHttpMethodHandler#handleAsync(HttpRequest, HttpResponse)
+	 */
+	public CompletionStage<Void> handleAsync(HttpRequest request, HttpResponse response) {
+		if (!canHandle(request)) {
+			return null;
+		}
+		String path = resolver.resolve(request.getPath());
+		if (path == null || !isBelowPrefix(path)) {
+			response.sendError(HttpResponse.SC_BAD_REQUEST);
+			return DONE;
+		}
+		if (request.getHeader("Transfer-Encoding") != null) {
+			response.sendError(HttpResponse.SC_LENGTH_REQUIRED);
+			return DONE;
+		}
+
+		List<Upstream> tried = new ArrayList<Upstream>(1);
+		Upstream upstream;
+		while ((upstream = choose(tried)) != null) {
+			tried.add(upstream);
+			UpstreamConnection connection;
+			try {
+				connection = upstream.acquire();
+			} catch (IOException e) {
+				// nothing was sent; the next upstream may take the request.
+				upstream.failed(e);
+				continue;
+			}
+			if (connection == null) {
+				log.debug("Connection pool of " + upstream + " exhausted");
+				response.sendError(HttpResponse.SC_SERVICE_OVERLOADED);
+				return DONE;
+			}
+			return forward(upstream, connection, request, path, response);
+		}
+		response.sendError(tried.isEmpty() ? HttpResponse.SC_SERVICE_OVERLOADED : HttpResponse.SC_BAD_GATEWAY);
+		return DONE;
+	}
+
+	/**
+	 * Determines if this handler can handle the specified HTTP request.
+	 *
+	 * @return true if the request path, as the client sent it, starts with
+	 *         the prefix of this proxy.
+	 */
+	private boolean canHandle(HttpRequest request) {
+		String path = request.getPath();
+		return path != null && !upstreams.isEmpty() && isBelowPrefix(path);
+	}
+
+	/**
+	 * @return true if the path is the prefix or below it: "/api" takes "/api"
+	 *         and "/api/x", but not "/apix".
+	 */
+	private boolean isBelowPrefix(String path) {
+		if (!path.startsWith(prefix)) {
+			return false;
+		}
+		return path.length() == prefix.length() || prefix.endsWith("/") || path.charAt(prefix.length()) == '/';
+	}
+
+	/**
+	 * Picks the available upstream with the fewest outstanding requests.
+	 *
+	 * @param tried		The upstreams that failed this request already
+	 * @return The upstream, or null if none is left.
+	 */
+	private Upstream choose(List<Upstream> tried) {
+		int n = upstreams.size();
+		int start = Math.abs(next.getAndIncrement() % n);
+		Upstream best = null;
+		for (int i = 0; i < n; i++) {
+			Upstream upstream = upstreams.get((start + i) % n);
+			if (upstream.isAvailable() && !tried.contains(upstream)
+					&& (best == null || upstream.getOutstanding() < best.getOutstanding())) {
+				best = upstream;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Sends the request on the leased connection and streams the response
+	 * back, then gives the connection back to the pool if it can be reused.
+	 *
+	 * @return A future completing once the response has been relayed.
+	 */
+	private CompletableFuture<Void> forward(final Upstream upstream, UpstreamConnection connection,
+			HttpRequest request, String path, final HttpResponse response) {
+		UpstreamBody body = null;
+		boolean relaying = false;
+		try {
+			long length = Math.max(0, request.getContentLength());
+			byte[] head = encodeRequestHead(request, path, upstream);
+			String statusLine;
+			try {
+				statusLine = send(connection, head, request, length);
+			} catch (ClientException e) {
+				throw e;
+			} catch (IOException e) {
+				if (!connection.isReused() || length > 0) {
+					throw e;
+				}
+				// the upstream closed the idle connection meanwhile.
+				connection = upstream.reconnect(connection);
+				statusLine = send(connection, head, request, length);
+			}
+
+			int status = parseStatus(statusLine);
+			NameValueMapper headers = readHeaders(connection);
+			while (status >= 100 && status < 200) {
+				// interim responses (100 Continue and the like) are dropped.
+				status = parseStatus(connection.readLine());
+				headers = readHeaders(connection);
+			}
+
+			boolean keepAlive = statusLine.startsWith("HTTP/1.1") && !hasToken(headers.getValue("Connection"), "close");
+			boolean chunked = hasToken(headers.getValue("Transfer-Encoding"), "chunked");
+			long contentLength = -1;
+			if (request.getMethod().equals("HEAD") || status == 204 || status == 304) {
+				contentLength = 0;
+			} else if (!chunked) {
+				String value = headers.getValue("Content-Length");
+				contentLength = (value == null) ? -1 : Long.parseLong(value.trim());
+				keepAlive &= (value != null);
+			}
+
+			response.setStatus(status);
+			copyHeaders(headers, response);
+			final UpstreamBody relayed = new UpstreamBody(upstream, connection,
+					connection.openBody(contentLength, chunked), keepAlive);
+			body = relayed;
+			// returned as is, for cancelling it stops relaying.
+			CompletableFuture<Void> written = response.writeAsync(relayed);
+			relaying = true;
+			written.whenComplete(new BiConsumer<Void, Throwable>() {
+				public void accept(Void result, Throwable failure) {
+					if (failure instanceof CompletionException && failure.getCause() instanceof IOException) {
+						failed(upstream, relayed, response, (IOException) failure.getCause());
+					} else if (failure != null) {
+						log.debug("Relaying from " + upstream + " stopped: " + failure);
+					}
+					release(upstream, relayed.connection, relayed);
+				}
+			});
+			return written;
+		} catch (ClientException e) {
+			log.debug("Client failed while sending to " + upstream + ": " + e.getMessage());
+		} catch (IOException e) {
+			failed(upstream, body, response, e);
+		} catch (NumberFormatException e) {
+			log.debug("Invalid response from " + upstream + ": " + e.getMessage());
+			upstream.failed(new IOException(e.getMessage()));
+			if (!response.isCommitted()) {
+				response.sendError(HttpResponse.SC_BAD_GATEWAY);
+			}
+		} finally {
+			if (!relaying) {
+				release(upstream, connection, body);
+			}
+		}
+		return DONE;
+	}
+
+	/**
+	 * Tells whether the upstream or the client failed the exchange, and
+	 * answers the client if the upstream did.
+	 */
+	private static void failed(Upstream upstream, UpstreamBody body, HttpResponse response, IOException e) {
+		if (body != null && body.failure == null) {
+			// the upstream did its part; the client went away.
+			log.debug("Client failed while receiving from " + upstream + ": " + e.getMessage());
+		} else {
+			log.debug("Upstream " + upstream + " failed: " + e.getMessage());
+			upstream.failed(e);
+			if (!response.isCommitted()) {
+				response.sendError((e instanceof SocketTimeoutException)
+						? HttpResponse.SC_GATEWAY_TIMEOUT : HttpResponse.SC_BAD_GATEWAY);
+			}
+		}
+	}
+
+	private static void release(Upstream upstream, UpstreamConnection connection, UpstreamBody body) {
+		if (body == null || !body.finished) {
+			// the exchange broke off; the connection is in an unknown state.
+			upstream.release(connection, false);
+		}
+	}
+
+	/**
+	 * Sends the head and the body of the request.
+	 *
+	 * @return The status line of the response.
+	 */
+	private static String send(UpstreamConnection connection, byte[] head, HttpRequest request, long length)
+			throws IOException {
+		OutputStream out = connection.getOutputStream();
+		out.write(head);
+		if (length > 0) {
+			HttpInputStream in = request.getInputStream();
+			byte[] b = new byte[(int) Math.min(BUFFER_SIZE, length)];
+			while (length > 0) {
+				int n;
+				try {
+					n = in.read(b, 0, (int) Math.min(b.length, length));
+				} catch (IOException e) {
+					throw new ClientException(e);
+				}
+				if (n < 0) {
+					throw new ClientException(new IOException("Request body ended early"));
+				}
+				out.write(b, 0, n);
+				length -= n;
+			}
+		}
+		out.flush();
+		String statusLine = connection.readLine();
+		if (statusLine == null) {
+			throw new IOException("Upstream closed the connection");
+		}
+		return statusLine;
+	}
+
+	/**
+	 * @param path		The decoded and normalized path of the request
+	 */
+	private static byte[] encodeRequestHead(HttpRequest request, String path, Upstream upstream) {
+		StringBuilder sb = new StringBuilder(256);
+		sb.append(request.getMethod()).append(' ');
+		appendPath(sb, path);
+		if (request.getQueryString() != null) {
+			sb.append('?').append(request.getQueryString());
+		}
+		sb.append(' ').append(HttpConstants.HTTP_VERSION).append(HttpConstants.HTTP_LINE_SEPARATOR);
+		Set<String> connectionTokens = tokens(request.getHeader("Connection"));
+		Iterator<String> i = request.getHeaderNames();
+		while (i.hasNext()) {
+			String name = i.next();
+			String lower = name.toLowerCase(Locale.ROOT);
+			if (!HOP_BY_HOP.contains(lower) && !connectionTokens.contains(lower) && !lower.equals("content-length")) {
+				sb.append(name).append(": ").append(request.getHeader(name)).append(HttpConstants.HTTP_LINE_SEPARATOR);
+			}
+		}
+		// reading the request records an unknown length as -1.
+		if (request.getContentLength() >= 0) {
+			sb.append("Content-Length: ").append(request.getContentLength()).append(HttpConstants.HTTP_LINE_SEPARATOR);
+		}
+		if (request.getHeader("Host") == null) {
+			sb.append("Host: ").append(upstream.getHost()).append(':').append(upstream.getPort())
+					.append(HttpConstants.HTTP_LINE_SEPARATOR);
+		}
+		sb.append(HttpConstants.HTTP_LINE_SEPARATOR);
+		return sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Escapes a decoded path again: every byte of its UTF-8 form is written
+	 * as is if RFC 3986 allows it in a path, and as "%XX" otherwise. Escapes
+	 * the client sent for such characters are not kept, so the upstream sees
+	 * one spelling of every path.
+	 */
+	private static void appendPath(StringBuilder sb, String path) {
+		byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+		for (byte b : bytes) {
+			int c = b & 0xff;
+			if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+					|| (c < 0x80 && PATH_CHARS.indexOf(c) >= 0)) {
+				sb.append((char) c);
+			} else {
+				sb.append('%').append(Character.toUpperCase(Character.forDigit(c >> 4, 16)))
+						.append(Character.toUpperCase(Character.forDigit(c & 0xf, 16)));
+			}
+		}
+	}
+
+	private static int parseStatus(String statusLine) throws IOException {
+		if (statusLine == null || !statusLine.startsWith("HTTP/") || statusLine.length() < 12) {
+			throw new IOException("Invalid status line from upstream: " + statusLine);
+		}
+		return Integer.parseInt(statusLine.substring(9, 12));
+	}
+
+	private static NameValueMapper readHeaders(UpstreamConnection connection) throws IOException {
+		NameValueMapper headers = NameValueMapper.createCaseInsensitiveNameValueMap();
+		String line;
+		while ((line = connection.readLine()) != null && line.length() > 0) {
+			int colon = line.indexOf(':');
+			if (colon > 0) {
+				String name = line.substring(0, colon).trim();
+				String value = line.substring(colon + 1).trim();
+				String previous = headers.getValue(name);
+				headers.put(name, (previous == null) ? value : previous + ", " + value);
+			}
+		}
+		if (line == null) {
+			throw new IOException("Upstream closed the connection within the headers");
+		}
+		return headers;
+	}
+
+	private static void copyHeaders(NameValueMapper headers, HttpResponse response) {
+		Set<String> connectionTokens = tokens(headers.getValue("Connection"));
+		Iterator<String> i = headers.getNames();
+		while (i.hasNext()) {
+			String name = i.next();
+			String lower = name.toLowerCase(Locale.ROOT);
+			if (!HOP_BY_HOP.contains(lower) && !connectionTokens.contains(lower)) {
+				response.setHeader(name, headers.getValue(name));
+			}
+		}
+	}
+
+	private static Set<String> tokens(String value) {
+		if (value == null) {
+			return Collections.emptySet();
+		}
+		Set<String> tokens = new HashSet<String>();
+		for (String token : value.split(",")) {
+			tokens.add(token.trim().toLowerCase(Locale.ROOT));
+		}
+		return tokens;
+	}
+
+	private static boolean hasToken(String value, String token) {
+		return tokens(value).contains(token);
+	}
+
+	/**
+	 * The body of the upstream's response. Its connection goes back to the
+	 * pool as soon as the body has been read to its end, before the last of
+	 * it has reached the client. Whether reading it failed, as opposed to
+	 * writing it to the client, is remembered.
+	 */
+	private static final class UpstreamBody extends FilterInputStream {
+
+		private final Upstream upstream;
+		final UpstreamConnection connection;
+		private final boolean keepAlive;
+		volatile IOException failure;
+		volatile boolean finished;
+
+		UpstreamBody(Upstream upstream, UpstreamConnection connection, InputStream in, boolean keepAlive) {
+			super(in);
+			this.upstream = upstream;
+			this.connection = connection;
+			this.keepAlive = keepAlive;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n;
+			try {
+				n = super.read(b, off, len);
+			} catch (IOException e) {
+				failure = e;
+				throw e;
+			}
+			if (n < 0 && !finished) {
+				finished = true;
+				upstream.succeeded();
+				upstream.release(connection, connection.finishExchange(keepAlive));
+			}
+			return n;
+		}
+	}
+
+	/**
+	 * Reading the request body from the client failed.
+	 */
+	private static final class ClientException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		ClientException(IOException cause) {
+			super(cause.getMessage(), cause);
+		}
+	}
+
+	// -------------------------------------------< configuration parameters >---
+
+	/**
+	 * @param prefix	The path prefix of the requests to forward
+	 */
+	public void setPrefix(String prefix) {
+		this.prefix = prefix.trim();
+	}
+
+	/**
+	 * @param upstreams	The comma separated host:port pairs of the upstreams
+	 */
+	public void setUpstreams(String upstreams) {
+		this.upstreamList = upstreams;
+	}
+
+	/**
+	 * @param maxConnections	The most connections open to one upstream
+	 */
+	public void setMaxConnections(String maxConnections) {
+		this.maxConnections = Math.max(1, Integer.parseInt(maxConnections.trim()));
+	}
+
+	/**
+	 * @param acquireTimeout	The longest a request waits for a pooled connection, in milliseconds
+	 */
+	public void setAcquireTimeout(String acquireTimeout) {
+		this.acquireTimeout = Math.max(0, Integer.parseInt(acquireTimeout.trim()));
+	}
+
+	/**
+	 * @param connectTimeout	The connect timeout in milliseconds
+	 */
+	public void setConnectTimeout(String connectTimeout) {
+		this.connectTimeout = Math.max(0, Integer.parseInt(connectTimeout.trim()));
+	}
+
+	/**
+	 * @param readTimeout		The longest a read from an upstream may block, in milliseconds
+	 */
+	public void setReadTimeout(String readTimeout) {
+		this.readTimeout = Math.max(0, Integer.parseInt(readTimeout.trim()));
+	}
+
+	/**
+	 * @param keepAliveTimeout	The longest a connection is kept idle, in milliseconds
+	 */
+	public void setKeepAliveTimeout(String keepAliveTimeout) {
+		this.keepAliveTimeout = Math.max(0, Integer.parseInt(keepAliveTimeout.trim()));
+	}
+
+	/**
+	 * @param maxFails		The consecutive failures that take an upstream out of rotation
+	 */
+	public void setMaxFails(String maxFails) {
+		this.maxFails = Math.max(1, Integer.parseInt(maxFails.trim()));
+	}
+
+	/**
+	 * @param failTimeout	How long a failing upstream stays out of rotation, in milliseconds
+	 */
+	public void setFailTimeout(String failTimeout) {
+		this.failTimeout = Math.max(0, Integer.parseInt(failTimeout.trim()));
+	}
+
+	int getMaxConnections() {
+		return maxConnections;
+	}
+
+	int getAcquireTimeout() {
+		return acquireTimeout;
+	}
+
+	int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	int getReadTimeout() {
+		return readTimeout;
+	}
+
+	int getKeepAliveTimeout() {
+		return keepAliveTimeout;
+	}
+
+	int getMaxFails() {
+		return maxFails;
+	}
+
+	int getFailTimeout() {
+		return failTimeout;
+	}
+
+	/**
+	 * @return The upstreams of this proxy, for tests and monitoring.
+	 */
+	List<Upstream> getUpstreams() {
+		return Collections.unmodifiableList(upstreams);
+	}
+}
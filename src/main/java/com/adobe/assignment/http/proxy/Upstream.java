@@ -0,0 +1,185 @@
+package com.adobe.assignment.http.proxy;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An upstream server of the proxy, with its pool of persistent connections
+ * and its health as observed by the requests sent to it.
+ *
+ * The pool is bounded: at most maxConnections connections, idle or in use,
+ * are open to the server at any time, and a request waits for a connection
+ * at most for the acquire timeout. Idle connections are reused most recently
+ * used first, so that the ones the server is about to time out are the ones
+ * left alone.
+ *
+ * Health checks are passive: after maxFails consecutive failures (refused
+ * connections, I/O errors and timeouts) the server is taken out of rotation
+ * for failTimeout milliseconds. After that it is tried again; the first
+ * success makes it healthy again.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+class Upstream {
+
+	private static final Logger log = LoggerFactory.getLogger(Upstream.class);
+
+	private final String host;
+	private final int port;
+	private final ProxyHandler settings;
+
+	private final Semaphore permits;
+	private final ArrayDeque<UpstreamConnection> idle = new ArrayDeque<UpstreamConnection>();
+
+	/**
+	 * The number of requests being sent to this server, by which the proxy
+	 * balances its load.
+	 */
+	private final AtomicInteger outstanding = new AtomicInteger();
+
+	private final AtomicInteger failures = new AtomicInteger();
+	private volatile long downUntil;
+
+	/**
+	 * Explicit Value Constructor
+	 *
+	 * @param host			The host of the server
+	 * @param port			The port of the server
+	 * @param settings		The proxy, which holds the pool settings
+	 */
+	Upstream(String host, int port, ProxyHandler settings) {
+		this.host = host;
+		this.port = port;
+		this.settings = settings;
+		this.permits = new Semaphore(settings.getMaxConnections(), true);
+	}
+
+	String getHost() {
+		return host;
+	}
+
+	int getPort() {
+		return port;
+	}
+
+	int getOutstanding() {
+		return outstanding.get();
+	}
+
+	/**
+	 * @return false while the server is out of rotation.
+	 */
+	boolean isAvailable() {
+		return System.currentTimeMillis() >= downUntil;
+	}
+
+	/**
+	 * Leases a connection, reusing an idle one if there is one.
+	 *
+	 * @return The connection, or null if the pool stayed exhausted for the
+	 *         acquire timeout.
+	 * @throws IOException
+	 *             if no connection could be opened.
+	 */
+	UpstreamConnection acquire() throws IOException {
+		try {
+			if (!permits.tryAcquire(settings.getAcquireTimeout(), TimeUnit.MILLISECONDS)) {
+				return null;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		outstanding.incrementAndGet();
+		UpstreamConnection connection = pollIdle();
+		if (connection == null) {
+			try {
+				connection = connect();
+			} catch (IOException e) {
+				outstanding.decrementAndGet();
+				permits.release();
+				throw e;
+			}
+		}
+		return connection;
+	}
+
+	/**
+	 * Opens a new connection in place of a leased one that turned out to be
+	 * closed by the server; the lease is kept.
+	 */
+	UpstreamConnection reconnect(UpstreamConnection stale) throws IOException {
+		stale.close();
+		return connect();
+	}
+
+	/**
+	 * Ends the lease of a connection.
+	 *
+	 * @param reusable		Whether the connection may carry another request
+	 */
+	void release(UpstreamConnection connection, boolean reusable) {
+		if (reusable) {
+			synchronized (idle) {
+				idle.push(connection);
+			}
+		} else {
+			connection.close();
+		}
+		outstanding.decrementAndGet();
+		permits.release();
+	}
+
+	void succeeded() {
+		if (failures.getAndSet(0) >= settings.getMaxFails()) {
+			log.info("Upstream " + this + " is healthy again");
+		}
+	}
+
+	void failed(IOException e) {
+		int n = failures.incrementAndGet();
+		if (n >= settings.getMaxFails()) {
+			downUntil = System.currentTimeMillis() + settings.getFailTimeout();
+			log.warn("Upstream " + this + " failed " + n + " time(s) in a row, last: " + e.getMessage()
+					+ "; out of rotation for " + settings.getFailTimeout() + " ms");
+			closeIdle();
+		}
+	}
+
+	private UpstreamConnection pollIdle() {
+		long oldest = System.currentTimeMillis() - settings.getKeepAliveTimeout();
+		synchronized (idle) {
+			UpstreamConnection connection;
+			while ((connection = idle.poll()) != null) {
+				if (connection.getLastUsed() >= oldest) {
+					return connection;
+				}
+				connection.close();
+			}
+		}
+		return null;
+	}
+
+	private void closeIdle() {
+		synchronized (idle) {
+			UpstreamConnection connection;
+			while ((connection = idle.poll()) != null) {
+				connection.close();
+			}
+		}
+	}
+
+	private UpstreamConnection connect() throws IOException {
+		return new UpstreamConnection(host, port, settings.getConnectTimeout(), settings.getReadTimeout());
+	}
+
+	public String toString() {
+		return host + ":" + port;
+	}
+}
@@ -0,0 +1,228 @@
+package com.adobe.assignment.http.proxy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * A persistent HTTP/1.1 connection to an upstream server.
+ *
+ * A connection carries one exchange at a time. It may go back to its pool
+ * only once the body of the response has been read to its end, which the
+ * stream returned by {@link #openBody(long, boolean)} keeps track of.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+class UpstreamConnection {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * The longest status line, header line or chunk size line accepted.
+	 */
+	private static final int MAX_LINE_LENGTH = 8192;
+
+	private final Socket socket;
+	private final InputStream in;
+	private final OutputStream out;
+
+	/**
+	 * The number of exchanges carried so far, and when the last one ended.
+	 */
+	private int exchanges;
+	private long lastUsed;
+
+	private ResponseBody body;
+
+	/**
+	 * Explicit Value Constructor
+	 *
+	 * @param host				The upstream host
+	 * @param port				The upstream port
+	 * @param connectTimeout	The connect timeout in milliseconds
+	 * @param readTimeout		The read timeout (SO_TIMEOUT) in milliseconds
+	 */
+	UpstreamConnection(String host, int port, int connectTimeout, int readTimeout) throws IOException {
+		socket = new Socket();
+		try {
+			socket.connect(new InetSocketAddress(host, port), connectTimeout);
+			socket.setSoTimeout(readTimeout);
+			socket.setTcpNoDelay(true);
+			in = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+			out = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	OutputStream getOutputStream() {
+		return out;
+	}
+
+	/**
+	 * @return true if this connection carried an exchange before, i.e. the
+	 *         upstream server may have closed it meanwhile.
+	 */
+	boolean isReused() {
+		return exchanges > 0;
+	}
+
+	long getLastUsed() {
+		return lastUsed;
+	}
+
+	/**
+	 * Reads a line of the head of the response.
+	 *
+	 * @return The line without its terminator, or null at the end of stream.
+	 */
+	String readLine() throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+		int c;
+		while ((c = in.read()) != '\n') {
+			if (c < 0) {
+				if (line.size() == 0) {
+					return null;
+				}
+				throw new EOFException("Incomplete line from upstream");
+			}
+			if (line.size() == MAX_LINE_LENGTH) {
+				throw new IOException("Line from upstream too long");
+			}
+			line.write(c);
+		}
+		String s = line.toString("ISO-8859-1");
+		return s.endsWith("\r") ? s.substring(0, s.length() - 1) : s;
+	}
+
+	/**
+	 * Opens the body of the response whose head has just been read.
+	 *
+	 * @param contentLength
+	 *            The length of the body, or -1 if it is chunked or ends with
+	 *            the connection
+	 * @param chunked
+	 *            Whether the body is sent in chunks
+	 */
+	InputStream openBody(long contentLength, boolean chunked) {
+		body = new ResponseBody(contentLength, chunked);
+		return body;
+	}
+
+	/**
+	 * Ends the current exchange.
+	 *
+	 * @return true if the connection may carry another exchange.
+	 */
+	boolean finishExchange(boolean keepAlive) {
+		exchanges++;
+		lastUsed = System.currentTimeMillis();
+		boolean reusable = keepAlive && (body != null) && body.complete && !socket.isClosed();
+		body = null;
+		return reusable;
+	}
+
+	void close() {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// nothing can be done
+		}
+	}
+
+	/**
+	 * The body of a response, delimited by its length, by chunked encoding
+	 * or by the end of the connection. Reading it decodes the chunks.
+	 */
+	private final class ResponseBody extends InputStream {
+
+		private final boolean chunked;
+		private long remaining;
+		private boolean complete, firstChunk = true;
+
+		ResponseBody(long contentLength, boolean chunked) {
+			this.chunked = chunked;
+			this.remaining = chunked ? 0 : contentLength;
+			this.complete = !chunked && (contentLength == 0);
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xff);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (complete) {
+				return -1;
+			}
+			if (len == 0) {
+				return 0;
+			}
+			if (chunked && remaining == 0 && !nextChunk()) {
+				return -1;
+			}
+			if (remaining < 0) {
+				// delimited by the end of the connection.
+				int n = in.read(b, off, len);
+				if (n < 0) {
+					complete = true;
+				}
+				return n;
+			}
+			int n = in.read(b, off, (int) Math.min(len, remaining));
+			if (n < 0) {
+				throw new EOFException("Upstream closed the connection within the body");
+			}
+			remaining -= n;
+			if (remaining == 0 && !chunked) {
+				complete = true;
+			}
+			return n;
+		}
+
+		/**
+		 * Reads the size line of the next chunk, and the trailers after the
+		 * last one.
+		 *
+		 * @return false if there are no more chunks.
+		 */
+		private boolean nextChunk() throws IOException {
+			String line;
+			if (remaining == 0 && !firstChunk) {
+				// the line break ending the previous chunk.
+				line = readLine();
+				if (line == null || line.length() > 0) {
+					throw new IOException("Malformed chunk from upstream");
+				}
+			}
+			firstChunk = false;
+			line = readLine();
+			if (line == null) {
+				throw new EOFException("Upstream closed the connection within the body");
+			}
+			int semicolon = line.indexOf(';');
+			try {
+				remaining = Long.parseLong(((semicolon < 0) ? line : line.substring(0, semicolon)).trim(), 16);
+			} catch (NumberFormatException e) {
+				throw new IOException("Malformed chunk size from upstream");
+			}
+			if (remaining > 0) {
+				return true;
+			}
+			// trailers, which are dropped.
+			while ((line = readLine()) != null && line.length() > 0) {
+			}
+			complete = true;
+			return false;
+		}
+	}
+}
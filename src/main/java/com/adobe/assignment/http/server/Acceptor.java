@@ -0,0 +1,319 @@
+package com.adobe.assignment.http.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.assignment.http.HttpConstants;
+import com.adobe.assignment.http.HttpResponse;
+import com.adobe.assignment.http.jfr.ConnectionAcceptEvent;
+
+/**
+ * Accepts connections on a listening socket and hands them to a pool of
+ * worker threads that belongs to this acceptor alone.
+ *
+ * The server runs one or more acceptors. When the platform supports
+ * SO_REUSEPORT, every acceptor binds its own listener to the same port and
+ * the kernel spreads incoming connections over them. Otherwise the acceptors
+ * share a single listener and simply take turns accepting from it.
+ *
+ * Giving each acceptor its own worker pool (worker affinity) keeps the
+ * acceptors from contending on a single work queue.
+ *
+ * The acceptors of the secure listener hand their connections over for TLS
+ * to be terminated by the worker, so the handshake never delays accepting.
+ *
+ * A client holding as many connections as the ClientLimiter allows never
+ * reaches the pool: it is answered with a 429 (Too Many Requests) that is
+ * encoded once, written without blocking by the acceptor itself. So are connections the pool has
+ * no thread for (see webserver.workers.max), and connections accepted while
+ * the server drains, with a 503 (Service Unavailable).
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+class Acceptor implements Runnable {
+
+	private static final Logger log = LoggerFactory.getLogger(Acceptor.class);
+
+	/**
+	 * The response to connections the server cannot serve, encoded when it
+	 * is first needed.
+	 */
+	private static final class ServiceUnavailable {
+
+		static final ByteBuffer RESPONSE = ByteBuffer.wrap((HttpConstants.HTTP_VERSION + " "
+				+ HttpResponse.SC_SERVICE_OVERLOADED + " "
+				+ HttpResponse.getStatusMessage(HttpResponse.SC_SERVICE_OVERLOADED)
+				+ "\r\nRetry-After: 1\r\nContent-Length: 0\r\nConnection: close\r\n\r\n")
+				.getBytes(StandardCharsets.ISO_8859_1)).asReadOnlyBuffer();
+	}
+
+	private final int id;
+	private final ServerSocketChannel channel;
+	private final ServerContext context;
+	private final boolean secure;
+	private final ThreadPoolExecutor workers;
+
+	/**
+	 * Where the requests of rejected clients are read to, and dropped.
+	 */
+	private final ByteBuffer discard = ByteBuffer.allocate(2048);
+
+	private final LongAdder rejected = new LongAdder();
+
+	private volatile boolean running = true;
+
+	/**
+	 * Explicit Value Constructor
+	 *
+	 * @param id			The index of this acceptor
+	 * @param channel		The listener to accept connections from
+	 * @param context		The Server's context
+	 * @param secure		Whether the connections accepted speak TLS
+	 */
+	Acceptor(int id, ServerSocketChannel channel, ServerContext context, boolean secure) {
+		this.id = id;
+		this.channel = channel;
+		this.context = context;
+		this.secure = secure;
+		int max = context.getConfig().getMaxWorkers();
+		// a cached pool, as Executors creates it, but of a size that may be limited.
+		this.workers = new ThreadPoolExecutor(0, (max > 0) ? max : Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(), new NamedThreadFactory("worker-" + id, false));
+	}
+
+	/**
+	 * Opens a listener on the given port.
+	 *
+	 * @param port			The port to bind to (0 for an ephemeral port)
+	 * @param backlog		The length of the listen queue
+	 * @param reusePort		Whether to set SO_REUSEPORT before binding
+	 * @return				The bound listener
+	 * @throws IOException	if the listener cannot be bound
+	 */
+	static ServerSocketChannel openChannel(int port, int backlog, boolean reusePort) throws IOException {
+		ServerSocketChannel ssc = ServerSocketChannel.open();
+		try {
+			ssc.setOption(StandardSocketOptions.SO_REUSEADDR, Boolean.TRUE);
+			if (reusePort) {
+				ssc.setOption(StandardSocketOptions.SO_REUSEPORT, Boolean.TRUE);
+			}
+			ssc.bind(new InetSocketAddress(port), backlog);
+		} catch (IOException e) {
+			ssc.close();
+			throw e;
+		}
+		return ssc;
+	}
+
+	/**
+	 * Checks whether listeners on this platform can share a port by means of
+	 * SO_REUSEPORT.
+	 *
+	 * @return true if SO_REUSEPORT is supported and false otherwise.
+	 */
+	static boolean isReusePortSupported() {
+		try {
+			ServerSocketChannel ssc = ServerSocketChannel.open();
+			try {
+				return ssc.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+			} finally {
+				ssc.close();
+			}
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	int getId() {
+		return id;
+	}
+
+	boolean isSecure() {
+		return secure;
+	}
+
+	/**
+	 * @return The port this acceptor's listener is bound to.
+	 */
+	int getLocalPort() {
+		return channel.socket().getLocalPort();
+	}
+
+	ThreadPoolExecutor getWorkers() {
+		return workers;
+	}
+
+	/**
+	 * @return The number of connections refused since the worker pool was
+	 *         at its limit.
+	 */
+	long getRejected() {
+		return rejected.sum();
+	}
+
+	/**
+	 * The entry point for the acceptor thread. Accepts connections until the
+	 * acceptor is closed.
+	 */
+	public void run() {
+		while (running) {
+			SocketChannel sc;
+			try {
+				sc = channel.accept();
+			} catch (AsynchronousCloseException e) {
+				// the listener was closed by close()
+				break;
+			} catch (ClosedChannelException e) {
+				break;
+			} catch (IOException e) {
+				log.warn("Fatal error: " + e.getMessage());
+				continue;
+			}
+			ConnectionAcceptEvent event = new ConnectionAcceptEvent();
+			event.begin();
+			int status = dispatch(sc);
+			if (event.shouldCommit()) {
+				event.remoteAddress = String.valueOf(sc.socket().getInetAddress());
+				event.secure = secure;
+				event.status = status;
+				event.commit();
+			}
+		}
+		log.debug("Acceptor " + id + " stopped");
+	}
+
+	/**
+	 * Submits the connection to this acceptor's worker pool, if its client is
+	 * within its limits.
+	 *
+	 * @param sc			The accepted connection
+	 * @return				The status the connection was refused with, or 0
+	 */
+	private int dispatch(SocketChannel sc) {
+		Socket socket = sc.socket();
+		ClientLimiter limiter = context.getClientLimiter();
+		ServerMetrics metrics = context.getMetrics();
+		if (context.isDraining()) {
+			metrics.drainRejected();
+			reject(sc, ServiceUnavailable.RESPONSE);
+			return HttpResponse.SC_SERVICE_OVERLOADED;
+		}
+		if (limiter != null && !limiter.acquire(socket.getInetAddress())) {
+			metrics.clientRejected();
+			reject(sc, ClientLimiter.TooManyRequests.RESPONSE);
+			return HttpResponse.SC_TOO_MANY_REQUESTS;
+		}
+		metrics.connectionOpened();
+		try {
+			// Add the connection to a BlockingQueue<Runnable> object
+			// and, ultimately, call it's run() method in a thread
+			// in the pool
+			workers.submit(new HttpConnectionHandler(socket, context, secure, workers));
+		} catch (RejectedExecutionException e) {
+			metrics.connectionClosed();
+			if (limiter != null) {
+				limiter.release(socket.getInetAddress());
+			}
+			if (workers.isShutdown()) {
+				closeQuietly(socket);
+			} else {
+				// every worker is busy, and the pool at its limit.
+				metrics.workerRejected();
+				rejected.increment();
+				reject(sc, ServiceUnavailable.RESPONSE);
+				return HttpResponse.SC_SERVICE_OVERLOADED;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Answers a connection with 429 or 503 and closes it. The response fits
+	 * into the send buffer of a new connection, so writing it does not
+	 * block. Nothing can be said on a TLS connection before its handshake,
+	 * so those are closed only.
+	 *
+	 * @param sc			The connection that is refused
+	 * @param response		The encoded response
+	 */
+	private void reject(SocketChannel sc, ByteBuffer response) {
+		try {
+			if (!secure) {
+				sc.configureBlocking(false);
+				sc.write(response.duplicate());
+				sc.shutdownOutput();
+				// a request left unread would turn closing into a reset,
+				// which may destroy the response before the client reads it.
+				discard.clear();
+				while (sc.read(discard) > 0) {
+					discard.clear();
+				}
+			}
+		} catch (IOException e) {
+			// the client is gone already
+		} finally {
+			closeQuietly(sc);
+		}
+	}
+
+	/**
+	 * Stops accepting connections. Closing a listener that is shared also
+	 * stops the other acceptors using it, which is what a shutdown wants.
+	 */
+	void close() {
+		running = false;
+		closeQuietly(channel);
+	}
+
+	/**
+	 * Stop the threads in this acceptor's pool
+	 */
+	void stopWorkers() {
+		// Prevent new Runnable objects from being submitted
+		workers.shutdown();
+
+		try {
+			// Wait for existing connections to complete
+			if (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+				// Stop executing threads
+				workers.shutdownNow();
+
+				// Wait again
+				if (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+					log.info("Could not stop thread pool of acceptor " + id);
+				}
+			}
+		} catch (InterruptedException ie) {
+			// Stop executing threads
+			workers.shutdownNow();
+
+			// Propagate the interrupt status --> for shutting down thread-pool.
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void closeQuietly(Closeable c) {
+		try {
+			c.close();
+		} catch (IOException e) {
+			// nothing can be done
+		}
+	}
+}
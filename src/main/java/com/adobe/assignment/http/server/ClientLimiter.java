@@ -0,0 +1,237 @@
+package com.adobe.assignment.http.server;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.adobe.assignment.http.HttpConstants;
+import com.adobe.assignment.http.HttpResponse;
+
+/**
+ * Limits what a single client (remote address) may take from the server: the
+ * number of connections it holds at once, checked by the acceptor, and the
+ * rate at which it sends requests, by means of a token bucket. A token is
+ * taken for every request rather than every connection, since a connection
+ * kept alive, or an HTTP/2 connection, carries many of them.
+ *
+ * The state of the clients is kept in a map split into stripes, each a
+ * ConcurrentHashMap, and updated with compare-and-set only, so admitting a
+ * connection or a request never takes a lock. The token bucket is kept as a single
+ * number, the time at which the bucket would be full again (the theoretical
+ * arrival time of the generic cell rate algorithm), which one CAS updates.
+ *
+ * Clients that hold no connections and whose bucket has been full for the
+ * idle expiry are forgotten. Each stripe is swept at most once per expiry,
+ * by whichever thread happens to come by, so no thread is needed for it.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+class ClientLimiter {
+
+	private static final int STRIPE_BITS = 4;
+	private static final int STRIPES = 1 << STRIPE_BITS;
+
+	/**
+	 * The response to clients over their limits, encoded when it is first
+	 * needed.
+	 */
+	static final class TooManyRequests {
+
+		static final ByteBuffer RESPONSE = ByteBuffer.wrap((HttpConstants.HTTP_VERSION + " "
+				+ HttpResponse.SC_TOO_MANY_REQUESTS + " "
+				+ HttpResponse.getStatusMessage(HttpResponse.SC_TOO_MANY_REQUESTS)
+				+ "\r\nRetry-After: 1\r\nContent-Length: 0\r\nConnection: close\r\n\r\n")
+				.getBytes(StandardCharsets.ISO_8859_1)).asReadOnlyBuffer();
+	}
+
+	/**
+	 * The time it takes to earn one token, and the most a bucket may run
+	 * ahead of now, in nanoseconds. 0 disables the rate limit.
+	 */
+	private final long interval;
+	private final long burstWindow;
+
+	private final int maxConnections;
+	private final long idleExpiry;
+
+	private final Stripe[] stripes = new Stripe[STRIPES];
+
+	/**
+	 * A part of the map and the time it was last swept.
+	 */
+	private static final class Stripe {
+		final ConcurrentHashMap<InetAddress, Client> clients = new ConcurrentHashMap<InetAddress, Client>();
+		final AtomicLong lastSweep;
+
+		Stripe(long now) {
+			lastSweep = new AtomicLong(now);
+		}
+	}
+
+	/**
+	 * The state of one client. A client being forgotten has its connection
+	 * count set to -1 first, so that it is never forgotten while it is
+	 * admitted a connection.
+	 */
+	private static final class Client {
+		final AtomicLong fullAt;
+		final AtomicInteger connections = new AtomicInteger();
+
+		Client(long now) {
+			fullAt = new AtomicLong(now);
+		}
+	}
+
+	/**
+	 * Explicit Value Constructor
+	 *
+	 * @param rate				The requests a client may send per second, on
+	 * 							average; 0 for no limit
+	 * @param burst				The requests a client may send at once
+	 * @param maxConnections	The connections a client may hold at once; 0
+	 * 							for no limit
+	 * @param idleExpiry		How long an idle client is remembered, in
+	 * 							milliseconds
+	 */
+	ClientLimiter(double rate, int burst, int maxConnections, long idleExpiry) {
+		this.interval = (rate > 0) ? (long) (TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+		this.burstWindow = interval * Math.max(1, burst);
+		this.maxConnections = maxConnections;
+		this.idleExpiry = TimeUnit.MILLISECONDS.toNanos(idleExpiry);
+		long now = System.nanoTime();
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new Stripe(now);
+		}
+	}
+
+	/**
+	 * Creates the limiter configured, if any.
+	 *
+	 * @return The limiter, or null if neither limit is configured.
+	 */
+	static ClientLimiter create(ServerConfig config) {
+		if (config.getClientRate() <= 0 && config.getClientMaxConnections() <= 0) {
+			return null;
+		}
+		return new ClientLimiter(config.getClientRate(), config.getClientBurst(),
+				config.getClientMaxConnections(), config.getClientIdleExpiry());
+	}
+
+	/**
+	 * Admits a connection of a client, unless the client already holds as
+	 * many connections as it may. An admitted connection must be given back
+	 * by means of release().
+	 *
+	 * @param address		The remote address of the client
+	 * @return				true if the connection is admitted
+	 */
+	boolean acquire(InetAddress address) {
+		long now = System.nanoTime();
+		Stripe stripe = stripeOf(address);
+		sweep(stripe, now);
+		while (true) {
+			Client client = stripe.clients.get(address);
+			if (client == null) {
+				client = new Client(now);
+				Client existing = stripe.clients.putIfAbsent(address, client);
+				if (existing != null) {
+					client = existing;
+				}
+			}
+			int connections = client.connections.get();
+			if (connections < 0) {
+				// being forgotten; it is replaced by a fresh entry.
+				stripe.clients.remove(address, client);
+				continue;
+			}
+			if (maxConnections > 0 && connections >= maxConnections) {
+				return false;
+			}
+			if (client.connections.compareAndSet(connections, connections + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Admits a request of a client, unless the client exceeds its rate.
+	 *
+	 * @param address		The remote address of a connection admitted by
+	 * 						acquire()
+	 * @return				true if the request is admitted
+	 */
+	boolean acquireRequest(InetAddress address) {
+		if (interval == 0) {
+			return true;
+		}
+		// the connection admitted keeps the client from being forgotten.
+		Client client = stripeOf(address).clients.get(address);
+		return client == null || takeToken(client, System.nanoTime());
+	}
+
+	/**
+	 * Gives back a connection admitted by acquire().
+	 */
+	void release(InetAddress address) {
+		Client client = stripeOf(address).clients.get(address);
+		if (client != null) {
+			client.connections.decrementAndGet();
+		}
+	}
+
+	/**
+	 * @return The number of clients remembered.
+	 */
+	int size() {
+		int size = 0;
+		for (Stripe stripe : stripes) {
+			size += stripe.clients.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Picks a stripe by the top bits of the scrambled hash, since the low
+	 * bits of an address are often alike.
+	 */
+	private Stripe stripeOf(InetAddress address) {
+		return stripes[(address.hashCode() * 0x9E3779B9) >>> (32 - STRIPE_BITS)];
+	}
+
+	private boolean takeToken(Client client, long now) {
+		while (true) {
+			long fullAt = client.fullAt.get();
+			long start = (fullAt - now < 0) ? now : fullAt;
+			long next = start + interval;
+			if (next - now > burstWindow) {
+				return false;
+			}
+			if (client.fullAt.compareAndSet(fullAt, next)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Forgets the clients of a stripe that hold no connection and whose
+	 * bucket has been full for the idle expiry, once per expiry.
+	 */
+	private void sweep(Stripe stripe, long now) {
+		long last = stripe.lastSweep.get();
+		if (now - last < idleExpiry || !stripe.lastSweep.compareAndSet(last, now)) {
+			return;
+		}
+		Iterator<Client> i = stripe.clients.values().iterator();
+		while (i.hasNext()) {
+			Client client = i.next();
+			if (now - client.fullAt.get() >= idleExpiry && client.connections.compareAndSet(0, -1)) {
+				i.remove();
+			}
+		}
+	}
+}
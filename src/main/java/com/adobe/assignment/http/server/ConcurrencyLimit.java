@@ -0,0 +1,144 @@
+package com.adobe.assignment.http.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits the requests being handled at once to a number that adapts to how
+ * long they take, so that the server finds the concurrency at which it
+ * serves the most without requests queueing up inside it (for threads, the
+ * disk or the CPU). Requests over the limit are answered with 503 at once,
+ * which is cheaper for everyone than serving them late.
+ *
+ * The limit follows a gradient, as TCP Vegas does: the latency of every
+ * request is compared with the latency of the server when it is not loaded,
+ * a long-term average. As long as requests take no longer than tolerance
+ * times that, the limit grows by a few requests; as they take longer, the
+ * limit shrinks in proportion, by half at most per request. The limit does
+ * not grow while less than half of it is used, since then latency tells
+ * nothing about more concurrency. The long-term average drifts down while
+ * latency stays well below it, so that the server learns it got faster.
+ *
+ * The latency of a request is the time until its response is committed,
+ * not until it has been sent, since a slow client says nothing about the
+ * server.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+class ConcurrencyLimit {
+
+	/**
+	 * How much longer than the latency without load requests may take
+	 * before the limit shrinks.
+	 */
+	private static final double TOLERANCE = 1.5;
+
+	/**
+	 * The weight of a new limit, and of a new sample in the short and long
+	 * term averages of the latency.
+	 */
+	private static final double SMOOTHING = 0.2;
+	private static final double SHORT_WEIGHT = 0.1;
+	private static final double LONG_WEIGHT = 1.0 / 600;
+
+	private final int minLimit, maxLimit;
+
+	private final AtomicInteger inflight = new AtomicInteger();
+	private volatile int limit;
+
+	/**
+	 * The limit before rounding, and the averages of the latency in
+	 * nanoseconds, guarded by this object's monitor.
+	 */
+	private double estimate;
+	private double shortRtt, longRtt;
+
+	/**
+	 * Explicit Value Constructor
+	 *
+	 * @param initial		The limit to start with
+	 * @param min			The least the limit shrinks to
+	 * @param max			The most the limit grows to
+	 */
+	ConcurrencyLimit(int initial, int min, int max) {
+		this.minLimit = min;
+		this.maxLimit = max;
+		this.estimate = Math.min(max, Math.max(min, initial));
+		this.limit = (int) estimate;
+	}
+
+	/**
+	 * @return A limit as configured, or null if requests are not limited.
+	 */
+	static ConcurrencyLimit create(ServerConfig config) {
+		if (!config.isConcurrencyLimitEnabled()) {
+			return null;
+		}
+		return new ConcurrencyLimit(config.getConcurrencyLimitInitial(), config.getConcurrencyLimitMin(),
+				config.getConcurrencyLimitMax());
+	}
+
+	/**
+	 * Admits a request, unless as many are being handled as the limit
+	 * allows. An admitted request must be given back by means of release().
+	 *
+	 * @return true if the request is admitted
+	 */
+	boolean acquire() {
+		while (true) {
+			int n = inflight.get();
+			if (n >= limit) {
+				return false;
+			}
+			if (inflight.compareAndSet(n, n + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Gives back an admitted request, and adapts the limit to its latency.
+	 *
+	 * @param rtt			The latency of the request in nanoseconds, or -1 if
+	 * 						it tells nothing, e.g. the request was cancelled
+	 */
+	void release(long rtt) {
+		int n = inflight.getAndDecrement();
+		if (rtt > 0) {
+			sample(rtt, n);
+		}
+	}
+
+	private synchronized void sample(long rtt, int inflight) {
+		if (longRtt == 0) {
+			shortRtt = longRtt = rtt;
+			return;
+		}
+		shortRtt += (rtt - shortRtt) * SHORT_WEIGHT;
+		longRtt += (shortRtt - longRtt) * LONG_WEIGHT;
+		if (longRtt > 2 * shortRtt) {
+			// the server got faster; catch up sooner than the average would.
+			longRtt *= 0.95;
+		}
+		if (inflight < estimate / 2) {
+			return;
+		}
+		double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / shortRtt));
+		double next = estimate * gradient + Math.sqrt(estimate);
+		estimate = Math.min(maxLimit, Math.max(minLimit, estimate * (1 - SMOOTHING) + next * SMOOTHING));
+		limit = (int) estimate;
+	}
+
+	/**
+	 * @return The requests that may be handled at once.
+	 */
+	int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * @return The requests being handled.
+	 */
+	int getInflight() {
+		return inflight.get();
+	}
+}
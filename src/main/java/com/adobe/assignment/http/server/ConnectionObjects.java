@@ -0,0 +1,84 @@
+package com.adobe.assignment.http.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.adobe.assignment.http.HttpInputStream;
+import com.adobe.assignment.http.HttpOutputStream;
+import com.adobe.assignment.http.HttpRequest;
+import com.adobe.assignment.http.HttpResponse;
+
+/**
+ * The objects an HTTP/1 connection is served with: its two streams, and the
+ * request and response that are reset for every request it serves.
+ *
+ * When a connection is done, its objects are kept by the worker thread that
+ * served it, and reset for the next connection the thread serves, so that
+ * neither a request nor a connection allocates them anew. Objects that may
+ * still be referred to once the connection thread is done with them, those
+ * of a detached response or of a connection that switched protocols, are
+ * not kept. Handlers must therefore not keep a request or response past
+ * handle() (see HttpMethodHandler).
+ *
+ * The pooled buffers of the streams are given back when a connection ends,
+ * as before; only the objects are kept.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+final class ConnectionObjects {
+
+	/**
+	 * The objects kept by each worker thread for its next connection.
+	 */
+	private static final ThreadLocal<ConnectionObjects> KEPT = new ThreadLocal<ConnectionObjects>();
+
+	final HttpInputStream inputStream;
+	final HttpOutputStream outputStream;
+	final HttpRequest request;
+	final HttpResponse response;
+
+	private ConnectionObjects(InputStream in, OutputStream out) throws IOException {
+		inputStream = new HttpInputStream(in);
+		outputStream = new HttpOutputStream(out);
+		request = new HttpRequest(inputStream);
+		response = new HttpResponse(outputStream);
+	}
+
+	/**
+	 * Takes the objects kept by the current thread, bound to a new
+	 * connection, or creates them if it keeps none.
+	 *
+	 * @param in		The stream of the connection to read from
+	 * @param out		The stream of the connection to write to
+	 * @return			The objects, ready for the first request
+	 */
+	static ConnectionObjects obtain(InputStream in, OutputStream out) throws IOException {
+		ConnectionObjects objects = KEPT.get();
+		if (objects == null) {
+			return new ConnectionObjects(in, out);
+		}
+		KEPT.remove();
+		objects.inputStream.reset(in);
+		objects.outputStream.reset(out);
+		objects.next();
+		return objects;
+	}
+
+	/**
+	 * Resets the request and the response for the next request of the
+	 * connection.
+	 */
+	void next() {
+		request.recycle();
+		response.recycle();
+	}
+
+	/**
+	 * Keeps these objects for the next connection the current thread serves.
+	 * The buffers of the streams must have been given back.
+	 */
+	void keep() {
+		KEPT.set(this);
+	}
+}
@@ -0,0 +1,242 @@
+package com.adobe.assignment.http.server;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.adobe.assignment.http.HttpRequest;
+import com.adobe.assignment.http.HttpResponse;
+import com.adobe.assignment.http.jfr.HandlerEvent;
+import com.adobe.assignment.http.methods.AsyncHttpMethodHandler;
+import com.adobe.assignment.http.methods.HttpMethodHandler;
+
+/**
+ * The configured HttpMethodHandler(s), consulted one after the other for
+ * every request, whichever connection or protocol it arrived on.
+ *
+ * If there exist a handler in the list that understands the request, then
+ * the handling of the request is delegated to that handler. Responses of
+ * handlers that allow it are served from the response cache, which sits in
+ * front of the list of handlers.
+ *
+ * Synchronous and asynchronous handlers (see AsyncHttpMethodHandler) are
+ * served alike: the chain answers every request with a future of its
+ * response, which is complete already for a synchronous handler.
+ *
+ * The chain counts the requests each handler takes, and the time until
+ * their response is complete (see HandlerStats), and records each
+ * invocation as a HandlerEvent if a recording takes it.
+ *
+ * If requests are limited (see ConcurrencyLimit), those over the limit are
+ * answered with 503 (Service Unavailable) before they reach the cache or
+ * the handlers, and the latency of the others adapts the limit.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+class HandlerChain implements ResponseCache.Chain {
+
+	private final ServerConfig config;
+	private final ResponseCache cache;
+	private final ConcurrencyLimit limit;
+	private final ServerMetrics metrics;
+
+	/**
+	 * The statistics of the handlers, by their position in the chain.
+	 */
+	private final HandlerStats[] stats;
+
+	/**
+	 * Explicit Value Constructor
+	 *
+	 * @param config		The configuration holding the handlers
+	 * @param cache			The response cache, or null
+	 * @param limit			The limit of the requests handled at once, or null
+	 * @param metrics		The server's counters
+	 */
+	HandlerChain(ServerConfig config, ResponseCache cache, ConcurrencyLimit limit, ServerMetrics metrics) {
+		this.config = config;
+		this.cache = cache;
+		this.limit = limit;
+		this.metrics = metrics;
+		List<HttpMethodHandler> handlers = config.getHandlers();
+		this.stats = new HandlerStats[handlers.size()];
+		for (int i = 0; i < stats.length; i++) {
+			stats[i] = new HandlerStats(handlers.get(i));
+		}
+	}
+
+	/**
+	 * Handles the HTTP request, answering with 501 (Not Implemented) if no
+	 * handler understands it.
+	 * 
+	 * Handlers implementing AsyncHttpMethodHandler are started and not
+	 * waited for; the others are called on the current thread, and their
+	 * response is complete when this method returns.
+	 *
+	 * @param request
+	 *            Contents of the request
+	 * @param response
+	 *            Used to generate the response
+	 * @return A future completing once the response has been written.
+	 *         Cancelling it cancels the stage of the handler serving the
+	 *         request.
+	 */
+	CompletableFuture<Void> service(HttpRequest request, final HttpResponse response) throws IOException {
+		if (limit == null) {
+			return serve(request, response);
+		}
+		if (!limit.acquire()) {
+			metrics.limitRejected();
+			response.setHeader("Retry-After", "1");
+			response.sendError(HttpResponse.SC_SERVICE_OVERLOADED);
+			return CompletableFuture.completedFuture(null);
+		}
+		final long start = System.nanoTime();
+		final CompletableFuture<Void> done;
+		try {
+			done = serve(request, response);
+		} catch (IOException | RuntimeException e) {
+			limit.release(-1);
+			throw e;
+		}
+		// run before the connection reuses the response for its next request.
+		return cancelling(done, done.whenComplete(new BiConsumer<Void, Throwable>() {
+			public void accept(Void result, Throwable failure) {
+				long end = response.getTiming().getEnd("handle");
+				limit.release(done.isCancelled() ? -1 : ((end != 0) ? end : System.nanoTime()) - start);
+			}
+		}));
+	}
+
+	private CompletableFuture<Void> serve(HttpRequest request, final HttpResponse response) throws IOException {
+		CompletableFuture<Boolean> handled;
+		if (cache != null) {
+			handled = cache.serve(request, response, this);
+		} else {
+			CompletableFuture<HttpMethodHandler> handler = handle(request, response);
+			handled = cancelling(handler, handler.thenApply(new Function<HttpMethodHandler, Boolean>() {
+				public Boolean apply(HttpMethodHandler handler) {
+					return handler != null;
+				}
+			}));
+		}
+		return cancelling(handled, handled.thenAccept(new Consumer<Boolean>() {
+			public void accept(Boolean handled) {
+				if (!handled) {
+					// HTTP method is not supported by this server.
+					response.sendError(HttpResponse.SC_NOT_IMPLEMENTED);
+				}
+			}
+		}));
+	}
+
+	public CompletableFuture<HttpMethodHandler> handle(final HttpRequest request, final HttpResponse response) {
+		List<HttpMethodHandler> handlers = config.getHandlers();
+		for (int i = 0; i < handlers.size(); i++) {
+			final HttpMethodHandler handler = handlers.get(i);
+			final HandlerStats counted = (i < stats.length) ? stats[i] : null;
+			final long start = System.nanoTime();
+			if (handler instanceof AsyncHttpMethodHandler) {
+				// the event outlives this call, so it is only created if recorded.
+				final HandlerEvent event = HandlerEvent.isRecording() ? new HandlerEvent() : null;
+				if (event != null) {
+					event.begin();
+				}
+				CompletionStage<Void> stage;
+				try {
+					stage = ((AsyncHttpMethodHandler) handler).handleAsync(request, response);
+				} catch (RuntimeException e) {
+					record(counted, start, true);
+					record(event, handler, request, response, true);
+					throw e;
+				}
+				if (stage != null) {
+					CompletableFuture<Void> started = stage.toCompletableFuture();
+					if (counted != null || event != null) {
+						started.whenComplete(new BiConsumer<Void, Throwable>() {
+							public void accept(Void result, Throwable failure) {
+								record(counted, start, failure != null);
+								record(event, handler, request, response, failure != null);
+							}
+						});
+					}
+					return cancelling(started, started.thenApply(new Function<Void, HttpMethodHandler>() {
+						public HttpMethodHandler apply(Void done) {
+							return handler;
+						}
+					}));
+				}
+			} else {
+				HandlerEvent event = new HandlerEvent();
+				event.begin();
+				boolean handled;
+				try {
+					handled = handler.handle(request, response);
+				} catch (RuntimeException e) {
+					record(counted, start, true);
+					record(event, handler, request, response, true);
+					throw e;
+				}
+				if (handled) {
+					record(counted, start, false);
+					record(event, handler, request, response, false);
+					return CompletableFuture.completedFuture(handler);
+				}
+			}
+		}
+		return CompletableFuture.completedFuture(null);
+	}
+
+	private static void record(HandlerStats counted, long start, boolean failed) {
+		if (counted != null) {
+			counted.record(start, failed);
+		}
+	}
+
+	private static void record(HandlerEvent event, HttpMethodHandler handler, HttpRequest request,
+			HttpResponse response, boolean failed) {
+		if (event != null && event.shouldCommit()) {
+			event.handler = handler.getClass().getName();
+			event.method = request.getMethod();
+			event.uri = request.getRequestURI();
+			event.status = response.getStatus();
+			event.failed = failed;
+			event.bytesWritten = response.getBytesWritten();
+			event.commit();
+		}
+	}
+
+	/**
+	 * @return The invocations and latencies of the handlers, in the order
+	 *         they are consulted.
+	 */
+	HandlerStats[] getStats() {
+		return stats;
+	}
+
+	/**
+	 * Passes the cancellation of a future on to the future it depends on,
+	 * which a CompletableFuture does not do by itself.
+	 *
+	 * @param source		The future depended on
+	 * @param dependent		A future derived from it
+	 * @return				The dependent future
+	 */
+	static <T> CompletableFuture<T> cancelling(final Future<?> source, final CompletableFuture<T> dependent) {
+		if (source != dependent && !source.isDone()) {
+			dependent.whenComplete(new BiConsumer<T, Throwable>() {
+				public void accept(T result, Throwable failure) {
+					if (dependent.isCancelled()) {
+						source.cancel(true);
+					}
+				}
+			});
+		}
+		return dependent;
+	}
+}
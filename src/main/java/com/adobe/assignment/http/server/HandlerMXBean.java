@@ -0,0 +1,42 @@
+package com.adobe.assignment.http.server;
+
+/**
+ * The management interface of one configured HttpMethodHandler: how often
+ * it took a request, and how long it took to answer.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public interface HandlerMXBean {
+
+	/**
+	 * @return The class of the handler.
+	 */
+	public String getHandlerClass();
+
+	/**
+	 * @return The number of requests the handler took.
+	 */
+	public long getInvocations();
+
+	/**
+	 * @return The number of requests the handler failed, by throwing or by
+	 *         a stage that completed exceptionally or was cancelled.
+	 */
+	public long getFailures();
+
+	/**
+	 * @return The mean time, in milliseconds, from handing a request to the
+	 *         handler until its response was written.
+	 */
+	public double getAverageLatency();
+
+	/**
+	 * @return The longest of these times, in milliseconds.
+	 */
+	public double getMaxLatency();
+
+	/**
+	 * Starts counting anew, e.g. after a change to the deployment.
+	 */
+	public void resetStatistics();
+}
@@ -0,0 +1,85 @@
+package com.adobe.assignment.http.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+import com.adobe.assignment.http.methods.HttpMethodHandler;
+
+/**
+ * The invocations and latencies of one handler of the HandlerChain, as
+ * shown by its MBean.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+class HandlerStats implements HandlerMXBean {
+
+	private final HttpMethodHandler handler;
+
+	private final LongAdder invocations = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final LongAccumulator maxNanos = new LongAccumulator(new LongBinaryOperator() {
+		public long applyAsLong(long max, long nanos) {
+			return Math.max(max, nanos);
+		}
+	}, 0);
+
+	/**
+	 * Explicit Value Constructor
+	 *
+	 * @param handler		The handler counted
+	 */
+	HandlerStats(HttpMethodHandler handler) {
+		this.handler = handler;
+	}
+
+	/**
+	 * Counts a request the handler took.
+	 *
+	 * @param start			When it was handed to the handler (System.nanoTime())
+	 * @param failed		Whether the handler failed it
+	 */
+	void record(long start, boolean failed) {
+		long nanos = System.nanoTime() - start;
+		invocations.increment();
+		if (failed) {
+			failures.increment();
+		}
+		totalNanos.add(nanos);
+		maxNanos.accumulate(nanos);
+	}
+
+	public String getHandlerClass() {
+		return handler.getClass().getName();
+	}
+
+	public long getInvocations() {
+		return invocations.sum();
+	}
+
+	public long getFailures() {
+		return failures.sum();
+	}
+
+	public double getAverageLatency() {
+		long n = invocations.sum();
+		return (n == 0) ? 0 : toMillis(totalNanos.sum()) / n;
+	}
+
+	public double getMaxLatency() {
+		return toMillis(maxNanos.get());
+	}
+
+	public void resetStatistics() {
+		invocations.reset();
+		failures.reset();
+		totalNanos.reset();
+		maxNanos.reset();
+	}
+
+	private static double toMillis(long nanos) {
+		return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+}
@@ -0,0 +1,305 @@
+package com.adobe.assignment.http.server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A hashed timer wheel for scheduling large numbers of short-lived timeouts.
+ *
+ * The wheel is an array of buckets that a single ticker thread visits one
+ * after the other, once per tick. A timeout is dropped into the bucket its
+ * deadline falls into, so that scheduling and cancelling cost O(1)
+ * regardless of the number of timeouts pending. Timeouts further away than
+ * one revolution of the wheel carry a count of the remaining rounds.
+ *
+ * The price of this is precision: a timeout expires within one tick after
+ * its deadline. This is more than good enough for connection timeouts, which
+ * is what the server uses the wheel for.
+ *
+ * Expiry tasks run on the ticker thread and must therefore be short and
+ * must not block.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class HashedTimerWheel {
+
+	private static final Logger log = LoggerFactory.getLogger(HashedTimerWheel.class);
+
+	private static final int ST_INIT = 0;
+	private static final int ST_CANCELLED = 1;
+	private static final int ST_EXPIRED = 2;
+
+	/**
+	 * Upper bound of new timeouts moved into the wheel per tick, so that a
+	 * burst of scheduling cannot stall the expiry of due timeouts.
+	 */
+	private static final int MAX_TRANSFER_PER_TICK = 100000;
+
+	private final long tickNanos;
+	private final Bucket[] wheel;
+	private final int mask;
+	private final Queue<Timeout> pending = new ConcurrentLinkedQueue<Timeout>();
+	private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<Timeout>();
+	private final AtomicInteger pendingCount = new AtomicInteger();
+	private final Thread ticker;
+	private final long startTime;
+
+	private volatile boolean running = true;
+	private long tick;
+
+	/**
+	 * Explicit Value Constructor. Starts the ticker thread.
+	 *
+	 * @param name			The name of the ticker thread
+	 * @param tickDuration	The duration of one tick
+	 * @param unit			The unit of tickDuration
+	 * @param ticksPerWheel	The number of buckets, rounded up to a power of two
+	 */
+	public HashedTimerWheel(String name, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+		if (tickDuration <= 0) {
+			throw new IllegalArgumentException("tickDuration must be greater than 0: " + tickDuration);
+		}
+		if (ticksPerWheel <= 0 || ticksPerWheel > (1 << 30)) {
+			throw new IllegalArgumentException("ticksPerWheel out of range: " + ticksPerWheel);
+		}
+		int size = 1;
+		while (size < ticksPerWheel) {
+			size <<= 1;
+		}
+		wheel = new Bucket[size];
+		for (int i = 0; i < size; i++) {
+			wheel[i] = new Bucket();
+		}
+		mask = size - 1;
+		tickNanos = unit.toNanos(tickDuration);
+
+		startTime = System.nanoTime();
+		ticker = new Thread(new Worker(), name);
+		ticker.setDaemon(true);
+		ticker.start();
+	}
+
+	/**
+	 * Schedules the task for one-time execution after the given delay.
+	 *
+	 * @param task			The task to run on expiry
+	 * @param delay			The delay
+	 * @param unit			The unit of delay
+	 * @return				A handle that can be used to cancel the timeout
+	 */
+	public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+		if (task == null) {
+			throw new NullPointerException("task");
+		}
+		long deadline = System.nanoTime() + unit.toNanos(delay) - startTime;
+		Timeout timeout = new Timeout(this, task, deadline);
+		if (!running) {
+			// nothing will ever expire; behave as if cancelled.
+			timeout.state.set(ST_CANCELLED);
+			return timeout;
+		}
+		pendingCount.incrementAndGet();
+		pending.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * @return The number of timeouts that are neither expired nor cancelled.
+	 */
+	public int pendingTimeouts() {
+		return pendingCount.get();
+	}
+
+	/**
+	 * Stops the ticker thread. Timeouts that have not expired yet never will.
+	 */
+	public void stop() {
+		running = false;
+		ticker.interrupt();
+	}
+
+	/**
+	 * A handle to a scheduled task.
+	 */
+	public static final class Timeout {
+
+		private final HashedTimerWheel timer;
+		private final Runnable task;
+		private final long deadline;
+		private final AtomicInteger state = new AtomicInteger(ST_INIT);
+
+		private long remainingRounds;
+		private Bucket bucket;
+		private Timeout next, prev;
+
+		private Timeout(HashedTimerWheel timer, Runnable task, long deadline) {
+			this.timer = timer;
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Cancels the task. The task is unlinked from its bucket by the ticker
+		 * thread during the next tick.
+		 *
+		 * @return true if the task was cancelled, false if it already expired
+		 *         or was cancelled before.
+		 */
+		public boolean cancel() {
+			if (!state.compareAndSet(ST_INIT, ST_CANCELLED)) {
+				return false;
+			}
+			timer.pendingCount.decrementAndGet();
+			timer.cancelled.add(this);
+			return true;
+		}
+
+		public boolean isCancelled() {
+			return state.get() == ST_CANCELLED;
+		}
+
+		public boolean isExpired() {
+			return state.get() == ST_EXPIRED;
+		}
+
+		private void expire() {
+			if (!state.compareAndSet(ST_INIT, ST_EXPIRED)) {
+				return;
+			}
+			timer.pendingCount.decrementAndGet();
+			try {
+				task.run();
+			} catch (Throwable t) {
+				log.warn("Timeout task " + task + " failed", t);
+			}
+		}
+	}
+
+	/**
+	 * A doubly linked list of timeouts. Only accessed by the ticker thread.
+	 */
+	private static final class Bucket {
+
+		private Timeout head, tail;
+
+		void add(Timeout timeout) {
+			timeout.bucket = this;
+			if (head == null) {
+				head = tail = timeout;
+			} else {
+				tail.next = timeout;
+				timeout.prev = tail;
+				tail = timeout;
+			}
+		}
+
+		Timeout remove(Timeout timeout) {
+			Timeout next = timeout.next;
+			if (timeout.prev != null) {
+				timeout.prev.next = next;
+			}
+			if (timeout.next != null) {
+				timeout.next.prev = timeout.prev;
+			}
+			if (timeout == head) {
+				head = next;
+			}
+			if (timeout == tail) {
+				tail = timeout.prev;
+			}
+			timeout.prev = null;
+			timeout.next = null;
+			timeout.bucket = null;
+			return next;
+		}
+
+		void expire(long deadline) {
+			Timeout timeout = head;
+			while (timeout != null) {
+				Timeout next = timeout.next;
+				if (timeout.remainingRounds <= 0) {
+					next = remove(timeout);
+					if (timeout.deadline <= deadline) {
+						timeout.expire();
+					}
+				} else if (timeout.isCancelled()) {
+					next = remove(timeout);
+				} else {
+					timeout.remainingRounds--;
+				}
+				timeout = next;
+			}
+		}
+	}
+
+	private final class Worker implements Runnable {
+
+		public void run() {
+			while (running) {
+				long deadline = waitForNextTick();
+				if (deadline < 0) {
+					continue;
+				}
+				processCancelled();
+				transferPending();
+				wheel[(int) (tick & mask)].expire(deadline);
+				tick++;
+			}
+		}
+
+		/**
+		 * Sleeps until the current tick is over.
+		 *
+		 * @return The time elapsed since the start of the wheel, or -1 if
+		 *         interrupted.
+		 */
+		private long waitForNextTick() {
+			long deadline = tickNanos * (tick + 1);
+			while (true) {
+				long current = System.nanoTime() - startTime;
+				long sleepMillis = (deadline - current + 999999) / 1000000;
+				if (sleepMillis <= 0) {
+					return current;
+				}
+				try {
+					Thread.sleep(sleepMillis);
+				} catch (InterruptedException e) {
+					if (!running) {
+						return -1;
+					}
+				}
+			}
+		}
+
+		private void transferPending() {
+			for (int i = 0; i < MAX_TRANSFER_PER_TICK; i++) {
+				Timeout timeout = pending.poll();
+				if (timeout == null) {
+					break;
+				}
+				if (timeout.isCancelled()) {
+					continue;
+				}
+				long calculated = timeout.deadline / tickNanos;
+				timeout.remainingRounds = (calculated - tick) / wheel.length;
+				// a deadline in the past goes into the current bucket.
+				long ticks = Math.max(calculated, tick);
+				wheel[(int) (ticks & mask)].add(timeout);
+			}
+		}
+
+		private void processCancelled() {
+			Timeout timeout;
+			while ((timeout = cancelled.poll()) != null) {
+				if (timeout.bucket != null) {
+					timeout.bucket.remove(timeout);
+				}
+			}
+		}
+	}
+}
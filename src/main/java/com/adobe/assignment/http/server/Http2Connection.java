@@ -0,0 +1,1024 @@
+package com.adobe.assignment.http.server;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.assignment.http.HttpInputStream;
+import com.adobe.assignment.http.HttpRequest;
+import com.adobe.assignment.http.HttpResponse;
+import com.adobe.assignment.http.NameValueMapper;
+import com.adobe.assignment.http.h2.HpackDecoder;
+import com.adobe.assignment.http.h2.HpackEncoder;
+import com.adobe.assignment.http.h2.Http2Constants;
+import com.adobe.assignment.http.h2.Http2Exception;
+
+/**
+ * The server side of an HTTP/2 connection over cleartext (h2c), entered
+ * either with prior knowledge (the client starts with the connection preface)
+ * or by an HTTP/1.1 request asking to upgrade to h2c.
+ *
+ * The thread that accepted the connection keeps reading frames. Every
+ * request is handed to the worker pool as soon as its headers are complete,
+ * so the streams of a connection are served concurrently by the same
+ * HttpMethodHandler chain as HTTP/1 requests, and their responses are
+ * interleaved on the connection frame by frame.
+ *
+ * Writers share the connection under its monitor, which also guards the
+ * HPACK encoder (header blocks must go out in the order they are encoded)
+ * and the flow control windows: a writer whose stream or connection window
+ * is exhausted waits until the client sends WINDOW_UPDATE.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+class Http2Connection implements Http2Constants {
+
+	private static final Logger log = LoggerFactory.getLogger(Http2Connection.class);
+
+	private static final int MAX_HEADER_LIST_SIZE = 16384;
+
+	/**
+	 * The most header block bytes accepted for one request, guarding against
+	 * endless CONTINUATION frames.
+	 */
+	private static final int MAX_HEADER_BLOCK_SIZE = 4 * MAX_HEADER_LIST_SIZE;
+
+	private static final byte[] PREFACE = (PREFACE_REQUEST_LINE + "\r\n\r\nSM\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+
+	/**
+	 * Connection-specific headers, which HTTP/2 forbids.
+	 */
+	private static final Set<String> CONNECTION_HEADERS = new HashSet<String>(Arrays.asList(
+			"connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade"));
+
+	private final ServerContext context;
+	private final ServerConfig config;
+	private final Executor workers;
+	private final Socket socket;
+	private final HttpInputStream in;
+	private final OutputStream out;
+
+	private final HpackDecoder decoder = new HpackDecoder(DEFAULT_HEADER_TABLE_SIZE, MAX_HEADER_LIST_SIZE);
+	private final HpackEncoder encoder = new HpackEncoder(DEFAULT_HEADER_TABLE_SIZE);
+
+	private final Map<Integer, Http2Stream> streams = new ConcurrentHashMap<Integer, Http2Stream>();
+	private final int maxConcurrentStreams;
+	private final int initialWindowSize;
+
+	/**
+	 * The state of the reader thread: the highest stream opened by the
+	 * client, whether it acknowledged our settings, and the header block
+	 * being received.
+	 */
+	private int lastStreamId;
+	private boolean settingsAcked;
+	private ByteArrayOutputStream headerBlock;
+	private int headerStreamId, headerFlags;
+	private final byte[] header = new byte[FRAME_HEADER_LENGTH];
+	private final byte[] payload = new byte[DEFAULT_MAX_FRAME_SIZE];
+
+	/**
+	 * The client's settings and the connection's send window, guarded by
+	 * this connection.
+	 */
+	private long peerInitialWindowSize = DEFAULT_WINDOW_SIZE;
+	private int peerMaxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+	private long sendWindow = DEFAULT_WINDOW_SIZE;
+	private boolean closed;
+
+	/**
+	 * Whether the client sent GOAWAY, guarded by this connection: no new
+	 * streams are accepted then, and the connection is closed once the
+	 * streams open finish.
+	 */
+	private boolean goingAway;
+	private final byte[] frameHeader = new byte[FRAME_HEADER_LENGTH];
+
+	/**
+	 * Explicit Value Constructor
+	 *
+	 * @param socket		The TCP socket of the connection
+	 * @param in			The input of the connection
+	 * @param out			The output of the connection
+	 * @param context		The Server's context
+	 * @param workers		The pool to serve the streams on
+	 */
+	Http2Connection(Socket socket, HttpInputStream in, OutputStream out, ServerContext context, Executor workers) {
+		this.socket = socket;
+		this.in = in;
+		this.out = new BufferedOutputStream(out, FRAME_HEADER_LENGTH + DEFAULT_MAX_FRAME_SIZE);
+		this.context = context;
+		this.config = context.getConfig();
+		this.workers = workers;
+		this.maxConcurrentStreams = config.getHttp2MaxConcurrentStreams();
+		this.initialWindowSize = Math.min(config.getHttp2InitialWindowSize(), MAX_WINDOW_SIZE);
+	}
+
+	/**
+	 * Checks whether a request asks to upgrade to h2c in a way this server
+	 * accepts: without a body, and with the client's settings.
+	 *
+	 * @param request		The HTTP/1.1 request
+	 * @return				true if the connection may be upgraded.
+	 */
+	static boolean isUpgrade(HttpRequest request) {
+		return containsToken(request.getHeader("Upgrade"), UPGRADE_TOKEN)
+				&& containsToken(request.getHeader("Connection"), "Upgrade")
+				&& request.getHeader(HEADER_HTTP2_SETTINGS) != null
+				&& request.getContentLength() <= 0
+				&& request.getHeader("Transfer-Encoding") == null
+				&& decodeSettings(request.getHeader(HEADER_HTTP2_SETTINGS)) != null;
+	}
+
+	/**
+	 * Checks whether a request line is the start of the connection preface
+	 * of a client talking HTTP/2 with prior knowledge.
+	 */
+	static boolean isPreface(HttpRequest request) {
+		return "PRI".equals(request.getMethod()) && "*".equals(request.getRequestURI());
+	}
+
+	/**
+	 * Serves a connection whose client sent the connection preface; its
+	 * first line has been read already.
+	 */
+	void serve() {
+		serve(null);
+	}
+
+	/**
+	 * Serves a connection upgraded from HTTP/1.1. The upgrading request
+	 * becomes stream 1, answered over HTTP/2.
+	 *
+	 * @param request		The request that asked for the upgrade
+	 */
+	void serveUpgrade(HttpRequest request) {
+		serve(request);
+	}
+
+	private void serve(HttpRequest upgrade) {
+		context.getMetrics().http2Connection();
+		boolean graceful = false;
+		try {
+			socket.setSoTimeout(config.getIdleTimeout());
+			if (upgrade != null) {
+				byte[] settings = decodeSettings(upgrade.getHeader(HEADER_HTTP2_SETTINGS));
+				synchronized (this) {
+					writeRaw("HTTP/1.1 101 " + HttpResponse.getStatusMessage(HttpResponse.SC_SWITCHING_PROTOCOLS)
+							+ "\r\nConnection: Upgrade\r\nUpgrade: " + UPGRADE_TOKEN + "\r\n\r\n");
+					writeSettings();
+				}
+				applySettings(settings, 0, settings.length);
+				lastStreamId = 1;
+				Http2Stream stream = openStream(1);
+				stream.remoteClose();
+				dispatch(stream, upgradedRequest(upgrade, stream));
+				readPreface(0);
+			} else {
+				synchronized (this) {
+					writeSettings();
+				}
+				// the request line of the preface has been read already.
+				readPreface(PREFACE_REQUEST_LINE.length() + 2);
+			}
+			graceful = readFrames();
+		} catch (Http2Exception e) {
+			log.debug("HTTP/2 connection error: " + e.getMessage());
+			if (e.isConnectionError()) {
+				goAway(e.getErrorCode(), e.getMessage());
+			}
+		} catch (IOException e) {
+			log.debug("HTTP/2 connection failed: " + e.getMessage());
+		} finally {
+			if (graceful) {
+				awaitStreams();
+			}
+			close();
+			awaitStreams();
+		}
+	}
+
+	/**
+	 * Moves the request that asked for the upgrade onto stream 1, dropping
+	 * the headers that only concerned the upgrade.
+	 */
+	private static HttpRequest upgradedRequest(HttpRequest upgrade, Http2Stream stream) throws IOException {
+		NameValueMapper headers = NameValueMapper.createCaseInsensitiveNameValueMap();
+		Iterator<String> i = upgrade.getHeaderNames();
+		while (i.hasNext()) {
+			String name = i.next();
+			if (!CONNECTION_HEADERS.contains(name.toLowerCase(Locale.ROOT))
+					&& !name.equalsIgnoreCase(HEADER_HTTP2_SETTINGS)) {
+				headers.put(name, upgrade.getHeader(name));
+			}
+		}
+		return new HttpRequest(stream.getInputStream(),
+				upgrade.getMethod() + " " + upgrade.getRequestURI() + " HTTP/2.0", headers);
+	}
+
+	/**
+	 * Reads frames until the client goes away.
+	 *
+	 * @return true if the connection ends gracefully, i.e. the streams begun
+	 *         may still be answered.
+	 */
+	private boolean readFrames() throws IOException {
+		boolean first = true;
+		while (true) {
+			try {
+				if (!readFully(header, 0, FRAME_HEADER_LENGTH, true)) {
+					// after a GOAWAY, the input is shut down once the last stream finishes.
+					return isGoingAway();
+				}
+			} catch (SocketTimeoutException e) {
+				log.debug("HTTP/2 connection idle, closing");
+				context.getMetrics().idleTimeout();
+				goAway(NO_ERROR, "idle");
+				return false;
+			}
+			int length = ((header[0] & 0xff) << 16) | ((header[1] & 0xff) << 8) | (header[2] & 0xff);
+			int type = header[3] & 0xff;
+			int flags = header[4] & 0xff;
+			int streamId = readInt31(header, 5);
+			if (length > DEFAULT_MAX_FRAME_SIZE) {
+				throw new Http2Exception(FRAME_SIZE_ERROR, "Frame of " + length + " bytes");
+			}
+			if (!readFully(payload, 0, length, false)) {
+				throw new EOFException();
+			}
+			if (first && type != TYPE_SETTINGS) {
+				throw new Http2Exception(PROTOCOL_ERROR, "Expected SETTINGS");
+			}
+			first = false;
+			if (headerBlock != null && type != TYPE_CONTINUATION) {
+				throw new Http2Exception(PROTOCOL_ERROR, "Expected CONTINUATION");
+			}
+
+			try {
+				switch (type) {
+				case TYPE_DATA:
+					onData(flags, streamId, length);
+					break;
+				case TYPE_HEADERS:
+					onHeaders(flags, streamId, length);
+					break;
+				case TYPE_PRIORITY:
+					if (length != 5) {
+						throw new Http2Exception(FRAME_SIZE_ERROR, streamId, "PRIORITY of " + length + " bytes");
+					}
+					break;
+				case TYPE_RST_STREAM:
+					onRstStream(streamId, length);
+					break;
+				case TYPE_SETTINGS:
+					onSettings(flags, streamId, length);
+					break;
+				case TYPE_PUSH_PROMISE:
+					throw new Http2Exception(PROTOCOL_ERROR, "PUSH_PROMISE from a client");
+				case TYPE_PING:
+					onPing(flags, streamId, length);
+					break;
+				case TYPE_GOAWAY:
+					if (onGoAway(streamId, length)) {
+						return true;
+					}
+					break;
+				case TYPE_WINDOW_UPDATE:
+					onWindowUpdate(streamId, length);
+					break;
+				case TYPE_CONTINUATION:
+					onContinuation(flags, streamId, length);
+					break;
+				default:
+					// unknown frame types are ignored.
+				}
+			} catch (Http2Exception e) {
+				if (e.isConnectionError()) {
+					throw e;
+				}
+				resetStream(e.getStreamId(), e.getErrorCode());
+			}
+		}
+	}
+
+	private void onData(int flags, int streamId, int length) throws IOException {
+		if (streamId == 0) {
+			throw new Http2Exception(PROTOCOL_ERROR, "DATA on stream 0");
+		}
+		int off = 0, end = length;
+		if ((flags & FLAG_PADDED) != 0) {
+			if (length == 0 || (end -= (payload[0] & 0xff)) < ++off) {
+				throw new Http2Exception(PROTOCOL_ERROR, "Invalid padding");
+			}
+		}
+		// the connection window is re-opened at once; the stream windows
+		// bound what is buffered.
+		if (length > 0) {
+			writeWindowUpdate(0, length);
+		}
+		Http2Stream stream = streams.get(streamId);
+		if (stream == null || stream.isRemoteClosed()) {
+			if (streamId > lastStreamId) {
+				throw new Http2Exception(PROTOCOL_ERROR, "DATA on idle stream " + streamId);
+			}
+			throw new Http2Exception(STREAM_CLOSED, streamId, "DATA on closed stream");
+		}
+		if (!stream.receive(payload, off, end - off, length)) {
+			throw new Http2Exception(FLOW_CONTROL_ERROR, streamId, "Stream window exceeded");
+		}
+		if ((flags & FLAG_END_STREAM) != 0) {
+			stream.remoteClose();
+		}
+	}
+
+	private void onHeaders(int flags, int streamId, int length) throws IOException {
+		if (streamId == 0) {
+			throw new Http2Exception(PROTOCOL_ERROR, "HEADERS on stream 0");
+		}
+		int off = 0, end = length;
+		if ((flags & FLAG_PADDED) != 0) {
+			if (length == 0 || (end -= (payload[0] & 0xff)) < ++off) {
+				throw new Http2Exception(PROTOCOL_ERROR, "Invalid padding");
+			}
+		}
+		if ((flags & FLAG_PRIORITY) != 0) {
+			off += 5;
+			if (off > end) {
+				throw new Http2Exception(PROTOCOL_ERROR, "Invalid priority");
+			}
+		}
+		headerBlock = new ByteArrayOutputStream(Math.max(end - off, 64));
+		headerBlock.write(payload, off, end - off);
+		headerStreamId = streamId;
+		headerFlags = flags;
+		if ((flags & FLAG_END_HEADERS) != 0) {
+			onHeaderBlock();
+		}
+	}
+
+	private void onContinuation(int flags, int streamId, int length) throws IOException {
+		if (headerBlock == null || streamId != headerStreamId) {
+			throw new Http2Exception(PROTOCOL_ERROR, "Unexpected CONTINUATION");
+		}
+		if (headerBlock.size() + length > MAX_HEADER_BLOCK_SIZE) {
+			throw new Http2Exception(ENHANCE_YOUR_CALM, "Header block too large");
+		}
+		headerBlock.write(payload, 0, length);
+		if ((flags & FLAG_END_HEADERS) != 0) {
+			onHeaderBlock();
+		}
+	}
+
+	/**
+	 * A complete header block has arrived: a new request, or the trailers of
+	 * one.
+	 */
+	private void onHeaderBlock() throws IOException {
+		byte[] block = headerBlock.toByteArray();
+		int streamId = headerStreamId;
+		boolean endStream = (headerFlags & FLAG_END_STREAM) != 0;
+		headerBlock = null;
+
+		// always decode, to keep the dynamic table in sync with the client.
+		RequestHeaders fields = new RequestHeaders();
+		boolean fits = decoder.decode(block, 0, block.length, fields);
+
+		Http2Stream existing = streams.get(streamId);
+		if (existing != null) {
+			// trailers, which are ignored.
+			if (!endStream || existing.isRemoteClosed()) {
+				throw new Http2Exception(PROTOCOL_ERROR, streamId, "Unexpected HEADERS");
+			}
+			existing.remoteClose();
+			return;
+		}
+		if ((streamId & 1) == 0 || streamId <= lastStreamId) {
+			throw new Http2Exception(PROTOCOL_ERROR, "Invalid stream " + streamId);
+		}
+		lastStreamId = streamId;
+		if (isGoingAway()) {
+			throw new Http2Exception(REFUSED_STREAM, streamId, "Connection going away");
+		}
+		if (streams.size() >= maxConcurrentStreams) {
+			throw new Http2Exception(REFUSED_STREAM, streamId, "Too many streams");
+		}
+
+		Http2Stream stream = openStream(streamId);
+		if (endStream) {
+			stream.remoteClose();
+		}
+		if (!fits) {
+			dispatch(stream, null);
+			return;
+		}
+		if (fields.malformed || fields.method == null || fields.path == null || fields.scheme == null) {
+			streams.remove(streamId);
+			stream.release();
+			throw new Http2Exception(PROTOCOL_ERROR, streamId, "Malformed request");
+		}
+		if (fields.authority != null && fields.headers.getValue("Host") == null) {
+			fields.headers.put("Host", fields.authority);
+		}
+		HttpRequest request = new HttpRequest(stream.getInputStream(),
+				fields.method + " " + fields.path + " HTTP/2.0", fields.headers);
+		dispatch(stream, request);
+	}
+
+	/**
+	 * Collects the fields of a request's header block.
+	 */
+	private static final class RequestHeaders implements HpackDecoder.HeaderListener {
+
+		final NameValueMapper headers = NameValueMapper.createCaseInsensitiveNameValueMap();
+		String method, path, scheme, authority;
+		boolean malformed, regularSeen;
+
+		public void header(String name, String value) {
+			if (name.startsWith(":")) {
+				if (regularSeen) {
+					malformed = true;
+				} else if (name.equals(":method")) {
+					method = value;
+				} else if (name.equals(":path")) {
+					path = value;
+				} else if (name.equals(":scheme")) {
+					scheme = value;
+				} else if (name.equals(":authority")) {
+					authority = value;
+				} else {
+					malformed = true;
+				}
+				return;
+			}
+			regularSeen = true;
+			if (!name.equals(name.toLowerCase(Locale.ROOT)) || CONNECTION_HEADERS.contains(name)) {
+				malformed = true;
+				return;
+			}
+			String previous = headers.getValue(name);
+			if (previous != null) {
+				value = previous + (name.equals("cookie") ? "; " : ", ") + value;
+			}
+			headers.put(name, value);
+		}
+	}
+
+	private void onRstStream(int streamId, int length) throws IOException {
+		if (length != 4) {
+			throw new Http2Exception(FRAME_SIZE_ERROR, "RST_STREAM of " + length + " bytes");
+		}
+		if (streamId == 0 || streamId > lastStreamId) {
+			throw new Http2Exception(PROTOCOL_ERROR, "RST_STREAM on idle stream " + streamId);
+		}
+		Http2Stream stream = streams.get(streamId);
+		if (stream != null) {
+			stream.reset("Stream reset by the client");
+			synchronized (this) {
+				notifyAll();
+			}
+		}
+	}
+
+	private void onSettings(int flags, int streamId, int length) throws IOException {
+		if (streamId != 0) {
+			throw new Http2Exception(PROTOCOL_ERROR, "SETTINGS on stream " + streamId);
+		}
+		if ((flags & FLAG_ACK) != 0) {
+			if (length != 0) {
+				throw new Http2Exception(FRAME_SIZE_ERROR, "SETTINGS ack with payload");
+			}
+			settingsAcked = true;
+			return;
+		}
+		if (length % 6 != 0) {
+			throw new Http2Exception(FRAME_SIZE_ERROR, "SETTINGS of " + length + " bytes");
+		}
+		applySettings(payload, 0, length);
+		synchronized (this) {
+			writeFrame(TYPE_SETTINGS, FLAG_ACK, 0, payload, 0, 0);
+			out.flush();
+		}
+	}
+
+	private synchronized void applySettings(byte[] b, int off, int len) throws Http2Exception {
+		for (int i = off; i + 6 <= off + len; i += 6) {
+			int id = ((b[i] & 0xff) << 8) | (b[i + 1] & 0xff);
+			long value = ((long) (b[i + 2] & 0xff) << 24) | ((b[i + 3] & 0xff) << 16)
+					| ((b[i + 4] & 0xff) << 8) | (b[i + 5] & 0xff);
+			switch (id) {
+			case SETTINGS_HEADER_TABLE_SIZE:
+				encoder.setMaxTableSize((int) Math.min(value, Integer.MAX_VALUE));
+				break;
+			case SETTINGS_ENABLE_PUSH:
+				if (value > 1) {
+					throw new Http2Exception(PROTOCOL_ERROR, "Invalid ENABLE_PUSH");
+				}
+				break;
+			case SETTINGS_INITIAL_WINDOW_SIZE:
+				if (value > MAX_WINDOW_SIZE) {
+					throw new Http2Exception(FLOW_CONTROL_ERROR, "Invalid INITIAL_WINDOW_SIZE");
+				}
+				long delta = value - peerInitialWindowSize;
+				peerInitialWindowSize = value;
+				for (Http2Stream stream : streams.values()) {
+					stream.sendWindow += delta;
+				}
+				notifyAll();
+				break;
+			case SETTINGS_MAX_FRAME_SIZE:
+				if (value < DEFAULT_MAX_FRAME_SIZE || value > MAX_FRAME_SIZE_UPPER_BOUND) {
+					throw new Http2Exception(PROTOCOL_ERROR, "Invalid MAX_FRAME_SIZE");
+				}
+				peerMaxFrameSize = (int) value;
+				break;
+			default:
+				// MAX_CONCURRENT_STREAMS and MAX_HEADER_LIST_SIZE concern pushes
+				// and requests, which the server does not make.
+			}
+		}
+	}
+
+	private void onPing(int flags, int streamId, int length) throws IOException {
+		if (length != 8) {
+			throw new Http2Exception(FRAME_SIZE_ERROR, "PING of " + length + " bytes");
+		}
+		if (streamId != 0) {
+			throw new Http2Exception(PROTOCOL_ERROR, "PING on stream " + streamId);
+		}
+		if ((flags & FLAG_ACK) == 0) {
+			synchronized (this) {
+				writeFrame(TYPE_PING, FLAG_ACK, 0, payload, 0, 8);
+				out.flush();
+			}
+		}
+	}
+
+	/**
+	 * The client is going away: the streams it opened are still answered,
+	 * and frames still read for them, but no new streams are accepted. As
+	 * the server pushes no streams, the last stream the client names is only
+	 * logged.
+	 *
+	 * @return true if no streams are open, so the connection can be closed
+	 */
+	private boolean onGoAway(int streamId, int length) throws IOException {
+		if (length < 8) {
+			throw new Http2Exception(FRAME_SIZE_ERROR, "GOAWAY of " + length + " bytes");
+		}
+		if (streamId != 0) {
+			throw new Http2Exception(PROTOCOL_ERROR, "GOAWAY on stream " + streamId);
+		}
+		int last = readInt31(payload, 0);
+		int errorCode = readInt31(payload, 4);
+		log.debug("HTTP/2 client going away, last stream " + last + ", error " + errorCode);
+		synchronized (this) {
+			goingAway = true;
+			return streams.isEmpty();
+		}
+	}
+
+	private synchronized boolean isGoingAway() {
+		return goingAway;
+	}
+
+	private void onWindowUpdate(int streamId, int length) throws IOException {
+		if (length != 4) {
+			throw new Http2Exception(FRAME_SIZE_ERROR, "WINDOW_UPDATE of " + length + " bytes");
+		}
+		int increment = readInt31(payload, 0);
+		if (increment == 0) {
+			throw new Http2Exception(PROTOCOL_ERROR, streamId, "WINDOW_UPDATE of 0");
+		}
+		synchronized (this) {
+			if (streamId == 0) {
+				sendWindow += increment;
+				if (sendWindow > MAX_WINDOW_SIZE) {
+					throw new Http2Exception(FLOW_CONTROL_ERROR, "Connection window overflow");
+				}
+			} else {
+				Http2Stream stream = streams.get(streamId);
+				if (stream != null) {
+					stream.sendWindow += increment;
+					if (stream.sendWindow > MAX_WINDOW_SIZE) {
+						throw new Http2Exception(FLOW_CONTROL_ERROR, streamId, "Stream window overflow");
+					}
+				}
+			}
+			notifyAll();
+		}
+	}
+
+	private Http2Stream openStream(int streamId) {
+		// until the client acknowledged our settings it may assume the default.
+		int receiveWindow = settingsAcked ? initialWindowSize : Math.max(initialWindowSize, DEFAULT_WINDOW_SIZE);
+		Http2Stream stream;
+		synchronized (this) {
+			stream = new Http2Stream(streamId, this, peerInitialWindowSize, receiveWindow);
+		}
+		streams.put(streamId, stream);
+		context.getMetrics().http2Stream();
+		return stream;
+	}
+
+	/**
+	 * Serves a stream on the worker pool.
+	 *
+	 * @param request		The request, or null if its headers were too large
+	 */
+	private void dispatch(final Http2Stream stream, final HttpRequest request) {
+		final Http2Response response = new Http2Response(this, stream);
+		try {
+			workers.execute(new Runnable() {
+				public void run() {
+					process(stream, request, response);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// the pool is shutting down.
+			streamClosed(stream);
+			resetStream(stream.id, REFUSED_STREAM);
+		}
+	}
+
+	private void process(final Http2Stream stream, final HttpRequest request, final Http2Response response) {
+		CompletableFuture<Void> done;
+		try {
+			if (request == null) {
+				response.sendError(HttpResponse.SC_REQUEST_HEADER_FIELDS_TOO_LARGE);
+				done = CompletableFuture.completedFuture(null);
+			} else if (!context.acquireRequest(socket.getInetAddress())) {
+				response.setHeader("Retry-After", "1");
+				response.sendError(HttpResponse.SC_TOO_MANY_REQUESTS);
+				done = CompletableFuture.completedFuture(null);
+			} else {
+				done = context.getVirtualHosts().resolve(request).getHandlerChain().service(request, response);
+			}
+		} catch (Exception e) {
+			done = new CompletableFuture<Void>();
+			done.completeExceptionally(e);
+		}
+		if (!done.isDone()) {
+			// the worker is free; whoever completes the response ends the stream.
+			stream.setPending(done);
+		}
+		done.whenComplete(new BiConsumer<Void, Throwable>() {
+			public void accept(Void result, Throwable failure) {
+				complete(stream, request, response, failure);
+			}
+		});
+	}
+
+	/**
+	 * Ends a stream once its response is complete, or has failed.
+	 */
+	private void complete(Http2Stream stream, HttpRequest request, Http2Response response, Throwable failure) {
+		try {
+			if (failure != null) {
+				log.debug("Failed to serve stream " + stream.id + ": " + failure.getMessage());
+				if (!response.isCommitted()) {
+					response.sendError(HttpResponse.SC_INTERNAL_ERROR);
+				}
+			}
+		} finally {
+			if (!stream.isLocalClosed()) {
+				// the response was not completed.
+				resetStream(stream.id, INTERNAL_ERROR);
+			} else if (!stream.isRemoteClosed()) {
+				// the rest of the request body is not needed.
+				resetStream(stream.id, NO_ERROR);
+			}
+			streamClosed(stream);
+			if (request != null) {
+				context.requestServed();
+			}
+		}
+	}
+
+	private void streamClosed(Http2Stream stream) {
+		stream.release();
+		synchronized (this) {
+			streams.remove(stream.id);
+			notifyAll();
+			if (goingAway && streams.isEmpty()) {
+				// wakes the reader, which waits for frames that will not come.
+				try {
+					socket.shutdownInput();
+				} catch (IOException e) {
+					// the connection is closed already.
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sends the head of a response as a HEADERS frame, followed by
+	 * CONTINUATION frames if it does not fit into one frame.
+	 */
+	synchronized void writeHeaders(Http2Stream stream, int status, NameValueMapper headers) throws IOException {
+		checkWritable(stream);
+		ByteArrayOutputStream block = new ByteArrayOutputStream(256);
+		encoder.startBlock(block);
+		encoder.encode(":status", Integer.toString(status), block);
+		Iterator<String> i = headers.getNames();
+		while (i.hasNext()) {
+			String name = i.next();
+			String value = headers.getValue(name);
+			String lower = name.toLowerCase(Locale.ROOT);
+			if ((value != null) && !value.equals("") && !CONNECTION_HEADERS.contains(lower)) {
+				encoder.encode(lower, value, block);
+			}
+		}
+
+		byte[] b = block.toByteArray();
+		int off = 0;
+		int type = TYPE_HEADERS;
+		do {
+			int n = Math.min(b.length - off, peerMaxFrameSize);
+			int flags = (off + n == b.length) ? FLAG_END_HEADERS : 0;
+			writeFrame(type, flags, stream.id, b, off, n);
+			type = TYPE_CONTINUATION;
+			off += n;
+		} while (off < b.length);
+		out.flush();
+	}
+
+	/**
+	 * Sends body bytes as DATA frames, waiting for the flow control windows
+	 * to open as needed.
+	 */
+	synchronized void writeData(Http2Stream stream, byte[] b, int off, int len, boolean endStream)
+			throws IOException {
+		int timeout = config.getReadTimeout();
+		do {
+			checkWritable(stream);
+			int n = 0;
+			if (len > 0) {
+				long deadline = System.currentTimeMillis() + timeout;
+				while (sendWindow <= 0 || stream.sendWindow <= 0) {
+					long wait = deadline - System.currentTimeMillis();
+					if (timeout > 0 && wait <= 0) {
+						throw new SocketTimeoutException("Flow control window did not open");
+					}
+					try {
+						wait((timeout > 0) ? wait : 0);
+					} catch (InterruptedException e) {
+						throw new InterruptedIOException();
+					}
+					checkWritable(stream);
+				}
+				n = (int) Math.min(Math.min(len, peerMaxFrameSize), Math.min(sendWindow, stream.sendWindow));
+			}
+			boolean last = endStream && (n == len);
+			writeFrame(TYPE_DATA, last ? FLAG_END_STREAM : 0, stream.id, b, off, n);
+			sendWindow -= n;
+			stream.sendWindow -= n;
+			off += n;
+			len -= n;
+			if (last) {
+				stream.localClose();
+			}
+		} while (len > 0);
+		out.flush();
+	}
+
+	/**
+	 * Re-opens a receive window.
+	 *
+	 * @param streamId		The stream, or 0 for the connection
+	 */
+	synchronized void writeWindowUpdate(int streamId, int increment) throws IOException {
+		if (closed) {
+			return;
+		}
+		byte[] b = new byte[4];
+		writeInt31(b, 0, increment);
+		writeFrame(TYPE_WINDOW_UPDATE, 0, streamId, b, 0, 4);
+		out.flush();
+	}
+
+	private synchronized void resetStream(int streamId, int errorCode) {
+		Http2Stream stream = streams.get(streamId);
+		if (stream != null) {
+			stream.reset("Stream reset");
+			notifyAll();
+		}
+		if (closed) {
+			return;
+		}
+		try {
+			byte[] b = new byte[4];
+			writeInt31(b, 0, errorCode);
+			writeFrame(TYPE_RST_STREAM, 0, streamId, b, 0, 4);
+			out.flush();
+		} catch (IOException e) {
+			// the connection is failing; the reader will notice.
+		}
+	}
+
+	private synchronized void goAway(int errorCode, String message) {
+		if (closed) {
+			return;
+		}
+		try {
+			byte[] debug = (message == null) ? new byte[0] : message.getBytes(StandardCharsets.UTF_8);
+			byte[] b = new byte[8 + debug.length];
+			writeInt31(b, 0, lastStreamId);
+			writeInt31(b, 4, errorCode);
+			System.arraycopy(debug, 0, b, 8, debug.length);
+			writeFrame(TYPE_GOAWAY, 0, 0, b, 0, b.length);
+			out.flush();
+		} catch (IOException e) {
+			// nothing can be done
+		}
+	}
+
+	/**
+	 * Sends the server's settings, which start the server's preface.
+	 */
+	private void writeSettings() throws IOException {
+		byte[] b = new byte[18];
+		putSetting(b, 0, SETTINGS_MAX_CONCURRENT_STREAMS, maxConcurrentStreams);
+		putSetting(b, 6, SETTINGS_INITIAL_WINDOW_SIZE, initialWindowSize);
+		putSetting(b, 12, SETTINGS_MAX_HEADER_LIST_SIZE, MAX_HEADER_LIST_SIZE);
+		writeFrame(TYPE_SETTINGS, 0, 0, b, 0, b.length);
+		out.flush();
+	}
+
+	private static void putSetting(byte[] b, int off, int id, int value) {
+		b[off] = (byte) (id >>> 8);
+		b[off + 1] = (byte) id;
+		writeInt31(b, off + 2, value);
+	}
+
+	/**
+	 * Must be called holding this connection's monitor.
+	 */
+	private void writeFrame(int type, int flags, int streamId, byte[] b, int off, int len) throws IOException {
+		frameHeader[0] = (byte) (len >>> 16);
+		frameHeader[1] = (byte) (len >>> 8);
+		frameHeader[2] = (byte) len;
+		frameHeader[3] = (byte) type;
+		frameHeader[4] = (byte) flags;
+		writeInt31(frameHeader, 5, streamId);
+		out.write(frameHeader);
+		if (len > 0) {
+			out.write(b, off, len);
+		}
+	}
+
+	private void writeRaw(String s) throws IOException {
+		out.write(s.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	private void checkWritable(Http2Stream stream) throws IOException {
+		if (closed) {
+			throw new IOException("Connection closed");
+		}
+		if (stream.isReset()) {
+			throw new IOException("Stream " + stream.id + " reset");
+		}
+		if (stream.isLocalClosed()) {
+			throw new IOException("Stream " + stream.id + " closed");
+		}
+	}
+
+	/**
+	 * Marks the connection closed, failing the streams still waiting to
+	 * read or write.
+	 */
+	private synchronized void close() {
+		closed = true;
+		for (Http2Stream stream : streams.values()) {
+			stream.reset("Connection closed");
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Waits, at most for the request timeout, until the workers have
+	 * finished with the streams of this connection.
+	 */
+	private synchronized void awaitStreams() {
+		long timeout = config.getRequestTimeout();
+		long deadline = System.currentTimeMillis() + timeout;
+		try {
+			while (!streams.isEmpty()) {
+				long wait = deadline - System.currentTimeMillis();
+				if (timeout > 0 && wait <= 0) {
+					log.debug(streams.size() + " HTTP/2 stream(s) did not finish in time");
+					return;
+				}
+				wait((timeout > 0) ? wait : 0);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Reads the (rest of the) client connection preface.
+	 *
+	 * @param offset		The number of bytes of the preface read already
+	 */
+	private void readPreface(int offset) throws IOException {
+		byte[] b = new byte[PREFACE.length - offset];
+		if (!readFully(b, 0, b.length, false)) {
+			throw new EOFException();
+		}
+		for (int i = 0; i < b.length; i++) {
+			if (b[i] != PREFACE[offset + i]) {
+				throw new Http2Exception(PROTOCOL_ERROR, "Invalid connection preface");
+			}
+		}
+	}
+
+	/**
+	 * Reads exactly len bytes. A read that times out is retried, unless it
+	 * is the first read of a frame on a connection without streams, which is
+	 * idle then.
+	 *
+	 * @param boundary		Whether a frame starts here
+	 * @return				false if the stream ended before the first byte
+	 */
+	private boolean readFully(byte[] b, int off, int len, boolean boundary) throws IOException {
+		int n = 0;
+		while (n < len) {
+			int r;
+			try {
+				r = in.read(b, off + n, len - n);
+			} catch (SocketTimeoutException e) {
+				if (boundary && n == 0 && streams.isEmpty()) {
+					throw e;
+				}
+				continue;
+			}
+			if (r < 0) {
+				if (n == 0) {
+					return false;
+				}
+				throw new EOFException();
+			}
+			n += r;
+		}
+		return true;
+	}
+
+	/**
+	 * Decodes the HTTP2-Settings header of an upgrade request.
+	 *
+	 * @return The SETTINGS payload, or null if the header is invalid.
+	 */
+	private static byte[] decodeSettings(String value) {
+		try {
+			byte[] b = Base64.getUrlDecoder().decode(value.trim());
+			return (b.length % 6 == 0) ? b : null;
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private static boolean containsToken(String value, String token) {
+		if (value == null) {
+			return false;
+		}
+		for (String t : value.split(",")) {
+			if (t.trim().equalsIgnoreCase(token)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static int readInt31(byte[] b, int off) {
+		return ((b[off] & 0x7f) << 24) | ((b[off + 1] & 0xff) << 16) | ((b[off + 2] & 0xff) << 8)
+				| (b[off + 3] & 0xff);
+	}
+
+	private static void writeInt31(byte[] b, int off, int value) {
+		b[off] = (byte) (value >>> 24);
+		b[off + 1] = (byte) (value >>> 16);
+		b[off + 2] = (byte) (value >>> 8);
+		b[off + 3] = (byte) value;
+	}
+}
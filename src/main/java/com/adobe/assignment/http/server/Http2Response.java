@@ -0,0 +1,65 @@
+package com.adobe.assignment.http.server;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import com.adobe.assignment.http.HttpConstants;
+import com.adobe.assignment.http.HttpResponse;
+import com.adobe.assignment.http.NameValueMapper;
+
+/**
+ * The response to a request received on an HTTP/2 stream. The status and
+ * the headers are sent as an HPACK encoded HEADERS frame, and the body as
+ * DATA frames, so that handlers write it like any other HttpResponse.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+class Http2Response extends HttpResponse {
+
+	private final Http2Connection connection;
+	private final Http2Stream stream;
+
+	/**
+	 * Explicit Value Constructor
+	 *
+	 * @param connection		The connection of the stream
+	 * @param stream			The stream to respond on
+	 */
+	Http2Response(Http2Connection connection, Http2Stream stream) {
+		super(stream.getOutputStream());
+		this.connection = connection;
+		this.stream = stream;
+	}
+
+	/**
+	 * HTTP/2 has no status line; the status is a pseudo header.
+	 */
+	@Override
+	protected void writeStatusLine() {
+	}
+
+	@Override
+	protected void writeHeaders() throws IOException {
+		connection.writeHeaders(stream, getStatus(), headers);
+	}
+
+	/**
+	 * Writes a response encoded by encodeHead() as HTTP/1 text, e.g. one
+	 * served from the response cache, by decoding its head again.
+	 */
+	@Override
+	public void write(byte[] head, byte[] body, String header) throws IOException {
+		String[] lines = new String(head, StandardCharsets.ISO_8859_1).split(HttpConstants.HTTP_LINE_SEPARATOR);
+		NameValueMapper decoded = NameValueMapper.createCaseInsensitiveNameValueMap();
+		for (int i = 1; i < lines.length; i++) {
+			int colon = lines[i].indexOf(':');
+			if (colon > 0) {
+				decoded.put(lines[i].substring(0, colon), lines[i].substring(colon + 1).trim());
+			}
+		}
+		setStatus(Integer.parseInt(lines[0].split(" ")[1]));
+		setHeaders(decoded);
+		setContent(body);
+		write();
+	}
+}
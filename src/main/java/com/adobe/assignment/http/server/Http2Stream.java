@@ -0,0 +1,274 @@
+package com.adobe.assignment.http.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.Future;
+
+import com.adobe.assignment.http.HttpInputStream;
+import com.adobe.assignment.http.HttpOutputStream;
+
+/**
+ * A stream of an HTTP/2 connection: one request and its response.
+ *
+ * The body of the request arrives in DATA frames read by the connection's
+ * reader thread and is queued until the handler reads it. The queue is
+ * bounded by the flow control window the server grants the stream, which is
+ * re-opened as the handler consumes the body. The response is written
+ * through an output stream that turns into DATA frames.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+class Http2Stream {
+
+	private static final byte[] EMPTY = new byte[0];
+
+	final int id;
+	private final Http2Connection connection;
+
+	/**
+	 * The window for sending DATA on this stream, guarded by the connection.
+	 */
+	long sendWindow;
+
+	/**
+	 * The bytes the client may still send, and the bytes consumed since the
+	 * window was last re-opened, guarded by the body.
+	 */
+	private int receiveWindow, consumed;
+	private final int windowUpdateThreshold;
+
+	private volatile boolean remoteClosed, localClosed, reset;
+
+	/**
+	 * The response being completed by an asynchronous handler, cancelled if
+	 * the stream is reset.
+	 */
+	private volatile Future<?> pending;
+
+	private final RequestBody body = new RequestBody();
+	private final HttpInputStream inputStream;
+	private final HttpOutputStream outputStream;
+
+	/**
+	 * Explicit Value Constructor
+	 *
+	 * @param id				The stream identifier
+	 * @param connection		The connection of the stream
+	 * @param sendWindow		The initial window for sending
+	 * @param receiveWindow		The initial window granted to the client
+	 */
+	Http2Stream(int id, Http2Connection connection, long sendWindow, int receiveWindow) {
+		this.id = id;
+		this.connection = connection;
+		this.sendWindow = sendWindow;
+		this.receiveWindow = receiveWindow;
+		this.windowUpdateThreshold = Math.max(1, receiveWindow / 2);
+		this.inputStream = new HttpInputStream(body);
+		this.outputStream = new HttpOutputStream(new DataOutputStream());
+	}
+
+	/**
+	 * @return The body of the request.
+	 */
+	HttpInputStream getInputStream() {
+		return inputStream;
+	}
+
+	/**
+	 * @return The stream the response is written to.
+	 */
+	HttpOutputStream getOutputStream() {
+		return outputStream;
+	}
+
+	boolean isRemoteClosed() {
+		return remoteClosed;
+	}
+
+	boolean isLocalClosed() {
+		return localClosed;
+	}
+
+	boolean isReset() {
+		return reset;
+	}
+
+	/**
+	 * Queues the body bytes of a DATA frame.
+	 *
+	 * @param frameLength
+	 *            The length of the frame, including padding, which counts
+	 *            against the window
+	 * @return false if the client exceeded the window
+	 */
+	boolean receive(byte[] b, int off, int len, int frameLength) {
+		return body.receive(b, off, len, frameLength);
+	}
+
+	/**
+	 * The client has sent all of the request.
+	 */
+	void remoteClose() {
+		remoteClosed = true;
+		body.finish(null);
+	}
+
+	/**
+	 * The response has been sent completely.
+	 */
+	void localClose() {
+		localClosed = true;
+	}
+
+	/**
+	 * The stream was reset by either side, or the connection went away.
+	 */
+	void reset(String reason) {
+		reset = true;
+		body.finish(reason);
+		Future<?> response = pending;
+		if (response != null) {
+			response.cancel(true);
+		}
+	}
+
+	/**
+	 * Sets the response being completed for this stream, which is cancelled
+	 * at once if the stream has been reset already.
+	 */
+	void setPending(Future<?> response) {
+		pending = response;
+		if (reset) {
+			response.cancel(true);
+		}
+	}
+
+	/**
+	 * Gives the buffers of the streams back to the pool.
+	 */
+	void release() {
+		inputStream.release();
+		outputStream.release();
+	}
+
+	/**
+	 * The body of the request, as queued by the connection's reader.
+	 */
+	private final class RequestBody extends InputStream {
+
+		private final ArrayDeque<byte[]> chunks = new ArrayDeque<byte[]>();
+		private byte[] current = EMPTY;
+		private int pos;
+		private boolean finished;
+		private String failure;
+
+		synchronized boolean receive(byte[] b, int off, int len, int frameLength) {
+			if (frameLength > receiveWindow) {
+				return false;
+			}
+			receiveWindow -= frameLength;
+			// padding is never consumed by the handler; give it back right away.
+			consumed += frameLength - len;
+			if (len > 0) {
+				byte[] chunk = new byte[len];
+				System.arraycopy(b, off, chunk, 0, len);
+				chunks.add(chunk);
+				notifyAll();
+			}
+			return true;
+		}
+
+		synchronized void finish(String reason) {
+			if (!finished) {
+				finished = true;
+				failure = reason;
+			}
+			notifyAll();
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xff);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			int n, update = 0;
+			synchronized (this) {
+				while (pos == current.length) {
+					byte[] next = chunks.poll();
+					if (next != null) {
+						current = next;
+						pos = 0;
+					} else if (finished) {
+						if (failure != null) {
+							throw new IOException(failure);
+						}
+						return -1;
+					} else {
+						try {
+							wait();
+						} catch (InterruptedException e) {
+							throw new InterruptedIOException();
+						}
+					}
+				}
+				n = Math.min(len, current.length - pos);
+				System.arraycopy(current, pos, b, off, n);
+				pos += n;
+				consumed += n;
+				if (consumed >= windowUpdateThreshold && !finished) {
+					update = consumed;
+					receiveWindow += consumed;
+					consumed = 0;
+				}
+			}
+			if (update > 0) {
+				// outside the lock, so that the reader is never kept waiting.
+				connection.writeWindowUpdate(id, update);
+			}
+			return n;
+		}
+
+		@Override
+		public synchronized int available() {
+			int n = current.length - pos;
+			for (byte[] chunk : chunks) {
+				n += chunk.length;
+			}
+			return n;
+		}
+	}
+
+	/**
+	 * Writes the response body as DATA frames; closing it ends the stream.
+	 */
+	private final class DataOutputStream extends OutputStream {
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (len > 0) {
+				connection.writeData(Http2Stream.this, b, off, len, false);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!localClosed && !reset) {
+				connection.writeData(Http2Stream.this, EMPTY, 0, 0, true);
+			}
+		}
+	}
+}
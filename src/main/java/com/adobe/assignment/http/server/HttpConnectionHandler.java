@@ -1,13 +1,32 @@
 package com.adobe.assignment.http.server;
 
+import java.io.Closeable;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
+import com.adobe.assignment.http.HttpConstants;
+import com.adobe.assignment.http.HttpException;
 import com.adobe.assignment.http.HttpInputStream;
 import com.adobe.assignment.http.HttpOutputStream;
 import com.adobe.assignment.http.HttpRequest;
 import com.adobe.assignment.http.HttpResponse;
-import com.adobe.assignment.http.methods.HttpMethodHandler;
+import com.adobe.assignment.http.Outbound;
+import com.adobe.assignment.http.jfr.ConnectionEvent;
+import com.adobe.assignment.http.jfr.RequestParseEvent;
+import com.adobe.assignment.http.server.HashedTimerWheel.Timeout;
+import com.adobe.assignment.http.websocket.WebSocket;
+import com.adobe.assignment.http.websocket.WebSocketHandler;
 
 /**
  * Handle an HTTP 1.0 connection in a new thread of execution
@@ -21,6 +40,54 @@ import com.adobe.assignment.http.methods.HttpMethodHandler;
  * over code modification' design principle, since different Http request
  * handlers can be configured to work with the HTTP server.
  * 
+ * Every connection is guarded against slow clients by a set of deadlines
+ * tracked on the server's timer wheel: an idle deadline for the request to
+ * begin, a header deadline for the rest of the head of the request, a body
+ * deadline for requests that carry a body, and an overall request deadline.
+ * Each read is additionally bounded by SO_TIMEOUT.
+ * 
+ * Connections accepted on the secure listener are wrapped in a TlsConnection
+ * first; the handshake has to complete within the idle deadline.
+ * 
+ * A cleartext connection whose client starts with the HTTP/2 connection
+ * preface, or asks to upgrade to h2c, is handed over to an Http2Connection,
+ * which serves its streams on the acceptor's worker pool.
+ * 
+ * A request asking to upgrade to WebSocket that a configured
+ * WebSocketHandler accepts turns the connection into a WebSocket, read by
+ * this thread until it closes.
+ * 
+ * A handler may detach its response (see HttpResponse.detach()) to keep
+ * writing to the connection after it returns; the connection is then closed
+ * by whoever detached it, and this thread is free for the next connection.
+ * 
+ * If webserver.keepAlive.maxRequests allows it, a connection whose client
+ * asks for it is kept open for further requests, waiting for each within
+ * the keep-alive timeout; the request and response objects, and the
+ * streams, are reset for every request rather than created anew (see
+ * ConnectionObjects). While the server drains, every connection is closed
+ * after its current response.
+ * 
+ * A request answered by an asynchronous handler (see AsyncHttpMethodHandler)
+ * is suspended rather than waited for: this thread is free for the next
+ * connection, and the connection is served on once the handler's stage
+ * completes. Until then, a cleartext connection is probed periodically for a
+ * client that went away, which cancels the stage, as an expiring request
+ * deadline does.
+ * 
+ * The body of a response written by HttpResponse.writeAsync() is sent to a
+ * cleartext connection from an OutboundQueue, at the client's pace, without
+ * holding a thread while the client lags behind.
+ * 
+ * Every request is timed from the end of its request line, which leaves out
+ * the time the connection was idle: the phases it went through (see Timing)
+ * may be sent along in a Server-Timing header, and a request that took
+ * longer than the threshold is counted and, if sampled, logged along with
+ * the CPU time of this thread (see SlowRequestLog).
+ * 
+ * For JDK Flight Recorder, the connection and the parsing of each request
+ * are recorded as events (see the jfr package), if a recording takes them.
+ * 
  * @author Prof. David Bernstein, James Madison University
  * @author Alfusainey Jallow,	University of the Gambia
  * 
@@ -28,30 +95,126 @@ import com.adobe.assignment.http.methods.HttpMethodHandler;
  */
 class HttpConnectionHandler implements Runnable {
 
+	/**
+	 * The phases of a connection that are guarded by a deadline.
+	 */
+	enum Phase {
+		/** Waiting for the request line. */
+		IDLE,
+		/** Reading the request headers. */
+		HEADER,
+		/** Processing a request that carries a body. */
+		BODY,
+		/** The request as a whole. */
+		REQUEST
+	}
+
 	private Socket socket;
 
 	private final ServerConfig config;
-	
+
+	private final ServerContext context;
+
 	/**
-	 * The HTTP Request object for this connection.
+	 * Whether the connection speaks TLS, and its TLS state once the handshake
+	 * has started.
 	 */
-	private HttpRequest httpRequest;
-	
+	private final boolean secure;
+	private TlsConnection tls;
+
+	/**
+	 * The pool the streams of an HTTP/2 connection, and the connection
+	 * after a suspended request, are served on.
+	 */
+	private final Executor workers;
+
 	/**
-	 * The HTTP response object for this connection.
+	 * The streams of this connection, and the request and response reset for
+	 * each of its requests. Both streams hold a pooled buffer that is given
+	 * back when the connection ends.
 	 */
-	private HttpResponse httpResponse;
+	private ConnectionObjects objects;
+
+	/**
+	 * Whether the connection switched to another protocol, which may still
+	 * refer to its objects.
+	 */
+	private boolean switched;
+
+	/**
+	 * The deadline of the current phase and of the request as a whole.
+	 */
+	private Timeout phaseTimeout, requestTimeout;
+
+	/**
+	 * The phase whose deadline expired, or null.
+	 */
+	private volatile Phase expired;
+
+	/**
+	 * Whether the request was handed to the handlers.
+	 */
+	private boolean serviced;
+
+	/**
+	 * The number of requests read from the connection.
+	 */
+	private int served;
+
+	/**
+	 * The stream responses are written to, guarded while the connection is
+	 * probed (see GuardedOutputStream).
+	 */
+	private OutputStream connectionStream;
+
+	/**
+	 * The future of a suspended request's response, and the periodic probe
+	 * for its client. A probe holds the lock while the connection is in
+	 * non-blocking mode.
+	 */
+	private volatile CompletableFuture<Void> pending;
+	private volatile Timeout probeTimeout;
+	private final Object probeLock = new Object();
+
+	/**
+	 * Sends the bodies of responses at the client's pace (see
+	 * HttpResponse.writeAsync()), and the body being sent, if any; null if
+	 * the connection cannot be driven without blocking.
+	 */
+	private Outbound outbound;
+	private volatile OutboundQueue sending;
+
+	/**
+	 * The CPU time of this thread as the current request was started, or -1
+	 * if it is not measured, e.g. as the request was suspended.
+	 */
+	private long cpuStart;
+
+	/**
+	 * The event recording this connection, if a recording takes it.
+	 */
+	private ConnectionEvent connectionEvent;
+
+	private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
 	/**
 	 * Explicit Value Constructor (Starts the thread of execution)
 	 * 
 	 * @param s
 	 *            The TCP socket for the connection
-	 * @param
-	 * 			  The Server's configuration
+	 * @param context
+	 * 			  The Server's context
+	 * @param secure
+	 *            Whether the connection speaks TLS
+	 * @param workers
+	 *            The pool to serve HTTP/2 streams on
 	 */
-	public HttpConnectionHandler(Socket s, ServerConfig config) {
+	public HttpConnectionHandler(Socket s, ServerContext context, boolean secure, Executor workers) {
 		socket = s;
-		this.config = config;
+		this.context = context;
+		this.config = context.getConfig();
+		this.secure = secure;
+		this.workers = workers;
 	}
 
 	/**
@@ -59,97 +222,671 @@ class HttpConnectionHandler implements Runnable {
 	 */
 	public void run() {		
 
-		String method;
+		if (ConnectionEvent.isRecording()) {
+			connectionEvent = new ConnectionEvent();
+			connectionEvent.begin();
+		}
+		try {
+			socket.setSoTimeout(config.getReadTimeout());
+
+			requestTimeout = schedule(Phase.REQUEST, config.getRequestTimeout());
+			enterPhase(Phase.IDLE, config.getIdleTimeout());
+			if (secure) {
+				// a failed handshake simply closes the connection.
+				tls = new TlsConnection(context.getSslContext().createSSLEngine(), socket);
+				tls.handshake();
+			}
+			OutputStream out = (tls != null) ? tls.getOutputStream() : socket.getOutputStream();
+			if (canProbe()) {
+				out = new GuardedOutputStream(out);
+			}
+			connectionStream = out;
+			if (canSendAsync()) {
+				outbound = new Outbound() {
+					public CompletableFuture<Void> transfer(InputStream body) {
+						OutboundQueue queue = new OutboundQueue(socket.getChannel(), probeLock, context, workers);
+						sending = queue;
+						return queue.start(body);
+					}
+				};
+			}
+			objects = ConnectionObjects.obtain((tls != null) ? tls.getInputStream() : socket.getInputStream(), out);
+			objects.inputStream.setMaxLineLength(config.getMaxLineLength());
+			objects.request.setMaxHeaders(config.getMaxHeaders());
+		} catch (IOException e) {
+			// fail to get request and response.
+			// The server should close the socket.
+			end(true);
+			return;
+		}
+		serveRequests();
+	}
+
+	/**
+	 * Serves the requests of the connection one after the other, until it
+	 * ends or a request is suspended (see suspend()).
+	 */
+	private void serveRequests() {
+		int maxRequests = config.getKeepAliveMaxRequests();
+		try {
+			while (true) {
+				served++;
+				CompletableFuture<Void> done = serve(served == 1, served < maxRequests);
+				if (!done.isDone()) {
+					suspend(done);
+					return;
+				}
+				if (!completed(done)) {
+					break;
+				}
+				// the connection persists; wait for its next request.
+				next();
+			}
+		} catch (IOException e) {
+			// a switched connection failed.
+		}
+		end(true);
+	}
 
+	/**
+	 * Lets the handler finish the response of the current request on its
+	 * own, without holding this thread: the connection is served on once
+	 * the future completes, on the thread completing it, or a worker if it
+	 * persists. In the meantime, a cleartext connection is probed for a
+	 * client that went away, which cancels the future.
+	 * 
+	 * @param done
+	 *            The future of the response
+	 */
+	private void suspend(final CompletableFuture<Void> done) {
+		context.getMetrics().requestSuspended();
+		// the response is completed on another thread.
+		cpuStart = -1;
+		pending = done;
+		if (expired != null) {
+			// the deadline expired before the future could be cancelled.
+			done.cancel(true);
+		} else if (canProbe() && getRequest().getContentLength() <= 0
+				&& getRequest().getHeader("Transfer-Encoding") == null) {
+			// the handler may still be reading a body.
+			probeTimeout = scheduleProbe();
+		}
+		done.whenComplete(new BiConsumer<Void, Throwable>() {
+			public void accept(Void result, Throwable failure) {
+				resume(done);
+			}
+		});
+	}
+
+	/**
+	 * Serves the connection on once the response of a suspended request is
+	 * complete.
+	 */
+	private void resume(CompletableFuture<Void> done) {
+		synchronized (probeLock) {
+			// a probe in progress is finished first.
+			pending = null;
+			cancel(probeTimeout);
+		}
+		if (!completed(done)) {
+			// the objects are not kept by a thread that is not a worker.
+			end(false);
+			return;
+		}
+		next();
 		try {
+			workers.execute(new Runnable() {
+				public void run() {
+					serveRequests();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// the server is stopping.
+			end(false);
+		}
+	}
 
-			// Create an empty request and response
-			HttpRequest request = getRequest();
-			HttpResponse response = getResponse();
+	/**
+	 * Answers a request whose handler failed with 500 (Internal Error),
+	 * unless the response has been started.
+	 * 
+	 * @param done
+	 *            The completed future of the response
+	 * @return true if the connection persists, i.e. the response was written
+	 *         completely and the next request is to be read
+	 */
+	private boolean completed(CompletableFuture<Void> done) {
+		HttpResponse response = getResponse();
+		if (done.isCompletedExceptionally()) {
+			response.setPersistent(false);
+			if (expired != null) {
+				sendTimeout(response);
+			} else if (!response.isCommitted() && !done.isCancelled()) {
+				response.sendError(HttpResponse.SC_INTERNAL_ERROR);
+			}
+		}
+		context.getSlowRequestLog().record(getRequest(), response, cpuStart);
+		return response.isPersistent() && response.isCommitted() && !response.isDetached() && expired == null;
+	}
 
-			try {
-				// Read and parse the request information
-				request.read();
+	/**
+	 * Resets the connection for its next request.
+	 */
+	private void next() {
+		cancel(requestTimeout);
+		requestTimeout = null;
+		objects.next();
+		enterPhase(Phase.IDLE, config.getKeepAliveTimeout());
+	}
 
-				// Determine the method to use
-				method = request.getMethod();
+	/**
+	 * Closes the connection, unless a handler detached its response, and
+	 * gives its resources back.
+	 * 
+	 * @param keep
+	 *            Whether the current thread, a worker, may keep the objects
+	 *            of the connection for its next one
+	 */
+	private void end(boolean keep) {
+		cancel(phaseTimeout);
+		cancel(requestTimeout);
+		// the limit counts the connections held; a detached response holds none.
+		ClientLimiter limiter = context.getClientLimiter();
+		if (limiter != null) {
+			limiter.release(socket.getInetAddress());
+		}
+		context.getMetrics().connectionClosed();
+		if (connectionEvent != null) {
+			recordConnection();
+		}
+		if (objects != null && objects.response.isDetached()) {
+			// the connection now belongs to whoever detached it.
+			context.getMetrics().detachedResponse();
+			releaseBuffers();
+		} else {
+			releaseStreams();
+			close();
+			if (keep && objects != null && !switched) {
+				objects.keep();
+			}
+		}
+		if (serviced) {
+			context.requestServed();
+		}
+	}
+
+	private void recordConnection() {
+		ConnectionEvent event = connectionEvent;
+		connectionEvent = null;
+		event.end();
+		if (event.shouldCommit()) {
+			event.remoteAddress = String.valueOf(socket.getInetAddress());
+			event.secure = secure;
+			event.requests = served;
+			if (objects != null) {
+				event.bytesRead = objects.inputStream.getBytesRead();
+				event.bytesWritten = objects.outputStream.getBytesWritten();
+			}
+			event.commit();
+		}
+	}
+
+	/**
+	 * Reads and answers one request of the connection.
+	 * 
+	 * @param first
+	 *            Whether it is the first request of the connection
+	 * @param keepAlive
+	 *            Whether the connection may serve another request after it
+	 * @return A future completing once the response has been written; it is
+	 *         complete already unless an asynchronous handler is still at it
+	 * @throws IOException
+	 *             if the connection was switched to another protocol and
+	 *             failed
+	 */
+	private CompletableFuture<Void> serve(boolean first, boolean keepAlive) throws IOException {
 
-				// Respond to the request
-				if ((request == null) || (method == null)) {
-					response.sendError(HttpResponse.SC_BAD_REQUEST);
-				} else {
-					handle(request, response);
+		String method;
+
+		HttpRequest request = objects.request;
+		HttpResponse response = objects.response;
+
+		// The connection is closed once the response has been written.
+		response.setHeader("Connection", "close");
+		// unless the handler detaches it, e.g. for an event stream.
+		response.setDetachable(connectionStream, new Closeable() {
+			public void close() {
+				closeDetached();
+			}
+		});
+		response.setOutbound(outbound);
+
+		try {
+			// Read and parse the request information
+			long offset = getInputStream().getBytesRead();
+			request.readRequestLine();
+			if (!first && request.getMethod() == null) {
+				// the client closed the persistent connection.
+				return DONE;
+			}
+			response.getTiming().start();
+			response.setServerTiming(config.isServerTimingEnabled());
+			cpuStart = context.getSlowRequestLog().cpuTime();
+			RequestParseEvent parse = new RequestParseEvent();
+			parse.begin();
+			if (requestTimeout == null) {
+				requestTimeout = schedule(Phase.REQUEST, config.getRequestTimeout());
+			}
+			if (first && acceptsHttp2() && Http2Connection.isPreface(request)) {
+				switchToHttp2().serve();
+				return DONE;
+			}
+			enterPhase(Phase.HEADER, config.getHeaderTimeout());
+			request.readHeaders();
+			checkExpired();
+			response.getTiming().mark("read");
+			if (parse.shouldCommit()) {
+				parse.method = request.getMethod();
+				parse.uri = request.getRequestURI();
+				parse.bytes = getInputStream().getBytesRead() - offset;
+				parse.commit();
+			}
+			VirtualHosts.Host host = context.getVirtualHosts().resolve(request);
+			if (WebSocket.isUpgrade(request)) {
+				WebSocketHandler handler = findWebSocketHandler(host.getConfig(), request);
+				if (handler != null) {
+					if (WebSocket.isValidHandshake(request)) {
+						switchToWebSocket(request, handler).run();
+					} else {
+						response.setHeader("Sec-WebSocket-Version", "13");
+						response.sendError(HttpResponse.SC_BAD_REQUEST);
+					}
+					return DONE;
 				}
-			} catch (Exception e) {
+			}
+			if (acceptsHttp2() && Http2Connection.isUpgrade(request)) {
+				switchToHttp2().serveUpgrade(request);
+				return DONE;
+			}
+
+			if (request.getContentLength() > 0) {
+				enterPhase(Phase.BODY, config.getBodyTimeout());
+			} else {
+				enterPhase(null, 0);
+			}
+
+			// Determine the method to use
+			method = request.getMethod();
+
+			// Respond to the request
+			if ((request == null) || (method == null)) {
+				response.sendError(HttpResponse.SC_BAD_REQUEST);
+			} else if (!context.acquireRequest(socket.getInetAddress())) {
+				// the connection is closed after the canned 429.
+				getOutputStream().write(ClientLimiter.TooManyRequests.RESPONSE.duplicate());
+				getOutputStream().flush();
+			} else {
+				if (keepAlive && keepAlive() && !context.isDraining()) {
+					response.setPersistent(true);
+					response.setHeader("Connection", "keep-alive");
+				}
+				serviced = true;
+				return host.getHandlerChain().service(request, response);
+			}
+		} catch (SocketTimeoutException e) {
+			// the client stopped sending for longer than SO_TIMEOUT.
+			response.setPersistent(false);
+			context.getMetrics().readTimeout();
+			if (!isIdle()) {
+				sendTimeout(response);
+			}
+		} catch (HttpException e) {
+			// a head the server cannot read; the connection cannot go on.
+			response.setPersistent(false);
+			response.sendError(e.getStatus());
+		} catch (Exception e) {
+			response.setPersistent(false);
+			if (expired != null) {
+				sendTimeout(response);
+			} else {
 				response.sendError(HttpResponse.SC_INTERNAL_ERROR);
 			}
+		}
+		return DONE;
+	}
+
+	/**
+	 * Replaces the deadline of the current phase by the deadline of the next.
+	 * 
+	 * @param phase
+	 *            The next phase, or null if the next phase has no deadline
+	 * @param timeout
+	 *            The timeout of the next phase in milliseconds
+	 */
+	private void enterPhase(Phase phase, int timeout) {
+		cancel(phaseTimeout);
+		phaseTimeout = (phase == null) ? null : schedule(phase, timeout);
+	}
+
+	private Timeout schedule(Phase phase, int timeout) {
+		if (timeout <= 0) {
+			return null;
+		}
+		return context.getTimer().newTimeout(new Expiry(phase), timeout, TimeUnit.MILLISECONDS);
+	}
+
+	private static void cancel(Timeout timeout) {
+		if (timeout != null) {
+			timeout.cancel();
+		}
+	}
+
+	/**
+	 * @return true if the connection can be probed for a client that went
+	 *         away: a cleartext connection with a channel, as accepted by
+	 *         the server.
+	 */
+	private boolean canProbe() {
+		return !secure && socket.getChannel() != null && config.getAsyncProbeInterval() > 0;
+	}
+
+	/**
+	 * @return true if bodies can be sent at the client's pace: a cleartext
+	 *         connection with a channel, as accepted by the server.
+	 */
+	private boolean canSendAsync() {
+		return !secure && socket.getChannel() != null && config.getWriteHighWatermark() > 0;
+	}
+
+	private Timeout scheduleProbe() {
+		return context.getTimer().newTimeout(new Runnable() {
+			public void run() {
+				probe();
+			}
+
+			public String toString() {
+				return "Probe of " + socket;
+			}
+		}, config.getAsyncProbeInterval(), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Called on the timer thread while a request is suspended, to find out
+	 * whether its client went away: whatever the client sent in the meantime
+	 * is read ahead without blocking, for the next request, and the end of
+	 * the stream cancels the request. A client that merely shut down its
+	 * output is taken to have gone away, too.
+	 * 
+	 * The handler's writes wait for the probe, since the connection cannot
+	 * be written to in blocking mode while it is in non-blocking mode. A
+	 * connection a body is sent to at the client's pace is not probed.
+	 */
+	private void probe() {
+		CompletableFuture<Void> done;
+		synchronized (probeLock) {
+			done = pending;
+			if (done == null) {
+				return;
+			}
+			OutboundQueue queue = sending;
+			if (queue != null && queue.isActive()) {
+				// sending fails by itself if the client went away.
+				probeTimeout = scheduleProbe();
+				return;
+			}
+			SocketChannel channel = socket.getChannel();
+			int n;
+			try {
+				channel.configureBlocking(false);
+				try {
+					n = getInputStream().readAhead(channel);
+				} finally {
+					channel.configureBlocking(true);
+				}
+			} catch (IOException e) {
+				n = -1;
+			}
+			if (n >= 0) {
+				probeTimeout = scheduleProbe();
+				return;
+			}
+		}
+		context.getMetrics().requestCancelled();
+		done.cancel(true);
+	}
+
+	/**
+	 * The output of a connection that may be probed, whose writes do not
+	 * overlap with a probe.
+	 */
+	private final class GuardedOutputStream extends FilterOutputStream {
+
+		GuardedOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		public void write(int b) throws IOException {
+			synchronized (probeLock) {
+				out.write(b);
+			}
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			synchronized (probeLock) {
+				out.write(b, off, len);
+			}
+		}
+	}
+
+	private boolean acceptsHttp2() {
+		return !secure && config.isHttp2Enabled();
+	}
+
+	/**
+	 * Hands the connection over to HTTP/2, which guards its connections by
+	 * itself: the deadlines of this connection no longer apply.
+	 */
+	private Http2Connection switchToHttp2() throws IOException {
+		switched = true;
+		enterPhase(null, 0);
+		cancel(requestTimeout);
+		return new Http2Connection(socket, getInputStream(), socket.getOutputStream(), context, workers);
+	}
+
+	private WebSocketHandler findWebSocketHandler(ServerConfig config, HttpRequest request) {
+		for (WebSocketHandler handler : config.getWebSocketHandlers()) {
+			if (handler.accept(request)) {
+				return handler;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Completes the WebSocket handshake. The connection is guarded by the
+	 * WebSocket's keepalive from now on, instead of the deadlines.
+	 */
+	private WebSocket switchToWebSocket(HttpRequest request, WebSocketHandler handler) throws IOException {
+		switched = true;
+		enterPhase(null, 0);
+		cancel(requestTimeout);
+		context.getMetrics().webSocket();
+
+		HttpOutputStream out = getOutputStream();
+		out.printHttpLine(HttpConstants.HTTP_VERSION + " " + HttpResponse.SC_SWITCHING_PROTOCOLS + " "
+				+ HttpResponse.getStatusMessage(HttpResponse.SC_SWITCHING_PROTOCOLS));
+		out.printEOL();
+		out.printHeaderLine("Upgrade", "websocket");
+		out.printHeaderLine("Connection", "Upgrade");
+		out.printHeaderLine("Sec-WebSocket-Accept", WebSocket.acceptKey(request.getHeader("Sec-WebSocket-Key")));
+		out.printEOL();
+		out.flush();
+		return new WebSocket(socket, getInputStream(),
+				(tls != null) ? tls.getOutputStream() : socket.getOutputStream(), request, handler, workers, config);
+	}
+
+	private boolean isIdle() {
+		return (objects == null) || (objects.request.getMethod() == null);
+	}
+
+	/**
+	 * Reading the headers stops quietly at the end of the input stream, which
+	 * is also how an expired header deadline shows. Turn it into an error.
+	 * 
+	 * @throws InterruptedIOException
+	 *             if a deadline expired.
+	 */
+	private void checkExpired() throws InterruptedIOException {
+		if (expired != null) {
+			throw new InterruptedIOException(expired + " deadline expired");
+		}
+	}
+
+	/**
+	 * Answers a request that timed out with 408 (Request Timeout), unless the
+	 * connection was idle or a response has already been started.
+	 * 
+	 * @param response
+	 *            The response of the timed out request
+	 */
+	private void sendTimeout(HttpResponse response) {
+		if (expired == Phase.IDLE || expired == Phase.REQUEST || response.isCommitted()) {
+			return;
+		}
+		response.sendError(HttpResponse.SC_REQUEST_TIMEOUT);
+	}
+
+	/**
+	 * Called on the timer thread when the deadline of a phase expires.
+	 * 
+	 * A connection that is idle, or whose request ran out of time altogether,
+	 * is closed. Otherwise the input is shut down only: the worker thread
+	 * blocked reading from the client wakes up and answers with 408 itself,
+	 * so that the timer never writes to a response concurrently with a
+	 * handler. The response of a suspended request is cancelled.
+	 * 
+	 * @param phase
+	 *            The phase whose deadline expired
+	 */
+	void expire(Phase phase) {
+		if (expired != null) {
+			return;
+		}
+		expired = phase;
+
+		ServerMetrics metrics = context.getMetrics();
+		switch (phase) {
+		case IDLE:
+			metrics.idleTimeout();
+			close();
+			break;
+		case HEADER:
+			metrics.headerTimeout();
+			shutdownInput();
+			break;
+		case BODY:
+			metrics.bodyTimeout();
+			shutdownInput();
+			break;
+		case REQUEST:
+			metrics.requestTimeout();
+			close();
+			break;
+		}
+		CompletableFuture<Void> done = pending;
+		if (done != null) {
+			done.cancel(true);
+		}
+	}
+
+	private void shutdownInput() {
+		try {
+			socket.shutdownInput();
 		} catch (IOException e) {
-			// fail to get request and response.
-			// The server should close the socket.
-		} finally {
-			// close();
+			close();
 		}
 	}
-	
-	public HttpRequest getRequest() throws IOException {
-		if (httpRequest == null) {
-			httpRequest = new HttpRequest(getInputStream());
+
+	/**
+	 * The task run by the timer when a deadline expires.
+	 */
+	private final class Expiry implements Runnable {
+
+		private final Phase phase;
+
+		Expiry(Phase phase) {
+			this.phase = phase;
+		}
+
+		public void run() {
+			expire(phase);
+		}
+
+		public String toString() {
+			return phase + " deadline of " + socket;
 		}
-		return httpRequest;
 	}
 	
-	public HttpResponse getResponse() throws IOException {
-		if (httpResponse == null) {
-			httpResponse = new HttpResponse(getOutputStream());
-		}
-		return httpResponse;
+	public HttpRequest getRequest() {
+		return objects.request;
 	}
 	
-	private HttpInputStream getInputStream() throws IOException {
-		return new HttpInputStream(socket.getInputStream());
+	public HttpResponse getResponse() {
+		return objects.response;
 	}
 	
-	private HttpOutputStream getOutputStream() throws IOException {
-		return new HttpOutputStream(socket.getOutputStream());
+	private HttpInputStream getInputStream() {
+		return objects.inputStream;
 	}
 	
+	private HttpOutputStream getOutputStream() {
+		return objects.outputStream;
+	}
+
 	/**
-	 * Checks whether this HttpConnection should be kept
-	 * alive i.e left open. If the request present with this
-	 * connection has its keep-alive header set, this method
-	 * returns true and false otherwise.
-	 * 
-	 * Note: This method is not used anywhere yet. It would be
-	 * needed if the server should support persistent connections.
-	 * 
-	 * @return
-	 * @throws IOException 
+	 * Gives the buffers of this connection's streams, and of its TLS state,
+	 * back to the pool.
 	 */
-	public boolean keepAlive() throws IOException {
-		String keepAlive = getRequest().getHeader("Connection");
-		return (keepAlive == null) ? false : keepAlive.equalsIgnoreCase(keepAlive);
+	private void releaseStreams() {
+		releaseBuffers();
+		if (tls != null) {
+			tls.release();
+		}
+	}
+
+	/**
+	 * Gives the buffers of this connection's streams back to the pool. A
+	 * detached response writes past them, to the connection itself.
+	 */
+	private void releaseBuffers() {
+		if (objects != null) {
+			objects.inputStream.release();
+			objects.outputStream.release();
+		}
+	}
+
+	/**
+	 * Closes the connection of a detached response, on behalf of the owner.
+	 */
+	private void closeDetached() {
+		close();
+		if (tls != null) {
+			tls.release();
+		}
 	}
 	
 	/**
-	 * Handles the HTTP request. Handling the request involves
-	 * consulting a list of HttpMethodHandler(s) that knows how to
-	 * service/deal with the specified request.
-	 * 
-	 * If there exist a handler in the list that understands the request,
-	 * then the handling of the request is delegated to that handler.
+	 * Checks whether this HttpConnection should be kept
+	 * alive i.e left open after the current request: the client
+	 * asks for it (see HttpRequest.isKeepAlive()), and the request
+	 * carries no body, which the handler may not have read to its end.
 	 * 
-	 * @param request
-	 *            Contents of the request
-	 * @param response
-	 *            Used to generate the response
+	 * @return true if the connection may be kept open
 	 */
-	private void handle(HttpRequest request, HttpResponse response) {
-		for (HttpMethodHandler handler : config.getHandlers()) {
-			if (handler.handle(request, response)) {
-				return;
-			}
-		} // else: HTTP method is not supported by this server.
-		response.sendError(HttpResponse.SC_NOT_IMPLEMENTED);
+	public boolean keepAlive() {
+		HttpRequest request = getRequest();
+		return request.isKeepAlive() && request.getContentLength() <= 0
+				&& request.getHeader("Transfer-Encoding") == null;
 	}
 	
 	/**
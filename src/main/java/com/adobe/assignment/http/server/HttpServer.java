@@ -2,17 +2,16 @@ package com.adobe.assignment.http.server;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketTimeoutException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.SAXException;
 
+import com.adobe.assignment.http.methods.Trash;
+
 /**
  * A simplified HTTP server
  * 
@@ -26,6 +25,19 @@ import org.xml.sax.SAXException;
  * 
  * I also dropped java.util.logging and instead used slf4j with logback
  * 
+ * Connections are accepted by one or more acceptor threads (see
+ * webserver.acceptors). Each acceptor has its own SO_REUSEPORT listener and
+ * its own worker pool, so that accepting is no longer a serial bottleneck
+ * under connection-heavy traffic.
+ * 
+ * If a keystore is configured (see webserver.ssl.keystore), the server also
+ * accepts HTTPS connections on a second port. TLS is terminated with an
+ * SSLEngine, and sessions are resumed from a session cache or from session
+ * tickets.
+ * 
+ * While it runs, the server can be inspected, and its pools resized or its
+ * connections drained, through JMX (see ServerManagement).
+ * 
  * @author Prof. David Bernstein, James Madison University
  * @author Alfusainey Jallow, University of the Gambia
  * 
@@ -50,11 +62,14 @@ public class HttpServer {
 	 */
 	private static final String WEB_SERVER_HTTP_HANDLERS_CONFIG = "http_handlers.xml";
 
-	private final ExecutorService threadPool;
-	private final ServerSocket serverSocket;
+	private final List<Acceptor> acceptors;
 
 	private ServerConfig config;
 
+	private final ServerContext context;
+
+	private final ServerManagement management = new ServerManagement();
+
 	/**
 	 * Default COnstructor
 	 */
@@ -62,13 +77,21 @@ public class HttpServer {
 		// Initialize the Server's configuration.
 		init();
 
-		serverSocket = new ServerSocket(config.getPort());
-		
-		log.info("Created Server Socket on " + config.getPort());
+		context = new ServerContext(config);
+		acceptors = openAcceptors();
+	}
 
-		threadPool = Executors.newCachedThreadPool();
+	/**
+	 * Explicit Value Constructor
+	 * 
+	 * @param config
+	 *            An already loaded server configuration
+	 */
+	public HttpServer(ServerConfig config) throws IOException {
+		this.config = config;
 
-		serverSocket.setSoTimeout(10000);
+		context = new ServerContext(config);
+		acceptors = openAcceptors();
 	}
 
 	/**
@@ -95,81 +118,190 @@ public class HttpServer {
 	}
 
 	/**
-	 * Stop the threads in the pool
+	 * Opens the listeners of the server: the plain listener and, if a keystore
+	 * is configured, the secure one.
+	 * 
+	 * @return The acceptors of this server
+	 * @throws IOException
+	 *             if a listener cannot be bound
 	 */
-	private void stopPool() {
-		// Prevent new Runnable objects from being submitted
-		threadPool.shutdown();
-
+	private List<Acceptor> openAcceptors() throws IOException {
+		List<Acceptor> list = new ArrayList<Acceptor>();
 		try {
-			// Wait for existing connections to complete
-			if (!threadPool.awaitTermination(5, TimeUnit.SECONDS)) {
-				// Stop executing threads
-				threadPool.shutdownNow();
-
-				// Wait again
-				if (!threadPool.awaitTermination(5, TimeUnit.SECONDS)) {
-					log.info("Could not stop thread pool.");
+			openAcceptors(list, config.getPort(), false);
+			if (context.getSslContext() != null) {
+				openAcceptors(list, config.getSslPort(), true);
+			}
+		} catch (IOException e) {
+			for (Acceptor acceptor : list) {
+				acceptor.close();
+				acceptor.stopWorkers();
+			}
+			context.close();
+			throw e;
+		}
+		return list;
+	}
+
+	/**
+	 * Opens the listeners on one port and creates one acceptor per configured
+	 * acceptor thread. If SO_REUSEPORT is not available, all acceptors share a
+	 * single listener.
+	 * 
+	 * @param list
+	 *            The list to add the acceptors to
+	 * @param port
+	 *            The port to listen on
+	 * @param secure
+	 *            Whether the port speaks TLS
+	 * @throws IOException
+	 *             if a listener cannot be bound
+	 */
+	private void openAcceptors(List<Acceptor> list, int port, boolean secure) throws IOException {
+		int count = config.getAcceptorCount();
+		int backlog = config.getBacklog();
+		boolean reusePort = (count > 1) && Acceptor.isReusePortSupported();
+
+		ServerSocketChannel shared = null;
+		for (int i = 0; i < count; i++) {
+			ServerSocketChannel channel;
+			if (reusePort) {
+				channel = Acceptor.openChannel(port, backlog, true);
+				// an ephemeral port is chosen by the first listener only.
+				port = channel.socket().getLocalPort();
+			} else {
+				if (shared == null) {
+					shared = Acceptor.openChannel(port, backlog, false);
+					port = shared.socket().getLocalPort();
 				}
+				channel = shared;
 			}
-		} catch (InterruptedException ie) {
-			// Stop executing threads
-			threadPool.shutdownNow();
+			list.add(new Acceptor(list.size(), channel, context, secure));
+		}
 
-			// Propagate the interrupt status --> for shutting down thread-pool.
-			Thread.currentThread().interrupt();
+		log.info("Created " + count + (secure ? " secure" : "") + " acceptor(s) on port " + port
+				+ (reusePort ? " using SO_REUSEPORT" : "") + ", backlog " + backlog);
+	}
+
+	/**
+	 * Retrieve the port the server is listening on. This is the configured
+	 * port, or the port picked by the system if port 0 was configured.
+	 * 
+	 * @return The local port of the server
+	 */
+	public int getPort() {
+		return acceptors.get(0).getLocalPort();
+	}
+
+	/**
+	 * Retrieve the port of the secure (HTTPS) listener.
+	 * 
+	 * @return The local port, or -1 if HTTPS is disabled
+	 */
+	public int getSecurePort() {
+		for (Acceptor acceptor : acceptors) {
+			if (acceptor.isSecure()) {
+				return acceptor.getLocalPort();
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Retrieve the counters of this server.
+	 * 
+	 * @return The metrics of this server
+	 */
+	public ServerMetrics getMetrics() {
+		return context.getMetrics();
+	}
+
+	/**
+	 * Retrieve the response cache of the default site of this server.
+	 * 
+	 * @return The cache, or null if caching is disabled
+	 */
+	public ResponseCache getResponseCache() {
+		return context.getResponseCache();
+	}
+
+	/**
+	 * Stop the threads in the pool
+	 */
+	private void stopPool() {
+		management.unregister();
+		for (Acceptor acceptor : acceptors) {
+			acceptor.stopWorkers();
 		}
+		for (Trash trash : config.getTrashes()) {
+			trash.close();
+		}
+		context.close();
 	}
 
 	/**
-	 * Start accepting connections from clients.
+	 * Start accepting connections from clients. Every acceptor runs in its
+	 * own thread; this method returns once all of them have been stopped.
 	 */
 	public void start() {
+		List<Thread> threads = new ArrayList<Thread>(acceptors.size());
 		try {
-			HttpConnectionHandler connection;
-			Socket socket;
-
-			while (true) {
-				try {
-					socket = serverSocket.accept();
-					connection = new HttpConnectionHandler(socket, config);
-
-					// Add the connection to a BlockingQueue<Runnable> object
-					// and, ultimately, call it's run() method in a thread
-					// in the pool
-					threadPool.submit(connection);
-				} catch (SocketTimeoutException ste) {
-					// do nothing
-				} catch (IOException e) {
-					log.warn("Fatal error: "+e.getMessage());
-				}
+			for (Acceptor acceptor : acceptors) {
+				Thread t = new Thread(acceptor, "acceptor-" + acceptor.getId());
+				t.start();
+				threads.add(t);
 			}
+			context.started();
+			if (config.isJmxEnabled()) {
+				management.register(context, acceptors, getPort());
+			}
+			for (Thread t : threads) {
+				t.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		} finally {
+			stop();
 			stopPool();
 		}
 	}
 
+	/**
+	 * Stop accepting connections. A thread blocked in start() returns once
+	 * the acceptors have stopped.
+	 */
+	public void stop() {
+		for (Acceptor acceptor : acceptors) {
+			acceptor.close();
+		}
+	}
+
 	/**
 	 * Initializes the HTTP server. The initialization includes reading the
 	 * configuration needed to bootstrap the HTTP Server. This includes the
-	 * properties and XML file configurations.
+	 * properties and XML file configurations. Without an XML configuration,
+	 * the handlers registered with ServiceLoader are used.
 	 */
 	private void init() {
 		// Load both configuration as a resource.
 		InputStream propsStream = HttpServer.class.getClassLoader().getResourceAsStream(WEB_SERVER_PROPERTIES);
 		InputStream xmlStream = HttpServer.class.getClassLoader().getResourceAsStream(WEB_SERVER_HTTP_HANDLERS_CONFIG);
-		if (propsStream != null && xmlStream != null) {
-			config = new ServerConfig();
-			try {
+		config = new ServerConfig();
+		try {
+			if (propsStream != null) {
 				config.load(propsStream);
+			} else {
+				log.debug("Fail to locate " + WEB_SERVER_PROPERTIES + ". A default host and port will be used!");
+			}
+			if (xmlStream != null) {
 				config.parse(xmlStream);
-			} catch (IOException e) {
-				log.warn("fatal error "+e.getMessage());
-			} catch (SAXException e) {
-				log.debug(e.getMessage());
-			}			
-		} else {
-			log.debug("Fail to locate mandatory configuration files for this web-server. A default host and port will be used!");
+			} else {
+				config.discoverHandlers();
+			}
+		} catch (IOException e) {
+			log.warn("fatal error "+e.getMessage());
+		} catch (SAXException e) {
+			log.debug(e.getMessage());
 		}
 	}
 
@@ -0,0 +1,35 @@
+package com.adobe.assignment.http.server;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A ThreadFactory that gives each thread it creates a readable name of
+ * the form <code>prefix-N</code>. Naming the acceptor and worker threads
+ * makes thread dumps and logs much easier to read.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class NamedThreadFactory implements ThreadFactory {
+
+	private final String prefix;
+	private final boolean daemon;
+	private final AtomicInteger counter = new AtomicInteger();
+
+	/**
+	 * Explicit Value Constructor
+	 *
+	 * @param prefix		The prefix of every thread name
+	 * @param daemon		Whether the created threads are daemon threads
+	 */
+	public NamedThreadFactory(String prefix, boolean daemon) {
+		this.prefix = prefix;
+		this.daemon = daemon;
+	}
+
+	public Thread newThread(Runnable r) {
+		Thread t = new Thread(r, prefix + "-" + counter.incrementAndGet());
+		t.setDaemon(daemon);
+		return t;
+	}
+}
@@ -0,0 +1,386 @@
+package com.adobe.assignment.http.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+
+import com.adobe.assignment.http.ByteBufferPool;
+
+/**
+ * Sends one body to a cleartext connection at the pace of its client (see
+ * HttpResponse.writeAsync()). The body is read into a queue of pooled chunks
+ * on a worker, and written from the queue without blocking: as long as the
+ * client keeps up, the worker reads and writes in turn. Once the client lags
+ * behind by the high watermark, reading stops and the worker is given back;
+ * the WriteSelector writes the queue as the client takes it, and has a
+ * worker read on once no more than the low watermark is left queued.
+ *
+ * The connection is in non-blocking mode while the body is sent, under the
+ * lock the connection is probed with, and back in blocking mode, no longer
+ * registered with the selector, when the future completes.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+class OutboundQueue {
+
+	private static final int CHUNK_SIZE = 8192;
+
+	private final ByteBufferPool pool = ByteBufferPool.getInstance();
+
+	private final SocketChannel channel;
+	private final Object lock;
+	private final Executor workers;
+	private final WriteSelector selector;
+	private final ServerMetrics metrics;
+	private final int highWatermark, lowWatermark;
+
+	private final CompletableFuture<Void> future = new CompletableFuture<Void>();
+	private InputStream body;
+
+	/**
+	 * The chunks read and not yet written, and their bytes, guarded by this
+	 * queue's monitor as is the state below.
+	 */
+	private final ArrayDeque<ByteBuffer> queue = new ArrayDeque<ByteBuffer>();
+	private int queued;
+
+	/**
+	 * Whether the body has been read to its end, a worker is reading it, the
+	 * queue waits for the client, and it was registered with the selector.
+	 */
+	private boolean eof, pumping, waiting, registered;
+
+	/**
+	 * Whether the transfer is over, and the connection let go of.
+	 */
+	private boolean done, released;
+	private Throwable failure;
+	private volatile boolean active;
+
+	/**
+	 * Explicit Value Constructor
+	 *
+	 * @param channel		The connection
+	 * @param lock			The lock its mode is changed under
+	 * @param context		The server's context
+	 * @param workers		The pool the body is read on
+	 */
+	OutboundQueue(SocketChannel channel, Object lock, ServerContext context, Executor workers) {
+		this.channel = channel;
+		this.lock = lock;
+		this.workers = workers;
+		this.selector = context.getWriteSelector();
+		this.metrics = context.getMetrics();
+		this.highWatermark = context.getConfig().getWriteHighWatermark();
+		this.lowWatermark = context.getConfig().getWriteLowWatermark();
+	}
+
+	/**
+	 * Starts sending the body.
+	 *
+	 * @param body		The body; it is read to its end but not closed
+	 * @return			A future completing once the body has been sent; it
+	 * 					may be cancelled to stop sending
+	 */
+	CompletableFuture<Void> start(InputStream body) {
+		this.body = body;
+		synchronized (lock) {
+			try {
+				channel.configureBlocking(false);
+			} catch (IOException e) {
+				future.completeExceptionally(e);
+				return future;
+			}
+			active = true;
+		}
+		future.whenComplete(new BiConsumer<Void, Throwable>() {
+			public void accept(Void result, Throwable failure) {
+				if (future.isCancelled()) {
+					finish(null);
+				}
+			}
+		});
+		synchronized (this) {
+			pumping = true;
+		}
+		dispatch();
+		return future;
+	}
+
+	/**
+	 * @return true while the connection is in non-blocking mode.
+	 */
+	boolean isActive() {
+		return active;
+	}
+
+	private void dispatch() {
+		try {
+			workers.execute(new Runnable() {
+				public void run() {
+					pump();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			synchronized (this) {
+				pumping = false;
+			}
+			finish(new IOException("Server stopped"));
+		}
+	}
+
+	/**
+	 * Reads the body and writes it in turn, on a worker, until it is sent or
+	 * the client lags behind by the high watermark.
+	 */
+	private void pump() {
+		while (true) {
+			boolean read;
+			synchronized (this) {
+				if (done) {
+					pumping = false;
+					return;
+				}
+				read = !eof && queued < highWatermark;
+			}
+			if (read) {
+				try {
+					read();
+				} catch (IOException e) {
+					synchronized (this) {
+						pumping = false;
+					}
+					finish(e);
+					return;
+				}
+			}
+			synchronized (this) {
+				if (done) {
+					pumping = false;
+					return;
+				}
+				try {
+					flush();
+				} catch (IOException e) {
+					pumping = false;
+					end(e);
+					break;
+				}
+				if (queue.isEmpty() && eof) {
+					pumping = false;
+					end(null);
+					break;
+				}
+				if (!queue.isEmpty() && (eof || queued >= highWatermark)) {
+					// give the worker back until the client takes more.
+					pumping = false;
+					waiting = true;
+					registered = true;
+					metrics.writeParked();
+					break;
+				}
+			}
+		}
+		letGo();
+	}
+
+	/**
+	 * Reads the next chunk of the body into the queue.
+	 */
+	private void read() throws IOException {
+		ByteBuffer chunk = pool.acquire(CHUNK_SIZE);
+		int n;
+		try {
+			n = body.read(chunk.array(), chunk.arrayOffset(), chunk.capacity());
+		} catch (IOException e) {
+			pool.release(chunk);
+			throw e;
+		}
+		synchronized (this) {
+			if (done || n < 0) {
+				pool.release(chunk);
+				eof = true;
+			} else {
+				chunk.limit(n);
+				queue.add(chunk);
+				queued += n;
+			}
+		}
+	}
+
+	/**
+	 * Writes as much of the queue as the connection takes.
+	 */
+	private void flush() throws IOException {
+		ByteBuffer chunk;
+		while ((chunk = queue.peek()) != null) {
+			int n = channel.write(chunk);
+			queued -= n;
+			if (chunk.hasRemaining()) {
+				return;
+			}
+			pool.release(queue.poll());
+		}
+	}
+
+	/**
+	 * Called on the selector thread when the client takes more: writes the
+	 * queue, and has a worker read on once it is short enough. The selector
+	 * lets go of the connection if the transfer is over.
+	 */
+	void writable() {
+		boolean pump = false;
+		synchronized (this) {
+			if (done) {
+				return;
+			}
+			try {
+				flush();
+			} catch (IOException e) {
+				end(e);
+				return;
+			}
+			if (queue.isEmpty() && eof) {
+				end(null);
+				return;
+			}
+			if (!eof && !pumping && queued <= lowWatermark) {
+				pumping = pump = true;
+			}
+			waiting = !queue.isEmpty();
+		}
+		if (pump) {
+			dispatch();
+		}
+	}
+
+	/**
+	 * @return the connection.
+	 */
+	SocketChannel channel() {
+		return channel;
+	}
+
+	/**
+	 * @return true if the selector is to call writable() once the client
+	 *         takes more.
+	 */
+	synchronized boolean wantsWrite() {
+		return waiting;
+	}
+
+	/**
+	 * @return true if the selector is to let go of the connection, and call
+	 *         released().
+	 */
+	synchronized boolean isDone() {
+		return done;
+	}
+
+	/**
+	 * Ends the transfer, unless it is over already, e.g. as it was cancelled
+	 * or reading the body failed.
+	 */
+	private void finish(Throwable e) {
+		synchronized (this) {
+			if (done) {
+				return;
+			}
+			end(e);
+		}
+		letGo();
+	}
+
+	/**
+	 * Marks the transfer as over, with the monitor held.
+	 */
+	private void end(Throwable e) {
+		done = true;
+		failure = e;
+	}
+
+	/**
+	 * Has the selector wait for the client, or let go of the connection once
+	 * the transfer is over; a connection never registered is let go of at
+	 * once.
+	 */
+	private void letGo() {
+		boolean direct;
+		synchronized (this) {
+			direct = done && !registered;
+		}
+		if (direct) {
+			released();
+			return;
+		}
+		try {
+			selector.update(this);
+		} catch (IOException e) {
+			failed(e);
+		}
+	}
+
+	/**
+	 * Called if the connection cannot be waited for, to end the transfer.
+	 */
+	synchronized void abort(Throwable e) {
+		if (!done) {
+			end(e);
+		}
+	}
+
+	/**
+	 * Called if the connection cannot be waited for, once it is no longer
+	 * registered with the selector.
+	 */
+	void failed(Throwable e) {
+		abort(e);
+		released();
+	}
+
+	/**
+	 * Called once the connection is no longer registered with the selector:
+	 * puts it back in blocking mode, gives the queue back to the pool and
+	 * completes the future.
+	 */
+	void released() {
+		Throwable e;
+		synchronized (this) {
+			if (released) {
+				return;
+			}
+			released = true;
+			ByteBuffer chunk;
+			while ((chunk = queue.poll()) != null) {
+				pool.release(chunk);
+			}
+			queued = 0;
+			e = failure;
+		}
+		synchronized (lock) {
+			try {
+				if (channel.isOpen()) {
+					channel.configureBlocking(true);
+				}
+			} catch (IOException x) {
+				e = (e != null) ? e : x;
+			} catch (IllegalBlockingModeException x) {
+				// still registered with a selector that is stopping.
+				e = (e != null) ? e : new IOException("Server stopped");
+			}
+			active = false;
+		}
+		if (e == null) {
+			future.complete(null);
+		} else {
+			future.completeExceptionally(e);
+		}
+	}
+}
@@ -0,0 +1,429 @@
+package com.adobe.assignment.http.server;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.assignment.http.HttpConstants;
+import com.adobe.assignment.http.HttpRequest;
+import com.adobe.assignment.http.HttpResponse;
+import com.adobe.assignment.http.methods.CacheableHandler;
+import com.adobe.assignment.http.methods.HttpMethodHandler;
+import com.adobe.assignment.http.methods.PathResolver;
+
+/**
+ * A cache of whole encoded responses that sits in front of the chain of
+ * HttpMethodHandler(s).
+ *
+ * An entry holds the encoded status line and headers and the body of a
+ * response, so that a hit costs a map lookup and a single write. Entries
+ * are keyed by method, the decoded and normalized path of the request (see
+ * PathResolver), its query as the client sent it, and the values of the
+ * configured Vary headers, so that every spelling of a path, e.g. "/a/./b"
+ * and "/a/%62", shares the entry the handlers resolve it to. Requests whose
+ * path does not resolve are not cached. Only responses of handlers implementing CacheableHandler are
+ * stored, for as long as the handler says.
+ *
+ * Concurrent misses for the same key are collapsed: the first request runs
+ * the handler chain while the others wait for its result instead of all
+ * computing the same response at once.
+ *
+ * A successful request changing a resource, such as DELETE, drops the cached
+ * responses of the resource and of the resources below it.
+ *
+ * The cache is bounded by the total size of the responses it holds. When full,
+ * expired entries are dropped first, then entries in the (arbitrary)
+ * iteration order of the map.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class ResponseCache implements ResponseCacheMXBean {
+
+	private static final Logger log = LoggerFactory.getLogger(ResponseCache.class);
+
+	/**
+	 * The hop-by-hop header that is not stored with a response but taken
+	 * from the request being answered.
+	 */
+	private static final String CONNECTION = "Connection";
+
+	/**
+	 * Runs the handler chain for a request that missed the cache.
+	 */
+	interface Chain {
+
+		/**
+		 * @return A future completing, once the response has been written,
+		 *         with the handler that handled the request, or null if none
+		 *         did.
+		 */
+		CompletableFuture<HttpMethodHandler> handle(HttpRequest request, HttpResponse response);
+	}
+
+	private final long maxBytes;
+	private final int maxEntryBytes;
+	private final String[] vary;
+	private final long collapseTimeout;
+	private final PathResolver resolver;
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+	private final Map<String, CountDownLatch> inflight = new ConcurrentHashMap<String, CountDownLatch>();
+	private final AtomicLong bytes = new AtomicLong();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder collapsed = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * Explicit Value Constructor
+	 *
+	 * @param maxBytes			The maximum total size of the cached responses
+	 * @param maxEntryBytes		The largest body to cache
+	 * @param vary				The request headers responses vary on
+	 * @param collapseTimeout	How long, in milliseconds, a request waits for
+	 * 							a concurrent miss on the same key
+	 * @param resolver			Resolves the paths of requests
+	 */
+	public ResponseCache(long maxBytes, int maxEntryBytes, List<String> vary, long collapseTimeout,
+			PathResolver resolver) {
+		this.maxBytes = maxBytes;
+		this.maxEntryBytes = maxEntryBytes;
+		this.vary = vary.toArray(new String[vary.size()]);
+		this.collapseTimeout = collapseTimeout;
+		this.resolver = resolver;
+	}
+
+	/**
+	 * Serves the request from the cache, or runs the handler chain and
+	 * caches the response if the handler allows it.
+	 *
+	 * @param request		The request
+	 * @param response		The response
+	 * @param chain			The handler chain
+	 * @return				A future completing, once the response has been
+	 * 						written, with true if the request was handled and
+	 * 						false if no handler of the chain handled it.
+	 */
+	CompletableFuture<Boolean> serve(HttpRequest request, HttpResponse response, Chain chain) throws IOException {
+		String path = resolver.resolve(request.getPath());
+		if (path == null || !isCacheable(request)) {
+			if (path == null || !isUnsafe(request)) {
+				return handleAndStore(null, request, response, chain);
+			}
+			// the client may ask for the resource again as soon as it has
+			// the response, which may be before the handler returns.
+			invalidatePath(path);
+			return invalidating(path, response, handleAndStore(null, request, response, chain));
+		}
+		String key = keyFor(request, path);
+		Entry entry = get(key);
+		if (entry != null) {
+			hits.increment();
+			response.write(entry.head, entry.body, CONNECTION);
+			return CompletableFuture.completedFuture(Boolean.TRUE);
+		}
+
+		final CountDownLatch latch = new CountDownLatch(1);
+		CountDownLatch leader = inflight.putIfAbsent(key, latch);
+		if (leader != null) {
+			// someone is computing this response already; wait for it.
+			collapsed.increment();
+			try {
+				if (leader.await(collapseTimeout, TimeUnit.MILLISECONDS)) {
+					entry = get(key);
+					if (entry != null) {
+						hits.increment();
+						response.write(entry.head, entry.body, CONNECTION);
+						return CompletableFuture.completedFuture(Boolean.TRUE);
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			// the response was not cacheable after all.
+			misses.increment();
+			return handleAndStore(key, request, response, chain);
+		}
+
+		misses.increment();
+		final String leaderKey = key;
+		CompletableFuture<Boolean> handled;
+		try {
+			handled = handleAndStore(key, request, response, chain);
+		} catch (RuntimeException e) {
+			inflight.remove(key, latch);
+			latch.countDown();
+			throw e;
+		}
+		// the followers wait until the response is complete, however long
+		// the handler takes to complete it.
+		handled.whenComplete(new BiConsumer<Boolean, Throwable>() {
+			public void accept(Boolean result, Throwable failure) {
+				inflight.remove(leaderKey, latch);
+				latch.countDown();
+			}
+		});
+		return handled;
+	}
+
+	/**
+	 * Runs the handler chain, and caches the response once it is complete if
+	 * the handler allows it.
+	 *
+	 * @param key			The key to cache the response by, or null if it
+	 * 						must not be cached
+	 */
+	private CompletableFuture<Boolean> handleAndStore(final String key, final HttpRequest request,
+			final HttpResponse response, Chain chain) {
+		if (key != null) {
+			response.setCaptureLimit(maxEntryBytes);
+		}
+		CompletableFuture<HttpMethodHandler> handled = chain.handle(request, response);
+		return HandlerChain.cancelling(handled, handled.thenApply(new Function<HttpMethodHandler, Boolean>() {
+			public Boolean apply(HttpMethodHandler handler) {
+				if (key != null) {
+					store(key, handler, request, response);
+				}
+				return handler != null;
+			}
+		}));
+	}
+
+	private void store(String key, HttpMethodHandler handler, HttpRequest request, HttpResponse response) {
+		if (handler instanceof CacheableHandler && response.getStatus() == HttpResponse.SC_OK) {
+			byte[] body = response.getCapturedBody();
+			long ttl = ((CacheableHandler) handler).getCacheTtl(request, response);
+			if (body != null && ttl > 0) {
+				// the entry is framed, so that it may be served on a persistent connection.
+				if (response.getHeader("Content-Length") == null) {
+					response.setContentLength(body.length);
+				}
+				put(key, new Entry(response.encodeHead(CONNECTION), body, ttl));
+			}
+		}
+	}
+
+	/**
+	 * Drops the cached responses of a resource once a request changing it,
+	 * e.g. a DELETE, has succeeded, as RFC 7234 (4.4) asks for: again, in case
+	 * a concurrent request stored it while it was being changed.
+	 */
+	private CompletableFuture<Boolean> invalidating(final String path, final HttpResponse response,
+			CompletableFuture<Boolean> handled) {
+		return HandlerChain.cancelling(handled, handled.thenApply(new Function<Boolean, Boolean>() {
+			public Boolean apply(Boolean done) {
+				int status = response.getStatus();
+				if (done && status >= 200 && status < 400) {
+					invalidatePath(path);
+				}
+				return done;
+			}
+		}));
+	}
+
+	private static boolean isUnsafe(HttpRequest request) {
+		String method = request.getMethod();
+		return !method.equals(HttpConstants.METHOD_GET) && !method.equals("HEAD")
+				&& !method.equals(HttpConstants.METHOD_OPTIONS) && !method.equals("TRACE");
+	}
+
+	/**
+	 * Drops the cached responses of a resource and, since a directory may
+	 * have been deleted along with everything in it, of the resources below
+	 * it, whatever their query.
+	 *
+	 * @param uri		The URI of the resource, as a client would send it
+	 */
+	public void invalidate(String uri) {
+		String path = resolver.resolve(uri);
+		if (path != null) {
+			invalidatePath(path);
+		}
+	}
+
+	/**
+	 * @param path		The decoded and normalized path of the resource
+	 */
+	private void invalidatePath(String path) {
+		if (path.endsWith("/")) {
+			path = path.substring(0, path.length() - 1);
+		}
+		for (Map.Entry<String, Entry> e : entries.entrySet()) {
+			String key = e.getKey();
+			int start = key.indexOf(' ') + 1;
+			if (key.startsWith(path, start)) {
+				int end = start + path.length();
+				char next = (end < key.length()) ? key.charAt(end) : '\n';
+				if (next == '\n' || next == '?' || next == '/') {
+					remove(key, e.getValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Only safe requests are cached, and never ones carrying credentials:
+	 * their responses are private to the client.
+	 */
+	private static boolean isCacheable(HttpRequest request) {
+		return HttpConstants.METHOD_GET.equals(request.getMethod()) && request.getHeader("Authorization") == null;
+	}
+
+	private String keyFor(HttpRequest request, String path) {
+		StringBuilder sb = new StringBuilder(64);
+		sb.append(request.getMethod()).append(' ').append(path);
+		if (request.getQueryString() != null) {
+			sb.append('?').append(request.getQueryString());
+		}
+		for (String name : vary) {
+			String value = request.getHeader(name);
+			sb.append('\n');
+			if (value != null) {
+				sb.append(value);
+			}
+		}
+		return sb.toString();
+	}
+
+	private Entry get(String key) {
+		Entry entry = entries.get(key);
+		if (entry != null && entry.isExpired(System.nanoTime())) {
+			remove(key, entry);
+			return null;
+		}
+		return entry;
+	}
+
+	private void put(String key, Entry entry) {
+		Entry old = entries.put(key, entry);
+		bytes.addAndGet(entry.size());
+		if (old != null) {
+			bytes.addAndGet(-old.size());
+		}
+		if (bytes.get() > maxBytes) {
+			evict();
+		}
+	}
+
+	private boolean remove(String key, Entry entry) {
+		if (entries.remove(key, entry)) {
+			bytes.addAndGet(-entry.size());
+			return true;
+		}
+		return false;
+	}
+
+	private void evict() {
+		long now = System.nanoTime();
+		for (Map.Entry<String, Entry> e : entries.entrySet()) {
+			if (e.getValue().isExpired(now) && remove(e.getKey(), e.getValue())) {
+				evictions.increment();
+			}
+		}
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while (bytes.get() > maxBytes && it.hasNext()) {
+			Map.Entry<String, Entry> e = it.next();
+			if (remove(e.getKey(), e.getValue())) {
+				evictions.increment();
+			}
+		}
+		log.debug("Response cache evicted down to " + bytes.get() + " bytes");
+	}
+
+	/**
+	 * Drops all entries.
+	 */
+	public void clear() {
+		for (Map.Entry<String, Entry> e : entries.entrySet()) {
+			remove(e.getKey(), e.getValue());
+		}
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public double getHitRatio() {
+		long hits = getHits();
+		long lookups = hits + getMisses();
+		return (lookups == 0) ? 0 : (double) hits / lookups;
+	}
+
+	/**
+	 * @return The number of requests that waited for a concurrent miss.
+	 */
+	public long getCollapsed() {
+		return collapsed.sum();
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * @return The number of cached responses.
+	 */
+	public int getEntryCount() {
+		return entries.size();
+	}
+
+	/**
+	 * @return The total size of the cached responses in bytes.
+	 */
+	public long getSize() {
+		return bytes.get();
+	}
+
+	public long getMaxSize() {
+		return maxBytes;
+	}
+
+	/**
+	 * Drops all entries, on behalf of an operator (see clear()).
+	 */
+	public void flush() {
+		clear();
+		log.info("Response cache flushed");
+	}
+
+	/**
+	 * A cached response.
+	 */
+	private static final class Entry {
+
+		private final byte[] head;
+		private final byte[] body;
+		private final long expiresAt;
+
+		Entry(byte[] head, byte[] body, long ttl) {
+			this.head = head;
+			this.body = body;
+			this.expiresAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttl);
+		}
+
+		boolean isExpired(long now) {
+			return now - expiresAt >= 0;
+		}
+
+		long size() {
+			return head.length + body.length;
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package com.adobe.assignment.http.server;
+
+/**
+ * The management interface of the ResponseCache.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public interface ResponseCacheMXBean {
+
+	public long getHits();
+
+	public long getMisses();
+
+	/**
+	 * @return The share of the requests looked up that were served from
+	 *         the cache, between 0 and 1.
+	 */
+	public double getHitRatio();
+
+	public long getCollapsed();
+
+	public long getEvictions();
+
+	public int getEntryCount();
+
+	public long getSize();
+
+	/**
+	 * @return The most bytes the cached responses may take.
+	 */
+	public long getMaxSize();
+
+	/**
+	 * Drops every cached response.
+	 */
+	public void flush();
+}
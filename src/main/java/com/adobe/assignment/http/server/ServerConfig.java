@@ -2,26 +2,41 @@ package com.adobe.assignment.http.server;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Properties;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
 
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
-import org.apache.jackrabbit.webdav.xml.DomUtil;
-import org.apache.jackrabbit.webdav.xml.ElementIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Element;
 import org.xml.sax.SAXException;
 
+import com.adobe.assignment.http.HttpInputStream;
+import com.adobe.assignment.http.HttpRequest;
 import com.adobe.assignment.http.MIMETyper;
 import com.adobe.assignment.http.methods.HttpMethodHandler;
+import com.adobe.assignment.http.methods.Trash;
+import com.adobe.assignment.http.websocket.WebSocketHandler;
 
 /**
  * This class bundles the information required to bootstrap the web-server.
  * 
+ * The handler configuration is read with a streaming (StAX) reader rather
+ * than into a DOM, and handlers are created through method handles on their
+ * constructors and setters, which keeps XML and reflection machinery off the
+ * startup path. Handlers may also be discovered by means of ServiceLoader.
+ * 
  * @author Alfusainey Jallow, University of the Gambia
  */
 
@@ -31,8 +46,19 @@ public class ServerConfig {
 
 	private static String ELEMENT_SUPPORTED_METHODS = "supportedmethods";
 	private static String ELEMENT_SUPPORTED_METHOD = "supportedmethod";
+	private static final String ELEMENT_WEBSOCKET_HANDLERS = "websockethandlers";
+	private static final String ELEMENT_WEBSOCKET_HANDLER = "websockethandler";
+	private static final String ELEMENT_VIRTUAL_HOST = "virtualhost";
+	private static final String ELEMENT_PROPERTY = "property";
 	private static final String ELEMENT_CLASS = "class";
+	private static final String ELEMENT_PARAM = "param";
 	private static final String ATTR_NAME = "name";
+	private static final String ATTR_NAMES = "names";
+	private static final String ATTR_VALUE = "value";
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+	private static final MethodType NO_ARGS = MethodType.methodType(void.class);
+	private static final MethodType STRING_SETTER = MethodType.methodType(void.class, String.class);
 
 	/**
 	 * The configured web server port. If the port number configuration is
@@ -51,12 +77,218 @@ public class ServerConfig {
 	 */
 	private static final String WEB_ROOT = "webserver.webroot";
 
+	/**
+	 * The number of threads accepting connections. Every acceptor owns its
+	 * own listener (SO_REUSEPORT) and its own pool of worker threads.
+	 */
+	private static final String ACCEPTORS = "webserver.acceptors";
+
+	/**
+	 * The most worker threads of an acceptor's pool (0 for no limit), which
+	 * may also be changed at runtime by means of JMX; and whether the server
+	 * registers its MBeans at all.
+	 */
+	private static final String WORKERS_MAX = "webserver.workers.max";
+	private static final String JMX_ENABLED = "webserver.jmx.enabled";
+
+	/**
+	 * The maximum length of the queue of pending connections of a listener.
+	 */
+	private static final String BACKLOG = "webserver.backlog";
+
+	private static final int DEFAULT_BACKLOG = 128;
+
+	/**
+	 * Connection timeouts, all in milliseconds. A value of zero disables the
+	 * timeout.
+	 * 
+	 * read:    the longest a single read may block (SO_TIMEOUT).
+	 * idle:    the longest a connection may wait for a request to begin.
+	 * header:  the longest the headers may take after the request line.
+	 * body:    the longest a request with a body may take from the end of
+	 *          the headers until the response is written.
+	 * request: the longest a request may take as a whole.
+	 */
+	private static final String READ_TIMEOUT = "webserver.timeout.read";
+	private static final String IDLE_TIMEOUT = "webserver.timeout.idle";
+	private static final String HEADER_TIMEOUT = "webserver.timeout.header";
+	private static final String BODY_TIMEOUT = "webserver.timeout.body";
+	private static final String REQUEST_TIMEOUT = "webserver.timeout.request";
+
+	/**
+	 * The limits of a request head: the longest line, in bytes, and the most
+	 * header fields. A longer request line is answered with 400, a longer
+	 * header line or more fields with 431.
+	 */
+	private static final String MAX_LINE_LENGTH = "webserver.request.maxLineLength";
+	private static final String MAX_HEADERS = "webserver.request.maxHeaders";
+
+	/**
+	 * The resolution, in milliseconds, of the timer tracking the timeouts.
+	 */
+	private static final String TIMER_TICK = "webserver.timer.tick";
+
+	/**
+	 * The response cache: the maximum total size in bytes (0 disables the
+	 * cache), the largest response to cache, the comma separated request
+	 * headers that responses vary on, and how long, in milliseconds, a
+	 * request waits for a concurrent request computing the same response.
+	 */
+	private static final String CACHE_SIZE = "webserver.cache.size";
+	private static final String CACHE_MAX_ENTRY = "webserver.cache.maxEntry";
+	private static final String CACHE_VARY = "webserver.cache.vary";
+	private static final String CACHE_COLLAPSE_TIMEOUT = "webserver.cache.collapseTimeout";
+
+	/**
+	 * HTTPS: the keystore holding the server's key and certificate (HTTPS is
+	 * disabled if none is configured), its password and type, and the port of
+	 * the secure listener.
+	 */
+	private static final String SSL_KEYSTORE = "webserver.ssl.keystore";
+	private static final String SSL_KEYSTORE_PASSWORD = "webserver.ssl.keystorePassword";
+	private static final String SSL_KEYSTORE_TYPE = "webserver.ssl.keystoreType";
+	private static final String SSL_PORT = "webserver.ssl.port";
+
+	/**
+	 * TLS session resumption: the number of sessions kept in the server side
+	 * session cache, how long, in seconds, a session may be resumed, and
+	 * whether stateless session tickets are issued.
+	 */
+	private static final String SSL_SESSION_CACHE_SIZE = "webserver.ssl.sessionCacheSize";
+	private static final String SSL_SESSION_TIMEOUT = "webserver.ssl.sessionTimeout";
+	private static final String SSL_SESSION_TICKETS = "webserver.ssl.sessionTickets";
+
+	/**
+	 * HTTP/2 over cleartext (h2c): whether it is accepted, the number of
+	 * streams a client may have open at once, and the flow control window of
+	 * a stream, i.e. how much of a request body the server buffers.
+	 */
+	private static final String HTTP2_ENABLED = "webserver.http2.enabled";
+	private static final String HTTP2_MAX_CONCURRENT_STREAMS = "webserver.http2.maxConcurrentStreams";
+	private static final String HTTP2_INITIAL_WINDOW_SIZE = "webserver.http2.initialWindowSize";
+
+	/**
+	 * WebSocket connections: the largest message accepted, the most bytes
+	 * queued for a client before sending is refused, and the interval, in
+	 * milliseconds, after which a silent client is pinged.
+	 */
+	private static final String WEBSOCKET_MAX_MESSAGE_SIZE = "webserver.websocket.maxMessageSize";
+	private static final String WEBSOCKET_MAX_QUEUED_BYTES = "webserver.websocket.maxQueuedBytes";
+	private static final String WEBSOCKET_PING_INTERVAL = "webserver.websocket.pingInterval";
+
+	/**
+	 * Event streams (Server-Sent Events): the threads writing to all the
+	 * subscribers of a channel, the most bytes queued for a subscriber before
+	 * it is dropped, the interval of heartbeat comments and how long a write
+	 * may stall, both in milliseconds, and the number of events kept for
+	 * subscribers resuming with Last-Event-ID.
+	 */
+	private static final String SSE_WRITER_THREADS = "webserver.sse.writerThreads";
+	private static final String SSE_MAX_QUEUED_BYTES = "webserver.sse.maxQueuedBytes";
+	private static final String SSE_HEARTBEAT_INTERVAL = "webserver.sse.heartbeatInterval";
+	private static final String SSE_WRITE_TIMEOUT = "webserver.sse.writeTimeout";
+	private static final String SSE_REPLAY_SIZE = "webserver.sse.replaySize";
+
+	/**
+	 * Limits per client (remote address): the requests it may send per
+	 * second and at once (burst), the connections it may hold at once, and
+	 * how long, in milliseconds, an idle client is remembered.
+	 */
+	private static final String CLIENT_RATE = "webserver.client.rate";
+	private static final String CLIENT_BURST = "webserver.client.burst";
+	private static final String CLIENT_MAX_CONNECTIONS = "webserver.client.maxConnections";
+	private static final String CLIENT_IDLE_EXPIRY = "webserver.client.idleExpiry";
+
+	/**
+	 * Persistent connections: the most requests served on one connection (1
+	 * closes every connection after its response), and how long, in
+	 * milliseconds, a connection may wait for its next request.
+	 */
+	private static final String KEEP_ALIVE_MAX_REQUESTS = "webserver.keepAlive.maxRequests";
+	private static final String KEEP_ALIVE_TIMEOUT = "webserver.keepAlive.timeout";
+	private static final String ASYNC_PROBE_INTERVAL = "webserver.async.probeInterval";
+
+	/**
+	 * Bodies sent at the client's pace (see OutboundQueue): how many bytes
+	 * are read ahead of the client at most, and how few are left queued
+	 * before reading resumes.
+	 */
+	private static final String WRITE_HIGH_WATERMARK = "webserver.write.highWatermark";
+	private static final String WRITE_LOW_WATERMARK = "webserver.write.lowWatermark";
+
+	/**
+	 * Timing the phases of requests (see Timing): whether responses carry a
+	 * Server-Timing header, the duration in milliseconds from which a
+	 * request is slow, and the share of slow requests that is logged.
+	 */
+	private static final String TIMING_HEADER = "webserver.timing.header";
+	private static final String TIMING_SLOW_THRESHOLD = "webserver.timing.slowThreshold";
+	private static final String TIMING_SLOW_SAMPLE_RATE = "webserver.timing.slowSampleRate";
+
+	/**
+	 * The adaptive limit of the requests handled at once (see
+	 * ConcurrencyLimit): whether requests are limited, the limit to start
+	 * with, and the least and the most it adapts to.
+	 */
+	private static final String LIMIT_ADAPTIVE = "webserver.limit.adaptive";
+	private static final String LIMIT_INITIAL = "webserver.limit.initial";
+	private static final String LIMIT_MIN = "webserver.limit.min";
+	private static final String LIMIT_MAX = "webserver.limit.max";
+
+	/**
+	 * The limits of multipart/form-data bodies (see MultipartParser): the
+	 * size of a body and of a part in bytes, the number of parts, the largest
+	 * part kept in memory, and the directory larger parts are spilled to.
+	 */
+	private static final String MULTIPART_MAX_SIZE = "webserver.multipart.maxSize";
+	private static final String MULTIPART_MAX_PART_SIZE = "webserver.multipart.maxPartSize";
+	private static final String MULTIPART_MAX_PARTS = "webserver.multipart.maxParts";
+	private static final String MULTIPART_MEMORY_THRESHOLD = "webserver.multipart.memoryThreshold";
+	private static final String MULTIPART_SPILL_DIRECTORY = "webserver.multipart.spillDirectory";
+
+	/**
+	 * The number of request paths whose resolution to a file below the web
+	 * root is remembered by a handler (see PathResolver).
+	 */
+	private static final String PATH_CACHE_SIZE = "webserver.pathCache.size";
+
 	private List<HttpMethodHandler> handlers;
+	private List<WebSocketHandler> webSocketHandlers;
 	private final Properties props;
 
+	/**
+	 * The virtual hosts configured in the handler configuration, and the
+	 * names of the host this is the configuration of, empty for the server.
+	 */
+	private final List<ServerConfig> virtualHosts = new ArrayList<ServerConfig>();
+	private final List<String> hostNames;
+
+	/**
+	 * The trashes of the DELETE handlers of the server and of its virtual
+	 * hosts, shared by their configurations.
+	 */
+	private final List<Trash> trashes;
+
 	public ServerConfig() {
+		this(new Properties(), Collections.<String>emptyList(), new CopyOnWriteArrayList<Trash>());
+	}
+
+	/**
+	 * Explicit Value Constructor for the configuration of a virtual host.
+	 * 
+	 * @param props
+	 *            Its properties, falling back to those of the server
+	 * @param hostNames
+	 *            The names it is served under
+	 * @param trashes
+	 *            The trashes of the server
+	 */
+	private ServerConfig(Properties props, List<String> hostNames, List<Trash> trashes) {
 		handlers = new ArrayList<HttpMethodHandler>();
-		props = new Properties();
+		webSocketHandlers = new ArrayList<WebSocketHandler>();
+		this.props = props;
+		this.hostNames = hostNames;
+		this.trashes = trashes;
 	}
 
 	public void load(InputStream inputStream) throws IOException {
@@ -71,6 +303,341 @@ public class ServerConfig {
 		return props.getProperty(WEB_ROOT);
 	}
 
+	/**
+	 * Retrieve the number of acceptor threads.
+	 * 
+	 * @return The configured number of acceptors, at least one.
+	 */
+	public int getAcceptorCount() {
+		return Math.max(1, getInt(ACCEPTORS, 1));
+	}
+
+	/**
+	 * @return The most worker threads of an acceptor's pool, 0 for no limit.
+	 */
+	public int getMaxWorkers() {
+		return Math.max(0, getInt(WORKERS_MAX, 0));
+	}
+
+	/**
+	 * @return true if the server registers its MBeans with the platform
+	 *         MBean server (see ServerManagement).
+	 */
+	public boolean isJmxEnabled() {
+		return Boolean.parseBoolean(props.getProperty(JMX_ENABLED, "true").trim());
+	}
+
+	/**
+	 * Retrieve the listen backlog of the server's listeners.
+	 * 
+	 * @return The configured backlog or 128 if none is configured.
+	 */
+	public int getBacklog() {
+		int backlog = getInt(BACKLOG, DEFAULT_BACKLOG);
+		return (backlog > 0) ? backlog : DEFAULT_BACKLOG;
+	}
+
+	public int getReadTimeout() {
+		return Math.max(0, getInt(READ_TIMEOUT, 30000));
+	}
+
+	public int getIdleTimeout() {
+		return Math.max(0, getInt(IDLE_TIMEOUT, 15000));
+	}
+
+	public int getHeaderTimeout() {
+		return Math.max(0, getInt(HEADER_TIMEOUT, 10000));
+	}
+
+	public int getBodyTimeout() {
+		return Math.max(0, getInt(BODY_TIMEOUT, 30000));
+	}
+
+	public int getRequestTimeout() {
+		return Math.max(0, getInt(REQUEST_TIMEOUT, 60000));
+	}
+
+	public int getMaxLineLength() {
+		return Math.max(1, getInt(MAX_LINE_LENGTH, HttpInputStream.DEFAULT_MAX_LINE_LENGTH));
+	}
+
+	public int getMaxHeaders() {
+		return Math.max(0, getInt(MAX_HEADERS, HttpRequest.DEFAULT_MAX_HEADERS));
+	}
+
+	public int getTimerTick() {
+		return Math.max(1, getInt(TIMER_TICK, 100));
+	}
+
+	public long getCacheSize() {
+		return Math.max(0, getInt(CACHE_SIZE, 32 * 1024 * 1024));
+	}
+
+	public int getCacheMaxEntrySize() {
+		return Math.max(0, getInt(CACHE_MAX_ENTRY, 1024 * 1024));
+	}
+
+	/**
+	 * Retrieve the request headers that cached responses vary on.
+	 * 
+	 * @return The header names, Accept-Encoding if none are configured.
+	 */
+	public List<String> getCacheVaryHeaders() {
+		return getList(CACHE_VARY, "Accept-Encoding");
+	}
+
+	public int getCacheCollapseTimeout() {
+		return Math.max(0, getInt(CACHE_COLLAPSE_TIMEOUT, 5000));
+	}
+
+	/**
+	 * Retrieve the keystore of the secure listener.
+	 *
+	 * @return The path of the keystore, or null if HTTPS is disabled.
+	 */
+	public String getSslKeystore() {
+		return props.getProperty(SSL_KEYSTORE);
+	}
+
+	public String getSslKeystorePassword() {
+		return props.getProperty(SSL_KEYSTORE_PASSWORD, "");
+	}
+
+	public String getSslKeystoreType() {
+		return props.getProperty(SSL_KEYSTORE_TYPE, "PKCS12");
+	}
+
+	public int getSslPort() {
+		return Math.max(0, getInt(SSL_PORT, 8443));
+	}
+
+	public int getSslSessionCacheSize() {
+		return Math.max(0, getInt(SSL_SESSION_CACHE_SIZE, 20480));
+	}
+
+	public int getSslSessionTimeout() {
+		return Math.max(0, getInt(SSL_SESSION_TIMEOUT, 86400));
+	}
+
+	public boolean isSslSessionTickets() {
+		return Boolean.parseBoolean(props.getProperty(SSL_SESSION_TICKETS, "true").trim());
+	}
+
+	public boolean isHttp2Enabled() {
+		return Boolean.parseBoolean(props.getProperty(HTTP2_ENABLED, "true").trim());
+	}
+
+	public int getHttp2MaxConcurrentStreams() {
+		return Math.max(1, getInt(HTTP2_MAX_CONCURRENT_STREAMS, 100));
+	}
+
+	/**
+	 * Retrieve the initial flow control window of an HTTP/2 stream.
+	 * 
+	 * @return The configured window, 65535 (the protocol's default) if none
+	 *         is configured.
+	 */
+	public int getHttp2InitialWindowSize() {
+		return Math.max(1, getInt(HTTP2_INITIAL_WINDOW_SIZE, 65535));
+	}
+
+	public int getWebSocketMaxMessageSize() {
+		return Math.max(125, getInt(WEBSOCKET_MAX_MESSAGE_SIZE, 1024 * 1024));
+	}
+
+	public int getWebSocketMaxQueuedBytes() {
+		return Math.max(0, getInt(WEBSOCKET_MAX_QUEUED_BYTES, 1024 * 1024));
+	}
+
+	public int getWebSocketPingInterval() {
+		return Math.max(0, getInt(WEBSOCKET_PING_INTERVAL, 30000));
+	}
+
+	public int getSseWriterThreads() {
+		return Math.max(1, getInt(SSE_WRITER_THREADS, 2));
+	}
+
+	public int getSseMaxQueuedBytes() {
+		return Math.max(0, getInt(SSE_MAX_QUEUED_BYTES, 256 * 1024));
+	}
+
+	public int getSseHeartbeatInterval() {
+		return Math.max(0, getInt(SSE_HEARTBEAT_INTERVAL, 15000));
+	}
+
+	public int getSseWriteTimeout() {
+		return Math.max(0, getInt(SSE_WRITE_TIMEOUT, 30000));
+	}
+
+	public int getSseReplaySize() {
+		return Math.max(0, getInt(SSE_REPLAY_SIZE, 1000));
+	}
+
+	/**
+	 * Retrieve the rate at which a client may send requests.
+	 * 
+	 * @return The requests per second, 0 (no limit) if none is configured.
+	 */
+	public double getClientRate() {
+		String value = props.getProperty(CLIENT_RATE);
+		if (value == null) {
+			return 0;
+		}
+		try {
+			return Math.max(0, Double.parseDouble(value.trim()));
+		} catch (NumberFormatException e) {
+			log.warn("Invalid value '" + value + "' for " + CLIENT_RATE + ", using no limit");
+			return 0;
+		}
+	}
+
+	/**
+	 * @return The requests a client may send at once, the rate (rounded
+	 *         up) if none is configured.
+	 */
+	public int getClientBurst() {
+		return Math.max(1, getInt(CLIENT_BURST, (int) Math.ceil(getClientRate())));
+	}
+
+	public int getClientMaxConnections() {
+		return Math.max(0, getInt(CLIENT_MAX_CONNECTIONS, 0));
+	}
+
+	public int getClientIdleExpiry() {
+		return Math.max(1, getInt(CLIENT_IDLE_EXPIRY, 60000));
+	}
+
+	public int getKeepAliveMaxRequests() {
+		return Math.max(1, getInt(KEEP_ALIVE_MAX_REQUESTS, 1));
+	}
+
+	/**
+	 * @return The time a persistent connection may wait for its next request,
+	 *         the idle timeout if none is configured.
+	 */
+	public int getKeepAliveTimeout() {
+		return Math.max(0, getInt(KEEP_ALIVE_TIMEOUT, getIdleTimeout()));
+	}
+
+	/**
+	 * @return How often (ms) a connection whose response is still being
+	 *         produced by an asynchronous handler is checked for a client
+	 *         that went away; 0 does not check.
+	 */
+	public int getAsyncProbeInterval() {
+		return Math.max(0, getInt(ASYNC_PROBE_INTERVAL, 1000));
+	}
+
+	/**
+	 * @return The most bytes of a body read ahead of a client that lags
+	 *         behind; 0 writes every body in the handler's thread.
+	 */
+	public int getWriteHighWatermark() {
+		return Math.max(0, getInt(WRITE_HIGH_WATERMARK, 65536));
+	}
+
+	/**
+	 * @return The bytes of a body left queued for a lagging client at which
+	 *         reading the body resumes; at most the high watermark.
+	 */
+	public int getWriteLowWatermark() {
+		return Math.min(getWriteHighWatermark(), Math.max(0, getInt(WRITE_LOW_WATERMARK, 16384)));
+	}
+
+	/**
+	 * @return true if responses tell the client how long the phases of its
+	 *         request took, in a Server-Timing header.
+	 */
+	public boolean isServerTimingEnabled() {
+		return Boolean.parseBoolean(props.getProperty(TIMING_HEADER, "false").trim());
+	}
+
+	/**
+	 * @return The duration (ms) from which a request counts as slow; 0 does
+	 *         not look for slow requests.
+	 */
+	public int getSlowRequestThreshold() {
+		return Math.max(0, getInt(TIMING_SLOW_THRESHOLD, 1000));
+	}
+
+	/**
+	 * Retrieve the share of slow requests whose timing is logged.
+	 * 
+	 * @return A rate between 0 and 1, 1 (every slow request) if none is
+	 *         configured.
+	 */
+	public double getSlowRequestSampleRate() {
+		String value = props.getProperty(TIMING_SLOW_SAMPLE_RATE);
+		if (value == null) {
+			return 1;
+		}
+		try {
+			return Math.min(1, Math.max(0, Double.parseDouble(value.trim())));
+		} catch (NumberFormatException e) {
+			log.warn("Invalid value '" + value + "' for " + TIMING_SLOW_SAMPLE_RATE + ", logging every slow request");
+			return 1;
+		}
+	}
+
+	/**
+	 * @return true if the requests handled at once are limited, to a number
+	 *         that adapts to their latency.
+	 */
+	public boolean isConcurrencyLimitEnabled() {
+		return Boolean.parseBoolean(props.getProperty(LIMIT_ADAPTIVE, "false").trim());
+	}
+
+	public int getConcurrencyLimitInitial() {
+		return Math.max(1, getInt(LIMIT_INITIAL, 20));
+	}
+
+	public int getConcurrencyLimitMin() {
+		return Math.max(1, getInt(LIMIT_MIN, 4));
+	}
+
+	/**
+	 * @return The most the limit grows to, at least the least it shrinks to.
+	 */
+	public int getConcurrencyLimitMax() {
+		return Math.max(getConcurrencyLimitMin(), getInt(LIMIT_MAX, 1000));
+	}
+
+	/**
+	 * @return The most bytes a multipart body may have, 0 (no limit) if none
+	 *         is configured.
+	 */
+	public long getMultipartMaxSize() {
+		return Math.max(0, getLong(MULTIPART_MAX_SIZE, 0));
+	}
+
+	/**
+	 * @return The most bytes a part of a multipart body may have, 0 (no
+	 *         limit) if none is configured.
+	 */
+	public long getMultipartMaxPartSize() {
+		return Math.max(0, getLong(MULTIPART_MAX_PART_SIZE, 0));
+	}
+
+	public int getMultipartMaxParts() {
+		return Math.max(1, getInt(MULTIPART_MAX_PARTS, 100));
+	}
+
+	public int getMultipartMemoryThreshold() {
+		return Math.max(0, getInt(MULTIPART_MEMORY_THRESHOLD, 65536));
+	}
+
+	/**
+	 * @return The directory larger parts are spilled to, or null for the
+	 *         temporary directory.
+	 */
+	public String getMultipartSpillDirectory() {
+		return props.getProperty(MULTIPART_SPILL_DIRECTORY);
+	}
+
+	public int getPathCacheSize() {
+		return Math.max(0, getInt(PATH_CACHE_SIZE, 1024));
+	}
+
 	/**
 	 * Retrieve the configured host of the HTTP Server.
 	 * 
@@ -81,66 +648,326 @@ public class ServerConfig {
 		return props.getProperty(HOST, "localhost");
 	}
 
+	private int getInt(String key, int defaultValue) {
+		String value = props.getProperty(key);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			log.warn("Invalid value '" + value + "' for " + key + ", using " + defaultValue);
+			return defaultValue;
+		}
+	}
+
+	private long getLong(String key, long defaultValue) {
+		String value = props.getProperty(key);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			log.warn("Invalid value '" + value + "' for " + key + ", using " + defaultValue);
+			return defaultValue;
+		}
+	}
+
+	private List<String> getList(String key, String defaultValue) {
+		List<String> list = new ArrayList<String>();
+		for (String item : props.getProperty(key, defaultValue).split(",")) {
+			item = item.trim();
+			if (item.length() > 0) {
+				list.add(item);
+			}
+		}
+		return list;
+	}
+
 	public List<HttpMethodHandler> getHandlers() {
 		return Collections.unmodifiableList(handlers);
 	}
 
+	public List<WebSocketHandler> getWebSocketHandlers() {
+		return Collections.unmodifiableList(webSocketHandlers);
+	}
+
+	/**
+	 * Retrieve the virtual hosts: the sites served under their own names,
+	 * each with its own properties (such as the web root and the cache size,
+	 * falling back to those of the server) and handlers.
+	 * 
+	 * @return The configurations of the virtual hosts, in the order they
+	 *         are configured
+	 */
+	public List<ServerConfig> getVirtualHosts() {
+		return Collections.unmodifiableList(virtualHosts);
+	}
+
+	/**
+	 * @return The names a virtual host is served under, lower case; a name
+	 *         may start with "*." to stand for all names ending in the rest.
+	 *         Empty for the configuration of the server.
+	 */
+	public List<String> getHostNames() {
+		return hostNames;
+	}
+
+	/**
+	 * Registers the trash of a DELETE handler with the server, whose GET
+	 * handlers do not serve it, and which shuts its reclaimer down when it
+	 * stops.
+	 * 
+	 * @param trash
+	 *            The trash
+	 */
+	public void addTrash(Trash trash) {
+		trashes.add(trash);
+	}
+
+	/**
+	 * @return The trashes of the DELETE handlers of the server and of all
+	 *         its virtual hosts.
+	 */
+	public List<Trash> getTrashes() {
+		return Collections.unmodifiableList(trashes);
+	}
+
 	/**
+	 * Reads the handler configuration (http_handlers.xml) and creates the
+	 * handlers it names. Nothing is configured unless the whole document can
+	 * be read.
+	 * 
+	 * Besides the handlers of the server, the document may configure virtual
+	 * hosts, each with properties of its own and handlers of the same form:
+	 * 
+	 * <pre>
+	 * &lt;virtualhost names="example.com www.example.com *.example.org"&gt;
+	 *   &lt;property name="webserver.webroot" value="/var/www/example" /&gt;
+	 *   &lt;property name="webserver.cache.size" value="8388608" /&gt;
+	 *   &lt;supportedmethods&gt; ... &lt;/supportedmethods&gt;
+	 * &lt;/virtualhost&gt;
+	 * </pre>
 	 * 
 	 * @param is
 	 * @throws SAXException
 	 *             if the document cannot be parsed.
 	 */
 	public void parse(InputStream is) throws SAXException {
+		HostSpec server = new HostSpec();
+		List<HostSpec> hostSpecs = new ArrayList<HostSpec>();
+		XMLStreamReader reader = null;
 		try {
-			Element config = DomUtil.parseDocument(is).getDocumentElement();
-			if (config == null) {
-				log.warn("Missing mandatory config element");
-				return;
-			}
-			Element el = DomUtil.getChildElement(config, ELEMENT_SUPPORTED_METHODS, null);
-			if (el != null) {
-				ElementIterator handlerElements = DomUtil.getChildren(el, ELEMENT_SUPPORTED_METHOD, null);
-				while (handlerElements.hasNext()) {
-					Element handler = handlerElements.nextElement();
-					HttpMethodHandler instance = buildClassFromConfig(handler);
-					if (instance != null) {
-						instance.init(this);
-						handlers.add(instance);
+			XMLInputFactory factory = XMLInputFactory.newDefaultFactory();
+			factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+			factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+			reader = factory.createXMLStreamReader(is);
+
+			// the elements of interest are found at fixed depths below the
+			// root: a list, its handlers, and their class and params; one
+			// level deeper within a virtual host.
+			int depth = 0;
+			HostSpec host = server;
+			List<HandlerSpec> list = null;
+			HandlerSpec spec = null;
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					depth++;
+					String name = reader.getLocalName();
+					int level = (host == server) ? depth : depth - 1;
+					if (depth == 2 && name.equals(ELEMENT_VIRTUAL_HOST)) {
+						host = new HostSpec();
+						host.names = reader.getAttributeValue(null, ATTR_NAMES);
+						hostSpecs.add(host);
+					} else if (depth == 3 && host != server && name.equals(ELEMENT_PROPERTY)) {
+						String key = reader.getAttributeValue(null, ATTR_NAME);
+						String value = reader.getAttributeValue(null, ATTR_VALUE);
+						if (key != null && value != null) {
+							host.props.setProperty(key, value);
+						}
+					} else if (level == 2) {
+						list = name.equals(ELEMENT_SUPPORTED_METHODS) ? host.methodSpecs
+								: name.equals(ELEMENT_WEBSOCKET_HANDLERS) ? host.webSocketSpecs : null;
+					} else if (level == 3 && list != null) {
+						String expected = (list == host.methodSpecs) ? ELEMENT_SUPPORTED_METHOD
+								: ELEMENT_WEBSOCKET_HANDLER;
+						if (name.equals(expected)) {
+							spec = new HandlerSpec();
+							list.add(spec);
+						}
+					} else if (level == 4 && spec != null) {
+						if (name.equals(ELEMENT_CLASS) && spec.className == null) {
+							spec.className = reader.getAttributeValue(null, ATTR_NAME);
+						} else if (name.equals(ELEMENT_PARAM)) {
+							spec.params.add(new String[] { reader.getAttributeValue(null, ATTR_NAME),
+									reader.getAttributeValue(null, ATTR_VALUE) });
+						}
 					}
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					int level = (host == server) ? depth : depth - 1;
+					if (depth == 2 && host != server) {
+						host = server;
+					} else if (level == 3) {
+						spec = null;
+					} else if (level == 2) {
+						list = null;
+					}
+					depth--;
 				}
 			}
-		} catch (ParserConfigurationException e) {
+			if (depth != 0) {
+				throw new SAXException("Unexpected end of the handler configuration");
+			}
+		} catch (XMLStreamException e) {
 			log.error("A serious configuration error occured during XML config parsing");
 			throw new SAXException(e.getMessage());
-		} catch (IOException e) {
-			log.error("Exception " + e.getMessage());
-			throw new SAXException(e.getMessage());
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (XMLStreamException e) {
+					// nothing left to do
+				}
+			}
+		}
+
+		server.createHandlers(this);
+		for (HostSpec spec : hostSpecs) {
+			List<String> names = spec.getNames();
+			if (names.isEmpty()) {
+				log.warn("Ignoring a virtual host without names");
+				continue;
+			}
+			Properties hostProps = new Properties(props);
+			hostProps.putAll(spec.props);
+			ServerConfig host = new ServerConfig(hostProps, names, trashes);
+			spec.createHandlers(host);
+			virtualHosts.add(host);
 		}
 	}
 
-	private static HttpMethodHandler buildClassFromConfig(Element parent) {
-		// copied from org.apache.jackrabbit.webdav.simple.ResourceConfig and
-		// modified for our purpose.
-		HttpMethodHandler instance = null;
-		Element classElem = DomUtil.getChildElement(parent, ELEMENT_CLASS, null);
-		if (classElem != null) {
-			// contains a 'class' child node
-			try {
-				String className = DomUtil.getAttribute(classElem, ATTR_NAME, null);
-				if (className != null) {
-					Class<?> clazz = Class.forName(className);
-					if (HttpMethodHandler.class.isAssignableFrom(clazz)) {
-						instance = (HttpMethodHandler) clazz.newInstance();
-					} else {
-						log.warn(className + " must implement the HttpMethodHandler interface");
+	/**
+	 * Configures the handlers registered with ServiceLoader, i.e. listed in
+	 * META-INF/services/com.adobe.assignment.http.methods.HttpMethodHandler
+	 * (and ...websocket.WebSocketHandler) on the class path, in the order
+	 * they are listed. Used when there is no handler configuration.
+	 */
+	public void discoverHandlers() {
+		for (HttpMethodHandler instance : ServiceLoader.load(HttpMethodHandler.class)) {
+			instance.init(this);
+			handlers.add(instance);
+		}
+		for (WebSocketHandler instance : ServiceLoader.load(WebSocketHandler.class)) {
+			instance.init(this);
+			webSocketHandlers.add(instance);
+		}
+	}
+
+	/**
+	 * The configuration of the server or of a virtual host: its names and
+	 * properties, and its handlers.
+	 */
+	private static final class HostSpec {
+
+		String names;
+		final Properties props = new Properties();
+		final List<HandlerSpec> methodSpecs = new ArrayList<HandlerSpec>();
+		final List<HandlerSpec> webSocketSpecs = new ArrayList<HandlerSpec>();
+
+		/**
+		 * @return The names, separated by commas or whitespace, lower case.
+		 */
+		List<String> getNames() {
+			List<String> list = new ArrayList<String>();
+			if (names != null) {
+				for (String name : names.split("[,\\s]+")) {
+					if (name.length() > 0) {
+						list.add(name.toLowerCase(Locale.ROOT));
 					}
 				}
-			} catch (Exception e) {
-				log.warn(e.getMessage());
+			}
+			return Collections.unmodifiableList(list);
+		}
+
+		/**
+		 * Creates the handlers, initialized with the given configuration.
+		 */
+		void createHandlers(ServerConfig config) {
+			for (HandlerSpec spec : methodSpecs) {
+				HttpMethodHandler instance = spec.create(HttpMethodHandler.class);
+				if (instance != null) {
+					instance.init(config);
+					config.handlers.add(instance);
+				}
+			}
+			for (HandlerSpec spec : webSocketSpecs) {
+				WebSocketHandler instance = spec.create(WebSocketHandler.class);
+				if (instance != null) {
+					instance.init(config);
+					config.webSocketHandlers.add(instance);
+				}
 			}
 		}
-		return instance;
 	}
 
+	/**
+	 * The configuration of one handler: its class and parameters.
+	 */
+	private static final class HandlerSpec {
+
+		String className;
+		final List<String[]> params = new ArrayList<String[]>();
+
+		/**
+		 * Creates the handler through its public no-argument constructor, and
+		 * passes each parameter through the setter named after it, e.g.
+		 * &lt;param name="prefix" value="/api"/&gt; to setPrefix(String).
+		 * 
+		 * @return The handler, or null if it cannot be created
+		 */
+		<T> T create(Class<T> type) {
+			if (className == null) {
+				return null;
+			}
+			Class<?> clazz;
+			Object instance;
+			try {
+				clazz = Class.forName(className);
+				if (!type.isAssignableFrom(clazz)) {
+					log.warn(className + " must implement the " + type.getSimpleName() + " interface");
+					return null;
+				}
+				instance = LOOKUP.findConstructor(clazz, NO_ARGS).invoke();
+			} catch (Throwable e) {
+				log.warn("Cannot create " + className + ": " + e);
+				return null;
+			}
+			for (String[] param : params) {
+				setParameter(clazz, instance, param[0], param[1]);
+			}
+			return type.cast(instance);
+		}
+
+		private static void setParameter(Class<?> clazz, Object instance, String name, String value) {
+			if (name == null || name.length() == 0 || value == null) {
+				log.warn("Ignoring a param of " + clazz.getName() + " without name or value");
+				return;
+			}
+			String setter = "set" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+			MethodHandle handle;
+			try {
+				handle = LOOKUP.findVirtual(clazz, setter, STRING_SETTER);
+			} catch (ReflectiveOperationException e) {
+				log.warn(clazz.getName() + " has no parameter '" + name + "'");
+				return;
+			}
+			try {
+				handle.invoke(instance, value);
+			} catch (Throwable e) {
+				log.warn("Invalid value '" + value + "' for parameter '" + name + "' of " + clazz.getName());
+			}
+		}
+	}
 }
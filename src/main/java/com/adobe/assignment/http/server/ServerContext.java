@@ -0,0 +1,181 @@
+package com.adobe.assignment.http.server;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.net.ssl.SSLContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The state shared by all acceptors and connections of one HttpServer: the
+ * configuration and the services built from it when the server starts.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+class ServerContext {
+
+	private static final Logger log = LoggerFactory.getLogger(ServerContext.class);
+
+	private final ServerConfig config;
+	private final HashedTimerWheel timer;
+	private final ServerMetrics metrics;
+	private final SSLContext sslContext;
+	private final VirtualHosts virtualHosts;
+	private final ClientLimiter clientLimiter;
+	private final SlowRequestLog slowRequestLog;
+	private final ConcurrencyLimit concurrencyLimit;
+	private final WriteSelector writeSelector = new WriteSelector();
+	private final AtomicBoolean served = new AtomicBoolean();
+	private volatile boolean draining;
+	private volatile long startedAt;
+
+	ServerContext(ServerConfig config) throws IOException {
+		this.config = config;
+		this.sslContext = TlsContextFactory.createContext(config);
+		this.timer = new HashedTimerWheel("connection-timer", config.getTimerTick(), TimeUnit.MILLISECONDS, 512);
+		this.metrics = new ServerMetrics();
+		this.concurrencyLimit = ConcurrencyLimit.create(config);
+		this.virtualHosts = new VirtualHosts(config, concurrencyLimit, metrics);
+		this.clientLimiter = ClientLimiter.create(config);
+		this.slowRequestLog = new SlowRequestLog(config, metrics);
+	}
+
+	ServerConfig getConfig() {
+		return config;
+	}
+
+	/**
+	 * @return The timer tracking the deadlines of all connections.
+	 */
+	HashedTimerWheel getTimer() {
+		return timer;
+	}
+
+	ServerMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return The response cache of the default site, or null if caching is
+	 *         disabled.
+	 */
+	ResponseCache getResponseCache() {
+		return virtualHosts.getDefault().getResponseCache();
+	}
+
+	/**
+	 * @return The sites served, by the names they are served under.
+	 */
+	VirtualHosts getVirtualHosts() {
+		return virtualHosts;
+	}
+
+	/**
+	 * @return The limits per client, or null if clients are not limited.
+	 */
+	ClientLimiter getClientLimiter() {
+		return clientLimiter;
+	}
+
+	/**
+	 * Takes a token of a client's request rate, if clients are limited;
+	 * every request, and every HTTP/2 stream, takes one.
+	 *
+	 * @param address		The remote address of the client
+	 * @return				true if the request may be served
+	 */
+	boolean acquireRequest(InetAddress address) {
+		if (clientLimiter == null || clientLimiter.acquireRequest(address)) {
+			return true;
+		}
+		metrics.clientRejected();
+		return false;
+	}
+
+	/**
+	 * @return The adaptive limit of the requests handled at once, or null if
+	 *         requests are not limited.
+	 */
+	ConcurrencyLimit getConcurrencyLimit() {
+		return concurrencyLimit;
+	}
+
+	/**
+	 * @return The log of the requests that took longer than the threshold.
+	 */
+	SlowRequestLog getSlowRequestLog() {
+		return slowRequestLog;
+	}
+
+	/**
+	 * @return The selector waiting for the clients that lag behind the
+	 *         bodies sent to them (see OutboundQueue).
+	 */
+	WriteSelector getWriteSelector() {
+		return writeSelector;
+	}
+
+	/**
+	 * @return The TLS context of the secure listener, or null if HTTPS is
+	 *         disabled.
+	 */
+	SSLContext getSslContext() {
+		return sslContext;
+	}
+
+	/**
+	 * @return true while the server drains: new connections are refused
+	 *         with 503, and persistent connections closed after their
+	 *         current response.
+	 */
+	boolean isDraining() {
+		return draining;
+	}
+
+	/**
+	 * Starts or stops draining the server, e.g. before it is taken out of a
+	 * load balancer.
+	 */
+	void setDraining(boolean draining) {
+		if (this.draining != draining) {
+			log.info(draining ? "Draining connections" : "No longer draining connections");
+		}
+		this.draining = draining;
+	}
+
+	/**
+	 * Called once the acceptors are running.
+	 */
+	void started() {
+		startedAt = System.nanoTime();
+	}
+
+	/**
+	 * Called whenever a request has been served, after its connection was
+	 * closed. The first time, logs how long after the start of the JVM the
+	 * server began accepting connections, and served its first request,
+	 * which is what a restart during a deploy costs. Asking the JVM for its
+	 * uptime is not cheap, so it is done here rather than on startup.
+	 */
+	void requestServed() {
+		if (!served.get() && served.compareAndSet(false, true)) {
+			long sinceStarted = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+			long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+			log.info("Accepting connections " + (uptime - sinceStarted) + " ms and first request served " + uptime
+					+ " ms after the JVM started");
+		}
+	}
+
+	/**
+	 * Releases the services of this context.
+	 */
+	void close() {
+		timer.stop();
+		writeSelector.stop();
+	}
+}
@@ -0,0 +1,64 @@
+package com.adobe.assignment.http.server;
+
+/**
+ * The management interface of a running HttpServer: what it is doing, and
+ * whether it drains (see ServerManagement).
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public interface ServerMXBean {
+
+	/**
+	 * @return The number of connections accepted and still being served.
+	 */
+	public long getOpenConnections();
+
+	/**
+	 * @return true while new connections are refused with 503, and
+	 *         persistent connections closed after their current response.
+	 */
+	public boolean isDraining();
+
+	/**
+	 * Starts or stops draining the server, e.g. before taking it out of a
+	 * load balancer.
+	 */
+	public void setDraining(boolean draining);
+
+	public long getTimeouts();
+
+	public long getReadTimeouts();
+
+	public long getClientRejections();
+
+	public long getWorkerRejections();
+
+	public long getDrainRejections();
+
+	public long getSuspendedRequests();
+
+	public long getCancelledRequests();
+
+	public long getParkedWrites();
+
+	public long getSlowRequests();
+
+	/**
+	 * @return The requests that may be handled at once, as it adapted to
+	 *         their latency; 0 if requests are not limited.
+	 */
+	public int getConcurrencyLimit();
+
+	/**
+	 * @return The requests being handled, if requests are limited.
+	 */
+	public int getInflightRequests();
+
+	public long getLimitRejections();
+
+	public long getDetachedResponses();
+
+	public long getHttp2Streams();
+
+	public long getWebSockets();
+}
@@ -0,0 +1,240 @@
+package com.adobe.assignment.http.server;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registers the MBeans of a running HttpServer with the platform MBean
+ * server, so that it can be looked into with jconsole, or any JMX client,
+ * without restarting it:
+ *
+ * <pre>
+ * com.adobe.assignment.http:type=Server,port=8080
+ * com.adobe.assignment.http:type=WorkerPool,port=8080,acceptor=0
+ * com.adobe.assignment.http:type=Handler,port=8080,name=0-GetMethodHandler
+ * com.adobe.assignment.http:type=ResponseCache,port=8080
+ * com.adobe.assignment.http:type=ResponseCache,port=8080,host="example.com"
+ * </pre>
+ *
+ * The server's counters and its connections (ServerMXBean), each acceptor's
+ * pool (WorkerPoolMXBean), each handler's invocations and latencies
+ * (HandlerMXBean) and the response cache (ResponseCacheMXBean). The
+ * operations are those that are safe on a live server: resizing a pool,
+ * flushing the cache and draining the server.
+ *
+ * The names carry the port of the server, so that several servers in one
+ * JVM do not clash, and the handlers and the cache of a virtual host (see
+ * VirtualHosts) carry its first name.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+class ServerManagement {
+
+	private static final Logger log = LoggerFactory.getLogger(ServerManagement.class);
+
+	static final String DOMAIN = "com.adobe.assignment.http";
+
+	private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+	private final List<ObjectName> registered = new ArrayList<ObjectName>();
+
+	/**
+	 * Registers the MBeans of a server.
+	 *
+	 * @param context		The server's context
+	 * @param acceptors		The server's acceptors
+	 * @param port			The port the server listens on
+	 */
+	void register(ServerContext context, List<Acceptor> acceptors, int port) {
+		register(new Server(context), "type=Server,port=" + port);
+		for (Acceptor acceptor : acceptors) {
+			register(new WorkerPool(acceptor), "type=WorkerPool,port=" + port + ",acceptor=" + acceptor.getId()
+					+ (acceptor.isSecure() ? ",secure=true" : ""));
+		}
+		for (VirtualHosts.Host host : context.getVirtualHosts().getHosts()) {
+			// the beans of a virtual host are told apart by its first name.
+			String site = (host.getName() != null) ? ",host=" + ObjectName.quote(host.getName()) : "";
+			HandlerStats[] stats = host.getHandlerChain().getStats();
+			for (int i = 0; i < stats.length; i++) {
+				String name = stats[i].getHandlerClass();
+				register(stats[i], "type=Handler,port=" + port + site + ",name=" + i + "-"
+						+ name.substring(name.lastIndexOf('.') + 1));
+			}
+			if (host.getResponseCache() != null) {
+				register(host.getResponseCache(), "type=ResponseCache,port=" + port + site);
+			}
+		}
+	}
+
+	private void register(Object bean, String properties) {
+		try {
+			ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+			server.registerMBean(bean, name);
+			registered.add(name);
+		} catch (JMException e) {
+			log.warn("Failed to register MBean " + properties + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Unregisters the MBeans registered by this instance.
+	 */
+	void unregister() {
+		for (ObjectName name : registered) {
+			try {
+				server.unregisterMBean(name);
+			} catch (JMException e) {
+				// gone already.
+			}
+		}
+		registered.clear();
+	}
+
+	/**
+	 * The server as a whole.
+	 */
+	private static final class Server implements ServerMXBean {
+
+		private final ServerContext context;
+		private final ServerMetrics metrics;
+
+		Server(ServerContext context) {
+			this.context = context;
+			this.metrics = context.getMetrics();
+		}
+
+		public long getOpenConnections() {
+			return metrics.getOpenConnections();
+		}
+
+		public boolean isDraining() {
+			return context.isDraining();
+		}
+
+		public void setDraining(boolean draining) {
+			context.setDraining(draining);
+		}
+
+		public long getTimeouts() {
+			return metrics.getTimeouts();
+		}
+
+		public long getReadTimeouts() {
+			return metrics.getReadTimeouts();
+		}
+
+		public long getClientRejections() {
+			return metrics.getClientRejections();
+		}
+
+		public long getWorkerRejections() {
+			return metrics.getWorkerRejections();
+		}
+
+		public long getDrainRejections() {
+			return metrics.getDrainRejections();
+		}
+
+		public long getSuspendedRequests() {
+			return metrics.getSuspendedRequests();
+		}
+
+		public long getCancelledRequests() {
+			return metrics.getCancelledRequests();
+		}
+
+		public long getParkedWrites() {
+			return metrics.getParkedWrites();
+		}
+
+		public long getSlowRequests() {
+			return metrics.getSlowRequests();
+		}
+
+		public int getConcurrencyLimit() {
+			ConcurrencyLimit limit = context.getConcurrencyLimit();
+			return (limit != null) ? limit.getLimit() : 0;
+		}
+
+		public int getInflightRequests() {
+			ConcurrencyLimit limit = context.getConcurrencyLimit();
+			return (limit != null) ? limit.getInflight() : 0;
+		}
+
+		public long getLimitRejections() {
+			return metrics.getLimitRejections();
+		}
+
+		public long getDetachedResponses() {
+			return metrics.getDetachedResponses();
+		}
+
+		public long getHttp2Streams() {
+			return metrics.getHttp2Streams();
+		}
+
+		public long getWebSockets() {
+			return metrics.getWebSockets();
+		}
+	}
+
+	/**
+	 * The worker pool of an acceptor.
+	 */
+	private static final class WorkerPool implements WorkerPoolMXBean {
+
+		private final Acceptor acceptor;
+		private final ThreadPoolExecutor pool;
+
+		WorkerPool(Acceptor acceptor) {
+			this.acceptor = acceptor;
+			this.pool = acceptor.getWorkers();
+		}
+
+		public int getPoolSize() {
+			return pool.getPoolSize();
+		}
+
+		public int getActiveCount() {
+			return pool.getActiveCount();
+		}
+
+		public int getLargestPoolSize() {
+			return pool.getLargestPoolSize();
+		}
+
+		public int getQueuedTasks() {
+			return pool.getQueue().size();
+		}
+
+		public long getCompletedTasks() {
+			return pool.getCompletedTaskCount();
+		}
+
+		public long getRejectedConnections() {
+			return acceptor.getRejected();
+		}
+
+		public int getMaximumPoolSize() {
+			int max = pool.getMaximumPoolSize();
+			return (max == Integer.MAX_VALUE) ? 0 : max;
+		}
+
+		public void setMaximumPoolSize(int size) {
+			if (size < 0) {
+				throw new IllegalArgumentException("Negative pool size " + size);
+			}
+			pool.setMaximumPoolSize((size == 0) ? Integer.MAX_VALUE : size);
+			log.info("Worker pool of acceptor " + acceptor.getId() + " resized to "
+					+ ((size == 0) ? "no limit" : size + " threads"));
+		}
+	}
+}
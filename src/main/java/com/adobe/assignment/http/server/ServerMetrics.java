@@ -0,0 +1,256 @@
+package com.adobe.assignment.http.server;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters describing what the server has been doing since it started.
+ *
+ * The counters are updated from many threads at once and are therefore
+ * backed by LongAdder(s), which do not contend on a single memory location.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class ServerMetrics {
+
+	private final LongAdder idleTimeouts = new LongAdder();
+	private final LongAdder headerTimeouts = new LongAdder();
+	private final LongAdder bodyTimeouts = new LongAdder();
+	private final LongAdder requestTimeouts = new LongAdder();
+	private final LongAdder readTimeouts = new LongAdder();
+	private final LongAdder http2Connections = new LongAdder();
+	private final LongAdder http2Streams = new LongAdder();
+	private final LongAdder webSockets = new LongAdder();
+	private final LongAdder detachedResponses = new LongAdder();
+	private final LongAdder clientRejections = new LongAdder();
+	private final LongAdder suspendedRequests = new LongAdder();
+	private final LongAdder cancelledRequests = new LongAdder();
+	private final LongAdder parkedWrites = new LongAdder();
+	private final LongAdder workerRejections = new LongAdder();
+	private final LongAdder drainRejections = new LongAdder();
+	private final LongAdder openConnections = new LongAdder();
+	private final LongAdder slowRequests = new LongAdder();
+	private final LongAdder limitRejections = new LongAdder();
+
+	/**
+	 * @return The number of connections closed because no request arrived
+	 *         within the idle timeout.
+	 */
+	public long getIdleTimeouts() {
+		return idleTimeouts.sum();
+	}
+
+	/**
+	 * @return The number of requests whose headers were not received within
+	 *         the header timeout.
+	 */
+	public long getHeaderTimeouts() {
+		return headerTimeouts.sum();
+	}
+
+	/**
+	 * @return The number of requests whose body was not received within the
+	 *         body timeout.
+	 */
+	public long getBodyTimeouts() {
+		return bodyTimeouts.sum();
+	}
+
+	/**
+	 * @return The number of requests that were not completed within the
+	 *         total request deadline.
+	 */
+	public long getRequestTimeouts() {
+		return requestTimeouts.sum();
+	}
+
+	/**
+	 * @return The number of reads that timed out (SO_TIMEOUT).
+	 */
+	public long getReadTimeouts() {
+		return readTimeouts.sum();
+	}
+
+	/**
+	 * @return The total number of connections closed due to a timeout.
+	 */
+	public long getTimeouts() {
+		return getIdleTimeouts() + getHeaderTimeouts() + getBodyTimeouts() + getRequestTimeouts()
+				+ getReadTimeouts();
+	}
+
+	/**
+	 * @return The number of connections that switched to HTTP/2.
+	 */
+	public long getHttp2Connections() {
+		return http2Connections.sum();
+	}
+
+	/**
+	 * @return The number of requests received as HTTP/2 streams.
+	 */
+	public long getHttp2Streams() {
+		return http2Streams.sum();
+	}
+
+	/**
+	 * @return The number of connections that switched to WebSocket.
+	 */
+	public long getWebSockets() {
+		return webSockets.sum();
+	}
+
+	/**
+	 * @return The number of responses detached from their connection thread,
+	 *         e.g. event streams.
+	 */
+	public long getDetachedResponses() {
+		return detachedResponses.sum();
+	}
+
+	/**
+	 * @return The number of connections and requests refused because their
+	 *         client was over its limits.
+	 */
+	public long getClientRejections() {
+		return clientRejections.sum();
+	}
+
+	/**
+	 * @return The number of requests whose handler returned before their
+	 *         response was complete (see AsyncHttpMethodHandler).
+	 */
+	public long getSuspendedRequests() {
+		return suspendedRequests.sum();
+	}
+
+	/**
+	 * @return The number of suspended requests cancelled because their
+	 *         client went away.
+	 */
+	public long getCancelledRequests() {
+		return cancelledRequests.sum();
+	}
+
+	/**
+	 * @return The number of times a body sent at the client's pace waited
+	 *         for the client without holding a thread (see OutboundQueue).
+	 */
+	public long getParkedWrites() {
+		return parkedWrites.sum();
+	}
+
+	/**
+	 * @return The number of connections refused because the worker pool of
+	 *         their acceptor was at its limit.
+	 */
+	public long getWorkerRejections() {
+		return workerRejections.sum();
+	}
+
+	/**
+	 * @return The number of connections refused while the server was
+	 *         draining.
+	 */
+	public long getDrainRejections() {
+		return drainRejections.sum();
+	}
+
+	/**
+	 * @return The number of connections accepted and still being served.
+	 */
+	public long getOpenConnections() {
+		return openConnections.sum();
+	}
+
+	/**
+	 * @return The number of requests that took longer than the slow request
+	 *         threshold, whether their timing was logged or not.
+	 */
+	public long getSlowRequests() {
+		return slowRequests.sum();
+	}
+
+	/**
+	 * @return The number of requests answered with 503 since as many were
+	 *         being handled as the concurrency limit allowed.
+	 */
+	public long getLimitRejections() {
+		return limitRejections.sum();
+	}
+
+	void idleTimeout() {
+		idleTimeouts.increment();
+	}
+
+	void headerTimeout() {
+		headerTimeouts.increment();
+	}
+
+	void bodyTimeout() {
+		bodyTimeouts.increment();
+	}
+
+	void requestTimeout() {
+		requestTimeouts.increment();
+	}
+
+	void readTimeout() {
+		readTimeouts.increment();
+	}
+
+	void http2Connection() {
+		http2Connections.increment();
+	}
+
+	void http2Stream() {
+		http2Streams.increment();
+	}
+
+	void webSocket() {
+		webSockets.increment();
+	}
+
+	void detachedResponse() {
+		detachedResponses.increment();
+	}
+
+	void clientRejected() {
+		clientRejections.increment();
+	}
+
+	void requestSuspended() {
+		suspendedRequests.increment();
+	}
+
+	void requestCancelled() {
+		cancelledRequests.increment();
+	}
+
+	void writeParked() {
+		parkedWrites.increment();
+	}
+
+	void workerRejected() {
+		workerRejections.increment();
+	}
+
+	void drainRejected() {
+		drainRejections.increment();
+	}
+
+	void connectionOpened() {
+		openConnections.increment();
+	}
+
+	void connectionClosed() {
+		openConnections.decrement();
+	}
+
+	void slowRequest() {
+		slowRequests.increment();
+	}
+
+	void limitRejected() {
+		limitRejections.increment();
+	}
+}
@@ -0,0 +1,99 @@
+package com.adobe.assignment.http.server;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.assignment.http.HttpRequest;
+import com.adobe.assignment.http.HttpResponse;
+import com.adobe.assignment.http.Timing;
+
+/**
+ * Logs the requests that took longer than webserver.timing.slowThreshold,
+ * with the phases they went through (see Timing) and the CPU time of the
+ * thread that served them, which tells a request that computed for long
+ * from one that waited, e.g. for the disk or the client. Of the slow
+ * requests, only webserver.timing.slowSampleRate are logged, so that a
+ * server that is slow altogether does not flood its log.
+ *
+ * The log has a logger of its own, com.adobe.assignment.http.slow, to be
+ * routed apart from the server's log:
+ *
+ * <pre>
+ * GET /big.bin 200 total=1520.31ms read=0.05ms open=0.12ms handle=0.40ms write=1519.74ms cpu=3.91ms
+ * </pre>
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+class SlowRequestLog {
+
+	private static final Logger log = LoggerFactory.getLogger("com.adobe.assignment.http.slow");
+
+	private final long threshold;
+	private final double sampleRate;
+	private final ServerMetrics metrics;
+
+	/**
+	 * The JVM's threads, or null if their CPU time cannot be measured.
+	 */
+	private final ThreadMXBean threads;
+
+	/**
+	 * Explicit Value Constructor
+	 *
+	 * @param config		The server's configuration
+	 * @param metrics		The server's counters
+	 */
+	SlowRequestLog(ServerConfig config, ServerMetrics metrics) {
+		this.threshold = TimeUnit.MILLISECONDS.toNanos(config.getSlowRequestThreshold());
+		this.sampleRate = config.getSlowRequestSampleRate();
+		this.metrics = metrics;
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		this.threads = (threshold > 0 && bean.isCurrentThreadCpuTimeSupported() && bean.isThreadCpuTimeEnabled())
+				? bean : null;
+	}
+
+	/**
+	 * @return The CPU time of the current thread in nanoseconds, to be passed
+	 *         to record() from the same thread; -1 if it is not measured.
+	 */
+	long cpuTime() {
+		return (threads != null) ? threads.getCurrentThreadCpuTime() : -1;
+	}
+
+	/**
+	 * Counts a request if it was slow, and logs it if it is sampled.
+	 *
+	 * @param request		The request
+	 * @param response		Its response, once written
+	 * @param cpuStart		The CPU time of the current thread as the request
+	 * 						was started, or -1 if it was not measured, or
+	 * 						measured on another thread
+	 */
+	void record(HttpRequest request, HttpResponse response, long cpuStart) {
+		Timing timing = response.getTiming();
+		long total = timing.getTotal();
+		if (threshold <= 0 || total < threshold) {
+			return;
+		}
+		metrics.slowRequest();
+		if (!log.isInfoEnabled() || (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+			return;
+		}
+		StringBuilder sb = new StringBuilder(128);
+		sb.append(request.getMethod()).append(' ').append(request.getRequestURI()).append(' ')
+				.append(response.getStatus()).append(" total=");
+		Timing.appendMillis(sb, total);
+		sb.append("ms ").append(timing);
+		if (cpuStart >= 0) {
+			sb.append(" cpu=");
+			Timing.appendMillis(sb, cpuTime() - cpuStart);
+			sb.append("ms");
+		}
+		log.info(sb.toString());
+	}
+}
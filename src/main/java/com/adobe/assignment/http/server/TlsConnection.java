@@ -0,0 +1,339 @@
+package com.adobe.assignment.http.server;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+
+import com.adobe.assignment.http.ByteBufferPool;
+
+/**
+ * The server side of a TLS connection, built on an SSLEngine.
+ *
+ * The engine is driven purely through ByteBuffer(s): encrypted bytes are
+ * collected in netIn and netOut, decrypted bytes in appIn. Only two small
+ * methods, readNet() and writeNet(), move encrypted bytes between those
+ * buffers and the socket. Here they use the socket's (blocking) streams, so
+ * that SO_TIMEOUT keeps working; a non-blocking transport would feed the
+ * same buffers from a channel.
+ *
+ * Small records, such as the messages of a handshake flight, are collected
+ * and sent together before the connection next waits for the peer, so that a
+ * flight does not stall on Nagle's algorithm and delayed ACKs.
+ *
+ * The buffers are leased from the ByteBufferPool and must be given back by
+ * means of release().
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+class TlsConnection {
+
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+	private static final int WRITE_BUFFER_SIZE = 4096;
+
+	private final SSLEngine engine;
+	private final Socket socket;
+	private final InputStream rawIn;
+	private final OutputStream rawOut;
+	private final ByteBufferPool pool = ByteBufferPool.getInstance();
+
+	/**
+	 * netIn and appIn are kept ready for reading (flipped), netOut is only
+	 * used within wrap().
+	 */
+	private ByteBuffer netIn, netOut, appIn;
+
+	private boolean inboundDone;
+
+	private final InputStream inputStream = new TlsInputStream();
+	private final OutputStream outputStream = new TlsOutputStream();
+
+	/**
+	 * Explicit Value Constructor
+	 *
+	 * @param engine		An engine for the server side of the connection
+	 * @param socket		The TCP socket for the connection
+	 * @throws IOException
+	 */
+	TlsConnection(SSLEngine engine, Socket socket) throws IOException {
+		this.engine = engine;
+		this.socket = socket;
+		this.rawIn = socket.getInputStream();
+		// records are batched here, so there is nothing left for Nagle to do.
+		socket.setTcpNoDelay(true);
+		this.rawOut = new BufferedOutputStream(socket.getOutputStream(), WRITE_BUFFER_SIZE);
+		engine.setUseClientMode(false);
+
+		SSLSession session = engine.getSession();
+		netIn = pool.acquire(session.getPacketBufferSize());
+		netIn.flip();
+		netOut = pool.acquire(session.getPacketBufferSize());
+		appIn = pool.acquire(session.getApplicationBufferSize());
+		appIn.flip();
+	}
+
+	/**
+	 * Performs the TLS handshake. A client that resumes a session (by ID or
+	 * by session ticket) completes it without the full key exchange.
+	 *
+	 * @throws IOException
+	 *             if the handshake fails or the client goes away.
+	 */
+	void handshake() throws IOException {
+		engine.beginHandshake();
+		handshake(engine.getHandshakeStatus());
+		rawOut.flush();
+	}
+
+	/**
+	 * @return The decrypted input of this connection.
+	 */
+	InputStream getInputStream() {
+		return inputStream;
+	}
+
+	/**
+	 * @return The output of this connection, encrypted as it is written.
+	 *         Closing it sends close_notify and closes the socket.
+	 */
+	OutputStream getOutputStream() {
+		return outputStream;
+	}
+
+	SSLSession getSession() {
+		return engine.getSession();
+	}
+
+	/**
+	 * Gives the buffers of this connection back to the pool.
+	 */
+	synchronized void release() {
+		if (netIn != null) {
+			pool.release(netIn);
+			pool.release(netOut);
+			pool.release(appIn);
+			netIn = netOut = appIn = null;
+		}
+	}
+
+	private void handshake(HandshakeStatus hs) throws IOException {
+		while (hs != HandshakeStatus.FINISHED && hs != HandshakeStatus.NOT_HANDSHAKING) {
+			switch (hs) {
+			case NEED_WRAP:
+				hs = wrap(EMPTY).getHandshakeStatus();
+				break;
+			case NEED_UNWRAP:
+			case NEED_UNWRAP_AGAIN:
+				SSLEngineResult result = unwrap();
+				if (result == null) {
+					throw new SSLException("Connection closed during handshake");
+				}
+				hs = result.getHandshakeStatus();
+				break;
+			case NEED_TASK:
+				Runnable task;
+				while ((task = engine.getDelegatedTask()) != null) {
+					task.run();
+				}
+				hs = engine.getHandshakeStatus();
+				break;
+			default:
+				throw new SSLException("Unexpected handshake status " + hs);
+			}
+		}
+	}
+
+	/**
+	 * Unwraps one record into appIn, reading from the socket as needed.
+	 *
+	 * @return The result, or null at the end of the stream.
+	 */
+	private SSLEngineResult unwrap() throws IOException {
+		while (true) {
+			appIn.compact();
+			SSLEngineResult result;
+			try {
+				result = engine.unwrap(netIn, appIn);
+			} finally {
+				appIn.flip();
+			}
+			switch (result.getStatus()) {
+			case OK:
+			case CLOSED:
+				return result;
+			case BUFFER_UNDERFLOW:
+				if (!readNet()) {
+					return null;
+				}
+				break;
+			case BUFFER_OVERFLOW:
+				appIn = grow(appIn, engine.getSession().getApplicationBufferSize());
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Wraps the source into one or more records and writes them out.
+	 *
+	 * @return The result of the last wrap.
+	 */
+	private synchronized SSLEngineResult wrap(ByteBuffer src) throws IOException {
+		if (netOut == null) {
+			// released while a detached response was still writing.
+			throw new SocketException("Socket closed");
+		}
+		SSLEngineResult result;
+		do {
+			netOut.clear();
+			result = engine.wrap(src, netOut);
+			netOut.flip();
+			switch (result.getStatus()) {
+			case BUFFER_OVERFLOW:
+				netOut = grow(netOut, engine.getSession().getPacketBufferSize());
+				continue;
+			case BUFFER_UNDERFLOW:
+				throw new SSLException("Unexpected underflow while wrapping");
+			default:
+				writeNet();
+			}
+		} while (src.hasRemaining() && result.getStatus() == SSLEngineResult.Status.OK);
+		return result;
+	}
+
+	/**
+	 * Reads encrypted bytes from the socket into netIn.
+	 *
+	 * @return false at the end of the stream.
+	 */
+	private boolean readNet() throws IOException {
+		// the peer may be waiting for what we have sent so far.
+		rawOut.flush();
+		if (netIn.limit() == netIn.capacity() && netIn.position() == 0) {
+			// a record larger than the buffer.
+			netIn = grow(netIn, engine.getSession().getPacketBufferSize());
+		}
+		netIn.compact();
+		try {
+			int n = rawIn.read(netIn.array(), netIn.arrayOffset() + netIn.position(), netIn.remaining());
+			if (n < 0) {
+				return false;
+			}
+			netIn.position(netIn.position() + n);
+			return true;
+		} finally {
+			netIn.flip();
+		}
+	}
+
+	/**
+	 * Writes the encrypted bytes in netOut to the socket.
+	 */
+	private void writeNet() throws IOException {
+		if (netOut.hasRemaining()) {
+			rawOut.write(netOut.array(), netOut.arrayOffset() + netOut.position(), netOut.remaining());
+			netOut.position(netOut.limit());
+		}
+	}
+
+	/**
+	 * Replaces a (flipped or cleared) buffer by a larger one with the same
+	 * remaining content.
+	 */
+	private ByteBuffer grow(ByteBuffer buffer, int minCapacity) {
+		ByteBuffer larger = pool.acquire(Math.max(minCapacity, buffer.capacity() * 2));
+		larger.put(buffer);
+		larger.flip();
+		pool.release(buffer);
+		return larger;
+	}
+
+	private final class TlsInputStream extends InputStream {
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xff);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			while (!appIn.hasRemaining()) {
+				if (inboundDone) {
+					return -1;
+				}
+				SSLEngineResult result = unwrap();
+				if (result == null || result.getStatus() == SSLEngineResult.Status.CLOSED) {
+					inboundDone = true;
+					continue;
+				}
+				// e.g. session tickets or key updates after the handshake.
+				handshake(result.getHandshakeStatus());
+			}
+			int n = Math.min(len, appIn.remaining());
+			appIn.get(b, off, n);
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return (appIn == null) ? 0 : appIn.remaining();
+		}
+	}
+
+	private final class TlsOutputStream extends OutputStream {
+
+		private boolean closed;
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (closed) {
+				throw new IOException("Stream closed");
+			}
+			wrap(ByteBuffer.wrap(b, off, len));
+		}
+
+		@Override
+		public void flush() throws IOException {
+			rawOut.flush();
+		}
+
+		/**
+		 * Sends close_notify and closes the socket.
+		 */
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try {
+				engine.closeOutbound();
+				while (!engine.isOutboundDone()) {
+					wrap(EMPTY);
+				}
+				rawOut.flush();
+			} finally {
+				socket.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.adobe.assignment.http.server;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates the SSLContext of the secure listener from the keystore configured
+ * in webserver.properties.
+ *
+ * Sessions are resumed either from the server side session cache, whose size
+ * and timeout are configurable, or from session tickets the client presents
+ * (RFC 5077 and the TLS 1.3 equivalent), which keep no state on the server.
+ * The JDK reads the ticket switch (jdk.tls.server.enableSessionTicketExtension)
+ * once for the whole JVM, so it takes effect only if it is set before the
+ * first SSLContext is created and has not been set on the command line.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+final class TlsContextFactory {
+
+	private static final Logger log = LoggerFactory.getLogger(TlsContextFactory.class);
+
+	private static final String SESSION_TICKETS_PROPERTY = "jdk.tls.server.enableSessionTicketExtension";
+
+	private TlsContextFactory() {
+	}
+
+	/**
+	 * Creates the SSLContext described by the configuration.
+	 *
+	 * @param config		The server configuration
+	 * @return				The context, or null if HTTPS is not configured
+	 * @throws IOException	if the keystore cannot be read or is unusable
+	 */
+	static SSLContext createContext(ServerConfig config) throws IOException {
+		String keystore = config.getSslKeystore();
+		if (keystore == null || keystore.trim().length() == 0) {
+			return null;
+		}
+		if (System.getProperty(SESSION_TICKETS_PROPERTY) == null) {
+			System.setProperty(SESSION_TICKETS_PROPERTY, String.valueOf(config.isSslSessionTickets()));
+		}
+
+		char[] password = config.getSslKeystorePassword().toCharArray();
+		try {
+			KeyStore ks = KeyStore.getInstance(config.getSslKeystoreType());
+			InputStream in = new FileInputStream(keystore.trim());
+			try {
+				ks.load(in, password);
+			} finally {
+				in.close();
+			}
+			KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+			kmf.init(ks, password);
+
+			SSLContext sslContext = SSLContext.getInstance("TLS");
+			sslContext.init(kmf.getKeyManagers(), null, null);
+
+			SSLSessionContext sessions = sslContext.getServerSessionContext();
+			sessions.setSessionCacheSize(config.getSslSessionCacheSize());
+			sessions.setSessionTimeout(config.getSslSessionTimeout());
+
+			log.info("Loaded keystore " + keystore + ", session cache of " + config.getSslSessionCacheSize()
+					+ " for " + config.getSslSessionTimeout() + "s, session tickets "
+					+ System.getProperty(SESSION_TICKETS_PROPERTY));
+			return sslContext;
+		} catch (GeneralSecurityException e) {
+			throw new IOException("Cannot initialize TLS from " + keystore, e);
+		}
+	}
+}
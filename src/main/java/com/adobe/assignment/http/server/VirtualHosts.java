@@ -0,0 +1,185 @@
+package com.adobe.assignment.http.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.assignment.http.HttpRequest;
+import com.adobe.assignment.http.methods.PathResolver;
+
+/**
+ * The sites a server serves, by the names clients ask for them under in the
+ * Host header (or the :authority of HTTP/2). Every site has its own
+ * configuration, handler chain and response cache; the connections, worker
+ * pools, buffers and the limit of the requests handled at once are shared
+ * by all of them.
+ *
+ * The names are looked up in two hash tables built when the server starts:
+ * the exact names, and the suffixes of the wildcard names, "*.example.com"
+ * being kept as "example.com" and matching every name that ends in
+ * ".example.com". A Host value is looked up as it is, if it is lower case
+ * and carries no port, so that resolving it does not allocate; then by each
+ * of its suffixes, longest first. Requests for a name that no virtual host
+ * is configured under, or without a Host header, are served by the default
+ * site: the handlers of the server if it has any, else the first virtual
+ * host.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+class VirtualHosts {
+
+	private static final Logger log = LoggerFactory.getLogger(VirtualHosts.class);
+
+	private final List<Host> hosts = new ArrayList<Host>();
+	private final Map<String, Host> exact = new HashMap<String, Host>();
+	private final Map<String, Host> wildcard = new HashMap<String, Host>();
+	private final Host defaultHost;
+
+	/**
+	 * Explicit Value Constructor
+	 *
+	 * @param config		The configuration of the server
+	 * @param limit			The limit of the requests handled at once, or null
+	 * @param metrics		The server's counters
+	 */
+	VirtualHosts(ServerConfig config, ConcurrencyLimit limit, ServerMetrics metrics) {
+		for (ServerConfig hostConfig : config.getVirtualHosts()) {
+			Host host = new Host(hostConfig, limit, metrics);
+			hosts.add(host);
+			for (String name : hostConfig.getHostNames()) {
+				Map<String, Host> table = exact;
+				if (name.startsWith("*.")) {
+					table = wildcard;
+					name = name.substring(2);
+				}
+				if (table.containsKey(name)) {
+					log.warn("Virtual host name " + name + " is configured more than once; the first one serves it");
+				} else {
+					table.put(name, host);
+				}
+			}
+		}
+		if (config.getHandlers().isEmpty() && !hosts.isEmpty()) {
+			defaultHost = hosts.get(0);
+		} else {
+			defaultHost = new Host(config, limit, metrics);
+			hosts.add(0, defaultHost);
+		}
+	}
+
+	/**
+	 * @return The site serving the request.
+	 */
+	Host resolve(HttpRequest request) {
+		return (exact.isEmpty() && wildcard.isEmpty()) ? defaultHost : resolve(request.getHeader("Host"));
+	}
+
+	/**
+	 * Finds the site served under a name.
+	 *
+	 * @param host			The value of a Host header, a name with an
+	 * 						optional port; may be null
+	 * @return				The site, the default one if none is configured
+	 * 						under the name
+	 */
+	Host resolve(String host) {
+		if (host == null) {
+			return defaultHost;
+		}
+		int end = host.length();
+		if (host.startsWith("[")) {
+			// an IPv6 address.
+			int bracket = host.indexOf(']');
+			end = (bracket < 0) ? end : bracket + 1;
+		} else {
+			int colon = host.lastIndexOf(':');
+			end = (colon < 0) ? end : colon;
+		}
+		if (end > 0 && host.charAt(end - 1) == '.') {
+			// the fully qualified form of the name.
+			end--;
+		}
+		String name = (end == host.length()) ? host : host.substring(0, end);
+		// returns the name itself if it is lower case already.
+		name = name.toLowerCase(Locale.ROOT);
+
+		Host match = exact.get(name);
+		if (match != null) {
+			return match;
+		}
+		if (!wildcard.isEmpty()) {
+			for (int dot = name.indexOf('.'); dot >= 0; dot = name.indexOf('.', dot + 1)) {
+				match = wildcard.get(name.substring(dot + 1));
+				if (match != null) {
+					return match;
+				}
+			}
+		}
+		return defaultHost;
+	}
+
+	/**
+	 * @return The site serving requests for names that are not configured.
+	 */
+	Host getDefault() {
+		return defaultHost;
+	}
+
+	/**
+	 * @return The sites: the site of the server's own handlers first, if it
+	 *         has any, then the virtual hosts.
+	 */
+	List<Host> getHosts() {
+		return Collections.unmodifiableList(hosts);
+	}
+
+	/**
+	 * A site: its configuration, and the handler chain and the response
+	 * cache built from it.
+	 */
+	static final class Host {
+
+		private final ServerConfig config;
+		private final ResponseCache cache;
+		private final HandlerChain chain;
+
+		Host(ServerConfig config, ConcurrencyLimit limit, ServerMetrics metrics) {
+			this.config = config;
+			this.cache = (config.getCacheSize() > 0)
+					? new ResponseCache(config.getCacheSize(), config.getCacheMaxEntrySize(),
+							config.getCacheVaryHeaders(), config.getCacheCollapseTimeout(),
+							new PathResolver(config.getPathCacheSize()))
+					: null;
+			this.chain = new HandlerChain(config, cache, limit, metrics);
+		}
+
+		ServerConfig getConfig() {
+			return config;
+		}
+
+		/**
+		 * @return The response cache, or null if caching is disabled.
+		 */
+		ResponseCache getResponseCache() {
+			return cache;
+		}
+
+		HandlerChain getHandlerChain() {
+			return chain;
+		}
+
+		/**
+		 * @return The first name of the site, or null for the server.
+		 */
+		String getName() {
+			List<String> names = config.getHostNames();
+			return names.isEmpty() ? null : names.get(0);
+		}
+	}
+}
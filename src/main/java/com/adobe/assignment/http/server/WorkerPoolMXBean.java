@@ -0,0 +1,54 @@
+package com.adobe.assignment.http.server;
+
+/**
+ * The management interface of the worker pool of one acceptor.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public interface WorkerPoolMXBean {
+
+	/**
+	 * @return The number of threads in the pool.
+	 */
+	public int getPoolSize();
+
+	/**
+	 * @return The number of threads serving a connection or a task.
+	 */
+	public int getActiveCount();
+
+	/**
+	 * @return The most threads the pool ever had at once.
+	 */
+	public int getLargestPoolSize();
+
+	/**
+	 * @return The number of tasks waiting for a thread; the pool hands its
+	 *         tasks over to a thread directly, so this is 0 but in passing.
+	 */
+	public int getQueuedTasks();
+
+	/**
+	 * @return The number of connections and tasks served so far.
+	 */
+	public long getCompletedTasks();
+
+	/**
+	 * @return The number of connections refused with 503 since every thread
+	 *         was busy and the pool at its limit.
+	 */
+	public long getRejectedConnections();
+
+	/**
+	 * @return The most threads the pool may have, 0 for no limit.
+	 */
+	public int getMaximumPoolSize();
+
+	/**
+	 * Resizes the pool. Lowering the limit ends surplus threads once they
+	 * are idle; the connections they serve are not affected.
+	 *
+	 * @param size		The most threads the pool may have, 0 for no limit
+	 */
+	public void setMaximumPoolSize(int size);
+}
@@ -0,0 +1,172 @@
+package com.adobe.assignment.http.server;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single thread waiting for the connections of OutboundQueue(s) to take
+ * more of the body they are sending. This is what a slow client costs while
+ * it lags behind: a selection key, instead of a worker thread blocked in a
+ * write.
+ *
+ * The queues ask for interest and give it up through this class, since the
+ * interest of a key is only changed on the selector thread. The thread is
+ * started with the first queue that needs it.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+class WriteSelector implements Runnable {
+
+	private static final Logger log = LoggerFactory.getLogger(WriteSelector.class);
+
+	/**
+	 * The queues whose interest in writing changed: asked for it, or are
+	 * done with the selector.
+	 */
+	private final Queue<OutboundQueue> changed = new ConcurrentLinkedQueue<OutboundQueue>();
+
+	private Selector selector;
+	private Thread thread;
+	private volatile boolean running = true;
+
+	/**
+	 * Asks for the queue to be called back once its connection can take
+	 * more, or, if it is done, for its connection to be let go of (see
+	 * OutboundQueue.wantsWrite() and isDone()).
+	 */
+	void update(OutboundQueue queue) throws IOException {
+		changed.add(queue);
+		start().wakeup();
+	}
+
+	private synchronized Selector start() throws IOException {
+		if (!running) {
+			throw new IOException("Server stopped");
+		}
+		if (selector == null) {
+			selector = Selector.open();
+			thread = new Thread(this, "write-selector");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		return selector;
+	}
+
+	public void run() {
+		List<OutboundQueue> touched = new ArrayList<OutboundQueue>();
+		List<OutboundQueue> done = new ArrayList<OutboundQueue>();
+		while (running) {
+			try {
+				selector.select();
+			} catch (IOException e) {
+				log.warn("Write selector failed: " + e.getMessage());
+				break;
+			}
+			for (SelectionKey key : selector.selectedKeys()) {
+				OutboundQueue queue = (OutboundQueue) key.attachment();
+				try {
+					if (key.isValid() && key.isWritable()) {
+						queue.writable();
+					}
+				} catch (CancelledKeyException e) {
+					// the connection was closed meanwhile.
+				}
+				touched.add(queue);
+			}
+			selector.selectedKeys().clear();
+			OutboundQueue queue;
+			while ((queue = changed.poll()) != null) {
+				touched.add(queue);
+			}
+			for (OutboundQueue q : touched) {
+				if (!apply(q)) {
+					done.add(q);
+				}
+			}
+			touched.clear();
+			if (!done.isEmpty()) {
+				// the channels may block again only once they are deregistered.
+				try {
+					selector.selectNow();
+				} catch (IOException e) {
+					// deregistered all the same.
+				}
+				selector.selectedKeys().clear();
+				for (OutboundQueue q : done) {
+					q.released();
+				}
+				done.clear();
+			}
+		}
+		close();
+	}
+
+	/**
+	 * Registers the interest the queue has, or cancels its key if it is
+	 * done.
+	 *
+	 * @return false if the queue is done, and is to be released once its
+	 *         key is gone
+	 */
+	private boolean apply(OutboundQueue queue) {
+		SelectionKey key = queue.channel().keyFor(selector);
+		try {
+			if (queue.isDone()) {
+				if (key != null) {
+					key.cancel();
+				}
+				return false;
+			} else if (key == null) {
+				queue.channel().register(selector, queue.wantsWrite() ? SelectionKey.OP_WRITE : 0, queue);
+			} else {
+				key.interestOps(queue.wantsWrite() ? SelectionKey.OP_WRITE : 0);
+			}
+		} catch (ClosedChannelException e) {
+			queue.abort(e);
+			return false;
+		} catch (CancelledKeyException e) {
+			queue.abort(new ClosedChannelException());
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Stops the thread. The queues still sending fail.
+	 */
+	synchronized void stop() {
+		running = false;
+		if (selector != null) {
+			selector.wakeup();
+		}
+	}
+
+	private void close() {
+		List<OutboundQueue> left = new ArrayList<OutboundQueue>();
+		for (SelectionKey key : selector.keys()) {
+			left.add((OutboundQueue) key.attachment());
+		}
+		try {
+			selector.close();
+		} catch (IOException e) {
+			// deregistered all the same.
+		}
+		OutboundQueue queue;
+		while ((queue = changed.poll()) != null) {
+			left.add(queue);
+		}
+		for (OutboundQueue q : left) {
+			q.failed(new IOException("Server stopped"));
+		}
+	}
+}
@@ -0,0 +1,232 @@
+package com.adobe.assignment.http.sse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.adobe.assignment.http.HttpRequest;
+import com.adobe.assignment.http.HttpResponse;
+import com.adobe.assignment.http.server.NamedThreadFactory;
+import com.adobe.assignment.http.server.ServerConfig;
+
+/**
+ * A feed of Server-Sent Events (text/event-stream) with any number of
+ * subscribers.
+ *
+ * A handler subscribes a request by calling subscribe(), which detaches the
+ * response from the connection thread, and returns. Events published from
+ * any thread are encoded once and queued for every subscriber; a small pool
+ * of writer threads, shared by all subscribers of the channel, writes them
+ * out, so a broadcast to thousands of subscribers needs no thread of its
+ * own per subscriber.
+ *
+ * The last published events are kept, so that a client reconnecting with
+ * the Last-Event-ID header receives the events it missed. Idle subscribers
+ * are sent heartbeat comments, and subscribers whose writes stall are
+ * dropped.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class EventChannel {
+
+	public static final String CONTENT_TYPE = "text/event-stream";
+
+	/**
+	 * A comment line, ignored by clients.
+	 */
+	static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.US_ASCII);
+
+	private final ScheduledThreadPoolExecutor writer;
+	private final int maxQueuedBytes;
+	private final int heartbeatInterval;
+	private final int writeTimeout;
+	private final int replaySize;
+
+	private final Set<EventStream> subscribers = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * The last events published, oldest first, and the id of the last one.
+	 * Guarded by this channel, which also keeps publishing and subscribing
+	 * in order, so that a subscriber neither misses nor repeats an event.
+	 */
+	private final ArrayDeque<Event> replay = new ArrayDeque<Event>();
+	private long lastId;
+
+	/**
+	 * An encoded event kept for replay.
+	 */
+	private static final class Event {
+
+		final long id;
+		final byte[] encoded;
+
+		Event(long id, byte[] encoded) {
+			this.id = id;
+			this.encoded = encoded;
+		}
+	}
+
+	/**
+	 * Explicit Value Constructor
+	 *
+	 * @param config		The server configuration (webserver.sse.*)
+	 */
+	public EventChannel(ServerConfig config) {
+		this.maxQueuedBytes = config.getSseMaxQueuedBytes();
+		this.heartbeatInterval = config.getSseHeartbeatInterval();
+		this.writeTimeout = config.getSseWriteTimeout();
+		this.replaySize = config.getSseReplaySize();
+		this.writer = new ScheduledThreadPoolExecutor(config.getSseWriterThreads(),
+				new NamedThreadFactory("sse-writer", true));
+
+		int tick = tick(heartbeatInterval, writeTimeout);
+		if (tick > 0) {
+			writer.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					check();
+				}
+			}, tick, tick, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Half the shorter of the intervals that are enabled, or 0 if neither is.
+	 */
+	private static int tick(int heartbeatInterval, int writeTimeout) {
+		int shortest = Math.min(heartbeatInterval > 0 ? heartbeatInterval : Integer.MAX_VALUE,
+				writeTimeout > 0 ? writeTimeout : Integer.MAX_VALUE);
+		return (shortest == Integer.MAX_VALUE) ? 0 : Math.max(10, shortest / 2);
+	}
+
+	/**
+	 * Answers a request with an event stream subscribed to this channel. The
+	 * response is detached: the handler returns right away, and the stream
+	 * stays open until the client goes away or the stream is closed.
+	 *
+	 * @param request		The request of the subscriber
+	 * @param response		Its response, not yet committed
+	 * @return				The subscriber's stream
+	 * @throws IOException	if the response cannot be detached (e.g. it is an
+	 * 						HTTP/2 stream), or the client went away
+	 */
+	public EventStream subscribe(HttpRequest request, HttpResponse response) throws IOException {
+		response.setStatus(HttpResponse.SC_OK);
+		response.setHeader("Content-Type", CONTENT_TYPE);
+		response.setHeader("Cache-Control", "no-cache");
+		OutputStream out = response.detach();
+
+		EventStream stream = new EventStream(this, request, out, writer, maxQueuedBytes);
+		long resumeAfter = parseLastEventId(request.getHeader("Last-Event-ID"));
+		synchronized (this) {
+			if (resumeAfter > lastId) {
+				// an id given out before the server restarted.
+				resumeAfter = 0;
+			}
+			if (resumeAfter >= 0) {
+				for (Event event : replay) {
+					if (event.id > resumeAfter) {
+						stream.offer(event.encoded);
+					}
+				}
+			}
+			subscribers.add(stream);
+		}
+		return stream;
+	}
+
+	private static long parseLastEventId(String value) {
+		if (value == null) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Sends an event to every subscriber and keeps it for replay.
+	 *
+	 * @param event			The event type, or null for a plain message
+	 * @param data			The data; may span several lines
+	 * @return				The id of the event
+	 */
+	public synchronized long publish(String event, String data) {
+		long id = ++lastId;
+		byte[] encoded = encode(id, event, data);
+		if (replaySize > 0) {
+			if (replay.size() == replaySize) {
+				replay.poll();
+			}
+			replay.add(new Event(id, encoded));
+		}
+		for (EventStream stream : subscribers) {
+			stream.offer(encoded);
+		}
+		return id;
+	}
+
+	/**
+	 * @return The number of open subscriber streams.
+	 */
+	public int getSubscriberCount() {
+		return subscribers.size();
+	}
+
+	/**
+	 * Closes every subscriber stream and stops the writer threads.
+	 */
+	public void close() {
+		for (EventStream stream : subscribers) {
+			stream.close();
+		}
+		writer.shutdown();
+	}
+
+	void remove(EventStream stream) {
+		subscribers.remove(stream);
+	}
+
+	/**
+	 * Sends heartbeats and drops subscribers that stopped reading.
+	 */
+	private void check() {
+		long now = System.currentTimeMillis();
+		for (EventStream stream : subscribers) {
+			if (stream.isStalled(now, writeTimeout)) {
+				stream.abort();
+			} else {
+				stream.heartbeat(now, heartbeatInterval);
+			}
+		}
+	}
+
+	/**
+	 * Encodes an event in the text/event-stream format.
+	 *
+	 * @param id			The id of the event, or 0 for none
+	 */
+	static byte[] encode(long id, String event, String data) {
+		StringBuilder sb = new StringBuilder(data.length() + 32);
+		if (id > 0) {
+			sb.append("id: ").append(id).append('\n');
+		}
+		if (event != null) {
+			if (event.indexOf('\n') >= 0 || event.indexOf('\r') >= 0) {
+				throw new IllegalArgumentException("Event type must be a single line: " + event);
+			}
+			sb.append("event: ").append(event).append('\n');
+		}
+		for (String line : data.split("\r\n|\r|\n", -1)) {
+			sb.append("data: ").append(line).append('\n');
+		}
+		sb.append('\n');
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,278 @@
+package com.adobe.assignment.http.sse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.assignment.http.ByteBufferPool;
+import com.adobe.assignment.http.HttpRequest;
+
+/**
+ * The connection of one subscriber of an EventChannel: a detached
+ * text/event-stream response.
+ *
+ * Events are queued, already encoded, and written by a drain task on the
+ * channel's writer pool, so neither the publisher nor a thread of its own
+ * waits for the client. The queue is bounded: a subscriber that falls too
+ * far behind is dropped, and catches up from the channel's replay buffer
+ * when it reconnects with Last-Event-ID.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public final class EventStream {
+
+	private static final Logger log = LoggerFactory.getLogger(EventStream.class);
+
+	/**
+	 * The most bytes written to the connection at once.
+	 */
+	private static final int WRITE_BUFFER_SIZE = 8192;
+
+	private final EventChannel channel;
+	private final HttpRequest request;
+	private final OutputStream out;
+	private final Executor writer;
+	private final int maxQueuedBytes;
+
+	/**
+	 * The encoded events waiting to be written, and their size. Guarded by
+	 * this stream.
+	 */
+	private final ArrayDeque<byte[]> queue = new ArrayDeque<byte[]>();
+	private int queued;
+
+	/**
+	 * Whether a drain task is scheduled or running, whether the stream is
+	 * closing, and whether its connection has been closed.
+	 */
+	private boolean writing;
+	private volatile boolean closing;
+	private boolean closed;
+
+	/**
+	 * When the last write ended, and when the write in progress began (0 if
+	 * none is).
+	 */
+	private volatile long lastWrite;
+	private volatile long writingSince;
+
+	private final Runnable drainTask = new Runnable() {
+		public void run() {
+			drain();
+		}
+	};
+
+	/**
+	 * Explicit Value Constructor
+	 *
+	 * @param channel			The channel subscribed to
+	 * @param request			The request of the subscriber
+	 * @param out				The stream of the detached response
+	 * @param writer			The pool the events are written on
+	 * @param maxQueuedBytes	The most bytes queued before the subscriber is
+	 * 							dropped
+	 */
+	EventStream(EventChannel channel, HttpRequest request, OutputStream out, Executor writer, int maxQueuedBytes) {
+		this.channel = channel;
+		this.request = request;
+		this.out = out;
+		this.writer = writer;
+		this.maxQueuedBytes = maxQueuedBytes;
+		this.lastWrite = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return The request this stream answers.
+	 */
+	public HttpRequest getRequest() {
+		return request;
+	}
+
+	/**
+	 * @return false once the stream has been closed or dropped.
+	 */
+	public boolean isOpen() {
+		return !closing;
+	}
+
+	/**
+	 * @return The number of bytes queued but not yet written.
+	 */
+	public synchronized int getBufferedAmount() {
+		return queued;
+	}
+
+	/**
+	 * Sends an event to this subscriber only. It has no id and is not kept
+	 * for replay.
+	 *
+	 * @param event			The event type, or null for a plain message
+	 * @param data			The data; may span several lines
+	 * @return				false if the stream is closed, or was dropped because
+	 * 						its queue is full
+	 */
+	public boolean send(String event, String data) {
+		return offer(EventChannel.encode(0, event, data));
+	}
+
+	/**
+	 * Closes this stream once the events queued so far have been written.
+	 */
+	public void close() {
+		synchronized (this) {
+			if (closing) {
+				return;
+			}
+			closing = true;
+			if (writing) {
+				// the drain task closes the connection when it is done.
+				return;
+			}
+		}
+		closeConnection();
+	}
+
+	/**
+	 * Queues an encoded event, dropping the subscriber if its queue is full.
+	 */
+	boolean offer(byte[] event) {
+		synchronized (this) {
+			if (closing) {
+				return false;
+			}
+			if (queued + event.length <= maxQueuedBytes) {
+				queue.add(event);
+				queued += event.length;
+				if (!writing) {
+					writing = true;
+					schedule();
+				}
+				return true;
+			}
+		}
+		log.debug("Dropping slow subscriber of " + request.getRequestURI());
+		abort();
+		return false;
+	}
+
+	/**
+	 * Sends a comment, unless something was written within the interval, so
+	 * that intermediaries do not close the connection as idle and a client
+	 * that went away is noticed.
+	 */
+	void heartbeat(long now, int interval) {
+		if (interval > 0 && now - lastWrite >= interval && getBufferedAmount() == 0) {
+			offer(EventChannel.HEARTBEAT);
+		}
+	}
+
+	/**
+	 * @return true if a write has been blocked for longer than the timeout,
+	 *         i.e. the client stopped reading.
+	 */
+	boolean isStalled(long now, int timeout) {
+		long since = writingSince;
+		return timeout > 0 && since != 0 && now - since > timeout;
+	}
+
+	/**
+	 * Drops this stream at once: what is queued is discarded, and closing the
+	 * connection wakes up a write blocked on it.
+	 */
+	void abort() {
+		synchronized (this) {
+			closing = true;
+			queue.clear();
+			queued = 0;
+		}
+		closeConnection();
+	}
+
+	private void schedule() {
+		try {
+			writer.execute(drainTask);
+		} catch (RejectedExecutionException e) {
+			// the channel has been closed.
+			synchronized (this) {
+				writing = false;
+			}
+			abort();
+		}
+	}
+
+	/**
+	 * Writes the queue to the connection, a buffer at a time, until it is
+	 * empty.
+	 */
+	private void drain() {
+		ByteBuffer buffer = ByteBufferPool.getInstance().acquire(WRITE_BUFFER_SIZE);
+		byte[] buf = buffer.array();
+		try {
+			while (true) {
+				byte[] large = null;
+				int count = 0;
+				synchronized (this) {
+					byte[] next;
+					while ((next = queue.peek()) != null && count + next.length <= buf.length) {
+						queue.poll();
+						System.arraycopy(next, 0, buf, count, next.length);
+						count += next.length;
+					}
+					if (count == 0 && next != null) {
+						large = queue.poll();
+					}
+					if (count == 0 && large == null) {
+						writing = false;
+						if (!closing) {
+							return;
+						}
+						break;
+					}
+					queued -= (large != null) ? large.length : count;
+				}
+				writingSince = System.currentTimeMillis();
+				if (large != null) {
+					out.write(large, 0, large.length);
+				} else {
+					out.write(buf, 0, count);
+				}
+				out.flush();
+				writingSince = 0;
+				lastWrite = System.currentTimeMillis();
+			}
+		} catch (IOException e) {
+			log.debug("Failed to write to event stream: " + e.getMessage());
+			writingSince = 0;
+			synchronized (this) {
+				writing = false;
+			}
+			abort();
+			return;
+		} finally {
+			ByteBufferPool.getInstance().release(buffer);
+		}
+		// closing, and everything queued has been written.
+		closeConnection();
+	}
+
+	private void closeConnection() {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+		}
+		channel.remove(this);
+		try {
+			out.close();
+		} catch (IOException e) {
+			// nothing left to do
+		}
+	}
+}
@@ -0,0 +1,567 @@
+package com.adobe.assignment.http.websocket;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import net.iharder.Base64;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.assignment.http.HttpInputStream;
+import com.adobe.assignment.http.HttpRequest;
+import com.adobe.assignment.http.server.ServerConfig;
+
+/**
+ * A WebSocket connection (RFC 6455), once the opening handshake is done.
+ *
+ * The thread that accepted the connection reads frames and calls the
+ * handler. Messages may be sent from any thread without blocking: their
+ * frames are queued and written out by a task on the worker pool, so that a
+ * thread pushing to many clients is never held up by a slow one. The queue
+ * is bounded: once more than the configured number of bytes is waiting, send
+ * methods return false until the client has caught up (backpressure). Large
+ * messages are sent in fragments, and control frames overtake the fragments
+ * of a message that is still being written. Only the latest pong is kept
+ * (RFC 6455, section 5.5.3), so that a client sending pings without reading
+ * cannot grow the queue either.
+ *
+ * A connection on which nothing arrives for the ping interval is pinged;
+ * if nothing arrives for another interval, it is closed.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class WebSocket {
+
+	private static final Logger log = LoggerFactory.getLogger(WebSocket.class);
+
+	private static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+	public static final int OPCODE_CONTINUATION = 0x0;
+	public static final int OPCODE_TEXT = 0x1;
+	public static final int OPCODE_BINARY = 0x2;
+	public static final int OPCODE_CLOSE = 0x8;
+	public static final int OPCODE_PING = 0x9;
+	public static final int OPCODE_PONG = 0xA;
+
+	public static final int CLOSE_NORMAL = 1000;
+	public static final int CLOSE_GOING_AWAY = 1001;
+	public static final int CLOSE_PROTOCOL_ERROR = 1002;
+	public static final int CLOSE_UNSUPPORTED_DATA = 1003;
+	public static final int CLOSE_NO_STATUS = 1005;
+	public static final int CLOSE_ABNORMAL = 1006;
+	public static final int CLOSE_INVALID_DATA = 1007;
+	public static final int CLOSE_MESSAGE_TOO_BIG = 1009;
+	public static final int CLOSE_INTERNAL_ERROR = 1011;
+
+	/**
+	 * The largest frame sent; longer messages are fragmented.
+	 */
+	private static final int MAX_FRAME_PAYLOAD = 16384;
+
+	/**
+	 * How long a closing connection waits for its queue to be written.
+	 */
+	private static final int LINGER_TIMEOUT = 5000;
+
+	private static final byte[] EMPTY = new byte[0];
+
+	private final Socket socket;
+	private final HttpInputStream in;
+	private final OutputStream out;
+	private final HttpRequest request;
+	private final WebSocketHandler handler;
+	private final Executor writer;
+	private final int maxMessageSize;
+	private final int maxQueuedBytes;
+	private final int pingInterval;
+
+	/**
+	 * The frames waiting to be written and the bytes they hold, guarded by
+	 * this socket.
+	 */
+	private final ArrayDeque<byte[]> control = new ArrayDeque<byte[]>();
+	private final ArrayDeque<byte[]> data = new ArrayDeque<byte[]>();
+	private long queuedBytes;
+	private boolean writing;
+
+	private volatile boolean closeSent, broken;
+	private boolean awaitingPong;
+
+	private final byte[] header = new byte[14];
+
+	/**
+	 * Explicit Value Constructor
+	 *
+	 * @param socket		The TCP socket of the connection
+	 * @param in			The input of the connection, past the handshake
+	 * @param out			The output of the connection
+	 * @param request		The request that opened the connection
+	 * @param handler		The handler of the messages
+	 * @param writer		The pool writing the queued frames
+	 * @param config		The Server's configuration
+	 */
+	public WebSocket(Socket socket, HttpInputStream in, OutputStream out, HttpRequest request,
+			WebSocketHandler handler, Executor writer, ServerConfig config) {
+		this.socket = socket;
+		this.in = in;
+		this.out = out;
+		this.request = request;
+		this.handler = handler;
+		this.writer = writer;
+		this.maxMessageSize = config.getWebSocketMaxMessageSize();
+		this.maxQueuedBytes = config.getWebSocketMaxQueuedBytes();
+		this.pingInterval = config.getWebSocketPingInterval();
+	}
+
+	/**
+	 * Checks whether a request asks to upgrade to WebSocket.
+	 */
+	public static boolean isUpgrade(HttpRequest request) {
+		return "GET".equals(request.getMethod())
+				&& hasToken(request.getHeader("Upgrade"), "websocket")
+				&& hasToken(request.getHeader("Connection"), "Upgrade");
+	}
+
+	/**
+	 * Checks whether an upgrade request carries what the handshake needs.
+	 */
+	public static boolean isValidHandshake(HttpRequest request) {
+		String key = request.getHeader("Sec-WebSocket-Key");
+		return "13".equals(request.getHeader("Sec-WebSocket-Version")) && key != null && key.trim().length() > 0;
+	}
+
+	/**
+	 * Computes the Sec-WebSocket-Accept header of the handshake response.
+	 *
+	 * @param key		The Sec-WebSocket-Key header of the request
+	 */
+	public static String acceptKey(String key) {
+		try {
+			MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+			return Base64.encodeBytes(sha1.digest((key.trim() + GUID).getBytes(StandardCharsets.ISO_8859_1)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is not available", e);
+		}
+	}
+
+	/**
+	 * @return The request that opened this connection.
+	 */
+	public HttpRequest getRequest() {
+		return request;
+	}
+
+	/**
+	 * @return The number of bytes queued but not yet written.
+	 */
+	public synchronized long getBufferedAmount() {
+		return queuedBytes;
+	}
+
+	public boolean isOpen() {
+		return !closeSent && !broken;
+	}
+
+	/**
+	 * Sends a text message.
+	 *
+	 * @return false if the message was not queued, because the queue is full
+	 *         or the connection is closing.
+	 */
+	public boolean sendText(String text) {
+		return send(OPCODE_TEXT, text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Sends a binary message.
+	 *
+	 * @return false if the message was not queued, because the queue is full
+	 *         or the connection is closing.
+	 */
+	public boolean sendBinary(byte[] message) {
+		return send(OPCODE_BINARY, message);
+	}
+
+	/**
+	 * Starts the closing handshake. The connection ends when the client has
+	 * answered, or after the ping interval.
+	 */
+	public void close(int code, String reason) {
+		sendClose(code, reason);
+	}
+
+	private boolean send(int opcode, byte[] message) {
+		synchronized (this) {
+			if (closeSent || broken) {
+				return false;
+			}
+			if (queuedBytes > 0 && queuedBytes + message.length > maxQueuedBytes) {
+				return false;
+			}
+			int off = 0;
+			do {
+				int n = Math.min(message.length - off, MAX_FRAME_PAYLOAD);
+				boolean last = off + n == message.length;
+				byte[] frame = encodeFrame((off == 0) ? opcode : OPCODE_CONTINUATION, last, message, off, n);
+				data.add(frame);
+				queuedBytes += frame.length;
+				off += n;
+			} while (off < message.length);
+		}
+		writeQueued();
+		return true;
+	}
+
+	private void sendControl(int opcode, byte[] payload) {
+		synchronized (this) {
+			if (closeSent || broken) {
+				return;
+			}
+			if (opcode == OPCODE_CLOSE) {
+				closeSent = true;
+			}
+			if (opcode == OPCODE_PONG) {
+				// answers the latest ping only.
+				for (Iterator<byte[]> it = control.iterator(); it.hasNext();) {
+					byte[] frame = it.next();
+					if ((frame[0] & 0x0f) == OPCODE_PONG) {
+						it.remove();
+						queuedBytes -= frame.length;
+					}
+				}
+			}
+			byte[] frame = encodeFrame(opcode, true, payload, 0, payload.length);
+			control.add(frame);
+			queuedBytes += frame.length;
+		}
+		writeQueued();
+	}
+
+	private void sendClose(int code, String reason) {
+		byte[] text = (reason == null) ? EMPTY : reason.getBytes(StandardCharsets.UTF_8);
+		int length = Math.min(text.length, 123);
+		byte[] payload = new byte[2 + length];
+		payload[0] = (byte) (code >>> 8);
+		payload[1] = (byte) code;
+		System.arraycopy(text, 0, payload, 2, length);
+		sendControl(OPCODE_CLOSE, payload);
+	}
+
+	/**
+	 * Starts writing the queued frames, unless that is under way already.
+	 */
+	private void writeQueued() {
+		synchronized (this) {
+			if (writing) {
+				return;
+			}
+			writing = true;
+		}
+		try {
+			writer.execute(drainTask);
+		} catch (RejectedExecutionException e) {
+			// the server is shutting down.
+			drainTask.run();
+		}
+	}
+
+	private final Runnable drainTask = new Runnable() {
+		public void run() {
+			drain();
+		}
+	};
+
+	private void drain() {
+		try {
+			while (true) {
+				byte[] frame;
+				synchronized (this) {
+					frame = control.poll();
+					if (frame == null) {
+						frame = data.poll();
+					}
+					if (frame != null) {
+						queuedBytes -= frame.length;
+					}
+				}
+				if (frame != null) {
+					out.write(frame);
+					continue;
+				}
+				out.flush();
+				synchronized (this) {
+					if (control.isEmpty() && data.isEmpty()) {
+						writing = false;
+						notifyAll();
+						return;
+					}
+				}
+			}
+		} catch (IOException e) {
+			log.debug("Failed to write to WebSocket: " + e.getMessage());
+			synchronized (this) {
+				broken = true;
+				writing = false;
+				control.clear();
+				data.clear();
+				queuedBytes = 0;
+				notifyAll();
+			}
+			// wakes up the reader.
+			try {
+				socket.close();
+			} catch (IOException ignored) {
+				// nothing can be done
+			}
+		}
+	}
+
+	private static byte[] encodeFrame(int opcode, boolean fin, byte[] payload, int off, int len) {
+		int headerLength = (len < 126) ? 2 : (len <= 0xffff) ? 4 : 10;
+		byte[] frame = new byte[headerLength + len];
+		frame[0] = (byte) ((fin ? 0x80 : 0) | opcode);
+		if (len < 126) {
+			frame[1] = (byte) len;
+		} else if (len <= 0xffff) {
+			frame[1] = 126;
+			frame[2] = (byte) (len >>> 8);
+			frame[3] = (byte) len;
+		} else {
+			frame[1] = 127;
+			for (int i = 0; i < 8; i++) {
+				frame[2 + i] = (byte) (((long) len) >>> (56 - 8 * i));
+			}
+		}
+		System.arraycopy(payload, off, frame, headerLength, len);
+		return frame;
+	}
+
+	/**
+	 * Reads frames and passes the messages to the handler until the
+	 * connection ends.
+	 */
+	public void run() {
+		int code = CLOSE_ABNORMAL;
+		String reason = "";
+		try {
+			socket.setSoTimeout(pingInterval);
+			handler.onOpen(this);
+
+			ByteArrayOutputStream message = null;
+			int messageOpcode = 0;
+			while (true) {
+				readFully(header, 0, 2);
+				awaitingPong = false;
+				boolean fin = (header[0] & 0x80) != 0;
+				int opcode = header[0] & 0x0f;
+				boolean masked = (header[1] & 0x80) != 0;
+				long length = header[1] & 0x7f;
+				if ((header[0] & 0x70) != 0 || !masked) {
+					throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Reserved bits set or unmasked frame");
+				}
+				if (length == 126) {
+					readFully(header, 2, 2);
+					length = ((header[2] & 0xff) << 8) | (header[3] & 0xff);
+				} else if (length == 127) {
+					readFully(header, 2, 8);
+					length = 0;
+					for (int i = 0; i < 8; i++) {
+						length = (length << 8) | (header[2 + i] & 0xff);
+					}
+					// the most significant bit must be 0.
+					if (length < 0) {
+						throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Invalid payload length");
+					}
+				}
+				byte[] mask = new byte[4];
+				readFully(mask, 0, 4);
+
+				if (opcode >= OPCODE_CLOSE) {
+					if (!fin || length > 125) {
+						throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Invalid control frame");
+					}
+					byte[] payload = readPayload(length, mask);
+					if (opcode == OPCODE_PING) {
+						sendControl(OPCODE_PONG, payload);
+					} else if (opcode == OPCODE_CLOSE) {
+						code = CLOSE_NO_STATUS;
+						if (payload.length == 1) {
+							throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Invalid close frame");
+						}
+						if (payload.length >= 2) {
+							code = ((payload[0] & 0xff) << 8) | (payload[1] & 0xff);
+							reason = decodeText(payload, 2, payload.length - 2);
+							if (!isValidCloseCode(code)) {
+								throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Invalid close code " + code);
+							}
+						}
+						// answer with the same code, unless we started the handshake.
+						sendClose((code == CLOSE_NO_STATUS) ? CLOSE_NORMAL : code, "");
+						return;
+					} else if (opcode != OPCODE_PONG) {
+						throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Unknown opcode " + opcode);
+					}
+					continue;
+				}
+
+				if (opcode == OPCODE_CONTINUATION) {
+					if (message == null) {
+						throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Unexpected continuation frame");
+					}
+				} else if (opcode == OPCODE_TEXT || opcode == OPCODE_BINARY) {
+					if (message != null) {
+						throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Expected continuation frame");
+					}
+					message = new ByteArrayOutputStream((int) Math.min(length, MAX_FRAME_PAYLOAD));
+					messageOpcode = opcode;
+				} else {
+					throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Unknown opcode " + opcode);
+				}
+				if (length > maxMessageSize - message.size()) {
+					throw new ProtocolException(CLOSE_MESSAGE_TOO_BIG, "Message exceeds " + maxMessageSize + " bytes");
+				}
+				message.write(readPayload(length, mask));
+
+				if (fin) {
+					byte[] b = message.toByteArray();
+					message = null;
+					if (closeSent) {
+						// messages after our close frame are dropped.
+					} else if (messageOpcode == OPCODE_TEXT) {
+						handler.onMessage(this, decodeText(b, 0, b.length));
+					} else {
+						handler.onMessage(this, b);
+					}
+				}
+			}
+		} catch (ProtocolException e) {
+			log.debug("WebSocket protocol error: " + e.getMessage());
+			code = e.code;
+			reason = e.getMessage();
+			sendClose(code, reason);
+		} catch (IOException e) {
+			log.debug("WebSocket connection ended: " + e.getMessage());
+		} catch (RuntimeException e) {
+			log.warn("WebSocket handler failed", e);
+			code = CLOSE_INTERNAL_ERROR;
+			reason = "";
+			sendClose(code, reason);
+		} finally {
+			closeSent = true;
+			linger();
+			handler.onClose(this, code, reason);
+		}
+	}
+
+	/**
+	 * Waits a while for the queued frames, such as the close frame, to be
+	 * written before the connection is closed.
+	 */
+	private synchronized void linger() {
+		long deadline = System.currentTimeMillis() + LINGER_TIMEOUT;
+		try {
+			long wait;
+			while (writing && (wait = deadline - System.currentTimeMillis()) > 0) {
+				wait(wait);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private byte[] readPayload(long length, byte[] mask) throws IOException {
+		if (length < 0 || length > Integer.MAX_VALUE) {
+			throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Invalid payload length " + length);
+		}
+		byte[] payload = new byte[(int) length];
+		readFully(payload, 0, payload.length);
+		for (int i = 0; i < payload.length; i++) {
+			payload[i] ^= mask[i & 3];
+		}
+		return payload;
+	}
+
+	private static String decodeText(byte[] b, int off, int len) throws ProtocolException {
+		try {
+			return StandardCharsets.UTF_8.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPORT)
+					.onUnmappableCharacter(CodingErrorAction.REPORT)
+					.decode(ByteBuffer.wrap(b, off, len)).toString();
+		} catch (CharacterCodingException e) {
+			throw new ProtocolException(CLOSE_INVALID_DATA, "Invalid UTF-8");
+		}
+	}
+
+	private static boolean isValidCloseCode(int code) {
+		return (code >= 1000 && code <= 1003) || (code >= 1007 && code <= 1011) || (code >= 3000 && code <= 4999);
+	}
+
+	/**
+	 * Reads exactly len bytes. Whenever the client stays silent for the ping
+	 * interval it is pinged, and the connection is given up if it stays
+	 * silent for another interval.
+	 */
+	private void readFully(byte[] b, int off, int len) throws IOException {
+		int n = 0;
+		while (n < len) {
+			int r;
+			try {
+				r = in.read(b, off + n, len - n);
+			} catch (SocketTimeoutException e) {
+				if (awaitingPong || closeSent) {
+					throw e;
+				}
+				awaitingPong = true;
+				sendControl(OPCODE_PING, EMPTY);
+				continue;
+			}
+			if (r < 0) {
+				throw new EOFException("Connection closed by the client");
+			}
+			n += r;
+		}
+	}
+
+	private static boolean hasToken(String value, String token) {
+		if (value == null) {
+			return false;
+		}
+		for (String t : value.split(",")) {
+			if (t.trim().equalsIgnoreCase(token)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * A violation of the protocol by the client, closing the connection with
+	 * the given code.
+	 */
+	private static final class ProtocolException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		final int code;
+
+		ProtocolException(int code, String message) {
+			super(message);
+			this.code = code;
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package com.adobe.assignment.http.websocket;
+
+import com.adobe.assignment.http.HttpRequest;
+import com.adobe.assignment.http.server.ServerConfig;
+
+/**
+ * Handles the messages of WebSocket connections (RFC 6455). Handlers are
+ * configured in http_handlers.xml, like HttpMethodHandler(s), and are
+ * consulted in order for every request asking to upgrade to WebSocket.
+ *
+ * All callbacks of one connection are made by the thread reading from it, so
+ * a handler sees the messages of a connection in order, one at a time, and a
+ * slow handler slows down its client only. Messages are delivered whole:
+ * fragmented messages are reassembled, and control frames (ping, pong,
+ * close) are answered by the connection itself.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public interface WebSocketHandler {
+
+	/**
+	 * Initializes this handler.
+	 *
+	 * @param config		The server configuration
+	 */
+	public void init(ServerConfig config);
+
+	/**
+	 * Decides whether this handler takes a connection.
+	 *
+	 * @param request		The request asking to upgrade
+	 * @return				true, if the upgrade should be accepted for this
+	 * 						handler
+	 */
+	public boolean accept(HttpRequest request);
+
+	/**
+	 * The handshake has completed; messages may be sent from now on.
+	 */
+	public void onOpen(WebSocket socket);
+
+	/**
+	 * A text message has arrived.
+	 */
+	public void onMessage(WebSocket socket, String text);
+
+	/**
+	 * A binary message has arrived.
+	 */
+	public void onMessage(WebSocket socket, byte[] data);
+
+	/**
+	 * The connection has ended. Called exactly once for every connection
+	 * that was opened.
+	 *
+	 * @param code			The close code, 1006 if the connection ended
+	 * 						without a closing handshake
+	 * @param reason		The reason given by the side that closed
+	 */
+	public void onClose(WebSocket socket, int code, String reason);
+}
@@ -0,0 +1,125 @@
+package com.adobe.assignment.http.server;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.adobe.assignment.http.HttpRequest;
+import com.adobe.assignment.http.HttpResponse;
+import com.adobe.assignment.http.methods.AsyncHttpMethodHandler;
+
+/**
+ * Tests handlers that answer their requests asynchronously.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class AsyncHandlerTest extends ServerTestCase {
+
+	private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+	/**
+	 * The futures of the requests for /hang, which never complete by
+	 * themselves.
+	 */
+	private static final LinkedBlockingQueue<CompletableFuture<Void>> hanging =
+			new LinkedBlockingQueue<CompletableFuture<Void>>();
+
+	/**
+	 * Answers GET requests from another thread a little later, fails /fail,
+	 * never answers /hang and leaves /sync/ to the next handler.
+	 */
+	public static class DelayingHandler implements AsyncHttpMethodHandler {
+
+		public void init(ServerConfig config) {
+		}
+
+		public CompletionStage<Void> handleAsync(HttpRequest request, final HttpResponse response) {
+			final String uri = request.getRequestURI();
+			if (!request.getMethod().equals("GET") || uri.startsWith("/sync/")) {
+				return null;
+			}
+			final CompletableFuture<Void> done = new CompletableFuture<Void>();
+			if (uri.equals("/hang")) {
+				hanging.add(done);
+				return done;
+			}
+			scheduler.schedule(new Runnable() {
+				public void run() {
+					if (uri.equals("/fail")) {
+						done.completeExceptionally(new IOException("failed"));
+						return;
+					}
+					try {
+						response.setContent(("later " + uri).getBytes("US-ASCII"));
+						response.write();
+						done.complete(null);
+					} catch (IOException e) {
+						done.completeExceptionally(e);
+					}
+				}
+			}, 50, TimeUnit.MILLISECONDS);
+			return done;
+		}
+	}
+
+	private void startServer(String properties) throws Exception {
+		start("webserver.cache.size=0\n" + properties,
+				handlers(DelayingHandler.class.getName(), "com.adobe.assignment.http.methods.GetMethodHandler"));
+	}
+
+	/**
+	 * The response is written when the handler completes it, a failed stage
+	 * is answered with 500, and synchronous handlers are served as before.
+	 */
+	@Test
+	public void testCompletedLater() throws Exception {
+		startServer("");
+		String response = exchange("GET /a HTTP/1.1\r\n\r\n");
+		assertTrue(response, response.startsWith("HTTP/1.1 200"));
+		assertTrue(response, response.endsWith("\r\n\r\nlater /a"));
+		assertTrue(exchange("GET /fail HTTP/1.1\r\n\r\n").startsWith("HTTP/1.1 500"));
+		response = exchange("GET /sync/missing.html HTTP/1.1\r\n\r\n");
+		assertTrue(response, response.startsWith("HTTP/1.1 404"));
+		assertTrue(server.getMetrics().getSuspendedRequests() >= 2);
+	}
+
+	/**
+	 * A persistent connection reads its next request once the asynchronous
+	 * response is complete.
+	 */
+	@Test
+	public void testKeepAlive() throws Exception {
+		startServer("webserver.keepAlive.maxRequests=2\n");
+		String response = exchange("GET /1 HTTP/1.1\r\n\r\nGET /2 HTTP/1.1\r\n\r\n");
+		assertTrue(response, response.contains("later /1HTTP/1.1 200"));
+		assertTrue(response, response.endsWith("later /2"));
+	}
+
+	/**
+	 * The stage of a request whose client went away is cancelled.
+	 */
+	@Test
+	public void testCancelledOnDisconnect() throws Exception {
+		startServer("webserver.async.probeInterval=20\n");
+		hanging.clear();
+		Socket socket = new Socket("localhost", server.getPort());
+		socket.getOutputStream().write("GET /hang HTTP/1.1\r\n\r\n".getBytes("US-ASCII"));
+		CompletableFuture<Void> done = hanging.poll(5, TimeUnit.SECONDS);
+		assertNotNull(done);
+		Thread.sleep(100);
+		assertFalse(done.isDone());
+		socket.close();
+		for (int i = 0; i < 250 && !done.isDone(); i++) {
+			Thread.sleep(20);
+		}
+		assertTrue(done.isCancelled());
+		assertEquals(1, server.getMetrics().getCancelledRequests());
+	}
+}
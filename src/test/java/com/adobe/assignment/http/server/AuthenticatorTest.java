@@ -0,0 +1,89 @@
+package com.adobe.assignment.http.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+import net.iharder.Base64;
+
+import org.junit.Test;
+
+import com.adobe.assignment.http.HttpInputStream;
+import com.adobe.assignment.http.HttpRequest;
+import com.adobe.assignment.http.auth.CredentialStore;
+import com.adobe.assignment.http.auth.StoreAuthenticator;
+
+/**
+ * Tests authenticating requests against a credential store.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class AuthenticatorTest extends TestCase {
+
+	private CredentialStore store;
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		String lines = "# test users\n"
+				+ CredentialStore.passwordLine("alice", "secret".toCharArray(), 1000) + "\n"
+				+ CredentialStore.tokenLine("bob", "t0ken") + "\n";
+		store = CredentialStore.read(new ByteArrayInputStream(lines.getBytes("UTF-8")));
+	}
+
+	/**
+	 * Basic and Bearer credentials are verified against the store.
+	 */
+	@Test
+	public void testVerify() throws Exception {
+		StoreAuthenticator authenticator = new StoreAuthenticator(store, "test", 0, 0);
+		assertEquals("alice", authenticator.authenticate(request(basic("alice:secret"))));
+		assertNull(authenticator.authenticate(request(basic("alice:wrong"))));
+		assertNull(authenticator.authenticate(request(basic("mallory:secret"))));
+		assertEquals("bob", authenticator.authenticate(request("Bearer t0ken")));
+		assertNull(authenticator.authenticate(request("Bearer other")));
+		assertNull(authenticator.authenticate(request("Digest username=\"alice\"")));
+		assertNull(authenticator.authenticate(request(null)));
+		assertEquals("Basic realm=\"test\", charset=\"UTF-8\"", authenticator.getChallenge());
+	}
+
+	/**
+	 * A verified password is not hashed again until its verification
+	 * expires; a wrong one is hashed every time.
+	 */
+	@Test
+	public void testVerificationCache() throws Exception {
+		final AtomicInteger hashed = new AtomicInteger();
+		CredentialStore counting = new CredentialStore() {
+			public boolean verifyPassword(String user, char[] password) {
+				hashed.incrementAndGet();
+				return store.verifyPassword(user, password);
+			}
+		};
+		StoreAuthenticator authenticator = new StoreAuthenticator(counting, "test", 16, 200);
+		for (int i = 0; i < 3; i++) {
+			assertEquals("alice", authenticator.authenticate(request(basic("alice:secret"))));
+			assertNull(authenticator.authenticate(request(basic("alice:wrong"))));
+		}
+		assertEquals(4, hashed.get());
+		Thread.sleep(300);
+		assertEquals("alice", authenticator.authenticate(request(basic("alice:secret"))));
+		assertEquals(5, hashed.get());
+	}
+
+	private static String basic(String userPass) throws IOException {
+		return "Basic " + Base64.encodeBytes(userPass.getBytes("UTF-8"));
+	}
+
+	private static HttpRequest request(String authorization) throws IOException {
+		String head = "DELETE /file HTTP/1.1\r\n"
+				+ ((authorization != null) ? "Authorization: " + authorization + "\r\n" : "") + "\r\n";
+		HttpInputStream in = new HttpInputStream(new ByteArrayInputStream(head.getBytes("US-ASCII")));
+		HttpRequest request = new HttpRequest(in);
+		request.readRequestLine();
+		request.readHeaders();
+		in.release();
+		return request;
+	}
+}
@@ -0,0 +1,117 @@
+package com.adobe.assignment.http.server;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.adobe.assignment.http.ByteBufferPool;
+
+/**
+ * Test class for the ByteBufferPool.
+ * 
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class ByteBufferPoolTest extends TestCase {
+
+	private ByteBufferPool pool;
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		pool = new ByteBufferPool(64 * 1024, true);
+	}
+
+	@Test
+	public void testBuffersAreReused() {
+		ByteBuffer heap = pool.acquire(3000);
+		assertEquals(4096, heap.capacity());
+		assertFalse(heap.isDirect());
+		heap.put((byte) 1);
+		pool.release(heap);
+
+		ByteBuffer again = pool.acquire(4000);
+		assertSame(heap, again);
+		assertEquals(0, again.position());
+		assertEquals(again.capacity(), again.limit());
+
+		// the size of a connection's stream buffers is a class of its own.
+		ByteBuffer stream = pool.acquire(8192);
+		assertEquals(8192, stream.capacity());
+		pool.release(stream);
+
+		ByteBuffer direct = pool.acquireDirect(100);
+		assertTrue(direct.isDirect());
+		assertEquals(1024, direct.capacity());
+
+		pool.release(again);
+		pool.release(direct);
+		assertTrue(pool.getLeaks().isEmpty());
+	}
+
+	@Test
+	public void testSharedFreeListsAreCapped() {
+		// more buffers than the thread cache holds and than the cap allows.
+		ByteBuffer[] buffers = new ByteBuffer[8];
+		for (int i = 0; i < buffers.length; i++) {
+			buffers[i] = pool.acquire(65536);
+		}
+		for (int i = 0; i < buffers.length; i++) {
+			pool.release(buffers[i]);
+		}
+		assertEquals(65536, pool.getPooledBytes());
+	}
+
+	@Test
+	public void testThreadCachesAreCapped() throws Exception {
+		final ByteBufferPool small = new ByteBufferPool(2048, false);
+		ByteBuffer[] buffers = new ByteBuffer[4];
+		for (int i = 0; i < buffers.length; i++) {
+			buffers[i] = small.acquire(1024);
+		}
+		// the thread cache has room for all four, the cap for two.
+		for (int i = 0; i < buffers.length; i++) {
+			small.release(buffers[i]);
+		}
+		assertEquals(2048, small.getPooledBytes());
+		small.acquire(1024);
+		assertEquals(1024, small.getPooledBytes());
+
+		// the cache of a dead thread is given back once it is collected.
+		Thread worker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				small.release(small.acquire(1024));
+			}
+		});
+		worker.start();
+		worker.join();
+		assertEquals(2048, small.getPooledBytes());
+		long deadline = System.currentTimeMillis() + 5000;
+		while (small.getPooledBytes() > 1024 && System.currentTimeMillis() < deadline) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		assertEquals(1024, small.getPooledBytes());
+	}
+
+	@Test
+	public void testLeakDetection() {
+		ByteBuffer leaked = pool.acquire(10);
+		ByteBuffer oversized = pool.acquire(1 << 20);
+		assertEquals(1 << 20, oversized.capacity());
+		assertEquals(2, pool.getLeaks().size());
+
+		pool.release(oversized);
+		assertEquals(1, pool.getLeaks().size());
+
+		pool.release(leaked);
+		try {
+			pool.release(leaked);
+			fail("Must not get here");
+		} catch (IllegalStateException e) {
+			// success
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package com.adobe.assignment.http.server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import org.junit.Test;
+
+/**
+ * Tests the limits per client.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class ClientLimiterTest extends ServerTestCase {
+
+	/**
+	 * A client may send a burst of requests, then one per interval, on any
+	 * of its connections; other clients are not affected.
+	 */
+	@Test
+	public void testRate() throws Exception {
+		ClientLimiter limiter = new ClientLimiter(10, 3, 0, 60000);
+		InetAddress a = address(1), b = address(2);
+		assertTrue(limiter.acquire(a));
+		assertTrue(limiter.acquire(a));
+		for (int i = 0; i < 3; i++) {
+			assertTrue(limiter.acquireRequest(a));
+		}
+		assertFalse(limiter.acquireRequest(a));
+		assertTrue(limiter.acquire(a));
+		assertFalse(limiter.acquireRequest(a));
+		assertTrue(limiter.acquire(b));
+		assertTrue(limiter.acquireRequest(b));
+
+		Thread.sleep(150);
+		assertTrue(limiter.acquireRequest(a));
+		assertFalse(limiter.acquireRequest(a));
+	}
+
+	/**
+	 * A client may hold only so many connections at once.
+	 */
+	@Test
+	public void testConnectionCap() throws Exception {
+		ClientLimiter limiter = new ClientLimiter(0, 1, 2, 60000);
+		InetAddress a = address(1);
+		assertTrue(limiter.acquire(a));
+		assertTrue(limiter.acquire(a));
+		assertFalse(limiter.acquire(a));
+		limiter.release(a);
+		assertTrue(limiter.acquire(a));
+	}
+
+	/**
+	 * Idle clients are forgotten, clients holding a connection are not.
+	 */
+	@Test
+	public void testIdleClientsExpire() throws Exception {
+		ClientLimiter limiter = new ClientLimiter(100, 10, 4, 50);
+		for (int i = 0; i < 50; i++) {
+			assertTrue(limiter.acquire(address(i)));
+			limiter.release(address(i));
+		}
+		InetAddress held = address(1000);
+		assertTrue(limiter.acquire(held));
+		assertEquals(51, limiter.size());
+
+		Thread.sleep(100);
+		// coming by sweeps the stripes.
+		for (int i = 0; i < 200; i++) {
+			assertTrue(limiter.acquire(address(2000 + i)));
+			limiter.release(address(2000 + i));
+		}
+		assertEquals(201, limiter.size());
+	}
+
+	/**
+	 * A client over its request rate is answered with 429, whether its
+	 * requests come on connections of their own or on one kept alive.
+	 */
+	@Test
+	public void testRejectedClientGets429() throws Exception {
+		start("webserver.client.rate=0.01\nwebserver.client.burst=2\n");
+
+		for (int i = 0; i < 2; i++) {
+			assertTrue(request(1).startsWith("HTTP/1.1 501"));
+		}
+		String response = request(1);
+		assertTrue(response, response.startsWith("HTTP/1.1 429 Too Many Requests\r\n"));
+		assertEquals(1, server.getMetrics().getClientRejections());
+	}
+
+	@Test
+	public void testRateIsPerRequest() throws Exception {
+		start("webserver.client.rate=0.01\nwebserver.client.burst=2\nwebserver.keepAlive.maxRequests=10\n");
+
+		String response = request(3);
+		assertEquals(2, response.split("HTTP/1.1 501").length - 1);
+		assertTrue(response, response.endsWith("HTTP/1.1 429 Too Many Requests\r\n"
+				+ "Retry-After: 1\r\nContent-Length: 0\r\nConnection: close\r\n\r\n"));
+		assertEquals(1, server.getMetrics().getClientRejections());
+	}
+
+	/**
+	 * A client holding as many connections as it may is answered with 429 by
+	 * the acceptor.
+	 */
+	@Test
+	public void testConnectionCapGets429() throws Exception {
+		start("webserver.client.maxConnections=1\n");
+
+		Socket held = new Socket("localhost", server.getPort());
+		try {
+			// the first connection is admitted before the second is accepted.
+			held.getOutputStream().write("GET / HTTP/1.1\r\n".getBytes("US-ASCII"));
+			Thread.sleep(200);
+			String response = request(0);
+			assertTrue(response, response.startsWith("HTTP/1.1 429 Too Many Requests\r\n"));
+		} finally {
+			held.close();
+		}
+		assertEquals(1, server.getMetrics().getClientRejections());
+	}
+
+	private void start(String props) throws Exception {
+		start(props, handlers());
+	}
+
+	/**
+	 * Sends some requests on one connection and reads until it is closed.
+	 */
+	private String request(int requests) throws IOException {
+		StringBuilder request = new StringBuilder();
+		for (int i = 0; i < requests; i++) {
+			request.append("GET / HTTP/1.1\r\n\r\n");
+		}
+		return exchange(request.toString());
+	}
+
+	private static InetAddress address(int i) throws IOException {
+		return InetAddress.getByAddress(new byte[] { 10, 0, (byte) (i >> 8), (byte) i });
+	}
+}
@@ -0,0 +1,105 @@
+package com.adobe.assignment.http.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests the adaptive limit of the requests handled at once.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class ConcurrencyLimitTest extends ServerTestCase {
+
+	private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	/**
+	 * The limit grows while it is used and latency stays put, and shrinks
+	 * once latency rises.
+	 */
+	@Test
+	public void testGradient() {
+		ConcurrencyLimit limit = new ConcurrencyLimit(10, 2, 100);
+		for (int i = 0; i < 10; i++) {
+			assertTrue(limit.acquire());
+		}
+		assertFalse(limit.acquire());
+		for (int i = 0; i < 50; i++) {
+			// one out, one in: the limit is in use.
+			limit.release(MS);
+			assertTrue(limit.acquire());
+		}
+		int grown = limit.getLimit();
+		assertTrue("limit " + grown, grown > 10);
+
+		while (limit.acquire()) {
+			// use all of it.
+		}
+		for (int i = 0; i < 50; i++) {
+			limit.release(10 * MS);
+			limit.acquire();
+		}
+		assertTrue("limit " + limit.getLimit(), limit.getLimit() < grown);
+		assertTrue(limit.getLimit() >= 2);
+	}
+
+	/**
+	 * The limit does not grow while less than half of it is used, nor on
+	 * requests that were cancelled.
+	 */
+	@Test
+	public void testIdle() {
+		ConcurrencyLimit limit = new ConcurrencyLimit(10, 2, 100);
+		for (int i = 0; i < 50; i++) {
+			assertTrue(limit.acquire());
+			limit.release(MS);
+		}
+		assertEquals(10, limit.getLimit());
+		assertTrue(limit.acquire());
+		limit.release(-1);
+		assertEquals(0, limit.getInflight());
+	}
+
+	/**
+	 * A request over the limit is answered with 503.
+	 */
+	@Test
+	public void testRejected() throws Exception {
+		start("webserver.jmx.enabled=false\nwebserver.cache.size=0\nwebserver.limit.adaptive=true\n"
+				+ "webserver.limit.initial=1\nwebserver.limit.min=1\nwebserver.limit.max=1\n",
+				handlers(ResponseCacheTest.CountingHandler.class.getName()));
+		// the handler takes 100 ms, during which the second is over the limit.
+		Socket first = send(server.getPort());
+		Thread.sleep(50);
+		Socket second = send(server.getPort());
+		assertTrue(receive(second).startsWith("HTTP/1.1 503"));
+		assertTrue(receive(first).endsWith("\r\n\r\nhello /index.html"));
+		assertEquals(1, server.getMetrics().getLimitRejections());
+	}
+
+	private static Socket send(int port) throws IOException {
+		Socket socket = new Socket("localhost", port);
+		socket.setSoTimeout(5000);
+		socket.getOutputStream().write("GET /index.html HTTP/1.1\r\n\r\n".getBytes("US-ASCII"));
+		return socket;
+	}
+
+	private static String receive(Socket socket) throws IOException {
+		try {
+			ByteArrayOutputStream response = new ByteArrayOutputStream();
+			InputStream in = socket.getInputStream();
+			byte[] b = new byte[1024];
+			int n;
+			while ((n = in.read(b)) >= 0) {
+				response.write(b, 0, n);
+			}
+			return response.toString("US-ASCII");
+		} finally {
+			socket.close();
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package com.adobe.assignment.http.server;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+/**
+ * Tests that slow clients are disconnected by the connection deadlines, and
+ * that request heads over the limits are refused. The server is started
+ * in-process on an ephemeral port.
+ * 
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class ConnectionTimeoutTest extends ServerTestCase {
+
+	private static final String CONFIG =
+			"webserver.timeout.idle=300\n" +
+			"webserver.timeout.header=300\n" +
+			"webserver.timer.tick=10\n" +
+			"webserver.request.maxLineLength=1024\n" +
+			"webserver.request.maxHeaders=10\n";
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		start(CONFIG, handlers());
+	}
+
+	/**
+	 * A client that sends the request line but trickles its headers must get
+	 * a 408 once the header deadline expires.
+	 */
+	@Test
+	public void testSlowHeadersGetRequestTimeout() throws Exception {
+		Socket socket = new Socket("localhost", server.getPort());
+		try {
+			OutputStream out = socket.getOutputStream();
+			out.write("GET /index.html HTTP/1.1\r\nHost: localhost\r\n".getBytes("US-ASCII"));
+			out.flush();
+
+			InputStream in = socket.getInputStream();
+			String response = new String(IOUtils.toByteArray(in), "US-ASCII");
+			assertTrue(response, response.startsWith("HTTP/1.1 408"));
+		} finally {
+			socket.close();
+		}
+		assertEquals(1, server.getMetrics().getHeaderTimeouts());
+	}
+
+	/**
+	 * A client that never sends anything is disconnected silently.
+	 */
+	@Test
+	public void testIdleConnectionIsClosed() throws Exception {
+		Socket socket = new Socket("localhost", server.getPort());
+		try {
+			assertEquals(-1, socket.getInputStream().read());
+		} finally {
+			socket.close();
+		}
+		assertEquals(1, server.getMetrics().getIdleTimeouts());
+	}
+
+	/**
+	 * A request line longer than the longest line is a bad request; a
+	 * header line that long is answered with 431. Nothing is sent past the
+	 * line that is refused, since the server does not read it.
+	 */
+	@Test
+	public void testLongLinesAreRefused() throws Exception {
+		String response = exchange("GET /" + repeat('a', 2000) + " HTTP/1.1\r\n");
+		assertTrue(response, response.startsWith("HTTP/1.1 400"));
+
+		response = exchange("GET /index.html HTTP/1.1\r\nX-Long: " + repeat('a', 2000) + "\r\n");
+		assertTrue(response, response.startsWith("HTTP/1.1 431"));
+
+		// a line that arrives in pieces, each of them under the limit.
+		response = exchangeInPieces("GET /index.html HTTP/1.1\r\nX-Long: " + repeat('a', 600),
+				repeat('a', 600) + "\r\n");
+		assertTrue(response, response.startsWith("HTTP/1.1 431"));
+	}
+
+	/**
+	 * A request with more header fields than allowed is answered with 431.
+	 */
+	@Test
+	public void testTooManyHeadersAreRefused() throws Exception {
+		StringBuilder request = new StringBuilder("GET /index.html HTTP/1.1\r\n");
+		for (int i = 0; i < 10; i++) {
+			request.append("X-Header-").append(i).append(": ").append(i).append("\r\n");
+		}
+		String response = exchange(request + "Connection: close\r\n");
+		assertTrue(response, response.startsWith("HTTP/1.1 431"));
+
+		// as many as allowed are fine.
+		response = exchange(request + "\r\n");
+		assertFalse(response, response.startsWith("HTTP/1.1 431"));
+	}
+
+	/**
+	 * Sends the pieces of a request one after the other, each once the
+	 * server had time to read the one before.
+	 *
+	 * @return Everything the server sends until it closes the connection.
+	 */
+	private String exchangeInPieces(String... pieces) throws Exception {
+		Socket socket = new Socket("localhost", server.getPort());
+		try {
+			socket.setSoTimeout(5000);
+			OutputStream out = socket.getOutputStream();
+			for (int i = 0; i < pieces.length; i++) {
+				if (i > 0) {
+					Thread.sleep(100);
+				}
+				out.write(pieces[i].getBytes("US-ASCII"));
+				out.flush();
+			}
+			return new String(IOUtils.toByteArray(socket.getInputStream()), "US-ASCII");
+		} finally {
+			socket.close();
+		}
+	}
+
+	private static String repeat(char c, int n) {
+		char[] chars = new char[n];
+		Arrays.fill(chars, c);
+		return new String(chars);
+	}
+}
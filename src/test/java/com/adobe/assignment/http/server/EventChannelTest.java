@@ -0,0 +1,159 @@
+package com.adobe.assignment.http.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.adobe.assignment.http.HttpRequest;
+import com.adobe.assignment.http.HttpResponse;
+import com.adobe.assignment.http.methods.HttpMethodHandler;
+import com.adobe.assignment.http.sse.EventChannel;
+
+/**
+ * Tests event streams served from an EventChannel.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class EventChannelTest extends ServerTestCase {
+
+	private static EventChannel channel;
+
+	private final List<Socket> sockets = new ArrayList<Socket>();
+
+	/**
+	 * Subscribes requests for /events to the channel.
+	 */
+	public static class EventsHandler implements HttpMethodHandler {
+
+		public void init(ServerConfig config) {
+			channel = new EventChannel(config);
+		}
+
+		public boolean handle(HttpRequest request, HttpResponse response) {
+			if (!request.getRequestURI().equals("/events")) {
+				return false;
+			}
+			try {
+				channel.subscribe(request, response);
+			} catch (IOException e) {
+				response.sendError(HttpResponse.SC_INTERNAL_ERROR);
+			}
+			return true;
+		}
+	}
+
+	private void startServer(String properties) throws Exception {
+		start("webserver.cache.size=0\n" + properties, handlers(EventsHandler.class.getName()));
+	}
+
+	/**
+	 * An event reaches every subscriber, and a subscriber resuming with
+	 * Last-Event-ID receives the events it missed.
+	 */
+	@Test
+	public void testBroadcastAndResume() throws Exception {
+		startServer("webserver.sse.heartbeatInterval=0\n");
+		InputStream[] subscribers = new InputStream[3];
+		for (int i = 0; i < subscribers.length; i++) {
+			subscribers[i] = subscribe(null);
+		}
+		awaitSubscribers(3);
+
+		channel.publish("tick", "a\nb");
+		for (InputStream in : subscribers) {
+			assertEquals("id: 1\nevent: tick\ndata: a\ndata: b\n", readEvent(in));
+		}
+		channel.publish(null, "two");
+		channel.publish(null, "three");
+
+		InputStream resumed = subscribe("1");
+		assertEquals("id: 2\ndata: two\n", readEvent(resumed));
+		assertEquals("id: 3\ndata: three\n", readEvent(resumed));
+		// the connection threads were not kept.
+		assertEquals(4, server.getMetrics().getDetachedResponses());
+	}
+
+	/**
+	 * An idle subscriber gets heartbeats; one that stops reading is dropped
+	 * instead of buffering without bounds.
+	 */
+	@Test
+	public void testHeartbeatsAndSlowSubscribers() throws Exception {
+		startServer("webserver.sse.heartbeatInterval=100\nwebserver.sse.maxQueuedBytes=65536\n"
+				+ "webserver.sse.writeTimeout=500\n");
+		InputStream idle = subscribe(null);
+		awaitSubscribers(1);
+		assertEquals(":\n", readEvent(idle));
+		// a client that went away is noticed by the heartbeats.
+		sockets.get(0).close();
+		awaitSubscribers(0);
+
+		subscribe(null);
+		awaitSubscribers(1);
+		char[] data = new char[32 * 1024];
+		Arrays.fill(data, 'x');
+		long deadline = System.currentTimeMillis() + 10000;
+		while (channel.getSubscriberCount() > 0 && System.currentTimeMillis() < deadline) {
+			channel.publish(null, new String(data));
+		}
+		assertEquals(0, channel.getSubscriberCount());
+	}
+
+	private InputStream subscribe(String lastEventId) throws IOException {
+		Socket socket = new Socket("localhost", server.getPort());
+		socket.setSoTimeout(5000);
+		sockets.add(socket);
+		socket.getOutputStream().write(("GET /events HTTP/1.1\r\n"
+				+ ((lastEventId != null) ? "Last-Event-ID: " + lastEventId + "\r\n" : "") + "\r\n")
+				.getBytes("US-ASCII"));
+		InputStream in = socket.getInputStream();
+		String head = readUntil(in, "\r\n\r\n");
+		assertTrue(head, head.startsWith("HTTP/1.1 200"));
+		assertTrue(head, head.contains("Content-Type: text/event-stream\r\n"));
+		return in;
+	}
+
+	private void awaitSubscribers(int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (channel.getSubscriberCount() != count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(count, channel.getSubscriberCount());
+	}
+
+	/**
+	 * @return The next event, without the empty line that ends it.
+	 */
+	private static String readEvent(InputStream in) throws IOException {
+		String event = readUntil(in, "\n\n");
+		return event.substring(0, event.length() - 1);
+	}
+
+	private static String readUntil(InputStream in, String end) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		while (sb.length() < end.length() || !sb.substring(sb.length() - end.length()).equals(end)) {
+			int c = in.read();
+			if (c < 0) {
+				throw new IOException("Unexpected end of stream after " + sb);
+			}
+			sb.append((char) c);
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		for (Socket socket : sockets) {
+			socket.close();
+		}
+		if (server != null) {
+			channel.close();
+		}
+		super.tearDown();
+	}
+}
@@ -0,0 +1,90 @@
+package com.adobe.assignment.http.server;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+/**
+ * Tests the JDK Flight Recorder events of the request lifecycle.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class FlightRecorderTest extends ServerTestCase {
+
+	private static final String[] EVENTS = { "ConnectionAccept", "Connection", "RequestParse", "Handler",
+			"FileRead", "ResponseWrite" };
+
+	private Path webroot;
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		webroot = Files.createTempDirectory("jfr");
+		Files.write(webroot.resolve("index.html"), "hello".getBytes("US-ASCII"));
+
+		start("webserver.cache.size=0\nwebserver.jmx.enabled=false\nwebserver.webroot=" + webroot + "\n",
+				handlers("com.adobe.assignment.http.methods.GetMethodHandler"));
+	}
+
+	/**
+	 * A request served while recording leaves one event of each kind, with
+	 * its status and byte counts.
+	 */
+	@Test
+	public void testEvents() throws Exception {
+		Path dump = Files.createTempFile("server", ".jfr");
+		Recording recording = new Recording();
+		try {
+			for (String name : EVENTS) {
+				recording.enable("com.adobe.assignment.http." + name).withoutThreshold();
+			}
+			recording.start();
+			String response = exchange();
+			assertTrue(response, response.endsWith("\r\n\r\nhello"));
+			// the connection is recorded once it is closed.
+			Thread.sleep(200);
+			recording.stop();
+			recording.dump(dump);
+
+			Map<String, RecordedEvent> events = new HashMap<String, RecordedEvent>();
+			List<RecordedEvent> recorded = RecordingFile.readAllEvents(dump);
+			for (RecordedEvent event : recorded) {
+				String name = event.getEventType().getName();
+				events.put(name.substring(name.lastIndexOf('.') + 1), event);
+			}
+			for (String name : EVENTS) {
+				assertTrue(name + " in " + events.keySet(), events.containsKey(name));
+			}
+			assertEquals(0, events.get("ConnectionAccept").getInt("status"));
+			assertEquals(1, events.get("Connection").getInt("requests"));
+			assertEquals(response.length(), events.get("Connection").getLong("bytesWritten"));
+			assertEquals("/index.html", events.get("RequestParse").getString("uri"));
+			assertEquals("GET /index.html HTTP/1.1\r\n\r\n".length(), events.get("RequestParse").getLong("bytes"));
+			assertEquals("com.adobe.assignment.http.methods.GetMethodHandler",
+					events.get("Handler").getString("handler"));
+			assertEquals(200, events.get("Handler").getInt("status"));
+			assertEquals(5, events.get("FileRead").getLong("bytes"));
+			assertEquals(200, events.get("ResponseWrite").getInt("status"));
+			assertEquals(response.length(), events.get("ResponseWrite").getLong("bytes"));
+		} finally {
+			recording.close();
+			Files.deleteIfExists(dump);
+		}
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		super.tearDown();
+		FileUtils.deleteQuietly(new File(webroot.toString()));
+	}
+}
@@ -0,0 +1,76 @@
+package com.adobe.assignment.http.server;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.adobe.assignment.http.server.HashedTimerWheel.Timeout;
+
+/**
+ * Test class for the HashedTimerWheel used to track connection deadlines.
+ * 
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class HashedTimerWheelTest extends TestCase {
+
+	private HashedTimerWheel timer;
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		// a small wheel so that timeouts span more than one round.
+		timer = new HashedTimerWheel("test-timer", 10, TimeUnit.MILLISECONDS, 8);
+	}
+
+	@Test
+	public void testTimeoutExpires() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(3);
+		Runnable task = new Runnable() {
+			public void run() {
+				latch.countDown();
+			}
+		};
+		long start = System.nanoTime();
+		timer.newTimeout(task, 0, TimeUnit.MILLISECONDS);
+		timer.newTimeout(task, 50, TimeUnit.MILLISECONDS);
+		Timeout timeout = timer.newTimeout(task, 200, TimeUnit.MILLISECONDS);
+
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 200);
+		assertTrue(timeout.isExpired());
+		assertFalse(timeout.cancel());
+		assertEquals(0, timer.pendingTimeouts());
+	}
+
+	@Test
+	public void testCancelledTimeoutDoesNotExpire() throws Exception {
+		final AtomicInteger expired = new AtomicInteger();
+		Runnable task = new Runnable() {
+			public void run() {
+				expired.incrementAndGet();
+			}
+		};
+		Timeout timeout = timer.newTimeout(task, 50, TimeUnit.MILLISECONDS);
+		Timeout other = timer.newTimeout(task, 60, TimeUnit.MILLISECONDS);
+		assertEquals(2, timer.pendingTimeouts());
+
+		assertTrue(timeout.cancel());
+		assertFalse(timeout.cancel());
+		assertTrue(timeout.isCancelled());
+		assertEquals(1, timer.pendingTimeouts());
+
+		Thread.sleep(300);
+		assertEquals(1, expired.get());
+		assertTrue(other.isExpired());
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		timer.stop();
+		super.tearDown();
+	}
+}
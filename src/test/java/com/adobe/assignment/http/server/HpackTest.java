@@ -0,0 +1,107 @@
+package com.adobe.assignment.http.server;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.adobe.assignment.http.h2.HpackDecoder;
+import com.adobe.assignment.http.h2.HpackEncoder;
+
+/**
+ * Tests the HPACK header compression of HTTP/2 against the examples of
+ * RFC 7541.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class HpackTest extends TestCase {
+
+	/**
+	 * The requests of RFC 7541, C.4: Huffman coded, sharing a dynamic table.
+	 */
+	@Test
+	public void testDecodeRequestsWithHuffmanCoding() throws Exception {
+		HpackDecoder decoder = new HpackDecoder(4096, 16384);
+
+		assertEquals(Arrays.asList(":method", "GET", ":scheme", "http", ":path", "/",
+				":authority", "www.example.com"),
+				decode(decoder, "828684418cf1e3c2e5f23a6ba0ab90f4ff"));
+		assertEquals(Arrays.asList(":method", "GET", ":scheme", "http", ":path", "/",
+				":authority", "www.example.com", "cache-control", "no-cache"),
+				decode(decoder, "828684be5886a8eb10649cbf"));
+		assertEquals(Arrays.asList(":method", "GET", ":scheme", "https", ":path", "/index.html",
+				":authority", "www.example.com", "custom-key", "custom-value"),
+				decode(decoder, "828785bf408825a849e95ba97d7f8925a849e95bb8e8b4bf"));
+	}
+
+	/**
+	 * Whatever the encoder indexes, a decoder reproduces the fields, and a
+	 * repeated field shrinks to an index.
+	 */
+	@Test
+	public void testRoundTrip() throws Exception {
+		HpackEncoder encoder = new HpackEncoder(4096);
+		HpackDecoder decoder = new HpackDecoder(4096, 16384);
+		List<String> fields = Arrays.asList(":status", "200", "content-type", "text/html",
+				"content-length", "1234", "set-cookie", "id=42", "x-custom", "été");
+
+		byte[] first = encode(encoder, fields);
+		byte[] second = encode(encoder, fields);
+		assertEquals(fields, decode(decoder, first));
+		assertEquals(fields, decode(decoder, second));
+		assertTrue(second.length < first.length);
+	}
+
+	/**
+	 * A header list over the limit is reported, without losing the table.
+	 */
+	@Test
+	public void testHeaderListLimit() throws Exception {
+		HpackEncoder encoder = new HpackEncoder(4096);
+		HpackDecoder decoder = new HpackDecoder(4096, 100);
+		char[] big = new char[200];
+		Arrays.fill(big, 'a');
+
+		byte[] block = encode(encoder, Arrays.asList("x-big", new String(big), "x-small", "b"));
+		assertFalse(decoder.decode(block, 0, block.length, new Collector()));
+		block = encode(encoder, Arrays.asList("x-small", "b"));
+		assertEquals(Arrays.asList("x-small", "b"), decode(decoder, block));
+	}
+
+	private static byte[] encode(HpackEncoder encoder, List<String> fields) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		encoder.startBlock(out);
+		for (int i = 0; i < fields.size(); i += 2) {
+			encoder.encode(fields.get(i), fields.get(i + 1), out);
+		}
+		return out.toByteArray();
+	}
+
+	private static List<String> decode(HpackDecoder decoder, String hex) throws Exception {
+		byte[] block = new byte[hex.length() / 2];
+		for (int i = 0; i < block.length; i++) {
+			block[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+		}
+		return decode(decoder, block);
+	}
+
+	private static List<String> decode(HpackDecoder decoder, byte[] block) throws Exception {
+		Collector collector = new Collector();
+		assertTrue(decoder.decode(block, 0, block.length, collector));
+		return collector.fields;
+	}
+
+	private static final class Collector implements HpackDecoder.HeaderListener {
+
+		final List<String> fields = new ArrayList<String>();
+
+		public void header(String name, String value) {
+			fields.add(name);
+			fields.add(value);
+		}
+	}
+}
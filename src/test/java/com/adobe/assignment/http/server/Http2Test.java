@@ -0,0 +1,174 @@
+package com.adobe.assignment.http.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+import com.adobe.assignment.http.HttpInputStream;
+import com.adobe.assignment.http.HttpRequest;
+import com.adobe.assignment.http.HttpResponse;
+import com.adobe.assignment.http.methods.HttpMethodHandler;
+
+/**
+ * Tests HTTP/2 over cleartext against an in-process server, using the JDK's
+ * HTTP client, which upgrades its first request to h2c and multiplexes the
+ * following requests on the upgraded connection.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class Http2Test extends ServerTestCase {
+
+	private HttpClient client;
+
+	/**
+	 * A handler answering a GET with the request URI, and a POST with its
+	 * body.
+	 */
+	public static class EchoHandler implements HttpMethodHandler {
+
+		public void init(ServerConfig config) {
+		}
+
+		public boolean handle(HttpRequest request, HttpResponse response) {
+			try {
+				byte[] body;
+				if (request.getMethod().equals("POST")) {
+					ByteArrayOutputStream out = new ByteArrayOutputStream();
+					HttpInputStream in = request.getInputStream();
+					byte[] b = new byte[8192];
+					long remaining = request.getContentLength();
+					while (remaining > 0) {
+						int n = in.read(b, 0, (int) Math.min(b.length, remaining));
+						if (n < 0) {
+							break;
+						}
+						out.write(b, 0, n);
+						remaining -= n;
+					}
+					body = out.toByteArray();
+				} else {
+					body = request.getRequestURI().getBytes("US-ASCII");
+				}
+				response.setContentType("application/octet-stream");
+				response.setContentLength(body.length);
+				response.setContent(body);
+				response.write();
+			} catch (Exception e) {
+				response.sendError(HttpResponse.SC_INTERNAL_ERROR);
+			}
+			return true;
+		}
+	}
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		start("webserver.cache.size=0\nwebserver.timeout.idle=1000\n", handlers(EchoHandler.class.getName()));
+		client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+	}
+
+	/**
+	 * Concurrent requests are served as streams of a single connection.
+	 */
+	@Test
+	public void testStreamsAreMultiplexed() throws Exception {
+		java.net.http.HttpResponse<String> first = client.send(request("/upgrade").build(), BodyHandlers.ofString());
+		assertEquals(200, first.statusCode());
+		assertEquals(HttpClient.Version.HTTP_2, first.version());
+		assertEquals("/upgrade", first.body());
+
+		List<CompletableFuture<java.net.http.HttpResponse<String>>> futures =
+				new ArrayList<CompletableFuture<java.net.http.HttpResponse<String>>>();
+		for (int i = 0; i < 20; i++) {
+			futures.add(client.sendAsync(request("/" + i).build(), BodyHandlers.ofString()));
+		}
+		for (int i = 0; i < 20; i++) {
+			java.net.http.HttpResponse<String> response = futures.get(i).get();
+			assertEquals(HttpClient.Version.HTTP_2, response.version());
+			assertEquals("/" + i, response.body());
+		}
+		assertEquals(1, server.getMetrics().getHttp2Connections());
+		assertEquals(21, server.getMetrics().getHttp2Streams());
+	}
+
+	/**
+	 * Bodies larger than the flow control windows are sent in both
+	 * directions.
+	 */
+	@Test
+	public void testLargeBodiesAreFlowControlled() throws Exception {
+		client.send(request("/upgrade").build(), BodyHandlers.discarding());
+
+		byte[] body = new byte[300 * 1024];
+		new Random(31).nextBytes(body);
+		java.net.http.HttpResponse<byte[]> response = client.send(
+				request("/echo").POST(BodyPublishers.ofByteArray(body)).build(), BodyHandlers.ofByteArray());
+		assertEquals(200, response.statusCode());
+		assertEquals(HttpClient.Version.HTTP_2, response.version());
+		assertTrue(Arrays.equals(body, response.body()));
+	}
+
+	/**
+	 * After a GOAWAY from the client, the frames of the streams still open
+	 * are read: a response waiting for a WINDOW_UPDATE is completed, and the
+	 * connection closed afterwards.
+	 */
+	@Test
+	public void testGoAwayLetsOpenStreamsFinish() throws Exception {
+		Socket socket = new Socket("localhost", server.getPort());
+		try {
+			socket.setSoTimeout(5000);
+			ByteArrayOutputStream frames = new ByteArrayOutputStream();
+			frames.write("PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes("US-ASCII"));
+			// SETTINGS_INITIAL_WINDOW_SIZE of 0: no DATA until a WINDOW_UPDATE.
+			writeFrame(frames, 0x4, 0, 0, new byte[] { 0, 4, 0, 0, 0, 0 });
+			// GET / on stream 1: :method GET, :scheme http, :path /.
+			writeFrame(frames, 0x1, 0x5, 1, new byte[] { (byte) 0x82, (byte) 0x86, (byte) 0x84 });
+			writeFrame(frames, 0x7, 0, 0, new byte[8]);
+			writeFrame(frames, 0x8, 0, 1, new byte[] { 0, 0, 0, 100 });
+			socket.getOutputStream().write(frames.toByteArray());
+
+			DataInputStream in = new DataInputStream(socket.getInputStream());
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			boolean ended = false;
+			byte[] header = new byte[9];
+			while (in.read(header, 0, 1) > 0) {
+				in.readFully(header, 1, 8);
+				int length = ((header[0] & 0xff) << 16) | ((header[1] & 0xff) << 8) | (header[2] & 0xff);
+				byte[] payload = new byte[length];
+				in.readFully(payload);
+				if (header[3] == 0x0 && header[8] == 1) {
+					body.write(payload);
+					ended |= (header[4] & 0x1) != 0;
+				}
+			}
+			assertTrue(ended);
+			assertEquals("/", body.toString("US-ASCII"));
+		} finally {
+			socket.close();
+		}
+	}
+
+	private static void writeFrame(ByteArrayOutputStream out, int type, int flags, int streamId, byte[] payload)
+			throws IOException {
+		out.write(new byte[] { 0, (byte) (payload.length >>> 8), (byte) payload.length, (byte) type, (byte) flags,
+				0, 0, 0, (byte) streamId });
+		out.write(payload);
+	}
+
+	private java.net.http.HttpRequest.Builder request(String path) {
+		return java.net.http.HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + path));
+	}
+}
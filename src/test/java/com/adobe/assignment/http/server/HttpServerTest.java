@@ -1,5 +1,7 @@
 package com.adobe.assignment.http.server;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -75,28 +77,63 @@ public class HttpServerTest extends TestCase {
 	}
 
 	/**
-	 * Note that the HTTP DELETE implementation does not
-	 * not remove the resource from the server.
+	 * A DELETE request needs valid credentials, and removes the resource.
+	 * The resource is created in the server's web-root for the test. The
+	 * shipped configuration has no credential store, so the test runs its
+	 * own server, which checks the sample store among the test resources.
 	 * 
 	 * @throws Exception
 	 */
 	@Test
 	public void testGetWithAuthentication() throws Exception {
-		String uri = "/index.html";
+		ServerConfig config = new ServerConfig();
+		config.load(getClass().getClassLoader().getResourceAsStream("webserver.properties"));
+		config.load(new ByteArrayInputStream("webserver.port=0\nwebserver.jmx.enabled=false\n".getBytes("UTF-8")));
+		config.parse(new ByteArrayInputStream(("<config><supportedmethods><supportedmethod>"
+				+ "<class name=\"com.adobe.assignment.http.methods.DeleteMethod\" />"
+				+ "<param name=\"credentials\" value=\"credentials.txt\" />"
+				+ "</supportedmethod></supportedmethods></config>").getBytes("UTF-8")));
+		final HttpServer server = new HttpServer(config);
+		Thread serverThread = new Thread(new Runnable() {
+			public void run() {
+				server.start();
+			}
+		});
+		serverThread.start();
+		hostConfig.setHost(DEFAULT_HOST, server.getPort());
+		client.getHttpConnectionManager().getParams().setMaxConnectionsPerHost(hostConfig, MAX_CONN_PER_HOST);
+
+		File file = File.createTempFile("delete", ".html", new File(config.getWebRoot()));
+		file.deleteOnExit();
+		String uri = "/" + file.getName();
 		DeleteMethod method = new DeleteMethod(uri);
 		try {
 			// Execute a DELETE request without the Authorization header set.
 			int status = client.executeMethod(method);
 			assertEquals(HttpResponse.SC_UNAUTHORIZED, status);
-			
-			String encoding = Base64.encodeBytes("username:password".getBytes());
+
+			// Execute a DELETE request with a wrong password.
+			String encoding = Base64.encodeBytes("username:wrong".getBytes());
+			method.setRequestHeader(new Header("Authorization", "Basic "+encoding));
+			status = client.executeMethod(method);
+			assertEquals(HttpResponse.SC_UNAUTHORIZED, status);
+			assertTrue(file.exists());
+
+			encoding = Base64.encodeBytes("username:password".getBytes());
 			method.setRequestHeader(new Header("Authorization", "Basic "+encoding));
 
 			// Execute a DELETE request with the Authorization header set.
 			status = client.executeMethod(method);
 			assertEquals(HttpResponse.SC_OK, status);
+			assertFalse(file.exists());
+
+			// The resource is gone.
+			status = client.executeMethod(method);
+			assertEquals(HttpResponse.SC_NOT_FOUND, status);
 		} finally {
 			method.releaseConnection();
+			server.stop();
+			serverThread.join(15000);
 		}
 	}
 	
@@ -0,0 +1,138 @@
+package com.adobe.assignment.http.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.adobe.assignment.http.HttpRequest;
+import com.adobe.assignment.http.HttpResponse;
+import com.adobe.assignment.http.methods.HttpMethodHandler;
+
+/**
+ * Tests persistent connections and the reuse of the objects serving them.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class KeepAliveTest extends ServerTestCase {
+
+	private static final List<HttpRequest> requests = Collections.synchronizedList(new ArrayList<HttpRequest>());
+
+	/**
+	 * Answers with the value of the X-Seen header the request had, and
+	 * streams /stream without a length.
+	 */
+	public static class RecordingHandler implements HttpMethodHandler {
+
+		public void init(ServerConfig config) {
+		}
+
+		public boolean handle(HttpRequest request, HttpResponse response) {
+			requests.add(request);
+			try {
+				if (request.getRequestURI().equals("/stream")) {
+					response.write(new ByteArrayInputStream("streamed".getBytes("US-ASCII")));
+				} else {
+					response.setContent(("seen=" + request.getHeader("X-Seen")).getBytes("US-ASCII"));
+					response.write();
+				}
+			} catch (IOException e) {
+				// the client went away.
+			}
+			return true;
+		}
+	}
+
+	private void startServer(String properties) throws Exception {
+		start("webserver.cache.size=0\n" + properties, handlers(RecordingHandler.class.getName()));
+	}
+
+	/**
+	 * Requests on one connection are served one after the other by the same
+	 * request object, which keeps nothing of the previous request, until the
+	 * connection has served as many as it may.
+	 */
+	@Test
+	public void testPersistentConnection() throws Exception {
+		startServer("webserver.keepAlive.maxRequests=3\n");
+		requests.clear();
+		Socket socket = new Socket("localhost", server.getPort());
+		try {
+			socket.setSoTimeout(5000);
+			InputStream in = socket.getInputStream();
+			socket.getOutputStream().write("GET /1 HTTP/1.1\r\nX-Seen: one\r\n\r\n".getBytes("US-ASCII"));
+			String response = readResponse(in);
+			assertTrue(response, response.contains("Connection: keep-alive\r\n"));
+			assertTrue(response, response.endsWith("seen=one"));
+
+			// pipelined.
+			socket.getOutputStream().write("GET /2 HTTP/1.1\r\n\r\nGET /3 HTTP/1.1\r\nX-Seen: three\r\n\r\n"
+					.getBytes("US-ASCII"));
+			assertTrue(readResponse(in).endsWith("seen=null"));
+			response = readResponse(in);
+			assertTrue(response, response.contains("Connection: close\r\n"));
+			assertTrue(response, response.endsWith("seen=three"));
+		} finally {
+			socket.close();
+		}
+		assertEquals(3, requests.size());
+		assertSame(requests.get(0), requests.get(1));
+		assertSame(requests.get(1), requests.get(2));
+	}
+
+	/**
+	 * The connection is closed when the client asks for it, speaks HTTP/1.0
+	 * without asking to keep it, or the response has no length.
+	 */
+	@Test
+	public void testConnectionClosed() throws Exception {
+		startServer("webserver.keepAlive.maxRequests=100\n");
+		assertTrue(exchange("GET / HTTP/1.1\r\nConnection: close\r\n\r\n").contains("Connection: close\r\n"));
+		assertTrue(exchange("GET / HTTP/1.0\r\n\r\n").contains("Connection: close\r\n"));
+		String response = exchange("GET /stream HTTP/1.1\r\n\r\n");
+		assertTrue(response, response.contains("Connection: close\r\n"));
+		assertTrue(response, response.endsWith("\r\n\r\nstreamed"));
+	}
+
+	/**
+	 * Persistent connections are off by default.
+	 */
+	@Test
+	public void testOffByDefault() throws Exception {
+		startServer("");
+		assertTrue(exchange("GET / HTTP/1.1\r\n\r\n").contains("Connection: close\r\n"));
+	}
+
+	/**
+	 * @return The next response, read by its Content-Length if it has one.
+	 */
+	private static String readResponse(InputStream in) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		while (sb.length() < 4 || !sb.substring(sb.length() - 4).equals("\r\n\r\n")) {
+			int c = in.read();
+			if (c < 0) {
+				throw new IOException("Unexpected end of stream after " + sb);
+			}
+			sb.append((char) c);
+		}
+		int start = sb.indexOf("Content-Length: ");
+		if (start < 0) {
+			// the last response, ended by closing the connection.
+			for (int c; (c = in.read()) >= 0;) {
+				sb.append((char) c);
+			}
+			return sb.toString();
+		}
+		start += "Content-Length: ".length();
+		int length = Integer.parseInt(sb.substring(start, sb.indexOf("\r\n", start)));
+		for (int i = 0; i < length; i++) {
+			sb.append((char) in.read());
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,87 @@
+package com.adobe.assignment.http.server;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+/**
+ * Tests the MBeans of a running server.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class ManagementTest extends ServerTestCase {
+
+	private final MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+
+	private int port;
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		start("", handlers(ResponseCacheTest.CountingHandler.class.getName()));
+		port = server.getPort();
+		for (int i = 0; i < 250 && !mbeans.isRegistered(name("Server")); i++) {
+			Thread.sleep(20);
+		}
+	}
+
+	/**
+	 * The server, its pool, handlers and cache are registered, and count
+	 * what the server does.
+	 */
+	@Test
+	public void testAttributes() throws Exception {
+		ObjectName cache = name("ResponseCache");
+		assertTrue(exchange().endsWith("\r\n\r\nhello /index.html"));
+		// the response is stored once it has been sent.
+		for (int i = 0; i < 250 && !Integer.valueOf(1).equals(mbeans.getAttribute(cache, "EntryCount")); i++) {
+			Thread.sleep(20);
+		}
+		assertTrue(exchange().endsWith("\r\n\r\nhello /index.html"));
+
+		ObjectName handler = new ObjectName(ServerManagement.DOMAIN + ":type=Handler,port=" + port
+				+ ",name=0-ResponseCacheTest$CountingHandler");
+		assertEquals(1L, mbeans.getAttribute(handler, "Invocations"));
+		assertEquals(0L, mbeans.getAttribute(handler, "Failures"));
+		assertTrue((Double) mbeans.getAttribute(handler, "MaxLatency") >= 100);
+
+		assertEquals(0.5, (Double) mbeans.getAttribute(cache, "HitRatio"), 0.001);
+		assertEquals(1, mbeans.getAttribute(cache, "EntryCount"));
+		mbeans.invoke(cache, "flush", null, null);
+		assertEquals(0, mbeans.getAttribute(cache, "EntryCount"));
+
+		ObjectName pool = new ObjectName(ServerManagement.DOMAIN + ":type=WorkerPool,port=" + port + ",acceptor=0");
+		assertEquals(0, mbeans.getAttribute(pool, "MaximumPoolSize"));
+		assertTrue((Long) mbeans.getAttribute(pool, "CompletedTasks") >= 1);
+		mbeans.setAttribute(pool, new Attribute("MaximumPoolSize", 4));
+		assertEquals(4, mbeans.getAttribute(pool, "MaximumPoolSize"));
+		assertTrue(exchange().endsWith("\r\n\r\nhello /index.html"));
+	}
+
+	/**
+	 * A draining server refuses new connections with 503.
+	 */
+	@Test
+	public void testDrain() throws Exception {
+		ObjectName name = name("Server");
+		mbeans.setAttribute(name, new Attribute("Draining", true));
+		assertTrue(exchange().startsWith("HTTP/1.1 503"));
+		assertEquals(1L, mbeans.getAttribute(name, "DrainRejections"));
+		mbeans.setAttribute(name, new Attribute("Draining", false));
+		assertTrue(exchange().endsWith("\r\n\r\nhello /index.html"));
+	}
+
+	private ObjectName name(String type) throws Exception {
+		return new ObjectName(ServerManagement.DOMAIN + ":type=" + type + ",port=" + port);
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		super.tearDown();
+		assertFalse(mbeans.isRegistered(name("Server")));
+	}
+}
@@ -0,0 +1,218 @@
+package com.adobe.assignment.http.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.adobe.assignment.http.HttpException;
+import com.adobe.assignment.http.HttpInputStream;
+import com.adobe.assignment.http.HttpRequest;
+import com.adobe.assignment.http.HttpResponse;
+import com.adobe.assignment.http.multipart.MultipartException;
+import com.adobe.assignment.http.multipart.MultipartParser;
+import com.adobe.assignment.http.multipart.Part;
+
+/**
+ * Tests the streaming parser of multipart/form-data bodies.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class MultipartParserTest extends TestCase {
+
+	private static final String BOUNDARY = "----formdata7MA4YWxk";
+
+	private static String body(String file) {
+		return "preamble\r\n"
+				+ "--" + BOUNDARY + "\r\n"
+				+ "Content-Disposition: form-data; name=\"title\"\r\n"
+				+ "\r\n"
+				+ "hello\r\n"
+				+ "--" + BOUNDARY + "\r\n"
+				+ "Content-Disposition: form-data; name=\"upload\"; filename=\"a \\\"b\\\".txt\"\r\n"
+				+ "Content-Type: application/octet-stream\r\n"
+				+ "\r\n"
+				+ file + "\r\n"
+				+ "--" + BOUNDARY + "--\r\n"
+				+ "epilogue";
+	}
+
+	/**
+	 * The parts are streamed with their headers, the preamble and the
+	 * epilogue are skipped, and a delimiter is found even if it arrives a
+	 * byte at a time.
+	 */
+	@Test
+	public void testStream() throws Exception {
+		StringBuilder file = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			// bytes that almost make a delimiter.
+			file.append("\r\n--").append(BOUNDARY.substring(0, i % BOUNDARY.length())).append(i);
+		}
+		for (boolean trickle : new boolean[] { false, true }) {
+			InputStream in = new ByteArrayInputStream(body(file.toString()).getBytes("ISO-8859-1"));
+			MultipartParser parser = new MultipartParser(trickle ? new TrickleInputStream(in) : in, BOUNDARY, 10,
+					0, 1024, null);
+			try {
+				Part title = parser.next();
+				assertEquals("title", title.getName());
+				assertFalse(title.isFile());
+				assertEquals("text/plain", title.getContentType());
+				assertEquals("hello", read(title.getInputStream()));
+
+				Part upload = parser.next();
+				assertEquals("upload", upload.getName());
+				assertEquals("a \"b\".txt", upload.getFileName());
+				assertEquals("application/octet-stream", upload.getContentType());
+				assertEquals(file.toString(), read(upload.getInputStream()));
+
+				assertNull(parser.next());
+				assertNull(parser.next());
+			} finally {
+				parser.close();
+			}
+		}
+	}
+
+	/**
+	 * readAll() keeps small parts in memory and spills larger ones to files.
+	 */
+	@Test
+	public void testReadAll() throws Exception {
+		StringBuilder file = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			file.append("line ").append(i).append('\n');
+		}
+		Path dir = Files.createTempDirectory("multipart");
+		MultipartParser parser = new MultipartParser(new ByteArrayInputStream(body(file.toString())
+				.getBytes("ISO-8859-1")), BOUNDARY, 10, 0, 1024, dir);
+		try {
+			List<Part> parts = parser.readAll();
+			assertEquals(2, parts.size());
+			assertFalse(parts.get(0).isSpilled());
+			assertEquals(5, parts.get(0).getSize());
+			assertEquals("hello", read(parts.get(0).getInputStream()));
+
+			Part upload = parts.get(1);
+			assertTrue(upload.isSpilled());
+			assertEquals(file.length(), upload.getSize());
+			assertEquals(file.toString(), read(upload.getInputStream()));
+			Path target = dir.resolve("upload.txt");
+			upload.moveTo(target);
+			assertEquals(file.length(), Files.size(target));
+			Files.delete(target);
+			for (Part part : parts) {
+				part.delete();
+			}
+			assertEquals(0, dir.toFile().list().length);
+		} finally {
+			parser.close();
+			Files.deleteIfExists(dir);
+		}
+	}
+
+	/**
+	 * Bodies over the limits fail with 413, malformed ones with 400.
+	 */
+	@Test
+	public void testLimits() throws Exception {
+		String body = body("0123456789");
+		assertStatus(HttpResponse.SC_PAYLOAD_TOO_LARGE, body, 1, 0);
+		assertStatus(HttpResponse.SC_PAYLOAD_TOO_LARGE, body, 10, 8);
+		assertStatus(HttpResponse.SC_BAD_REQUEST, body.substring(0, body.length() - 30), 10, 0);
+		assertStatus(HttpResponse.SC_BAD_REQUEST, body.replace("--\r\nepilogue", "xx"), 10, 0);
+		try {
+			new MultipartParser(new ByteArrayInputStream(new byte[0]), "", 10, 0, 0, null);
+			fail("empty boundary");
+		} catch (MultipartException e) {
+			assertEquals(HttpResponse.SC_BAD_REQUEST, e.getStatus());
+		}
+	}
+
+	/**
+	 * A body over 2GB reaches the parser with its length, and is held to the
+	 * configured limit; a Content-Length that is not a length fails with 400.
+	 */
+	@Test
+	public void testLengthOver2GB() throws Exception {
+		HttpInputStream in = new HttpInputStream(new ByteArrayInputStream(("POST /upload HTTP/1.1\r\n"
+				+ "Content-Type: multipart/form-data; boundary=" + BOUNDARY + "\r\n"
+				+ "Content-Length: 3000000000\r\n\r\n").getBytes("US-ASCII")));
+		try {
+			HttpRequest request = new HttpRequest(in);
+			request.read();
+			assertEquals(3000000000L, request.getContentLength());
+
+			ServerConfig config = new ServerConfig();
+			config.load(new ByteArrayInputStream("webserver.multipart.maxSize=2500000000\n".getBytes("UTF-8")));
+			try {
+				MultipartParser.create(request, config).close();
+				fail("over the limit");
+			} catch (MultipartException e) {
+				assertEquals(HttpResponse.SC_PAYLOAD_TOO_LARGE, e.getStatus());
+			}
+			MultipartParser.create(request, new ServerConfig()).close();
+
+			in.reset(new ByteArrayInputStream("POST / HTTP/1.1\r\nContent-Length: 12x\r\n\r\n".getBytes("US-ASCII")));
+			request.recycle();
+			try {
+				request.read();
+				fail("malformed Content-Length");
+			} catch (HttpException e) {
+				assertEquals(HttpResponse.SC_BAD_REQUEST, e.getStatus());
+			}
+		} finally {
+			in.release();
+		}
+	}
+
+	private static void assertStatus(int status, String body, int maxParts, long maxPartSize) throws IOException {
+		MultipartParser parser = new MultipartParser(new ByteArrayInputStream(body.getBytes("ISO-8859-1")), BOUNDARY,
+				maxParts, maxPartSize, 1024, null);
+		try {
+			parser.readAll();
+			fail("parsed " + body);
+		} catch (MultipartException e) {
+			assertEquals(e.getMessage(), status, e.getStatus());
+		} finally {
+			parser.close();
+		}
+	}
+
+	private static String read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] b = new byte[777];
+		int n;
+		while ((n = in.read(b)) >= 0) {
+			out.write(b, 0, n);
+		}
+		return out.toString("ISO-8859-1");
+	}
+
+	/**
+	 * Hands out one byte per read.
+	 */
+	private static final class TrickleInputStream extends InputStream {
+
+		private final InputStream in;
+
+		TrickleInputStream(InputStream in) {
+			this.in = in;
+		}
+
+		public int read() throws IOException {
+			return in.read();
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			return (len == 0) ? 0 : in.read(b, off, 1);
+		}
+	}
+}
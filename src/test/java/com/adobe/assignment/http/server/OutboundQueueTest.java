@@ -0,0 +1,154 @@
+package com.adobe.assignment.http.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+/**
+ * Tests sending large bodies to slow clients at their pace.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class OutboundQueueTest extends ServerTestCase {
+
+	private Path webroot;
+	private byte[] big;
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		webroot = Files.createTempDirectory("outbound");
+		big = new byte[4 * 1024 * 1024];
+		new Random(42).nextBytes(big);
+		Files.write(webroot.resolve("big.bin"), big);
+		Files.write(webroot.resolve("small.txt"), "small".getBytes("US-ASCII"));
+
+		start("webserver.cache.size=0\nwebserver.keepAlive.maxRequests=2\nwebserver.write.highWatermark=32768\n"
+				+ "webserver.write.lowWatermark=8192\nwebserver.webroot=" + webroot + "\n",
+				handlers("com.adobe.assignment.http.methods.GetMethodHandler"));
+	}
+
+	/**
+	 * A client that stops reading gets the body intact once it reads on, and
+	 * its persistent connection serves the next request; other clients are
+	 * served meanwhile.
+	 */
+	@Test
+	public void testSlowClient() throws Exception {
+		Socket slow = connectSlowly();
+		try {
+			slow.setSoTimeout(10000);
+			slow.getOutputStream().write(("GET /big.bin HTTP/1.1\r\nConnection: keep-alive\r\n\r\n"
+					+ "GET /small.txt HTTP/1.1\r\n\r\n").getBytes("US-ASCII"));
+			InputStream in = slow.getInputStream();
+			awaitParked();
+			String other = exchange("GET /small.txt HTTP/1.1\r\nConnection: close\r\n\r\n");
+			assertTrue(other, other.endsWith("\r\n\r\nsmall"));
+
+			String head = readHead(in);
+			assertTrue(head, head.startsWith("HTTP/1.1 200"));
+			assertTrue(head, head.contains("Content-Length: " + big.length));
+			byte[] body = new byte[big.length];
+			int off = 0;
+			while (off < body.length) {
+				int n = in.read(body, off, Math.min(65536, body.length - off));
+				assertTrue(n > 0);
+				off += n;
+			}
+			assertTrue(Arrays.equals(big, body));
+
+			head = readHead(in);
+			assertTrue(head, head.startsWith("HTTP/1.1 200"));
+			byte[] small = new byte[5];
+			for (int i = 0; i < small.length; i++) {
+				small[i] = (byte) in.read();
+			}
+			assertEquals("small", new String(small, "US-ASCII"));
+		} finally {
+			slow.close();
+		}
+	}
+
+	/**
+	 * A client that goes away while it lags behind fails the transfer, and
+	 * the queued chunks are given back.
+	 */
+	@Test
+	public void testClientGoesAway() throws Exception {
+		Socket slow = connectSlowly();
+		slow.getOutputStream().write("GET /big.bin HTTP/1.1\r\n\r\n".getBytes("US-ASCII"));
+		awaitParked();
+		slow.close();
+		// the server is still serving.
+		String other = exchange("GET /small.txt HTTP/1.1\r\nConnection: close\r\n\r\n");
+		assertTrue(other, other.endsWith("\r\n\r\nsmall"));
+	}
+
+	/**
+	 * A file over 2GB is announced with its length.
+	 */
+	@Test
+	public void testFileOver2GB() throws Exception {
+		long length = 3L * 1024 * 1024 * 1024;
+		try (RandomAccessFile sparse = new RandomAccessFile(webroot.resolve("huge.bin").toFile(), "rw")) {
+			sparse.setLength(length);
+		}
+		Socket slow = connectSlowly();
+		try {
+			slow.setSoTimeout(10000);
+			slow.getOutputStream().write("GET /huge.bin HTTP/1.1\r\n\r\n".getBytes("US-ASCII"));
+			String head = readHead(slow.getInputStream());
+			assertTrue(head, head.startsWith("HTTP/1.1 200"));
+			assertTrue(head, head.contains("Content-Length: " + length + "\r\n"));
+		} finally {
+			slow.close();
+		}
+	}
+
+	/**
+	 * @return A connection with a small receive buffer, for the server to
+	 *         see a client lagging behind soon.
+	 */
+	private Socket connectSlowly() throws IOException {
+		Socket socket = new Socket();
+		socket.setReceiveBufferSize(16384);
+		socket.connect(new InetSocketAddress("localhost", server.getPort()));
+		return socket;
+	}
+
+	/**
+	 * Waits for the server to see a client lagging behind.
+	 */
+	private void awaitParked() throws InterruptedException {
+		for (int i = 0; i < 100 && server.getMetrics().getParkedWrites() == 0; i++) {
+			Thread.sleep(50);
+		}
+		assertTrue(server.getMetrics().getParkedWrites() > 0);
+	}
+
+	private static String readHead(InputStream in) throws IOException {
+		StringBuilder head = new StringBuilder();
+		while (!head.toString().endsWith("\r\n\r\n")) {
+			int c = in.read();
+			assertTrue(c >= 0);
+			head.append((char) c);
+		}
+		return head.toString();
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		super.tearDown();
+		FileUtils.deleteQuietly(new File(webroot.toString()));
+	}
+}
@@ -0,0 +1,180 @@
+package com.adobe.assignment.http.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import com.adobe.assignment.http.pack.PackFile;
+import com.adobe.assignment.http.pack.PackHandler;
+import com.adobe.assignment.http.pack.PackWriter;
+
+/**
+ * Tests packing a web root and serving it from the pack.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class PackFileTest extends ServerTestCase {
+
+	private Path dir;
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		dir = Files.createTempDirectory("pack");
+	}
+
+	private Path webroot(String name, String index) throws IOException {
+		Path webroot = dir.resolve(name);
+		Files.createDirectories(webroot.resolve("css"));
+		Files.createDirectories(webroot.resolve("my docs"));
+		Files.write(webroot.resolve("index.html"), index.getBytes(StandardCharsets.UTF_8));
+		StringBuilder css = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			css.append(".c").append(i).append(" { margin: 0; padding: 0; }\n");
+		}
+		Files.write(webroot.resolve("css/site.css"), css.toString().getBytes(StandardCharsets.UTF_8));
+		byte[] random = new byte[4096];
+		new Random(1).nextBytes(random);
+		Files.write(webroot.resolve("my docs/data.text"), random);
+		return webroot;
+	}
+
+	/**
+	 * Every file can be found by its path, with its content and, where it
+	 * pays off, a gzip variant.
+	 */
+	@Test
+	public void testPackAndFind() throws Exception {
+		Path webroot = webroot("site", "<h1>Hello</h1>");
+		Path packFile = dir.resolve("site.pack");
+		assertEquals(3, new PackWriter(true).write(webroot, packFile));
+
+		PackFile pack = PackFile.open(packFile);
+		assertEquals(3, pack.size());
+		PackFile.Entry index = pack.find("/index.html");
+		assertEquals("<h1>Hello</h1>", string(index.getContent()));
+		assertEquals("text/html", index.getContentType());
+		assertTrue(index.getETag().matches("\"[0-9a-f]{16}\""));
+
+		PackFile.Entry css = pack.find("/css/site.css");
+		byte[] expected = Files.readAllBytes(webroot.resolve("css/site.css"));
+		assertEquals(new String(expected, StandardCharsets.UTF_8), string(css.getContent()));
+		assertTrue(css.getGzipContent().remaining() < expected.length / 2);
+		assertEquals(new String(expected, StandardCharsets.UTF_8), gunzip(bytes(css.getGzipContent())));
+
+		// random bytes do not compress.
+		PackFile.Entry data = pack.find("/my docs/data.text");
+		assertEquals(4096, data.getContent().remaining());
+		assertNull(data.getGzipContent());
+
+		assertNull(pack.find("/missing.html"));
+		assertNull(pack.find("/css"));
+	}
+
+	/**
+	 * The server answers from the pack, honours entity tags and gzip, and
+	 * switches to a new pack renamed over the old one.
+	 */
+	@Test
+	public void testServeAndSwap() throws Exception {
+		Path packFile = dir.resolve("site.pack");
+		new PackWriter(true).write(webroot("v1", "version 1"), packFile);
+		startServer(packFile);
+
+		String response = request("GET / HTTP/1.1\r\n\r\n");
+		assertTrue(response, response.startsWith("HTTP/1.1 200"));
+		assertTrue(response, response.endsWith("\r\n\r\nversion 1"));
+		String etag = header(response, "ETag");
+
+		response = request("GET /index.html?x=1 HTTP/1.1\r\nIf-None-Match: W/\"x\", " + etag + "\r\n\r\n");
+		assertTrue(response, response.startsWith("HTTP/1.1 304"));
+		assertTrue(response, response.endsWith("\r\n\r\n"));
+
+		response = request("GET /css/site.css HTTP/1.1\r\nAccept-Encoding: deflate, gzip\r\n\r\n");
+		assertEquals("gzip", header(response, "Content-Encoding"));
+		assertEquals("Accept-Encoding", header(response, "Vary"));
+		byte[] raw = response.getBytes(StandardCharsets.ISO_8859_1);
+		byte[] body = new byte[Integer.parseInt(header(response, "Content-Length"))];
+		System.arraycopy(raw, raw.length - body.length, body, 0, body.length);
+		assertTrue(gunzip(body).startsWith(".c0 { margin: 0; padding: 0; }\n"));
+		response = request("GET /css/site.css HTTP/1.1\r\nAccept-Encoding: gzip;q=0\r\n\r\n");
+		assertNull(header(response, "Content-Encoding"));
+
+		assertTrue(request("GET /my%20docs/data.text HTTP/1.1\r\n\r\n").startsWith("HTTP/1.1 200"));
+		assertTrue(request("GET /nothing.html HTTP/1.1\r\n\r\n").startsWith("HTTP/1.1 404"));
+
+		new PackWriter(true).write(webroot("v2", "version 2"), packFile);
+		response = request("GET / HTTP/1.1\r\nIf-None-Match: " + etag + "\r\n\r\n");
+		assertTrue(response, response.startsWith("HTTP/1.1 200"));
+		assertTrue(response, response.endsWith("\r\n\r\nversion 2"));
+	}
+
+	private void startServer(Path packFile) throws Exception {
+		String handlers = "<config><supportedmethods><supportedmethod>"
+				+ "<class name=\"" + PackHandler.class.getName() + "\" />"
+				+ "<param name=\"pack\" value=\"" + packFile + "\" />"
+				+ "<param name=\"checkInterval\" value=\"0\" />"
+				+ "</supportedmethod></supportedmethods></config>";
+		start("webserver.cache.size=0\n", handlers);
+	}
+
+	private String request(String request) throws IOException {
+		Socket socket = new Socket("localhost", server.getPort());
+		try {
+			socket.setSoTimeout(5000);
+			socket.getOutputStream().write(request.getBytes("US-ASCII"));
+			ByteArrayOutputStream response = new ByteArrayOutputStream();
+			IOUtils.copy(socket.getInputStream(), response);
+			return response.toString("ISO-8859-1");
+		} finally {
+			socket.close();
+		}
+	}
+
+	private static String header(String response, String name) {
+		for (String line : response.substring(0, response.indexOf("\r\n\r\n")).split("\r\n")) {
+			if (line.regionMatches(true, 0, name + ":", 0, name.length() + 1)) {
+				return line.substring(name.length() + 1).trim();
+			}
+		}
+		return null;
+	}
+
+	private static byte[] bytes(ByteBuffer buffer) {
+		byte[] b = new byte[buffer.remaining()];
+		buffer.get(b);
+		return b;
+	}
+
+	private static String string(ByteBuffer buffer) {
+		return new String(bytes(buffer), StandardCharsets.UTF_8);
+	}
+
+	private static String gunzip(byte[] compressed) throws IOException {
+		InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed));
+		try {
+			return IOUtils.toString(in, "UTF-8");
+		} finally {
+			in.close();
+		}
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		super.tearDown();
+		FileUtils.deleteQuietly(new File(dir.toString()));
+	}
+}
@@ -0,0 +1,93 @@
+package com.adobe.assignment.http.server;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.adobe.assignment.http.HttpInputStream;
+import com.adobe.assignment.http.HttpRequest;
+import com.adobe.assignment.http.NameValueMapper;
+import com.adobe.assignment.http.Parameters;
+
+/**
+ * Tests the decoding of query strings and form parameters.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class ParametersTest extends TestCase {
+
+	@Test
+	public void testDecode() throws Exception {
+		Parameters parameters = new Parameters();
+		String query = "a=1&b=x+y&a=%32&&c&d=&%C3%A9t%C3%A9=caf%c3%a9&e=100%&f=%zz";
+		parameters.decode(query, 0, query.length());
+		assertEquals(8, parameters.size());
+		assertEquals("1", parameters.getValue("a"));
+		assertEquals(Arrays.asList("1", "2"), parameters.getValues("a"));
+		assertEquals("x y", parameters.getValue("b"));
+		assertEquals("", parameters.getValue("c"));
+		assertEquals("", parameters.getValue("d"));
+		assertEquals("caf\u00e9", parameters.getValue("\u00e9t\u00e9"));
+		assertEquals("100%", parameters.getValue("e"));
+		assertEquals("%zz", parameters.getValue("f"));
+		assertNull(parameters.getValue("g"));
+		assertEquals(Collections.emptyList(), parameters.getValues("g"));
+
+		parameters.clear();
+		byte[] body = "name=J%C3%BCrgen&lang=de".getBytes("US-ASCII");
+		parameters.decode(body, 0, body.length);
+		assertEquals("J\u00fcrgen", parameters.getValue("name"));
+		assertEquals("de", parameters.getValue("lang"));
+		assertEquals(2, parameters.size());
+
+		// a slice of the body.
+		parameters.clear();
+		body = "xx&q=a%26b+c&yy".getBytes("US-ASCII");
+		parameters.decode(body, 3, 10);
+		assertEquals(1, parameters.size());
+		assertEquals("a&b c", parameters.getValue("q"));
+
+		// raw UTF-8 decodes the same whether or not its pair holds an escape.
+		parameters.clear();
+		body = "q=caf\u00e9&r=caf\u00e9+x&s=caf\u00e9%21".getBytes("UTF-8");
+		parameters.decode(body, 0, body.length);
+		assertEquals("caf\u00e9", parameters.getValue("q"));
+		assertEquals("caf\u00e9 x", parameters.getValue("r"));
+		assertEquals("caf\u00e9!", parameters.getValue("s"));
+		parameters.clear();
+		query = new String("q=caf\u00e9&r=caf\u00e9+x".getBytes("UTF-8"), "ISO-8859-1");
+		parameters.decode(query, 0, query.length());
+		assertEquals("caf\u00e9", parameters.getValue("q"));
+		assertEquals("caf\u00e9 x", parameters.getValue("r"));
+	}
+
+	/**
+	 * The query string is split off the request URI, and its parameters are
+	 * decoded once asked for.
+	 */
+	@Test
+	public void testRequest() throws Exception {
+		HttpInputStream in = new HttpInputStream(new ByteArrayInputStream(new byte[0]));
+		try {
+			HttpRequest request = new HttpRequest(in, "GET /search/index.html?q=a+b&page=2 HTTP/1.1",
+					NameValueMapper.createCaseInsensitiveNameValueMap());
+			assertEquals("/search/index.html?q=a+b&page=2", request.getRequestURI());
+			assertEquals("/search/index.html", request.getPath());
+			assertEquals("q=a+b&page=2", request.getQueryString());
+			assertEquals("a b", request.getParameter("q"));
+			assertEquals(Arrays.asList("2"), request.getParameterValues("page"));
+
+			request = new HttpRequest(in, "GET /index.html HTTP/1.1", NameValueMapper.createCaseInsensitiveNameValueMap());
+			assertEquals("/index.html", request.getPath());
+			assertNull(request.getQueryString());
+			assertNull(request.getParameter("q"));
+			assertEquals(0, request.getParameters().size());
+		} finally {
+			in.release();
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package com.adobe.assignment.http.server;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.adobe.assignment.http.methods.PathResolver;
+
+/**
+ * Tests the decoding and normalization of request paths.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class PathResolverTest extends TestCase {
+
+	@Test
+	public void testNormalize() {
+		assertEquals("/", PathResolver.normalize("/"));
+		assertEquals("/index.html", PathResolver.normalize("/index.html"));
+		assertEquals("/index.html", PathResolver.normalize("index.html"));
+		assertEquals("/index.html", PathResolver.normalize("/index.html?q=/../x"));
+		assertEquals("/a b/c.html", PathResolver.normalize("/a%20b/c.html"));
+		assertEquals("/docs/", PathResolver.normalize("/docs/"));
+		assertEquals("/a/c", PathResolver.normalize("//a/./b/../c"));
+		assertEquals("/a/", PathResolver.normalize("/a/b/.."));
+		assertEquals("/a/b/", PathResolver.normalize("/a/b/."));
+		assertEquals("/", PathResolver.normalize("/a/.."));
+		assertEquals("/a..b/...", PathResolver.normalize("/a..b/..."));
+		assertEquals("/caf\u00e9", PathResolver.normalize("/caf%C3%A9"));
+		// raw UTF-8, as the request line is read.
+		assertEquals("/caf\u00e9", PathResolver.normalize("/caf\u00c3\u00a9"));
+	}
+
+	/**
+	 * Paths that go above the root, or whose escapes would change their
+	 * structure, are rejected.
+	 */
+	@Test
+	public void testRejected() {
+		assertNull(PathResolver.normalize("/.."));
+		assertNull(PathResolver.normalize("/a/../../etc/passwd"));
+		assertNull(PathResolver.normalize("/%2e%2e/etc/passwd"));
+		assertNull(PathResolver.normalize("/a/%2E%2e/%2e%2E/x"));
+		assertNull(PathResolver.normalize("/..%2fetc"));
+		assertNull(PathResolver.normalize("/..\\etc"));
+		assertNull(PathResolver.normalize("/a%00.html"));
+		assertNull(PathResolver.normalize("/a%zz"));
+		assertNull(PathResolver.normalize("/a%2"));
+		assertNull(PathResolver.normalize("/%C3"));
+		assertNull(PathResolver.normalize(""));
+	}
+
+	/**
+	 * Resolved paths are remembered up to the capacity, rejected ones not.
+	 */
+	@Test
+	public void testCache() {
+		PathResolver resolver = new PathResolver(2);
+		String path = resolver.resolve("/a/./b");
+		assertEquals("/a/b", path);
+		assertSame(path, resolver.resolve("/a/./b"));
+		assertNull(resolver.resolve("/../b"));
+		assertEquals(1, resolver.size());
+		resolver.resolve("/c");
+		resolver.resolve("/d");
+		assertTrue(resolver.size() <= 2);
+		assertEquals(0, new PathResolver(0).size());
+	}
+}
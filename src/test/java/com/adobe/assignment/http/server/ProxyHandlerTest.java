@@ -0,0 +1,253 @@
+package com.adobe.assignment.http.server;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import com.adobe.assignment.http.proxy.ProxyHandler;
+
+/**
+ * Tests the reverse proxy against stand-in upstream servers.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class ProxyHandlerTest extends ServerTestCase {
+
+	private StandInUpstream first, second;
+
+	/**
+	 * A minimal persistent HTTP/1.1 server, answering GET with its name and
+	 * the request URI, and POST with the request body, in chunks.
+	 */
+	static class StandInUpstream implements Runnable {
+
+		final String name;
+		final ServerSocket listener;
+		final AtomicInteger connections = new AtomicInteger();
+		final AtomicInteger requests = new AtomicInteger();
+
+		StandInUpstream(String name) throws IOException {
+			this.name = name;
+			this.listener = new ServerSocket(0);
+			Thread thread = new Thread(this, name);
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		int getPort() {
+			return listener.getLocalPort();
+		}
+
+		public void run() {
+			while (!listener.isClosed()) {
+				try {
+					final Socket socket = listener.accept();
+					connections.incrementAndGet();
+					Thread thread = new Thread(new Runnable() {
+						public void run() {
+							serve(socket);
+						}
+					});
+					thread.setDaemon(true);
+					thread.start();
+				} catch (IOException e) {
+					return;
+				}
+			}
+		}
+
+		private void serve(Socket socket) {
+			try {
+				InputStream in = new BufferedInputStream(socket.getInputStream());
+				OutputStream out = socket.getOutputStream();
+				String requestLine;
+				while ((requestLine = readLine(in)) != null) {
+					requests.incrementAndGet();
+					int length = 0;
+					String line;
+					while ((line = readLine(in)).length() > 0) {
+						if (line.toLowerCase().startsWith("content-length:")) {
+							length = Integer.parseInt(line.substring(15).trim());
+						}
+					}
+					byte[] body = new byte[length];
+					IOUtils.readFully(in, body);
+
+					if (requestLine.startsWith("POST")) {
+						out.write("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n".getBytes("US-ASCII"));
+						int third = length / 3;
+						writeChunk(out, body, 0, third);
+						writeChunk(out, body, third, length - third);
+						out.write("0\r\n\r\n".getBytes("US-ASCII"));
+					} else {
+						byte[] content = (name + " " + requestLine.split(" ")[1]).getBytes("US-ASCII");
+						out.write(("HTTP/1.1 200 OK\r\nContent-Length: " + content.length
+								+ "\r\nKeep-Alive: timeout=5\r\n\r\n").getBytes("US-ASCII"));
+						out.write(content);
+					}
+					out.flush();
+				}
+			} catch (IOException e) {
+				// the proxy closed the connection
+			} finally {
+				IOUtils.closeQuietly(socket);
+			}
+		}
+
+		private static void writeChunk(OutputStream out, byte[] b, int off, int len) throws IOException {
+			out.write((Integer.toHexString(len) + "\r\n").getBytes("US-ASCII"));
+			out.write(b, off, len);
+			out.write("\r\n".getBytes("US-ASCII"));
+		}
+
+		private static String readLine(InputStream in) throws IOException {
+			StringBuilder sb = new StringBuilder();
+			int c;
+			while ((c = in.read()) != '\n') {
+				if (c < 0) {
+					return null;
+				}
+				if (c != '\r') {
+					sb.append((char) c);
+				}
+			}
+			return sb.toString();
+		}
+
+		void close() throws IOException {
+			listener.close();
+		}
+	}
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		first = new StandInUpstream("first");
+		second = new StandInUpstream("second");
+	}
+
+	private void startServer(String upstreams) throws Exception {
+		String handlers =
+				"<config>\n" +
+				"    <supportedmethods>\n" +
+				"        <supportedmethod>\n" +
+				"            <class name=\"" + ProxyHandler.class.getName() + "\" />\n" +
+				"            <param name=\"prefix\" value=\"/api\" />\n" +
+				"            <param name=\"upstreams\" value=\"" + upstreams + "\" />\n" +
+				"            <param name=\"maxConnections\" value=\"4\" />\n" +
+				"            <param name=\"maxFails\" value=\"1\" />\n" +
+				"        </supportedmethod>\n" +
+				"    </supportedmethods>" +
+				"</config>";
+		start("webserver.cache.size=0\n", handlers);
+	}
+
+	/**
+	 * Sequential requests share one pooled upstream connection; requests
+	 * outside the prefix are not forwarded.
+	 */
+	@Test
+	public void testConnectionsArePooled() throws Exception {
+		startServer("localhost:" + first.getPort());
+		for (int i = 0; i < 5; i++) {
+			String response = new String(request("GET /api/" + i + " HTTP/1.1\r\n\r\n", null), "US-ASCII");
+			assertTrue(response, response.startsWith("HTTP/1.1 200"));
+			assertTrue(response, response.endsWith("\r\n\r\nfirst /api/" + i));
+			// hop-by-hop headers of the upstream are not passed on.
+			assertFalse(response, response.contains("Keep-Alive"));
+		}
+		assertEquals(5, first.requests.get());
+		assertEquals(1, first.connections.get());
+
+		String response = new String(request("GET /apix HTTP/1.1\r\n\r\n", null), "US-ASCII");
+		assertTrue(response, response.startsWith("HTTP/1.1 501"));
+		assertEquals(5, first.requests.get());
+	}
+
+	/**
+	 * The path is normalized before it is matched against the prefix and
+	 * sent upstream; one that resolves outside the prefix is rejected, not
+	 * left to the upstream to resolve.
+	 */
+	@Test
+	public void testPathIsNormalized() throws Exception {
+		startServer("localhost:" + first.getPort());
+		String response = new String(request("GET /api/./x/../a%20b/%7e?q=%2e%2e HTTP/1.1\r\n\r\n", null), "US-ASCII");
+		assertTrue(response, response.endsWith("\r\n\r\nfirst /api/a%20b/~?q=%2e%2e"));
+
+		for (String uri : new String[] { "/api/../admin", "/api/%2e%2e/admin", "/api/x/%2E%2e/../admin", "/api/..%2fadmin" }) {
+			response = new String(request("GET " + uri + " HTTP/1.1\r\n\r\n", null), "US-ASCII");
+			assertTrue(uri + ": " + response, response.startsWith("HTTP/1.1 400"));
+		}
+		assertEquals(1, first.requests.get());
+	}
+
+	/**
+	 * A request body is streamed to the upstream, and a chunked response
+	 * back to the client.
+	 */
+	@Test
+	public void testBodiesAreStreamed() throws Exception {
+		startServer("localhost:" + first.getPort());
+		byte[] body = new byte[1024 * 1024];
+		new Random(7).nextBytes(body);
+		byte[] response = request("POST /api/echo HTTP/1.1\r\nContent-Length: " + body.length + "\r\n\r\n", body);
+
+		int headEnd = new String(response, "ISO-8859-1").indexOf("\r\n\r\n") + 4;
+		assertTrue(new String(response, 0, headEnd, "ISO-8859-1").startsWith("HTTP/1.1 200"));
+		assertTrue(Arrays.equals(body, Arrays.copyOfRange(response, headEnd, response.length)));
+	}
+
+	/**
+	 * Requests go to the upstream with the fewest outstanding requests; a
+	 * dead upstream is taken out of rotation and its requests are sent to
+	 * the live one.
+	 */
+	@Test
+	public void testDeadUpstreamIsSkipped() throws Exception {
+		second.close();
+		startServer("localhost:" + first.getPort() + ", localhost:" + second.getPort());
+		for (int i = 0; i < 4; i++) {
+			String response = new String(request("GET /api/" + i + " HTTP/1.1\r\n\r\n", null), "US-ASCII");
+			assertTrue(response, response.endsWith("first /api/" + i));
+		}
+		assertEquals(4, first.requests.get());
+	}
+
+	private byte[] request(String head, byte[] body) throws IOException {
+		Socket socket = new Socket("localhost", server.getPort());
+		try {
+			OutputStream out = socket.getOutputStream();
+			out.write(head.getBytes("US-ASCII"));
+			if (body != null) {
+				out.write(body);
+			}
+			out.flush();
+			ByteArrayOutputStream response = new ByteArrayOutputStream();
+			IOUtils.copy(socket.getInputStream(), response);
+			return response.toByteArray();
+		} finally {
+			socket.close();
+		}
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		try {
+			super.tearDown();
+		} finally {
+			first.close();
+			second.close();
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package com.adobe.assignment.http.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.adobe.assignment.http.HttpRequest;
+import com.adobe.assignment.http.HttpResponse;
+import com.adobe.assignment.http.methods.CacheableHandler;
+
+/**
+ * Tests the response cache in front of the handler chain, using a handler
+ * that counts how often it is invoked.
+ * 
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class ResponseCacheTest extends ServerTestCase {
+
+	private static final AtomicInteger invocations = new AtomicInteger();
+
+	/**
+	 * A handler producing a cacheable response, slowly.
+	 */
+	public static class CountingHandler implements CacheableHandler {
+
+		public void init(ServerConfig config) {
+		}
+
+		public boolean handle(HttpRequest request, HttpResponse response) {
+			invocations.incrementAndGet();
+			try {
+				Thread.sleep(100);
+				response.setContentType("text/plain");
+				byte[] body = ("hello " + request.getRequestURI()).getBytes("US-ASCII");
+				response.setContentLength(body.length);
+				response.setContent(body);
+				response.write();
+			} catch (Exception e) {
+				response.sendError(HttpResponse.SC_INTERNAL_ERROR);
+			}
+			return true;
+		}
+
+		public long getCacheTtl(HttpRequest request, HttpResponse response) {
+			return 60000;
+		}
+	}
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		invocations.set(0);
+		start("", handlers(CountingHandler.class.getName()));
+	}
+
+	@Test
+	public void testRepeatedRequestIsServedFromCache() throws Exception {
+		String first = get("/a", "gzip");
+		String second = get("/a", "gzip");
+
+		assertTrue(first, first.endsWith("\r\n\r\nhello /a"));
+		assertTrue(second, second.startsWith("HTTP/1.1 200 OK\r\n"));
+		assertTrue(second, second.contains("\r\nContent-Length: 8\r\n"));
+		// the hop-by-hop header is the one of the current connection.
+		assertTrue(second, second.contains("\r\nConnection: close\r\n"));
+		assertTrue(second, second.endsWith("\r\n\r\nhello /a"));
+		assertEquals(1, invocations.get());
+		assertEquals(1, server.getResponseCache().getHits());
+
+		// a different Vary header value is a different response.
+		get("/a", "identity");
+		assertEquals(2, invocations.get());
+	}
+
+	@Test
+	public void testConcurrentMissesAreCollapsed() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> futures = new ArrayList<Future<String>>();
+			for (int i = 0; i < 8; i++) {
+				futures.add(executor.submit(new Callable<String>() {
+					public String call() throws Exception {
+						return get("/b", null);
+					}
+				}));
+			}
+			for (Future<String> future : futures) {
+				assertTrue(future.get().endsWith("hello /b"));
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(1, invocations.get());
+	}
+
+	/**
+	 * A successful DELETE drops the cached responses of the resource and of
+	 * those below it, and no others.
+	 */
+	@Test
+	public void testUnsafeRequestInvalidates() throws Exception {
+		get("/c/x?q=1", null);
+		get("/cx", null);
+		get("/cx", null);
+		assertEquals(2, invocations.get());
+
+		assertTrue(exchange("DELETE /c HTTP/1.1\r\n\r\n").startsWith("HTTP/1.1 200"));
+		get("/cx", null);
+		assertEquals(3, invocations.get());
+		get("/c/x?q=1", null);
+		assertEquals(4, invocations.get());
+	}
+
+	/**
+	 * Every spelling of a path shares one entry, and a DELETE through any of
+	 * them drops it.
+	 */
+	@Test
+	public void testPathsAreNormalized() throws Exception {
+		get("/d/x", null);
+		get("/d/./x", null);
+		get("/%64/x", null);
+		assertEquals(1, invocations.get());
+		assertEquals(1, server.getResponseCache().getEntryCount());
+
+		for (String uri : new String[] { "/d/./y/../x", "/%64/x", "//d/x/" }) {
+			assertTrue(exchange("DELETE " + uri + " HTTP/1.1\r\n\r\n").startsWith("HTTP/1.1 200"));
+			int invoked = invocations.get();
+			get("/d/x", null);
+			assertEquals(uri, invoked + 1, invocations.get());
+		}
+
+		// the query is part of the key as it was sent.
+		get("/d/x?q=%41", null);
+		get("/d/x?q=A", null);
+		assertEquals(9, invocations.get());
+	}
+
+	private String get(String uri, String acceptEncoding) throws IOException {
+		String request = "GET " + uri + " HTTP/1.1\r\nHost: localhost\r\n";
+		if (acceptEncoding != null) {
+			request += "Accept-Encoding: " + acceptEncoding + "\r\n";
+		}
+		return exchange(request + "\r\n");
+	}
+}
@@ -50,6 +50,27 @@ public class ServerConfigTest extends TestCase {
     	assertEquals("com.adobe.assignment.http.methods.GetMethodHandler", handlers.get(0).getClass().getName());      	    	
     }
     
+    @Test
+    public void testAcceptorConfig() throws Exception {
+    	assertEquals(1, config.getAcceptorCount());
+    	assertEquals(128, config.getBacklog());
+
+    	String props = "webserver.acceptors=4\nwebserver.backlog=bogus\n";
+    	config.load(new ByteArrayInputStream(props.getBytes("UTF-8")));
+    	assertEquals(4, config.getAcceptorCount());
+    	assertEquals(128, config.getBacklog());
+    }
+    
+    @Test
+    public void testDiscoveredHandlers() throws Exception {
+    	config.discoverHandlers();
+    	List<HttpMethodHandler> handlers = config.getHandlers();
+
+    	assertEquals(2, handlers.size());
+    	assertEquals("com.adobe.assignment.http.methods.GetMethodHandler", handlers.get(0).getClass().getName());
+    	assertEquals("com.adobe.assignment.http.methods.DeleteMethod", handlers.get(1).getClass().getName());
+    }
+    
     @Test
     public void testMalformXmlConfiguration() throws Exception {
     	try {
@@ -57,7 +78,8 @@ public class ServerConfigTest extends TestCase {
         	config.parse(is);
         	fail("Must not get here");
     	} catch (SAXException e) {
-    		// success
+    		// success, and nothing was configured.
+    		assertEquals(0, config.getHandlers().size());
     	}
     }   
  }
@@ -0,0 +1,102 @@
+package com.adobe.assignment.http.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.IOUtils;
+
+import com.adobe.assignment.http.ByteBufferPool;
+
+/**
+ * The fixture of the tests run against an in-process server: a server on a
+ * free port, configured with some properties and handlers, that requests are
+ * sent to over plain sockets. The server is stopped after each test, and
+ * the pooled buffers checked for leaks.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public abstract class ServerTestCase extends TestCase {
+
+	protected HttpServer server;
+	private Thread serverThread;
+
+	/**
+	 * @param classes		The names of the handler classes, in order
+	 * @return				The handler configuration listing them
+	 */
+	protected static String handlers(String... classes) {
+		StringBuilder xml = new StringBuilder("<config>\n    <supportedmethods>\n");
+		for (String name : classes) {
+			xml.append("        <supportedmethod>\n")
+					.append("            <class name=\"").append(name).append("\" />\n")
+					.append("        </supportedmethod>\n");
+		}
+		return xml.append("    </supportedmethods></config>").toString();
+	}
+
+	/**
+	 * Starts a server on a free port.
+	 *
+	 * @param properties	The properties of the server, one per line
+	 * @param handlers		The handler configuration
+	 */
+	protected void start(String properties, String handlers) throws Exception {
+		ServerConfig config = new ServerConfig();
+		config.load(new ByteArrayInputStream(("webserver.port=0\n" + properties).getBytes("UTF-8")));
+		config.parse(new ByteArrayInputStream(handlers.getBytes("UTF-8")));
+		server = new HttpServer(config);
+		serverThread = new Thread(new Runnable() {
+			public void run() {
+				server.start();
+			}
+		});
+		serverThread.start();
+	}
+
+	/**
+	 * Asks for /index.html on a connection of its own.
+	 *
+	 * @return Everything the server sends until it closes the connection.
+	 */
+	protected String exchange() throws IOException {
+		return exchange("GET /index.html HTTP/1.1\r\n\r\n");
+	}
+
+	/**
+	 * Sends a request, or several, on a connection of its own.
+	 *
+	 * @return Everything the server sends until it closes the connection.
+	 */
+	protected String exchange(String request) throws IOException {
+		Socket socket = new Socket("localhost", server.getPort());
+		try {
+			socket.setSoTimeout(5000);
+			socket.getOutputStream().write(request.getBytes("US-ASCII"));
+			ByteArrayOutputStream response = new ByteArrayOutputStream();
+			IOUtils.copy(socket.getInputStream(), response);
+			return response.toString("US-ASCII");
+		} finally {
+			socket.close();
+		}
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		if (server != null) {
+			server.stop();
+			serverThread.join(15000);
+		}
+		// a response completed by another thread, or the transfer of a client
+		// that went away, gives its buffers back after the connection closed.
+		for (int i = 0; i < 100 && !ByteBufferPool.getInstance().getLeaks().isEmpty(); i++) {
+			Thread.sleep(20);
+		}
+		assertEquals(Collections.emptyList(), ByteBufferPool.getInstance().getLeaks());
+		super.tearDown();
+	}
+}
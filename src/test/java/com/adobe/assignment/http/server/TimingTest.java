@@ -0,0 +1,78 @@
+package com.adobe.assignment.http.server;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * Tests timing the phases of requests.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class TimingTest extends ServerTestCase {
+
+	private static final Pattern SERVER_TIMING =
+			Pattern.compile("\r\nServer-Timing: read;dur=[0-9.]+, handle;dur=([0-9.]+)\r\n");
+
+	private void start(String properties) throws Exception {
+		start("webserver.jmx.enabled=false\n" + properties, handlers(ResponseCacheTest.CountingHandler.class.getName()));
+	}
+
+	/**
+	 * The response tells how long reading and handling the request took, and
+	 * a request over the threshold is counted as slow.
+	 */
+	@Test
+	public void testServerTiming() throws Exception {
+		start("webserver.cache.size=0\nwebserver.timing.header=true\nwebserver.timing.slowThreshold=50\n");
+		String response = exchange();
+		// the handler takes 100 ms.
+		assertTrue(response, handled(response) >= 100);
+		assertTrue(response.endsWith("\r\n\r\nhello /index.html"));
+		// the request is counted once the client has seen the response end.
+		for (int i = 0; i < 250 && server.getMetrics().getSlowRequests() == 0; i++) {
+			Thread.sleep(20);
+		}
+		assertEquals(1, server.getMetrics().getSlowRequests());
+	}
+
+	/**
+	 * A response served from the cache carries its own timing, not that of
+	 * the response it was stored from.
+	 */
+	@Test
+	public void testCachedResponse() throws Exception {
+		start("webserver.timing.header=true\n");
+		String first = exchange();
+		assertTrue(first, SERVER_TIMING.matcher(first).find());
+		// the response is stored once it has been sent.
+		String cached = first;
+		for (int i = 0; i < 250 && handled(cached) >= 100; i++) {
+			Thread.sleep(20);
+			cached = exchange();
+		}
+		assertTrue(cached, handled(cached) < 100);
+		assertEquals(cached, 1, cached.split("Server-Timing").length - 1);
+	}
+
+	/**
+	 * @return The duration of the handle phase of a response in milliseconds.
+	 */
+	private static double handled(String response) {
+		Matcher m = SERVER_TIMING.matcher(response);
+		assertTrue(response, m.find());
+		return Double.parseDouble(m.group(1));
+	}
+
+	/**
+	 * Without the header enabled, responses do not carry it.
+	 */
+	@Test
+	public void testDisabled() throws Exception {
+		start("webserver.cache.size=0\n");
+		String response = exchange();
+		assertFalse(response, response.contains("Server-Timing"));
+		assertTrue(response.endsWith("\r\n\r\nhello /index.html"));
+	}
+}
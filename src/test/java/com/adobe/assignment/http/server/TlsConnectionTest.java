@@ -0,0 +1,70 @@
+package com.adobe.assignment.http.server;
+
+import java.io.File;
+import java.security.KeyStore;
+import java.util.Collections;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.adobe.assignment.http.ByteBufferPool;
+
+/**
+ * Tests HTTPS against an in-process server with a self-signed certificate.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class TlsConnectionTest extends TestCase {
+
+	private File keystore;
+	private HttpServer server;
+	private KeyStore trust;
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		keystore = TlsHandshakeBenchmark.createKeystore();
+		trust = TlsHandshakeBenchmark.loadKeystore(keystore);
+		server = TlsHandshakeBenchmark.startServer(keystore, true);
+	}
+
+	/**
+	 * A request over TLS is answered over TLS. No handlers are configured, so
+	 * the answer is 501.
+	 */
+	@Test
+	public void testRequestOverTls() throws Exception {
+		assertTrue(server.getSecurePort() > 0);
+		assertTrue(server.getSecurePort() != server.getPort());
+
+		Object[] result = TlsHandshakeBenchmark.request(TlsHandshakeBenchmark.clientContext(trust),
+				server.getSecurePort());
+		String response = (String) result[0];
+		assertTrue(response, response.startsWith("HTTP/1.1 501"));
+	}
+
+	/**
+	 * A second connection from the same client resumes the first session.
+	 */
+	@Test
+	public void testSessionIsResumed() throws Exception {
+		SSLContext client = TlsHandshakeBenchmark.clientContext(trust);
+		SSLSession first = (SSLSession) TlsHandshakeBenchmark.request(client, server.getSecurePort())[1];
+		SSLSession second = (SSLSession) TlsHandshakeBenchmark.request(client, server.getSecurePort())[1];
+		assertEquals(first.getCreationTime(), second.getCreationTime());
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		server.stop();
+		keystore.delete();
+		// the workers finish shortly after the client has read the response.
+		Thread.sleep(200);
+		assertEquals(Collections.emptyList(), ByteBufferPool.getInstance().getLeaks());
+		super.tearDown();
+	}
+}
@@ -0,0 +1,149 @@
+package com.adobe.assignment.http.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Compares full TLS handshakes with resumed ones against an in-process
+ * server using a self-signed certificate generated by keytool.
+ *
+ * Every full handshake uses a fresh client SSLContext, so the client has no
+ * session to offer; the resumed handshakes share one client SSLContext and
+ * thereby resume the session (or present the ticket) of the first one.
+ *
+ * Run with: java -cp ... TlsHandshakeBenchmark [handshakes] [sessionTickets]
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class TlsHandshakeBenchmark {
+
+	static final String PASSWORD = "changeit";
+
+	public static void main(String[] args) throws Exception {
+		int handshakes = (args.length > 0) ? Integer.parseInt(args[0]) : 500;
+		boolean tickets = (args.length > 1) ? Boolean.parseBoolean(args[1]) : true;
+
+		File keystore = createKeystore();
+		HttpServer server = startServer(keystore, tickets);
+		try {
+			int port = server.getSecurePort();
+			KeyStore trust = loadKeystore(keystore);
+
+			// warm up both paths.
+			run(port, trust, handshakes / 5, false);
+			run(port, trust, handshakes / 5, true);
+
+			long full = run(port, trust, handshakes, false);
+			long resumed = run(port, trust, handshakes, true);
+			System.out.println(String.format("full handshakes:    %8.1f us/connection", full / 1000.0 / handshakes));
+			System.out.println(String.format("resumed handshakes: %8.1f us/connection", resumed / 1000.0 / handshakes));
+		} finally {
+			server.stop();
+			keystore.delete();
+		}
+	}
+
+	/**
+	 * Opens the given number of connections, each doing one request.
+	 *
+	 * @return The elapsed time in nanoseconds
+	 */
+	private static long run(int port, KeyStore trust, int count, boolean resume) throws Exception {
+		SSLContext shared = clientContext(trust);
+		long start = System.nanoTime();
+		for (int i = 0; i < count; i++) {
+			request((resume ? shared : clientContext(trust)), port);
+		}
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Sends a request over a new connection.
+	 *
+	 * @return The response, and the connection's session
+	 */
+	static Object[] request(SSLContext client, int port) throws IOException {
+		SSLSocket socket = (SSLSocket) client.getSocketFactory().createSocket("localhost", port);
+		socket.setTcpNoDelay(true);
+		try {
+			socket.startHandshake();
+			OutputStream out = socket.getOutputStream();
+			out.write("GET / HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes("US-ASCII"));
+			out.flush();
+			String response = new String(IOUtils.toByteArray(socket.getInputStream()), "US-ASCII");
+			return new Object[] { response, socket.getSession() };
+		} finally {
+			socket.close();
+		}
+	}
+
+	static SSLContext clientContext(KeyStore trust) throws GeneralSecurityException {
+		TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+		tmf.init(trust);
+		SSLContext context = SSLContext.getInstance("TLS");
+		context.init(null, tmf.getTrustManagers(), null);
+		return context;
+	}
+
+	static HttpServer startServer(File keystore, boolean tickets) throws IOException {
+		String props = "webserver.port=0\n"
+				+ "webserver.ssl.port=0\n"
+				+ "webserver.ssl.keystore=" + keystore.getAbsolutePath().replace('\\', '/') + "\n"
+				+ "webserver.ssl.keystorePassword=" + PASSWORD + "\n"
+				+ "webserver.ssl.sessionTickets=" + tickets + "\n";
+		ServerConfig config = new ServerConfig();
+		config.load(new ByteArrayInputStream(props.getBytes("UTF-8")));
+		final HttpServer server = new HttpServer(config);
+		Thread t = new Thread(new Runnable() {
+			public void run() {
+				server.start();
+			}
+		}, "benchmark-server");
+		t.setDaemon(true);
+		t.start();
+		return server;
+	}
+
+	/**
+	 * Generates a PKCS12 keystore with a self-signed certificate for
+	 * localhost by means of the JDK's keytool.
+	 */
+	static File createKeystore() throws IOException, InterruptedException {
+		File keystore = File.createTempFile("httpserver", ".p12");
+		keystore.delete();
+		String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+		Process p = new ProcessBuilder(keytool, "-genkeypair", "-alias", "server", "-keyalg", "EC",
+				"-groupname", "secp256r1", "-dname", "CN=localhost", "-ext", "san=dns:localhost",
+				"-validity", "1", "-storetype", "PKCS12", "-keystore", keystore.getAbsolutePath(),
+				"-storepass", PASSWORD, "-keypass", PASSWORD)
+				.redirectErrorStream(true).start();
+		String output = IOUtils.toString(p.getInputStream(), "UTF-8");
+		if (p.waitFor() != 0) {
+			throw new IOException("keytool failed: " + output);
+		}
+		return keystore;
+	}
+
+	static KeyStore loadKeystore(File file) throws IOException, GeneralSecurityException {
+		KeyStore ks = KeyStore.getInstance("PKCS12");
+		InputStream in = new FileInputStream(file);
+		try {
+			ks.load(in, PASSWORD.toCharArray());
+		} finally {
+			in.close();
+		}
+		return ks;
+	}
+}
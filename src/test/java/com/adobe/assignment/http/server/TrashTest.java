@@ -0,0 +1,108 @@
+package com.adobe.assignment.http.server;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import com.adobe.assignment.http.methods.Trash;
+
+/**
+ * Tests deleting files and directory trees through the trash.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class TrashTest extends ServerTestCase {
+
+	private Path dir;
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		dir = Files.createTempDirectory("trash");
+	}
+
+	/**
+	 * A deleted tree is gone at once, and removed from the trash in the
+	 * background.
+	 */
+	@Test
+	public void testDeleteTree() throws Exception {
+		Path webroot = dir.resolve("webroot");
+		Path tree = webroot.resolve("tree");
+		for (int d = 0; d < 5; d++) {
+			Path sub = Files.createDirectories(tree.resolve("d" + d).resolve("nested"));
+			for (int f = 0; f < 100; f++) {
+				Files.write(sub.getParent().resolve("f" + f), new byte[] { (byte) f });
+			}
+			Files.write(sub.resolve("leaf"), new byte[1]);
+		}
+		Files.write(webroot.resolve("file.txt"), new byte[10]);
+
+		Trash trash = new Trash(webroot.resolve(Trash.NAME), 2);
+		trash.delete(tree);
+		trash.delete(webroot.resolve("file.txt"));
+		assertFalse(Files.exists(tree));
+		assertFalse(Files.exists(webroot.resolve("file.txt")));
+		try {
+			trash.delete(tree);
+			fail("deleted twice");
+		} catch (NoSuchFileException e) {
+			// expected.
+		}
+
+		assertTrue(trash.awaitReclaimed(10000));
+		// the root, 5 * (directory, nested directory, 100 files, leaf) and file.txt
+		assertEquals(1 + 5 * 103 + 1, trash.getReclaimed());
+		assertEquals(0, webroot.resolve(Trash.NAME).toFile().list().length);
+		assertTrue(trash.contains(webroot.resolve(Trash.NAME).resolve("x")));
+		assertFalse(trash.contains(webroot));
+		trash.close();
+	}
+
+	/**
+	 * Neither the default trash nor one configured elsewhere in the web root
+	 * is served by the GET handler, however the path is spelt.
+	 */
+	@Test
+	public void testGetHidesTrash() throws Exception {
+		Path webroot = Files.createDirectories(dir.resolve("webroot"));
+		start("webserver.jmx.enabled=false\nwebserver.cache.size=0\nwebserver.webroot=" + webroot + "\n",
+				"<config><supportedmethods>"
+				+ "<supportedmethod><class name=\"com.adobe.assignment.http.methods.GetMethodHandler\" /></supportedmethod>"
+				+ "<supportedmethod><class name=\"com.adobe.assignment.http.methods.DeleteMethod\" />"
+				+ "<param name=\"trash\" value=\"" + webroot.resolve("deleted") + "\" /></supportedmethod>"
+				+ "</supportedmethods></config>");
+		// put in the trashes once they were opened, lest they be reclaimed.
+		Files.write(Files.createDirectories(webroot.resolve("deleted")).resolve("1-2-x"), new byte[1]);
+		Files.write(Files.createDirectories(webroot.resolve(Trash.NAME)).resolve("y"), new byte[1]);
+		Files.write(webroot.resolve("deleted.html"), new byte[1]);
+
+		for (String uri : new String[] { "/deleted/1-2-x", "/%64eleted/1-2-x", "/a/../deleted/1-2-x", "/.trash/y" }) {
+			assertTrue(uri, exchange("GET " + uri + " HTTP/1.1\r\n\r\n").startsWith("HTTP/1.1 404"));
+		}
+		assertTrue(exchange("GET /deleted.html HTTP/1.1\r\n\r\n").startsWith("HTTP/1.1 200"));
+	}
+
+	/**
+	 * What is left in the trash is reclaimed when it is opened.
+	 */
+	@Test
+	public void testReclaimLeftovers() throws Exception {
+		Path trashDir = Files.createDirectories(dir.resolve("trash").resolve("1-2-old"));
+		Files.write(trashDir.resolve("a"), new byte[1]);
+		Trash trash = new Trash(trashDir.getParent(), 1);
+		assertTrue(trash.awaitReclaimed(10000));
+		assertFalse(Files.exists(trashDir));
+		trash.close();
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		super.tearDown();
+		FileUtils.deleteQuietly(new File(dir.toString()));
+	}
+}
@@ -0,0 +1,107 @@
+package com.adobe.assignment.http.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+/**
+ * Tests serving several sites by the name in the Host header.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class VirtualHostTest extends ServerTestCase {
+
+	private Path serverRoot, hostRoot;
+	private String properties, handlers;
+	private ServerConfig config;
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		serverRoot = Files.createTempDirectory("server");
+		hostRoot = Files.createTempDirectory("host");
+		Files.write(serverRoot.resolve("index.html"), "server".getBytes("US-ASCII"));
+		Files.write(hostRoot.resolve("index.html"), "example".getBytes("US-ASCII"));
+
+		properties = "webserver.jmx.enabled=false\nwebserver.cache.size=0\nwebserver.timeout.read=4000\n"
+				+ "webserver.webroot=" + serverRoot + "\n";
+		String handler = "<supportedmethods><supportedmethod>"
+				+ "<class name=\"com.adobe.assignment.http.methods.GetMethodHandler\" />"
+				+ "</supportedmethod></supportedmethods>";
+		handlers = "<config>" + handler
+				+ "<virtualhost names=\"Example.com, www.example.com *.example.org\">"
+				+ "<property name=\"webserver.webroot\" value=\"" + hostRoot + "\" />"
+				+ "<property name=\"webserver.cache.size\" value=\"65536\" />"
+				+ handler + "</virtualhost></config>";
+		config = new ServerConfig();
+		config.load(new ByteArrayInputStream(properties.getBytes("UTF-8")));
+		config.parse(new ByteArrayInputStream(handlers.getBytes("UTF-8")));
+	}
+
+	/**
+	 * A virtual host has its own properties, falling back to those of the
+	 * server, and its own handlers.
+	 */
+	@Test
+	public void testConfig() {
+		assertEquals(1, config.getVirtualHosts().size());
+		ServerConfig host = config.getVirtualHosts().get(0);
+		assertEquals(3, host.getHostNames().size());
+		assertEquals("example.com", host.getHostNames().get(0));
+		assertEquals(hostRoot.toString(), host.getWebRoot());
+		assertEquals(65536, host.getCacheSize());
+		assertEquals(4000, host.getReadTimeout());
+		assertEquals(1, host.getHandlers().size());
+		assertNotSame(config.getHandlers().get(0), host.getHandlers().get(0));
+		assertTrue(config.getHostNames().isEmpty());
+	}
+
+	@Test
+	public void testResolve() {
+		VirtualHosts hosts = new VirtualHosts(config, null, new ServerMetrics());
+		VirtualHosts.Host server = hosts.getDefault();
+		VirtualHosts.Host example = hosts.resolve("example.com");
+		assertNotSame(server, example);
+		assertNull(server.getResponseCache());
+		assertNotNull(example.getResponseCache());
+		assertEquals(2, hosts.getHosts().size());
+
+		assertSame(example, hosts.resolve("WWW.Example.COM:8080"));
+		assertSame(example, hosts.resolve("example.com."));
+		assertSame(example, hosts.resolve("a.example.org"));
+		assertSame(example, hosts.resolve("a.b.example.org"));
+		assertSame(server, hosts.resolve("example.org"));
+		assertSame(server, hosts.resolve("a.example.com"));
+		assertSame(server, hosts.resolve("[::1]:8080"));
+		assertSame(server, hosts.resolve((String) null));
+	}
+
+	/**
+	 * Requests are served from the web root of the site their Host header
+	 * names, and from the server's otherwise.
+	 */
+	@Test
+	public void testServe() throws Exception {
+		start(properties, handlers);
+		assertTrue(get("Host: www.example.com\r\n").endsWith("\r\n\r\nexample"));
+		assertTrue(get("Host: cdn.Example.org:80\r\n").endsWith("\r\n\r\nexample"));
+		assertTrue(get("Host: localhost\r\n").endsWith("\r\n\r\nserver"));
+		assertTrue(get("").endsWith("\r\n\r\nserver"));
+	}
+
+	private String get(String headers) throws IOException {
+		return exchange("GET /index.html HTTP/1.1\r\n" + headers + "Connection: close\r\n\r\n");
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		super.tearDown();
+		FileUtils.deleteQuietly(new File(serverRoot.toString()));
+		FileUtils.deleteQuietly(new File(hostRoot.toString()));
+	}
+}
@@ -0,0 +1,327 @@
+package com.adobe.assignment.http.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.adobe.assignment.http.HttpRequest;
+import com.adobe.assignment.http.websocket.WebSocket;
+import com.adobe.assignment.http.websocket.WebSocketHandler;
+
+/**
+ * Tests WebSocket connections against an in-process server, using the JDK's
+ * WebSocket client and raw sockets for clients that misbehave.
+ *
+ * @author Alfusainey Jallow, University of the Gambia
+ */
+public class WebSocketTest extends ServerTestCase {
+
+	private static final String HANDLERS_XML =
+			"<config>\n" +
+			"    <websockethandlers>\n" +
+			"        <websockethandler>\n" +
+			"            <class name=\"" + EchoHandler.class.getName() + "\" />\n" +
+			"        </websockethandler>\n" +
+			"        <websockethandler>\n" +
+			"            <class name=\"" + FloodHandler.class.getName() + "\" />\n" +
+			"        </websockethandler>\n" +
+			"        <websockethandler>\n" +
+			"            <class name=\"" + QueueHandler.class.getName() + "\" />\n" +
+			"        </websockethandler>\n" +
+			"    </websockethandlers>" +
+			"</config>";
+
+	private static final BlockingQueue<Integer> closeCodes = new LinkedBlockingQueue<Integer>();
+
+	private static final BlockingQueue<Long> queued = new LinkedBlockingQueue<Long>();
+
+	private static volatile long floodBuffered;
+	private static CountDownLatch flooded;
+
+	/**
+	 * Echoes every message back.
+	 */
+	public static class EchoHandler implements WebSocketHandler {
+
+		public void init(ServerConfig config) {
+		}
+
+		public boolean accept(HttpRequest request) {
+			return request.getRequestURI().equals("/ws/echo");
+		}
+
+		public void onOpen(WebSocket socket) {
+		}
+
+		public void onMessage(WebSocket socket, String text) {
+			socket.sendText(text);
+		}
+
+		public void onMessage(WebSocket socket, byte[] data) {
+			socket.sendBinary(data);
+		}
+
+		public void onClose(WebSocket socket, int code, String reason) {
+			closeCodes.add(code);
+		}
+	}
+
+	/**
+	 * Sends to a client that does not read until sending is refused.
+	 */
+	public static class FloodHandler implements WebSocketHandler {
+
+		public void init(ServerConfig config) {
+		}
+
+		public boolean accept(HttpRequest request) {
+			return request.getRequestURI().equals("/ws/flood");
+		}
+
+		public void onOpen(WebSocket socket) {
+			byte[] message = new byte[64 * 1024];
+			long deadline = System.currentTimeMillis() + 10000;
+			while (socket.sendBinary(message) && System.currentTimeMillis() < deadline) {
+			}
+			floodBuffered = socket.getBufferedAmount();
+			flooded.countDown();
+		}
+
+		public void onMessage(WebSocket socket, String text) {
+		}
+
+		public void onMessage(WebSocket socket, byte[] data) {
+		}
+
+		public void onClose(WebSocket socket, int code, String reason) {
+		}
+	}
+
+	/**
+	 * Reports the bytes queued for the client on every message.
+	 */
+	public static class QueueHandler implements WebSocketHandler {
+
+		public void init(ServerConfig config) {
+		}
+
+		public boolean accept(HttpRequest request) {
+			return request.getRequestURI().equals("/ws/queue");
+		}
+
+		public void onOpen(WebSocket socket) {
+		}
+
+		public void onMessage(WebSocket socket, String text) {
+			queued.add(socket.getBufferedAmount());
+		}
+
+		public void onMessage(WebSocket socket, byte[] data) {
+		}
+
+		public void onClose(WebSocket socket, int code, String reason) {
+		}
+	}
+
+	/**
+	 * Collects what the JDK client receives, reassembling fragments.
+	 */
+	private static class Collector implements java.net.http.WebSocket.Listener {
+
+		final BlockingQueue<Object> received = new LinkedBlockingQueue<Object>();
+		private final StringBuilder text = new StringBuilder();
+		private final ByteArrayOutputStream binary = new ByteArrayOutputStream();
+
+		public CompletionStage<?> onText(java.net.http.WebSocket ws, CharSequence data, boolean last) {
+			text.append(data);
+			if (last) {
+				received.add(text.toString());
+				text.setLength(0);
+			}
+			ws.request(1);
+			return null;
+		}
+
+		public CompletionStage<?> onBinary(java.net.http.WebSocket ws, ByteBuffer data, boolean last) {
+			byte[] b = new byte[data.remaining()];
+			data.get(b);
+			binary.write(b, 0, b.length);
+			if (last) {
+				received.add(binary.toByteArray());
+				binary.reset();
+			}
+			ws.request(1);
+			return null;
+		}
+
+		public CompletionStage<?> onPong(java.net.http.WebSocket ws, ByteBuffer message) {
+			received.add("pong:" + StandardCharsets.UTF_8.decode(message));
+			ws.request(1);
+			return null;
+		}
+
+		public CompletionStage<?> onClose(java.net.http.WebSocket ws, int statusCode, String reason) {
+			received.add(statusCode);
+			return null;
+		}
+	}
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		closeCodes.clear();
+		queued.clear();
+		flooded = new CountDownLatch(1);
+		start("webserver.websocket.pingInterval=300\nwebserver.websocket.maxQueuedBytes=262144\n", HANDLERS_XML);
+	}
+
+	/**
+	 * Fragmented and large messages are echoed whole, pings answered, and
+	 * the closing handshake completed.
+	 */
+	@Test
+	public void testEcho() throws Exception {
+		Collector collector = new Collector();
+		java.net.http.WebSocket ws = HttpClient.newHttpClient().newWebSocketBuilder()
+				.buildAsync(URI.create("ws://localhost:" + server.getPort() + "/ws/echo"), collector)
+				.get(5, TimeUnit.SECONDS);
+
+		ws.sendText("Hello, ", false).get(5, TimeUnit.SECONDS);
+		ws.sendText("world", true).get(5, TimeUnit.SECONDS);
+		assertEquals("Hello, world", collector.received.poll(5, TimeUnit.SECONDS));
+
+		byte[] data = new byte[100 * 1024];
+		new Random(3).nextBytes(data);
+		ws.sendBinary(ByteBuffer.wrap(data), true).get(5, TimeUnit.SECONDS);
+		assertTrue(Arrays.equals(data, (byte[]) collector.received.poll(5, TimeUnit.SECONDS)));
+
+		ws.sendPing(ByteBuffer.wrap("p".getBytes("UTF-8"))).get(5, TimeUnit.SECONDS);
+		assertEquals("pong:p", collector.received.poll(5, TimeUnit.SECONDS));
+
+		// outlives a few ping intervals, answering the server's pings.
+		Thread.sleep(1000);
+		ws.sendText("still there", true).get(5, TimeUnit.SECONDS);
+		assertEquals("still there", collector.received.poll(5, TimeUnit.SECONDS));
+
+		ws.sendClose(WebSocket.CLOSE_NORMAL, "bye").get(5, TimeUnit.SECONDS);
+		assertEquals(WebSocket.CLOSE_NORMAL, collector.received.poll(5, TimeUnit.SECONDS));
+		assertEquals(Integer.valueOf(WebSocket.CLOSE_NORMAL), closeCodes.poll(5, TimeUnit.SECONDS));
+		assertEquals(1, server.getMetrics().getWebSockets());
+	}
+
+	/**
+	 * A client that does not answer pings is disconnected.
+	 */
+	@Test
+	public void testSilentClientIsDropped() throws Exception {
+		Socket socket = open("/ws/echo");
+		try {
+			InputStream in = socket.getInputStream();
+			assertEquals(0x89, in.read());
+			assertEquals(0x00, in.read());
+			assertEquals(-1, in.read());
+		} finally {
+			socket.close();
+		}
+		assertEquals(Integer.valueOf(WebSocket.CLOSE_ABNORMAL), closeCodes.poll(5, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * A frame whose 64-bit length has the most significant bit set is a
+	 * protocol error.
+	 */
+	@Test
+	public void testNegativeLengthIsRejected() throws Exception {
+		Socket socket = open("/ws/echo");
+		try {
+			socket.getOutputStream().write(new byte[] { (byte) 0x82, (byte) 0xff,
+					(byte) 0x80, 0, 0, 0, 0, 0, 0, 0, 1, 2, 3, 4 });
+			InputStream in = socket.getInputStream();
+			assertEquals(0x88, in.read());
+			in.read();
+			assertEquals(WebSocket.CLOSE_PROTOCOL_ERROR, (in.read() << 8) | in.read());
+		} finally {
+			socket.close();
+		}
+		assertEquals(Integer.valueOf(WebSocket.CLOSE_PROTOCOL_ERROR), closeCodes.poll(5, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Sending to a client that does not read is refused once the queue is
+	 * full, instead of buffering without bounds or blocking the sender.
+	 */
+	@Test
+	public void testBackpressure() throws Exception {
+		Socket socket = open("/ws/flood");
+		try {
+			assertTrue(flooded.await(15, TimeUnit.SECONDS));
+			assertTrue(floodBuffered > 0);
+			assertTrue(floodBuffered <= 262144);
+		} finally {
+			socket.close();
+		}
+	}
+
+	/**
+	 * A client that pings without reading is owed the latest pong only,
+	 * instead of one queued pong per ping.
+	 */
+	@Test
+	public void testPongsAreCoalesced() throws Exception {
+		byte[] ping = new byte[2 + 4 + 125];
+		ping[0] = (byte) 0x89;
+		ping[1] = (byte) (0x80 | 125);
+		ByteArrayOutputStream pings = new ByteArrayOutputStream();
+		for (int i = 0; i < 100000; i++) {
+			pings.write(ping, 0, ping.length);
+		}
+		// a masked text frame, after which the handler reports the queue.
+		pings.write(new byte[] { (byte) 0x81, (byte) 0x81, 0, 0, 0, 0, 'q' }, 0, 7);
+
+		Socket socket = open("/ws/queue");
+		try {
+			socket.getOutputStream().write(pings.toByteArray());
+			Long bytes = queued.poll(15, TimeUnit.SECONDS);
+			assertNotNull(bytes);
+			// one pong, and perhaps a ping of the server.
+			assertTrue(bytes.toString(), bytes <= 127 + 2);
+		} finally {
+			socket.close();
+		}
+	}
+
+	/**
+	 * Opens a WebSocket with a raw socket, checking the handshake response.
+	 */
+	private Socket open(String path) throws IOException {
+		Socket socket = new Socket("localhost", server.getPort());
+		socket.setSoTimeout(10000);
+		String key = "dGhlIHNhbXBsZSBub25jZQ==";
+		socket.getOutputStream().write(("GET " + path + " HTTP/1.1\r\nHost: localhost\r\nUpgrade: websocket\r\n"
+				+ "Connection: Upgrade\r\nSec-WebSocket-Key: " + key + "\r\nSec-WebSocket-Version: 13\r\n\r\n")
+				.getBytes("US-ASCII"));
+		InputStream in = socket.getInputStream();
+		StringBuilder head = new StringBuilder();
+		while (!head.toString().endsWith("\r\n\r\n")) {
+			head.append((char) in.read());
+		}
+		assertTrue(head.toString(), head.toString().startsWith("HTTP/1.1 101 "));
+		// the example of RFC 6455, section 1.3.
+		assertTrue(head.toString(), head.toString().contains("Sec-WebSocket-Accept: s3pPLMBiTxaQ9kYGzzhZRbK+xOo=\r\n"));
+		return socket;
+	}
+}